@@ -0,0 +1,85 @@
+package todddo.java.api.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.jackson.ObjectMapperFactory;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.reactivex.Single;
+import java.util.concurrent.TimeUnit;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import todddo.java.api.metrics.ErrorCounters;
+import todddo.java.api.models.TodoData;
+import todddo.java.api.models.TodoResponse;
+import todddo.java.domain.services.ChangeFeed;
+import todddo.java.domain.services.TodosService;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.inmemory.CompactTodosRepo;
+import todddo.java.infra.tracing.Tracing;
+
+/**
+ * GET /todos/{id} from the controller down to the buffer handed to Netty, with and without
+ * EncodedTodos. With, only the Todo's version is looked up once its JSON is kept. Without, the body
+ * is mapped to a TodoResponse and, as Micronaut would after the controller, encoded by Jackson.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GetTodoBenchmark {
+
+  @Param({"true", "false"})
+  boolean encoded;
+
+  private final ObjectMapper objectMapper = new ObjectMapperFactory().objectMapper(null, null);
+  private RepoExecution execution;
+  private TodosController controller;
+  private long id;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    execution = RepoExecution.synchronous();
+    final ChangeFeed changeFeed = new ChangeFeed(16, 16);
+    final TodosService service = new TodosService(new CompactTodosRepo(execution), changeFeed);
+    final TodosController.Mapper mapper = Mappers.getMapper(TodosController.Mapper.class);
+    controller =
+        new TodosController(
+            service,
+            mapper,
+            new ErrorCounters(new SimpleMeterRegistry()),
+            Tracing.disabled(),
+            new ListCache(objectMapper, 0),
+            new EncodedTodos(objectMapper, mapper, changeFeed, encoded));
+    id =
+        controller
+            .createTodo(Single.just(TodoData.builder().task("benchmark getting one todo").build()))
+            .blockingGet()
+            .getBody(TodoResponse.class)
+            .get()
+            .getId();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    execution.close();
+  }
+
+  @Benchmark
+  public ByteBuf getTodo() throws Exception {
+    final HttpResponse<?> response = controller.getTodo(id, null).blockingGet();
+    final Object body = response.body();
+    return body instanceof ByteBuf
+        ? (ByteBuf) body
+        : Unpooled.wrappedBuffer(objectMapper.writeValueAsBytes(body));
+  }
+}
@@ -0,0 +1,84 @@
+package todddo.java.api.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.jackson.ObjectMapperFactory;
+import java.util.concurrent.TimeUnit;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import todddo.java.api.metrics.ErrorCounters;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
+import todddo.java.domain.services.TodosService;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.inmemory.CompactTodosRepo;
+import todddo.java.infra.tracing.Tracing;
+
+/**
+ * GET /todos from the controller down to the bytes handed to Netty, with the ListCache on and, with
+ * a maxBytes of 0, off. With it on and no writes, every request after the first is served the JSON
+ * encoded for the first; with it off, each one lists, maps and encodes the Todos again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListTodosBenchmark {
+
+  @Param({"100", "10000"})
+  int size;
+
+  @Param({"16777216", "0"})
+  long maxBytes;
+
+  private final ObjectMapper objectMapper = new ObjectMapperFactory().objectMapper(null, null);
+  private RepoExecution execution;
+  private TodosService service;
+  private TodosController controller;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    execution = RepoExecution.synchronous();
+    service = new TodosService(new CompactTodosRepo(execution), new ChangeFeed(16, 16));
+    for (int i = 0; i < size; i++) {
+      service.create(Todo.Task.builder().value("benchmark the list " + i).build()).blockingGet();
+    }
+    final TodosController.Mapper mapper = Mappers.getMapper(TodosController.Mapper.class);
+    controller =
+        new TodosController(
+            service,
+            mapper,
+            new ErrorCounters(new SimpleMeterRegistry()),
+            Tracing.disabled(),
+            new ListCache(objectMapper, maxBytes),
+            new EncodedTodos(objectMapper, mapper, new ChangeFeed(16, 16), false));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    execution.close();
+  }
+
+  @Benchmark
+  public byte[] listAll() {
+    return encoded(controller.listTodos(null, null, null, null, null).blockingGet());
+  }
+
+  @Benchmark
+  public byte[] listPage() {
+    return encoded(controller.listTodos(null, 20, null, null, null).blockingGet());
+  }
+
+  private byte[] encoded(final HttpResponse<?> response) {
+    return (byte[]) response.body();
+  }
+}
@@ -0,0 +1,39 @@
+package todddo.java.api.controllers;
+
+import java.util.concurrent.TimeUnit;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import todddo.java.api.models.TodoData;
+import todddo.java.api.models.TodoResponse;
+import todddo.java.domain.models.Todo;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TodosControllerMapperBenchmark {
+
+  private final TodosController.Mapper mapper = Mappers.getMapper(TodosController.Mapper.class);
+  private final Todo.Id id = Todo.Id.builder().value(42).build();
+  private final TodoData data = TodoData.builder().task("benchmark the mapper").build();
+  private final Todo todo = mapper.apiToDomainTodo(id, data);
+
+  @Benchmark
+  public TodoResponse domainToApi() {
+    return mapper.domainToApi(todo);
+  }
+
+  @Benchmark
+  public Todo.Task apiToDomainTask() {
+    return mapper.apiToDomainTask(data);
+  }
+
+  @Benchmark
+  public Todo apiToDomainTodo() {
+    return mapper.apiToDomainTodo(id, data);
+  }
+}
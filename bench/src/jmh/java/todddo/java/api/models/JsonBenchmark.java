@@ -0,0 +1,58 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.jackson.ObjectMapperFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Jackson serde of the API models, with an ObjectMapper configured the way the server's is. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonBenchmark {
+
+  @Param({"10", "1000"})
+  int listSize;
+
+  private ObjectMapper objectMapper;
+  private TodoResponse todo;
+  private List<TodoResponse> todos;
+  private byte[] dataJson;
+
+  @Setup
+  public void setUp() throws JsonProcessingException {
+    objectMapper = new ObjectMapperFactory().objectMapper(null, null);
+    todo = TodoResponse.builder().id(42).task("benchmark serialisation").build();
+    todos = new ArrayList<>(listSize);
+    for (int i = 0; i < listSize; i++) {
+      todos.add(TodoResponse.builder().id(i).task("benchmark serialisation " + i).build());
+    }
+    dataJson = objectMapper.writeValueAsBytes(TodoData.builder().task("deserialise me").build());
+  }
+
+  @Benchmark
+  public byte[] serializeTodo() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(todo);
+  }
+
+  @Benchmark
+  public byte[] serializeList() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(todos);
+  }
+
+  @Benchmark
+  public TodoData deserializeData() throws IOException {
+    return objectMapper.readValue(dataJson, TodoData.class);
+  }
+}
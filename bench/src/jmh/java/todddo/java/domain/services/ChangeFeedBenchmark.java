@@ -0,0 +1,56 @@
+package todddo.java.domain.services;
+
+import io.reactivex.disposables.CompositeDisposable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import todddo.java.domain.models.Todo;
+
+/**
+ * What a write pays to publish its change, with followers that keep up. Delivery happens on the
+ * computation scheduler, so on few cores some of it lands on the publishing thread's time too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChangeFeedBenchmark {
+
+  @Param({"0", "1", "16"})
+  int followers;
+
+  private final Todo todo =
+      Todo.builder()
+          .id(Todo.Id.builder().value(1).build())
+          .task(Todo.Task.builder().value("benchmark the change feed").build())
+          .build();
+  private ChangeFeed feed;
+  private CompositeDisposable following;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    feed = new ChangeFeed(1024, Integer.MAX_VALUE / 2);
+    following = new CompositeDisposable();
+    for (int i = 0; i < followers; i++) {
+      following.add(feed.changes(null).subscribe(change -> {}, error -> {}));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    following.dispose();
+  }
+
+  @Benchmark
+  public long publish() {
+    feed.publish(Todo.Change.Kind.Updated, todo);
+    return feed.sequence();
+  }
+}
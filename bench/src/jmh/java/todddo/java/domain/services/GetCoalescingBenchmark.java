@@ -0,0 +1,102 @@
+package todddo.java.domain.services;
+
+import fj.data.Either;
+import io.reactivex.Maybe;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nonnull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.inmemory.CompactTodosRepo;
+
+/**
+ * 16 threads getting the same Todo at once from a store that answers a get at a time per
+ * connection, each taking latencyMicros, so it can answer at most connections / latencyMicros gets.
+ * With coalescing, gets that come in while a lookup is in flight share it, and wait for one get
+ * rather than queue for a connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class GetCoalescingBenchmark {
+
+  @Param({"true", "false"})
+  boolean coalescing;
+
+  @Param({"200"})
+  long latencyMicros;
+
+  @Param({"2"})
+  int connections;
+
+  private RepoExecution execution;
+  private ExecutorService pool;
+  private SlowStore store;
+  private TodosService service;
+  private Todo.Id id;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    execution = RepoExecution.synchronous();
+    pool = Executors.newFixedThreadPool(connections);
+    store = new SlowStore(execution, Schedulers.from(pool), latencyMicros);
+    service =
+        new TodosService(
+            store,
+            new ChangeFeed(16, 16),
+            coalescing ? GetCoalescing.enabled() : GetCoalescing.disabled());
+    id = store.create(Todo.Task.builder().value("read by everyone").build()).blockingGet().getId();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    execution.close();
+    pool.shutdown();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Either<TodosService.GetError, Todo> getHotTodo() {
+    return service.get(id).blockingGet();
+  }
+
+  /** Stands in for a remote store, reached over a few connections. */
+  private static class SlowStore extends CompactTodosRepo {
+
+    private final Scheduler connections;
+    private final long latencyMicros;
+
+    SlowStore(
+        final RepoExecution execution, final Scheduler connections, final long latencyMicros) {
+      super(execution);
+      this.connections = connections;
+      this.latencyMicros = latencyMicros;
+    }
+
+    @Nonnull
+    @Override
+    public Maybe<Todo> get(@Nonnull final Todo.Id id) {
+      return Maybe.defer(
+              () -> {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latencyMicros));
+                return super.get(id);
+              })
+          .subscribeOn(connections);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package todddo.java.domain.services;
+
+import fj.data.Either;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import todddo.java.domain.models.Todo;
+
+/**
+ * What TodosService adds on top of the repo: validation and wrapping results in Either. The repo is
+ * a stub that answers immediately, so nothing else is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TodosServiceBenchmark {
+
+  private final Todo todo =
+      Todo.builder()
+          .id(Todo.Id.builder().value(1).build())
+          .task(Todo.Task.builder().value("benchmark the service").build())
+          .build();
+  private final Todo.Id missingId = Todo.Id.builder().value(2).build();
+  private final Todo.Task emptyTask = Todo.Task.builder().value("  ").build();
+  private final TodosService service = new TodosService(new StubRepo(todo), new ChangeFeed(16, 16));
+  private final TodosService coalescing =
+      new TodosService(new StubRepo(todo), new ChangeFeed(16, 16), GetCoalescing.enabled());
+
+  @Benchmark
+  public Either<TodosService.GetError, Todo> getFound() {
+    return service.get(todo.getId()).blockingGet();
+  }
+
+  /** With nothing in flight to share, so only what coalescing costs. */
+  @Benchmark
+  public Either<TodosService.GetError, Todo> getFoundCoalescing() {
+    return coalescing.get(todo.getId()).blockingGet();
+  }
+
+  @Benchmark
+  public Either<TodosService.GetError, Todo> getMissing() {
+    return service.get(missingId).blockingGet();
+  }
+
+  @Benchmark
+  public Either<TodosService.CreateError, Todo> createValid() {
+    return service.create(todo.getTask()).blockingGet();
+  }
+
+  @Benchmark
+  public Either<TodosService.CreateError, Todo> createEmpty() {
+    return service.create(emptyTask).blockingGet();
+  }
+
+  @Benchmark
+  public Either<TodosService.UpdateError, Todo> updateFound() {
+    return service.update(todo).blockingGet();
+  }
+
+  /** Knows a single Todo, and answers everything synchronously. */
+  private static class StubRepo implements Todo.Repo {
+
+    private final Todo todo;
+    private final Maybe<Todo> found;
+
+    StubRepo(final Todo todo) {
+      this.todo = todo;
+      this.found = Maybe.just(todo);
+    }
+
+    private Maybe<Todo> lookup(final Todo.Id id) {
+      return todo.getId().equals(id) ? found : Maybe.empty();
+    }
+
+    @Nonnull
+    @Override
+    public Single<Todo> create(@Nonnull final Todo.Task task) {
+      return Single.just(todo);
+    }
+
+    @Nonnull
+    @Override
+    public Single<Todo> put(@Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+      return Single.just(todo);
+    }
+
+    @Nonnull
+    @Override
+    public Maybe<Todo> get(@Nonnull final Todo.Id id) {
+      return lookup(id);
+    }
+
+    @Nonnull
+    @Override
+    public Maybe<Todo> delete(@Nonnull final Todo.Id id) {
+      return lookup(id);
+    }
+
+    @Nonnull
+    @Override
+    public Single<List<Todo>> list() {
+      return Single.just(Collections.singletonList(todo));
+    }
+
+    @Nonnull
+    @Override
+    public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+      return list();
+    }
+
+    @Nonnull
+    @Override
+    public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+      return Flowable.just(todo);
+    }
+
+    @Nonnull
+    @Override
+    public Maybe<Todo> update(@Nonnull final Todo todo) {
+      return lookup(todo.getId());
+    }
+
+    @Nonnull
+    @Override
+    public Maybe<Either<Todo, Todo>> compareAndUpdate(
+        @Nonnull final Todo todo, final long expectedVersion) {
+      return lookup(todo.getId()).map(Either::right);
+    }
+
+    @Nonnull
+    @Override
+    public Maybe<Either<Todo, Todo>> compareAndDelete(
+        @Nonnull final Todo.Id id, final long expectedVersion) {
+      return lookup(id).map(Either::right);
+    }
+
+    @Override
+    public long version() {
+      return 1;
+    }
+
+    @Override
+    public long size() {
+      return 1;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package todddo.java.infra.cache;
+
+import io.reactivex.Maybe;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.inmemory.CompactTodosRepo;
+
+/**
+ * Gets of 100k Todos, picked as per a Zipf distribution with exponent 0.99, so a few are read very
+ * often and most rarely, from a store that spends storeTokens of CPU on each get, with a cache of
+ * cacheSize Todos in front of it or none (0). The hit ratio is hits / (hits + misses).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CachingTodosRepoBenchmark {
+
+  private static final int TODOS = 100_000;
+  private static final int SAMPLES = 1 << 20;
+
+  @Param({"0", "1000", "10000"})
+  int cacheSize;
+
+  @Param({"0", "2000"})
+  long storeTokens;
+
+  private RepoExecution execution;
+  private TodoCache cache;
+  private Todo.Repo repo;
+  private Todo.Id[] ids;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    execution = RepoExecution.synchronous();
+    final SlowStore store = new SlowStore(execution, storeTokens);
+    final Todo.Task task = Todo.Task.builder().value("read a hot todo").build();
+    for (int i = 0; i < TODOS; i++) {
+      store.create(task).blockingGet();
+    }
+    if (cacheSize == 0) {
+      repo = store;
+    } else {
+      cache = new TodoCache(cacheSize);
+      repo = new CachingTodosRepo(store, cache);
+    }
+    ids = zipf(new Random(42));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    execution.close();
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Hits {
+    public long hits;
+    public long misses;
+  }
+
+  @Benchmark
+  public Todo get() {
+    return repo.get(ids[next++ & (SAMPLES - 1)]).blockingGet();
+  }
+
+  @TearDown(Level.Iteration)
+  public void countHits(final Hits hits) {
+    if (cache != null) {
+      hits.hits = cache.hits();
+      hits.misses = cache.misses();
+    }
+  }
+
+  /** Ids by rank, shuffled so the hot ones are not next to each other. */
+  private static Todo.Id[] zipf(final Random random) {
+    final long[] byRank = new long[TODOS];
+    for (int i = 0; i < TODOS; i++) {
+      byRank[i] = i + 1;
+    }
+    for (int i = TODOS - 1; i > 0; i--) {
+      final int j = random.nextInt(i + 1);
+      final long swapped = byRank[i];
+      byRank[i] = byRank[j];
+      byRank[j] = swapped;
+    }
+    final double[] cumulative = new double[TODOS];
+    double total = 0;
+    for (int rank = 0; rank < TODOS; rank++) {
+      total += 1 / Math.pow(rank + 1, 0.99);
+      cumulative[rank] = total;
+    }
+    final Todo.Id[] ids = new Todo.Id[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+      rank = rank < 0 ? -rank - 1 : rank;
+      ids[i] = Todo.Id.builder().value(byRank[Math.min(rank, TODOS - 1)]).build();
+    }
+    return ids;
+  }
+
+  /** Stands in for a store that takes a while to read from. */
+  private static class SlowStore extends CompactTodosRepo {
+
+    private final long tokens;
+
+    SlowStore(final RepoExecution execution, final long tokens) {
+      super(execution);
+      this.tokens = tokens;
+    }
+
+    @Nonnull
+    @Override
+    public Maybe<Todo> get(@Nonnull final Todo.Id id) {
+      Blackhole.consumeCPU(tokens);
+      return super.get(id);
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package todddo.java.infra.ids;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/** How many Ids a node hands out per second, from one thread and from several at once. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NodeIdsBenchmark {
+
+  private final NodeIds ids = new NodeIds(3);
+
+  @Benchmark
+  @Threads(1)
+  public long next() {
+    return ids.next();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long nextContended() {
+    return ids.next();
+  }
+}
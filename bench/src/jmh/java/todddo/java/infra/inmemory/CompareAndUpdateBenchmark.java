@@ -0,0 +1,121 @@
+package todddo.java.infra.inmemory;
+
+import fj.data.Either;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+
+/**
+ * Edits of a few hot Todos, as a client using If-Match makes them: get a Todo, then
+ * compareAndUpdate it from the version read. Under contention some edits lose the race; the updated
+ * and conflicts counters split the throughput between the two. The blind variant updates without
+ * checking, for comparison.
+ *
+ * <p>Both stores swap what they read with a compare-and-swap, locking nothing: in-memory its boxed
+ * Todo, compact its bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompareAndUpdateBenchmark {
+
+  @Param({"in-memory", "compact"})
+  String store;
+
+  @Param({"1", "64"})
+  int hotKeys;
+
+  private RepoExecution execution;
+  private Todo.Repo repo;
+  private Todo.Task task;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    execution = RepoExecution.synchronous();
+    repo =
+        store.equals("compact")
+            ? new CompactTodosRepo(execution)
+            : new TodosRepo(Mappers.getMapper(TodosRepo.Mapper.class), execution);
+    task = Todo.Task.builder().value("edit a hot todo").build();
+    for (int i = 0; i < hotKeys; i++) {
+      repo.create(task).blockingGet();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    execution.close();
+  }
+
+  /** Per thread, how many edits went through and how many lost the race. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Outcomes {
+    public long updated;
+    public long conflicts;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      updated = 0;
+      conflicts = 0;
+    }
+  }
+
+  private Todo.Id randomId() {
+    return Todo.Id.builder().value(1 + ThreadLocalRandom.current().nextInt(hotKeys)).build();
+  }
+
+  private Either<Todo, Todo> edit(final Outcomes outcomes) {
+    final Todo.Id id = randomId();
+    final Todo current = repo.get(id).blockingGet();
+    final Either<Todo, Todo> result =
+        repo.compareAndUpdate(Todo.builder().id(id).task(task).build(), current.getVersion())
+            .blockingGet();
+    if (result.isRight()) {
+      outcomes.updated++;
+    } else {
+      outcomes.conflicts++;
+    }
+    return result;
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Either<Todo, Todo> compareAndUpdate(final Outcomes outcomes) {
+    return edit(outcomes);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Either<Todo, Todo> compareAndUpdateContended(final Outcomes outcomes) {
+    return edit(outcomes);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Either<Todo, Todo> compareAndUpdateHeavilyContended(final Outcomes outcomes) {
+    return edit(outcomes);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Todo blindUpdateContended() {
+    final Todo.Id id = randomId();
+    repo.get(id).blockingGet();
+    return repo.update(Todo.builder().id(id).task(task).build()).blockingGet();
+  }
+}
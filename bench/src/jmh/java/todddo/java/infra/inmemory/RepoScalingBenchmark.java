@@ -0,0 +1,126 @@
+package todddo.java.infra.inmemory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+
+/**
+ * Create and get throughput from 1 to 64 threads, to see how each store scales with cores. Gets
+ * pick uniformly from the Todos created in setup; creates keep adding to them.
+ *
+ * <p>in-memory and compact hand out every Id from one counter, and in-memory appends to the tail of
+ * one skip list; sharded leases Ids in blocks per stripe of threads and spreads the blocks over
+ * shards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RepoScalingBenchmark {
+
+  private static final int TODOS = 100_000;
+
+  @Param({"in-memory", "compact", "sharded"})
+  String store;
+
+  private RepoExecution execution;
+  private Todo.Repo repo;
+  private Todo.Task task;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    execution = RepoExecution.synchronous();
+    task = Todo.Task.builder().value("scale across cores").build();
+  }
+
+  /** A fresh repo per iteration, so creates do not pile up across the run. */
+  @Setup(Level.Iteration)
+  public void fill() {
+    switch (store) {
+      case "compact":
+        repo = new CompactTodosRepo(execution);
+        break;
+      case "sharded":
+        repo = new ShardedTodosRepo(execution, 0, 1024);
+        break;
+      default:
+        repo = new TodosRepo(Mappers.getMapper(TodosRepo.Mapper.class), execution);
+    }
+    for (int i = 0; i < TODOS; i++) {
+      repo.create(task).blockingGet();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    execution.close();
+  }
+
+  /**
+   * Ids from the ones created first, which every store hands out contiguously to a single thread.
+   */
+  private Todo getRandom() {
+    final long id = 1 + ThreadLocalRandom.current().nextInt(TODOS);
+    return repo.get(Todo.Id.builder().value(id).build()).blockingGet();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Todo create1() {
+    return repo.create(task).blockingGet();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Todo create4() {
+    return repo.create(task).blockingGet();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Todo create16() {
+    return repo.create(task).blockingGet();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public Todo create64() {
+    return repo.create(task).blockingGet();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Todo get1() {
+    return getRandom();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Todo get4() {
+    return getRandom();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Todo get16() {
+    return getRandom();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public Todo get64() {
+    return getRandom();
+  }
+}
@@ -0,0 +1,101 @@
+package todddo.java.infra.inmemory;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+
+/**
+ * TodosRepo operations against a repo pre-filled with size Todos.
+ *
+ * <p>With synchronous execution this measures the map and mapping work alone; with io-computation
+ * it includes the two scheduler hops every request pays by default. The Contended variants run the
+ * same operations from 4 threads at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TodosRepoBenchmark {
+
+  @Param({"1000", "100000"})
+  int size;
+
+  @Param({"SYNCHRONOUS", "IO_COMPUTATION"})
+  RepoExecution.Mode mode;
+
+  @Param({"false", "true"})
+  boolean searchIndex;
+
+  private RepoExecution execution;
+  private TodosRepo repo;
+  private Todo.Task task;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    execution = new RepoExecution(mode, 8);
+    repo = new TodosRepo(Mappers.getMapper(TodosRepo.Mapper.class), execution, searchIndex);
+    task = Todo.Task.builder().value("benchmark the repo").build();
+    for (int i = 0; i < size; i++) {
+      repo.create(task).blockingGet();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    execution.close();
+  }
+
+  private Todo.Id randomId() {
+    return Todo.Id.builder().value(1 + ThreadLocalRandom.current().nextInt(size)).build();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Todo get() {
+    return repo.get(randomId()).blockingGet();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Todo getContended() {
+    return repo.get(randomId()).blockingGet();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Todo update() {
+    return repo.update(Todo.builder().id(randomId()).task(task).build()).blockingGet();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Todo updateContended() {
+    return repo.update(Todo.builder().id(randomId()).task(task).build()).blockingGet();
+  }
+
+  /** Grows the repo as it runs, so later iterations see a bigger map than size. */
+  @Benchmark
+  @Threads(1)
+  public Todo create() {
+    return repo.create(task).blockingGet();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public List<Todo> listPage() {
+    return repo.list(randomId(), 100).blockingGet();
+  }
+}
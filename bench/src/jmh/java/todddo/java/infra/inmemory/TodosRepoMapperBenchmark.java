@@ -0,0 +1,32 @@
+package todddo.java.infra.inmemory;
+
+import java.util.concurrent.TimeUnit;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import todddo.java.domain.models.Todo;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TodosRepoMapperBenchmark {
+
+  private final TodosRepo.Mapper mapper = Mappers.getMapper(TodosRepo.Mapper.class);
+  private final Todo.Id id = Todo.Id.builder().value(42).build();
+  private final Todo.Task task = Todo.Task.builder().value("benchmark the mapper").build();
+  private final TodosRepo.PersistedTodo persisted = mapper.domainTaskToPersisted(task, 1L);
+
+  @Benchmark
+  public Todo persistedToDomainTodo() {
+    return mapper.persistedToDomainTodo(id, persisted);
+  }
+
+  @Benchmark
+  public TodosRepo.PersistedTodo domainTaskToPersisted() {
+    return mapper.domainTaskToPersisted(task, 1L);
+  }
+}
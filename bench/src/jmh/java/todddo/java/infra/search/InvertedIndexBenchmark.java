@@ -0,0 +1,100 @@
+package todddo.java.infra.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Keeping the index up to date, and searching it, with size Todos indexed.
+ *
+ * <p>Tasks are 3 to 6 words from a vocabulary of VOCABULARY, skewed so that a few words are in most
+ * Tasks, like "buy", and most are in few. The writes are what the index adds to every create,
+ * update and delete of TodosRepo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InvertedIndexBenchmark {
+
+  private static final int VOCABULARY = 10000;
+
+  @Param({"100000", "1000000"})
+  int size;
+
+  private InvertedIndex index;
+  private String[] tasks;
+  private final List<String> common = Collections.singletonList(word(0));
+  private final List<String> rare = Collections.singletonList(word(VOCABULARY / 2));
+  private final List<String> commonAndRare = Arrays.asList(word(0), word(200));
+
+  private static String word(final int rank) {
+    return "w" + rank;
+  }
+
+  private static String task(final Random random) {
+    final StringBuilder task = new StringBuilder();
+    for (int words = 3 + random.nextInt(4); words > 0; words--) {
+      final double skewed = Math.pow(random.nextDouble(), 3);
+      task.append(word((int) (skewed * VOCABULARY))).append(' ');
+    }
+    return task.toString();
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final Random random = new Random(42);
+    index = new InvertedIndex();
+    tasks = new String[size + 1];
+    for (int id = 1; id <= size; id++) {
+      tasks[id] = task(random);
+      index.add(id, tasks[id]);
+    }
+  }
+
+  /** A create followed by its delete, so that the index stays the same size. */
+  @Benchmark
+  public void addAndRemove() {
+    final String task = tasks[1 + ThreadLocalRandom.current().nextInt(size)];
+    index.add(size + 1, task);
+    index.remove(size + 1, task);
+  }
+
+  /** An update to a random Todo, swapping its Task with that of another. */
+  @Benchmark
+  public void replace() {
+    final int id = 1 + ThreadLocalRandom.current().nextInt(size);
+    final int other = 1 + ThreadLocalRandom.current().nextInt(size);
+    final String previous = tasks[id];
+    index.replace(id, previous, tasks[other]);
+    tasks[id] = tasks[other];
+    tasks[other] = previous;
+    index.replace(other, tasks[id], previous);
+  }
+
+  @Benchmark
+  public long[] searchCommon() {
+    return index.search(common, 0, 20);
+  }
+
+  @Benchmark
+  public long[] searchRare() {
+    return index.search(rare, 0, 20);
+  }
+
+  @Benchmark
+  public long[] searchCommonAndRare() {
+    return index.search(commonAndRare, 0, 20);
+  }
+}
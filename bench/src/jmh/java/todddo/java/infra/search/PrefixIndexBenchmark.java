@@ -0,0 +1,79 @@
+package todddo.java.infra.search;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Suggesting the first 10 Todos by prefix, and keeping the index up to date, with size Todos
+ * indexed. Tasks are as in InvertedIndexBenchmark: 3 to 6 words from a skewed vocabulary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PrefixIndexBenchmark {
+
+  private static final int VOCABULARY = 10000;
+
+  @Param({"100000", "1000000"})
+  int size;
+
+  private PrefixIndex index;
+  private String[] tasks;
+
+  private static String task(final Random random) {
+    final StringBuilder task = new StringBuilder();
+    for (int words = 3 + random.nextInt(4); words > 0; words--) {
+      final double skewed = Math.pow(random.nextDouble(), 3);
+      task.append('w').append((int) (skewed * VOCABULARY)).append(' ');
+    }
+    return task.toString();
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final Random random = new Random(42);
+    index = new PrefixIndex();
+    tasks = new String[size + 1];
+    for (int id = 1; id <= size; id++) {
+      tasks[id] = task(random);
+      index.add(id, tasks[id]);
+    }
+  }
+
+  /** Matches every Todo. */
+  @Benchmark
+  public long[] suggestShort() {
+    return index.suggest("w", 10);
+  }
+
+  /** Matches a handful, as after typing most of a Task. */
+  @Benchmark
+  public long[] suggestLong() {
+    return index.suggest(tasks[1 + ThreadLocalRandom.current().nextInt(size)].substring(0, 8), 10);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public long[] suggestLongContended() {
+    return suggestLong();
+  }
+
+  /** A create followed by its delete, so that the index stays the same size. */
+  @Benchmark
+  public void addAndRemove() {
+    final String task = tasks[1 + ThreadLocalRandom.current().nextInt(size)];
+    index.add(size + 1, task);
+    index.remove(size + 1, task);
+  }
+}
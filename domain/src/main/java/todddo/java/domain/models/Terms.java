@@ -0,0 +1,175 @@
+package todddo.java.domain.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+
+/**
+ * How Tasks are searched: text is split into terms, runs of letters and digits in lower case, and
+ * matches are ranked by BM25, a score that favours rarer terms and shorter Tasks that repeat them.
+ *
+ * <p>Suggestions instead match the start of a Task, normalised to its terms separated by single
+ * spaces, and come in alphabetical order.
+ */
+public final class Terms {
+
+  private static final double K1 = 1.2;
+  private static final double B = 0.75;
+
+  private Terms() {}
+
+  /** Every term in the text, in order, including repeats. */
+  @Nonnull
+  public static List<String> of(@Nonnull final String text) {
+    final List<String> terms = new ArrayList<>();
+    final StringBuilder term = new StringBuilder();
+    for (int i = 0; i < text.length(); ) {
+      final int codePoint = text.codePointAt(i);
+      if (Character.isLetterOrDigit(codePoint)) {
+        term.appendCodePoint(Character.toLowerCase(codePoint));
+      } else if (term.length() > 0) {
+        terms.add(term.toString());
+        term.setLength(0);
+      }
+      i += Character.charCount(codePoint);
+    }
+    if (term.length() > 0) {
+      terms.add(term.toString());
+    }
+    return terms;
+  }
+
+  /** The text as its terms, separated by single spaces. */
+  @Nonnull
+  public static String normalise(@Nonnull final String text) {
+    return String.join(" ", of(text));
+  }
+
+  /**
+   * What has been typed so far, normalised. If it ends between words, so does the prefix, so that
+   * "buy " suggests "buy milk" but not "buyer".
+   */
+  @Nonnull
+  public static String prefix(@Nonnull final String typed) {
+    final String prefix = normalise(typed);
+    final boolean betweenWords =
+        !prefix.isEmpty() && !Character.isLetterOrDigit(typed.codePointBefore(typed.length()));
+    return betweenWords ? prefix + " " : prefix;
+  }
+
+  /**
+   * How telling a term is: higher the fewer Tasks it occurs in.
+   *
+   * @param documentFrequency Tasks the term occurs in
+   * @param documents Tasks in all
+   */
+  public static double idf(final long documentFrequency, final long documents) {
+    return Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+  }
+
+  /**
+   * How well a Task matches one term.
+   *
+   * @param frequency times the term occurs in the Task
+   * @param length terms in the Task
+   * @param idf of the term
+   * @param averageLength terms per Task on average
+   */
+  public static double score(
+      final int frequency, final int length, final double idf, final double averageLength) {
+    final double norm = averageLength > 0 ? length / averageLength : 1;
+    return idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * norm));
+  }
+
+  /**
+   * Searches by looking at every Todo, for stores without an index.
+   *
+   * @param terms distinct terms, all of which must match
+   * @return at most limit matches, after skipping offset, best first then by Id
+   */
+  @Nonnull
+  public static List<Todo> rank(
+      @Nonnull final List<Todo> todos,
+      @Nonnull final List<String> terms,
+      final int offset,
+      final int limit) {
+    final List<List<String>> tasks = new ArrayList<>(todos.size());
+    final Map<String, Long> documentFrequencies = new HashMap<>();
+    long totalLength = 0;
+    for (final Todo todo : todos) {
+      final List<String> task = of(todo.getTask().getValue());
+      tasks.add(task);
+      totalLength += task.size();
+      for (final String term : terms) {
+        if (task.contains(term)) {
+          documentFrequencies.merge(term, 1L, Long::sum);
+        }
+      }
+    }
+    final double averageLength = todos.isEmpty() ? 0 : (double) totalLength / todos.size();
+    final List<Todo> matches = new ArrayList<>();
+    final Map<Todo, Double> scores = new HashMap<>();
+    for (int i = 0; i < todos.size(); i++) {
+      final List<String> task = tasks.get(i);
+      double score = 0;
+      boolean all = true;
+      for (final String term : terms) {
+        final int frequency = Collections.frequency(task, term);
+        if (frequency == 0) {
+          all = false;
+          break;
+        }
+        score +=
+            score(
+                frequency,
+                task.size(),
+                idf(documentFrequencies.get(term), todos.size()),
+                averageLength);
+      }
+      if (all) {
+        matches.add(todos.get(i));
+        scores.put(todos.get(i), score);
+      }
+    }
+    matches.sort(
+        Comparator.comparing((Todo todo) -> scores.get(todo))
+            .reversed()
+            .thenComparing(Todo::getId));
+    return page(matches, offset, limit);
+  }
+
+  /**
+   * Suggests by looking at every Todo, for stores without an index.
+   *
+   * @param prefix as produced by prefix
+   * @return the first limit Todos whose normalised Task starts with the prefix, alphabetically by
+   *     normalised Task, then by Id
+   */
+  @Nonnull
+  public static List<Todo> complete(
+      @Nonnull final List<Todo> todos, @Nonnull final String prefix, final int limit) {
+    final Map<Todo, String> normalised = new HashMap<>();
+    final List<Todo> matches = new ArrayList<>();
+    for (final Todo todo : todos) {
+      final String task = normalise(todo.getTask().getValue());
+      if (task.startsWith(prefix)) {
+        normalised.put(todo, task);
+        matches.add(todo);
+      }
+    }
+    matches.sort(
+        Comparator.comparing((Todo todo) -> normalised.get(todo)).thenComparing(Todo::getId));
+    return page(matches, 0, limit);
+  }
+
+  private static List<Todo> page(final List<Todo> matches, final int offset, final int limit) {
+    return offset >= matches.size()
+        ? Collections.emptyList()
+        : new ArrayList<>(
+            matches.subList(offset, (int) Math.min(matches.size(), (long) offset + limit)));
+  }
+}
@@ -1,9 +1,14 @@
 package todddo.java.domain.models;
 
+import fj.data.Either;
+import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import lombok.Builder;
 import lombok.NonNull;
 import lombok.Value;
@@ -21,27 +26,231 @@ public class Todo {
   @NonNull Id id;
   @NonNull Task task;
 
+  /**
+   * Which write last created or updated this Todo: greater than that of any earlier write to it.
+   * Zero for a Todo that has not been stored yet.
+   */
+  long version;
+
   @Value
   @Builder
-  public static class Id {
+  public static class Id implements Comparable<Id> {
     long value;
+
+    @Override
+    public int compareTo(@Nonnull final Id other) {
+      return Long.compare(value, other.value);
+    }
+  }
+
+  /** A write to a Todo, as followers of the changes see it. */
+  @Value
+  @Builder
+  public static class Change {
+
+    public enum Kind {
+      Created,
+      Updated,
+      Deleted
+    }
+
+    /** Where the change is in the feed: one after the change before it. */
+    long sequence;
+
+    @NonNull Kind kind;
+
+    /** The Todo as written, or as it was when deleted. */
+    @NonNull Todo todo;
   }
 
   public interface Repo {
 
+    /** Picked at random once per app, as the versions of the stores in it start over with it. */
+    long APP_EPOCH = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+
     @Nonnull
     Single<Todo> create(@Nonnull final Task task);
 
     @Nonnull
     Maybe<Todo> get(@Nonnull final Id id);
 
+    /**
+     * The version of the Todo with the Id, if there is one, for when the Todo itself is not needed.
+     *
+     * <p>The default gets the Todo; stores that can read its version alone should override it.
+     */
+    @Nonnull
+    default Maybe<Long> versionOf(@Nonnull final Id id) {
+      return get(id).map(Todo::getVersion);
+    }
+
+    /**
+     * What the versions of Todos count from: when it changes, they may start over, so a version
+     * only says what a Todo was like along with its epoch.
+     *
+     * <p>The default is APP_EPOCH, for stores whose versions start over with the app; stores that
+     * keep an epoch of their own, or take versions from elsewhere, override it.
+     */
+    default long epoch() {
+      return APP_EPOCH;
+    }
+
     @Nonnull
     Maybe<Todo> delete(@Nonnull final Id id);
 
     @Nonnull
     Single<List<Todo>> list();
 
+    /**
+     * Lists Todos in ascending Id order.
+     *
+     * @param after exclusive cursor to start listing from, or null to start from the first Todo
+     * @param limit maximum number of Todos to return
+     * @return at most limit Todos with Ids greater than after
+     */
+    @Nonnull
+    Single<List<Todo>> list(@Nullable final Id after, final int limit);
+
+    /**
+     * Streams Todos in ascending Id order, reading them lazily as they are requested downstream.
+     *
+     * @param after exclusive cursor to start streaming from, or null to start from the first Todo
+     * @return all Todos with Ids greater than after
+     */
+    @Nonnull
+    Flowable<Todo> stream(@Nullable final Id after);
+
     @Nonnull
     Maybe<Todo> update(@Nonnull final Todo todo);
+
+    /**
+     * Stores a Task under an Id handed out elsewhere, e.g. by another node, replacing any Todo with
+     * that Id. The store never hands the Id out itself afterwards.
+     *
+     * @return the stored Todo, at a version of this store's
+     */
+    @Nonnull
+    Single<Todo> put(@Nonnull final Id id, @Nonnull final Task task);
+
+    /**
+     * Stores a Task under an Id handed out elsewhere, like put, but only if there is no Todo with
+     * that Id yet.
+     *
+     * <p>The default gets then puts, so a write to the Id in between is lost; stores that can check
+     * and write in one atomic step should override it.
+     *
+     * @return right with the stored Todo, or left with the Todo already under the Id
+     */
+    @Nonnull
+    default Single<Either<Todo, Todo>> putIfAbsent(@Nonnull final Id id, @Nonnull final Task task) {
+      return get(id)
+          .map(Either::<Todo, Todo>left)
+          .switchIfEmpty(Single.defer(() -> put(id, task).map(Either::<Todo, Todo>right)));
+    }
+
+    /**
+     * Updates the Todo only if it is still at the expected version, checking and writing in one
+     * atomic step.
+     *
+     * @return empty if there is no such Todo; otherwise right with the updated Todo, or left with
+     *     the Todo as found if it was at another version
+     */
+    @Nonnull
+    Maybe<Either<Todo, Todo>> compareAndUpdate(
+        @Nonnull final Todo todo, final long expectedVersion);
+
+    /**
+     * Deletes the Todo only if it is still at the expected version, checking and deleting in one
+     * atomic step.
+     *
+     * @return empty if there is no such Todo; otherwise right with the deleted Todo, or left with
+     *     the Todo as found if it was at another version
+     */
+    @Nonnull
+    Maybe<Either<Todo, Todo>> compareAndDelete(@Nonnull final Id id, final long expectedVersion);
+
+    /**
+     * Finds the Todos whose Task has every one of the terms, ranked as per Terms.
+     *
+     * <p>The default looks at every Todo; stores that keep an index should override it.
+     *
+     * @param terms distinct terms, as produced by Terms.of
+     * @param offset how many of the best matches to skip
+     * @param limit maximum number of Todos to return
+     * @return at most limit Todos, best matches first, then in ascending Id order
+     */
+    @Nonnull
+    default Single<List<Todo>> search(
+        @Nonnull final List<String> terms, final int offset, final int limit) {
+      return list().map(todos -> Terms.rank(todos, terms, offset, limit));
+    }
+
+    /**
+     * Finds the Todos whose Task starts with the prefix, once normalised as per Terms.
+     *
+     * <p>The default looks at every Todo; stores that keep an index should override it.
+     *
+     * @param prefix as produced by Terms.prefix
+     * @param limit maximum number of Todos to return
+     * @return at most limit Todos, alphabetically by normalised Task, then in ascending Id order
+     */
+    @Nonnull
+    default Single<List<Todo>> suggest(@Nonnull final String prefix, final int limit) {
+      return list().map(todos -> Terms.complete(todos, prefix, limit));
+    }
+
+    /**
+     * The version of the collection as a whole, which moves on once each write is visible. Read
+     * before reading Todos, the Todos are at least as new as it, so if it is the same later, so are
+     * they, bar a write still in progress.
+     */
+    long version();
+
+    /**
+     * How many Todos there are, for monitoring. Not synchronised with concurrent writes, and may
+     * take time proportional to the number of Todos.
+     */
+    long size();
+
+    /**
+     * Creates a Todo per Task in one pass, with Ids allocated as one contiguous range.
+     *
+     * <p>The default creates them one at a time; stores that can do better should override it.
+     *
+     * @return the created Todos, in the order of the given Tasks
+     */
+    @Nonnull
+    default Single<List<Todo>> createAll(@Nonnull final List<Task> tasks) {
+      return Flowable.fromIterable(tasks).concatMapSingle(this::create).toList();
+    }
+
+    /**
+     * Updates each Todo in one pass.
+     *
+     * <p>The default updates them one at a time; stores that can do better should override it.
+     *
+     * @return per given Todo, in the same order, the updated Todo or empty if there was no such
+     *     Todo
+     */
+    @Nonnull
+    default Single<List<Optional<Todo>>> updateAll(@Nonnull final List<Todo> todos) {
+      return Flowable.fromIterable(todos)
+          .concatMapSingle(todo -> update(todo).map(Optional::of).toSingle(Optional.empty()))
+          .toList();
+    }
+
+    /**
+     * Deletes each Todo in one pass.
+     *
+     * <p>The default deletes them one at a time; stores that can do better should override it.
+     *
+     * @return per given Id, in the same order, the deleted Todo or empty if there was no such Todo
+     */
+    @Nonnull
+    default Single<List<Optional<Todo>>> deleteAll(@Nonnull final List<Id> ids) {
+      return Flowable.fromIterable(ids)
+          .concatMapSingle(id -> delete(id).map(Optional::of).toSingle(Optional.empty()))
+          .toList();
+    }
   }
 }
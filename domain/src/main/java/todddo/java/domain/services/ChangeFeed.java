@@ -0,0 +1,111 @@
+package todddo.java.domain.services;
+
+import io.micronaut.context.annotation.Value;
+import io.reactivex.BackpressureOverflowStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.processors.BehaviorProcessor;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.ReplayProcessor;
+import io.reactivex.schedulers.Schedulers;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import todddo.java.domain.models.Todo;
+
+/**
+ * Every write made to the Todo.Repo, for clients and replicas to follow instead of polling.
+ *
+ * <p>Writes are published by a {@link PublishingTodosRepo} around the store, so they are on the
+ * feed whether they came through the TodosService, another member of a cluster or anything else
+ * holding the repo. Writes to the store itself, under the wrapper, are not. A replica, which is not
+ * written to, publishes the changes it applies from its primary instead.
+ *
+ * <p>All followers share one processor, which keeps the last todddo.changes.history changes so that
+ * a follower can resume after the last one it saw. Each follower buffers up to
+ * todddo.changes.buffer changes it has not consumed yet; one that falls further behind fails with a
+ * MissingBackpressureException, rather than holding on to changes for everyone, and can resume.
+ * Followers are handed changes on the computation scheduler, so publishing never waits for them.
+ *
+ * <p>Changes are published once their write is done, so concurrent writes, even to the same Todo,
+ * may be published in a different order from the one they were made in. A follower should ignore a
+ * change with an older version of a Todo than one it has already seen.
+ *
+ * <p>A reset takes up a sequence of its own, without a change, and fails every follower from before
+ * it with MissedChanges, for when the Todos changed in a way the feed cannot tell, such as a
+ * replica swapping in a snapshot.
+ */
+@Singleton
+public class ChangeFeed {
+
+  private final FlowableProcessor<Todo.Change> changes;
+  private final FlowableProcessor<Long> resets = BehaviorProcessor.createDefault(0L);
+  private final int buffer;
+  private long sequence;
+
+  @Inject
+  public ChangeFeed(
+      @Value("${todddo.changes.history:1024}") final int history,
+      @Value("${todddo.changes.buffer:256}") final int buffer) {
+    this.changes = ReplayProcessor.createWithSize(Math.max(1, history));
+    this.buffer = Math.max(1, buffer);
+  }
+
+  public synchronized void publish(@Nonnull final Todo.Change.Kind kind, @Nonnull final Todo todo) {
+    changes.onNext(Todo.Change.builder().sequence(++sequence).kind(kind).todo(todo).build());
+  }
+
+  /** Fails every follower with MissedChanges, so that they list the Todos again. */
+  public synchronized void reset() {
+    resets.onNext(++sequence);
+  }
+
+  /** The sequence of the last change or reset published. */
+  public synchronized long sequence() {
+    return sequence;
+  }
+
+  /**
+   * The changes after a sequence, then every change as it is published.
+   *
+   * @param after the sequence of the last change seen, or null for changes from now on
+   * @return changes in sequence order; fails with MissedChanges if some after the given sequence
+   *     are no longer kept, it is from before a restart, or on a reset
+   */
+  @Nonnull
+  public Flowable<Todo.Change> changes(@Nullable final Long after) {
+    return Flowable.defer(
+        () -> {
+          final long latest = sequence();
+          final long from = after == null ? latest : after;
+          if (from > latest) {
+            return Flowable.error(new MissedChanges(from));
+          }
+          final long[] expected = {from + 1};
+          return changes
+              .filter(change -> change.getSequence() > from)
+              .map(
+                  change -> {
+                    if (change.getSequence() != expected[0]) {
+                      throw new MissedChanges(from);
+                    }
+                    expected[0]++;
+                    return change;
+                  })
+              .mergeWith(
+                  resets
+                      .filter(reset -> reset > from)
+                      .take(1)
+                      .flatMap(reset -> Flowable.<Todo.Change>error(new MissedChanges(from))))
+              .onBackpressureBuffer(buffer, null, BackpressureOverflowStrategy.ERROR)
+              .observeOn(Schedulers.computation());
+        });
+  }
+
+  /** Some changes a follower asked for are gone, so it has to list the Todos again. */
+  public static class MissedChanges extends RuntimeException {
+    MissedChanges(final long after) {
+      super("Changes after [" + after + "] are no longer kept");
+    }
+  }
+}
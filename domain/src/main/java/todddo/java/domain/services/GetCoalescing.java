@@ -0,0 +1,131 @@
+package todddo.java.domain.services;
+
+import io.micronaut.context.annotation.Value;
+import io.reactivex.Maybe;
+import io.reactivex.MaybeObserver;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.MaybeSubject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.annotation.Nonnull;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import todddo.java.domain.models.Todo;
+
+/**
+ * Shares one lookup of a Todo between every get of it that comes in while the lookup is in flight,
+ * so a burst of gets of the same Todo reads it from the store once. Gets that come in after it
+ * completes start a new one.
+ *
+ * <p>Writes {@link #forget} the lookup of the Todo they wrote once they are done, so a get made
+ * after a write never joins a lookup that may have read what was there before. A lookup carries on
+ * to completion even if every get waiting on it is disposed of.
+ *
+ * <p>Enabled with todddo.get-coalescing.enabled; when disabled, every get looks the Todo up itself.
+ */
+@Singleton
+public class GetCoalescing {
+
+  private final boolean enabled;
+  private final Map<Todo.Id, MaybeSubject<Todo>> inFlight = new ConcurrentHashMap<>();
+  private final LongAdder gets = new LongAdder();
+  private final LongAdder lookups = new LongAdder();
+
+  @Inject
+  public GetCoalescing(@Value("${todddo.get-coalescing.enabled:false}") final boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @Nonnull
+  public static GetCoalescing enabled() {
+    return new GetCoalescing(true);
+  }
+
+  @Nonnull
+  public static GetCoalescing disabled() {
+    return new GetCoalescing(false);
+  }
+
+  /** The Todo as per the lookup in flight for its Id, or a new one. */
+  @Nonnull
+  public Maybe<Todo> get(
+      @Nonnull final Todo.Id id, @Nonnull final Function<Todo.Id, Maybe<Todo>> lookup) {
+    if (!enabled) {
+      return lookup.apply(id);
+    }
+    return Maybe.defer(
+        () -> {
+          gets.increment();
+          final MaybeSubject<Todo> started = MaybeSubject.create();
+          final MaybeSubject<Todo> joined = inFlight.putIfAbsent(id, started);
+          if (joined != null) {
+            return joined;
+          }
+          lookups.increment();
+          try {
+            lookup.apply(id).subscribe(new Lookup(id, started));
+          } catch (RuntimeException e) {
+            inFlight.remove(id, started);
+            throw e;
+          }
+          return started;
+        });
+  }
+
+  /** Makes the next get of the Todo look it up afresh, rather than join a lookup in flight. */
+  public void forget(@Nonnull final Todo.Id id) {
+    if (enabled) {
+      inFlight.remove(id);
+    }
+  }
+
+  /** How many gets there have been, while enabled. */
+  public long gets() {
+    return gets.sum();
+  }
+
+  /** How many of those looked the Todo up, the rest having joined a lookup in flight. */
+  public long lookups() {
+    return lookups.sum();
+  }
+
+  /** How many lookups are in flight. */
+  public int inFlight() {
+    return inFlight.size();
+  }
+
+  /** Stops sharing the lookup before handing its result to every get that joined it. */
+  private class Lookup implements MaybeObserver<Todo> {
+
+    private final Todo.Id id;
+    private final MaybeSubject<Todo> subject;
+
+    Lookup(final Todo.Id id, final MaybeSubject<Todo> subject) {
+      this.id = id;
+      this.subject = subject;
+    }
+
+    @Override
+    public void onSubscribe(@Nonnull final Disposable d) {}
+
+    @Override
+    public void onSuccess(@Nonnull final Todo todo) {
+      inFlight.remove(id, subject);
+      subject.onSuccess(todo);
+    }
+
+    @Override
+    public void onComplete() {
+      inFlight.remove(id, subject);
+      subject.onComplete();
+    }
+
+    @Override
+    public void onError(@Nonnull final Throwable e) {
+      inFlight.remove(id, subject);
+      subject.onError(e);
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package todddo.java.domain.services;
+
+import fj.data.Either;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import todddo.java.domain.models.Todo;
+
+/**
+ * Publishes each write the store makes to the {@link ChangeFeed} once it is done, so every write to
+ * the repo is on the feed, whether it came through the TodosService or not. Reads go straight to
+ * the store.
+ */
+public class PublishingTodosRepo implements Todo.Repo {
+
+  private final Todo.Repo store;
+  private final ChangeFeed changeFeed;
+
+  public PublishingTodosRepo(@Nonnull final Todo.Repo store, @Nonnull final ChangeFeed changeFeed) {
+    this.store = store;
+    this.changeFeed = changeFeed;
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> create(@Nonnull final Todo.Task task) {
+    return store.create(task).doOnSuccess(todo -> publish(Todo.Change.Kind.Created, todo));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> get(@Nonnull final Todo.Id id) {
+    return store.get(id);
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Long> versionOf(@Nonnull final Todo.Id id) {
+    return store.versionOf(id);
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> delete(@Nonnull final Todo.Id id) {
+    return store.delete(id).doOnSuccess(todo -> publish(Todo.Change.Kind.Deleted, todo));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list() {
+    return store.list();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    return store.list(after, limit);
+  }
+
+  @Nonnull
+  @Override
+  public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+    return store.stream(after);
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> update(@Nonnull final Todo todo) {
+    return store.update(todo).doOnSuccess(updated -> publish(Todo.Change.Kind.Updated, updated));
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> put(@Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return store.put(id, task).doOnSuccess(todo -> publish(Todo.Change.Kind.Created, todo));
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<Todo, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return store
+        .putIfAbsent(id, task)
+        .doOnSuccess(result -> published(Todo.Change.Kind.Created, result));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndUpdate(
+      @Nonnull final Todo todo, final long expectedVersion) {
+    return store
+        .compareAndUpdate(todo, expectedVersion)
+        .doOnSuccess(result -> published(Todo.Change.Kind.Updated, result));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndDelete(
+      @Nonnull final Todo.Id id, final long expectedVersion) {
+    return store
+        .compareAndDelete(id, expectedVersion)
+        .doOnSuccess(result -> published(Todo.Change.Kind.Deleted, result));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> search(
+      @Nonnull final List<String> terms, final int offset, final int limit) {
+    return store.search(terms, offset, limit);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> suggest(@Nonnull final String prefix, final int limit) {
+    return store.suggest(prefix, limit);
+  }
+
+  @Override
+  public long epoch() {
+    return store.epoch();
+  }
+
+  @Override
+  public long version() {
+    return store.version();
+  }
+
+  @Override
+  public long size() {
+    return store.size();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> createAll(@Nonnull final List<Todo.Task> tasks) {
+    return store
+        .createAll(tasks)
+        .doOnSuccess(created -> created.forEach(todo -> publish(Todo.Change.Kind.Created, todo)));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> updateAll(@Nonnull final List<Todo> todos) {
+    return store
+        .updateAll(todos)
+        .doOnSuccess(
+            updated ->
+                updated.forEach(todo -> todo.ifPresent(t -> publish(Todo.Change.Kind.Updated, t))));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> deleteAll(@Nonnull final List<Todo.Id> ids) {
+    return store
+        .deleteAll(ids)
+        .doOnSuccess(
+            deleted ->
+                deleted.forEach(todo -> todo.ifPresent(t -> publish(Todo.Change.Kind.Deleted, t))));
+  }
+
+  private void publish(final Todo.Change.Kind kind, final Todo todo) {
+    changeFeed.publish(kind, todo);
+  }
+
+  private void published(final Todo.Change.Kind kind, final Either<Todo, Todo> result) {
+    if (result.isRight()) {
+      changeFeed.publish(kind, result.right().value());
+    }
+  }
+}
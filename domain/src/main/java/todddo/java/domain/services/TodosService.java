@@ -1,40 +1,111 @@
 package todddo.java.domain.services;
 
 import fj.data.Either;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
 import io.reactivex.Single;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
 import javax.inject.Singleton;
+import todddo.java.domain.models.Terms;
 import todddo.java.domain.models.Todo;
 
 @Singleton
 public class TodosService {
 
+  /**
+   * Never a Todo's version. Also what version answers when there is none that only moves on with
+   * writes.
+   */
+  public static final long NO_VERSION = -1L;
+
   private final Todo.Repo repo;
+  private final ChangeFeed changeFeed;
+  private final GetCoalescing coalescing;
+
+  public TodosService(@Nonnull Todo.Repo repo, @Nonnull ChangeFeed changeFeed) {
+    this(repo, changeFeed, GetCoalescing.disabled());
+  }
 
-  public TodosService(@Nonnull Todo.Repo repo) {
+  @Inject
+  public TodosService(
+      @Nonnull Todo.Repo repo, @Nonnull ChangeFeed changeFeed, @Nonnull GetCoalescing coalescing) {
     this.repo = repo;
+    this.changeFeed = changeFeed;
+    this.coalescing = coalescing;
   }
 
   @Nonnull
   public Single<Either<CreateError, Todo>> create(@Nonnull final Todo.Task task) {
-    if (task.getValue().trim().isEmpty()) {
+    if (!isValid(task)) {
       return Single.just(Either.left(CreateError.EmptyTask));
     } else {
       return repo.create(task).map(Either::right);
     }
   }
 
+  /** Creates a Todo, or replaces one, under an Id handed out elsewhere; see Todo.Repo.put. */
+  @Nonnull
+  public Single<Either<CreateError, Todo>> put(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    if (!isValid(task)) {
+      return Single.just(Either.left(CreateError.EmptyTask));
+    } else {
+      return repo.put(id, task)
+          .doOnEvent((todo, error) -> coalescing.forget(id))
+          .map(Either::right);
+    }
+  }
+
+  /**
+   * Like put, but fails with IdTaken rather than replace a Todo already under the Id; see
+   * Todo.Repo.putIfAbsent.
+   */
+  @Nonnull
+  public Single<Either<CreateError, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    if (!isValid(task)) {
+      return Single.just(Either.left(CreateError.EmptyTask));
+    } else {
+      return repo.putIfAbsent(id, task)
+          .doOnEvent((result, error) -> coalescing.forget(id))
+          .map(
+              result ->
+                  result.either(
+                      taken -> Either.<CreateError, Todo>left(CreateError.IdTaken),
+                      Either::<CreateError, Todo>right));
+    }
+  }
+
+  /** Shares the lookup with concurrent gets of the same Todo; see GetCoalescing. */
   @Nonnull
   public Single<Either<GetError, Todo>> get(@Nonnull final Todo.Id id) {
-    return repo.get(id)
+    return coalescing
+        .get(id, repo::get)
         .map(Either::<GetError, Todo>right)
         .switchIfEmpty(Single.just(Either.left(GetError.NoSuchTodo)));
   }
 
+  /**
+   * The version of the Todo with the Id, if there is one, without reading the Todo where the repo
+   * can help it; see Todo.Repo.versionOf.
+   */
+  @Nonnull
+  public Maybe<Long> versionOf(@Nonnull final Todo.Id id) {
+    return repo.versionOf(id);
+  }
+
   @Nonnull
   public Single<Either<DeleteError, Todo>> delete(@Nonnull final Todo.Id id) {
     return repo.delete(id)
+        .doOnEvent((todo, error) -> coalescing.forget(id))
         .map(Either::<DeleteError, Todo>right)
         .switchIfEmpty(Single.just(Either.left(DeleteError.NoSuchTodo)));
   }
@@ -44,21 +115,206 @@ public class TodosService {
     return repo.list();
   }
 
+  @Nonnull
+  public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    return repo.list(after, limit);
+  }
+
+  /**
+   * Finds the Todos whose Task has every term of the query, best matches first. A query without any
+   * terms matches nothing.
+   */
+  @Nonnull
+  public Single<List<Todo>> search(@Nonnull final String query, final int offset, final int limit) {
+    final List<String> terms = Terms.of(query).stream().distinct().collect(Collectors.toList());
+    return terms.isEmpty()
+        ? Single.just(Collections.emptyList())
+        : repo.search(terms, offset, limit);
+  }
+
+  /**
+   * Suggests Todos whose Task starts with what has been typed so far, ignoring case and
+   * punctuation. Nothing typed suggests nothing.
+   */
+  @Nonnull
+  public Single<List<Todo>> suggest(@Nonnull final String typed, final int limit) {
+    final String prefix = Terms.prefix(typed);
+    return prefix.isEmpty() ? Single.just(Collections.emptyList()) : repo.suggest(prefix, limit);
+  }
+
+  /** What the version of the Todo with the Id counts from, as per Todo.Repo.epoch. */
+  public long epochOf(@Nonnull final Todo.Id id) {
+    return repo.epoch();
+  }
+
+  /** The version of all the Todos, as per Todo.Repo.version, or NO_VERSION if there is none. */
+  public long version() {
+    return repo.version();
+  }
+
+  @Nonnull
+  public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+    return repo.stream(after);
+  }
+
   @Nonnull
   public Single<Either<UpdateError, Todo>> update(@Nonnull final Todo todo) {
-    if (todo.getTask().getValue().trim().isEmpty()) {
+    if (!isValid(todo.getTask())) {
       return Single.just(Either.left(UpdateError.EmptyTask));
     } else {
       return repo.update(todo)
+          .doOnEvent((updated, error) -> coalescing.forget(todo.getId()))
           .map(Either::<UpdateError, Todo>right)
           .switchIfEmpty(Single.just(Either.left(UpdateError.NoSuchTodo)));
     }
   }
 
+  /**
+   * Updates a Todo only if it is still at the expected version, e.g. the one its editor started
+   * from, so that concurrent edits are not lost.
+   */
+  @Nonnull
+  public Single<Either<UpdateError, Todo>> update(
+      @Nonnull final Todo todo, final long expectedVersion) {
+    if (!isValid(todo.getTask())) {
+      return Single.just(Either.left(UpdateError.EmptyTask));
+    } else {
+      return repo.compareAndUpdate(todo, expectedVersion)
+          .doOnEvent((result, error) -> coalescing.forget(todo.getId()))
+          .map(result -> result.left().map(current -> UpdateError.VersionMismatch))
+          .toSingle(Either.left(UpdateError.NoSuchTodo));
+    }
+  }
+
+  /**
+   * Updates a Todo only if it is still at the expected version, counting from the expected epoch,
+   * e.g. as found in an ETag from before a restart; see epochOf.
+   */
+  @Nonnull
+  public Single<Either<UpdateError, Todo>> update(
+      @Nonnull final Todo todo, final long expectedEpoch, final long expectedVersion) {
+    return update(todo, expectedEpoch == epochOf(todo.getId()) ? expectedVersion : NO_VERSION);
+  }
+
+  /** Deletes a Todo only if it is still at the expected version. */
+  @Nonnull
+  public Single<Either<DeleteError, Todo>> delete(
+      @Nonnull final Todo.Id id, final long expectedVersion) {
+    return repo.compareAndDelete(id, expectedVersion)
+        .doOnEvent((result, error) -> coalescing.forget(id))
+        .map(result -> result.left().map(current -> DeleteError.VersionMismatch))
+        .toSingle(Either.left(DeleteError.NoSuchTodo));
+  }
+
+  /**
+   * Deletes a Todo only if it is still at the expected version, counting from the expected epoch.
+   */
+  @Nonnull
+  public Single<Either<DeleteError, Todo>> delete(
+      @Nonnull final Todo.Id id, final long expectedEpoch, final long expectedVersion) {
+    return delete(id, expectedEpoch == epochOf(id) ? expectedVersion : NO_VERSION);
+  }
+
+  /**
+   * Creates a Todo per Task, validating them all up front and handing the valid ones to the repo in
+   * one go.
+   *
+   * @return per given Task, in the same order, the created Todo or why it was not created
+   */
+  @Nonnull
+  public Single<List<Either<CreateError, Todo>>> createAll(@Nonnull final List<Todo.Task> tasks) {
+    final List<Todo.Task> valid =
+        tasks.stream().filter(TodosService::isValid).collect(Collectors.toList());
+    return repo.createAll(valid)
+        .map(
+            created -> {
+              final Iterator<Todo> createdIter = created.iterator();
+              final List<Either<CreateError, Todo>> results = new ArrayList<>(tasks.size());
+              for (final Todo.Task task : tasks) {
+                results.add(
+                    isValid(task)
+                        ? Either.right(createdIter.next())
+                        : Either.left(CreateError.EmptyTask));
+              }
+              return results;
+            });
+  }
+
+  /**
+   * Updates each Todo, validating them all up front and handing the valid ones to the repo in one
+   * go.
+   *
+   * @return per given Todo, in the same order, the updated Todo or why it was not updated
+   */
+  @Nonnull
+  public Single<List<Either<UpdateError, Todo>>> updateAll(@Nonnull final List<Todo> todos) {
+    final List<Todo> valid =
+        todos.stream().filter(todo -> isValid(todo.getTask())).collect(Collectors.toList());
+    return repo.updateAll(valid)
+        .doOnEvent((updated, error) -> valid.forEach(todo -> coalescing.forget(todo.getId())))
+        .map(
+            updated -> {
+              final Iterator<Optional<Todo>> updatedIter = updated.iterator();
+              final List<Either<UpdateError, Todo>> results = new ArrayList<>(todos.size());
+              for (final Todo todo : todos) {
+                if (isValid(todo.getTask())) {
+                  results.add(
+                      updatedIter
+                          .next()
+                          .map(Either::<UpdateError, Todo>right)
+                          .orElseGet(() -> Either.left(UpdateError.NoSuchTodo)));
+                } else {
+                  results.add(Either.left(UpdateError.EmptyTask));
+                }
+              }
+              return results;
+            });
+  }
+
+  /**
+   * Deletes each Todo in one go.
+   *
+   * @return per given Id, in the same order, the deleted Todo or why it was not deleted
+   */
+  @Nonnull
+  public Single<List<Either<DeleteError, Todo>>> deleteAll(@Nonnull final List<Todo.Id> ids) {
+    return repo.deleteAll(ids)
+        .doOnEvent((deleted, error) -> ids.forEach(coalescing::forget))
+        .map(
+            deleted ->
+                deleted.stream()
+                    .map(
+                        todo ->
+                            todo.map(Either::<DeleteError, Todo>right)
+                                .orElseGet(() -> Either.left(DeleteError.NoSuchTodo)))
+                    .collect(Collectors.toList()));
+  }
+
+  /**
+   * Every write from now on, or after the given sequence, as the ChangeFeed has it. Writes are
+   * published by the repo, as wrapped in a PublishingTodosRepo, not by this.
+   *
+   * @param after the sequence of the last change seen, or null for changes from now on
+   */
+  @Nonnull
+  public Flowable<Todo.Change> changes(@Nullable final Long after) {
+    return changeFeed.changes(after);
+  }
+
+  /** The sequence of the last change published, which a follower can resume after. */
+  public long lastChange() {
+    return changeFeed.sequence();
+  }
+
+  private static boolean isValid(final Todo.Task task) {
+    return !task.getValue().trim().isEmpty();
+  }
+
   interface Error {}
 
   public enum CreateError implements Error {
-    EmptyTask
+    EmptyTask,
+    IdTaken
   }
 
   public enum GetError implements Error {
@@ -66,11 +322,13 @@ public class TodosService {
   }
 
   public enum DeleteError implements Error {
-    NoSuchTodo
+    NoSuchTodo,
+    VersionMismatch
   }
 
   public enum UpdateError implements Error {
     EmptyTask,
-    NoSuchTodo
+    NoSuchTodo,
+    VersionMismatch
   }
 }
@@ -0,0 +1,70 @@
+package todddo.java.domain.models;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TermsSpec {
+
+  private static Todo todo(final long id, final String task) {
+    return Todo.builder()
+        .id(Todo.Id.builder().value(id).build())
+        .task(Todo.Task.builder().value(task).build())
+        .build();
+  }
+
+  private static List<Long> ids(final List<Todo> todos) {
+    return todos.stream().map(todo -> todo.getId().getValue()).collect(Collectors.toList());
+  }
+
+  @Test
+  public void splitsOnAnythingButLettersAndDigits() {
+    Assertions.assertEquals(
+        Arrays.asList("buy", "2", "crème", "brûlée", "s", "buy"),
+        Terms.of("  Buy 2 Crème-Brûlée's, BUY!"));
+    Assertions.assertEquals(Collections.emptyList(), Terms.of(" -- "));
+  }
+
+  @Test
+  public void rarerTermsAndShorterTasksScoreHigher() {
+    final double rare = Terms.idf(1, 100);
+    Assertions.assertTrue(Terms.score(1, 3, rare, 3) > Terms.score(1, 3, Terms.idf(50, 100), 3));
+    Assertions.assertTrue(Terms.score(1, 2, rare, 3) > Terms.score(1, 6, rare, 3));
+    Assertions.assertTrue(Terms.score(2, 3, rare, 3) > Terms.score(1, 3, rare, 3));
+  }
+
+  @Test
+  public void rankMatchesEveryTermBestFirst() {
+    final List<Todo> todos =
+        Arrays.asList(
+            todo(1, "buy milk and eggs and bread"),
+            todo(2, "buy milk"),
+            todo(3, "drink milk"),
+            todo(4, "buy milk"));
+    final List<String> terms = Arrays.asList("milk", "buy");
+    Assertions.assertEquals(Arrays.asList(2L, 4L, 1L), ids(Terms.rank(todos, terms, 0, 10)));
+    Assertions.assertEquals(Arrays.asList(4L), ids(Terms.rank(todos, terms, 1, 1)));
+    Assertions.assertEquals(Collections.emptyList(), ids(Terms.rank(todos, terms, 3, 10)));
+  }
+
+  @Test
+  public void prefixesEndBetweenWordsIfTypedSo() {
+    Assertions.assertEquals("buy milk", Terms.normalise(" Buy, MILK! "));
+    Assertions.assertEquals("buy m", Terms.prefix("Buy  M"));
+    Assertions.assertEquals("buy ", Terms.prefix("buy, "));
+    Assertions.assertEquals("", Terms.prefix(" - "));
+  }
+
+  @Test
+  public void completeMatchesStartsAlphabetically() {
+    final List<Todo> todos =
+        Arrays.asList(
+            todo(1, "buyer"), todo(2, "Buy milk"), todo(3, "buy: bread"), todo(4, "milk"));
+    Assertions.assertEquals(Arrays.asList(3L, 2L, 1L), ids(Terms.complete(todos, "buy", 10)));
+    Assertions.assertEquals(Arrays.asList(3L, 2L), ids(Terms.complete(todos, "buy ", 10)));
+    Assertions.assertEquals(Arrays.asList(3L), ids(Terms.complete(todos, "buy", 1)));
+  }
+}
@@ -0,0 +1,99 @@
+package todddo.java.domain.services;
+
+import io.reactivex.exceptions.MissingBackpressureException;
+import io.reactivex.subscribers.TestSubscriber;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.domain.models.Todo;
+
+public class ChangeFeedSpec {
+
+  private static Todo todo(final long id) {
+    return Todo.builder()
+        .id(Todo.Id.builder().value(id).build())
+        .task(Todo.Task.builder().value("follow me").build())
+        .version(id)
+        .build();
+  }
+
+  private static void publish(final ChangeFeed feed, final int from, final int to) {
+    for (int i = from; i <= to; i++) {
+      feed.publish(Todo.Change.Kind.Created, todo(i));
+    }
+  }
+
+  @Test
+  void testFollowsFromNow() {
+    final ChangeFeed subject = new ChangeFeed(8, 8);
+    publish(subject, 1, 2);
+    final TestSubscriber<Todo.Change> changes = subject.changes(null).test();
+    publish(subject, 3, 4);
+    changes.awaitCount(2);
+    Assertions.assertEquals(
+        Arrays.asList(3L, 4L),
+        changes.values().stream().map(Todo.Change::getSequence).collect(Collectors.toList()));
+    Assertions.assertEquals(4, subject.sequence());
+  }
+
+  @Test
+  void testResumesAfterTheLastChangeSeen() {
+    final ChangeFeed subject = new ChangeFeed(8, 8);
+    publish(subject, 1, 5);
+    final TestSubscriber<Todo.Change> changes = subject.changes(3L).test();
+    publish(subject, 6, 6);
+    changes.awaitCount(3);
+    Assertions.assertEquals(
+        Arrays.asList(4L, 5L, 6L),
+        changes.values().stream().map(Todo.Change::getSequence).collect(Collectors.toList()));
+    changes.assertNoErrors();
+  }
+
+  @Test
+  void testMissedChangesFail() {
+    final ChangeFeed subject = new ChangeFeed(2, 8);
+    publish(subject, 1, 5);
+    subject
+        .changes(1L)
+        .test()
+        .awaitDone(5, TimeUnit.SECONDS)
+        .assertError(ChangeFeed.MissedChanges.class);
+    subject
+        .changes(9L)
+        .test()
+        .awaitDone(5, TimeUnit.SECONDS)
+        .assertError(ChangeFeed.MissedChanges.class);
+    subject.changes(3L).test().awaitCount(2).assertNoErrors().assertValueCount(2);
+  }
+
+  @Test
+  void testResetFailsFollowersFromBeforeIt() {
+    final ChangeFeed subject = new ChangeFeed(8, 8);
+    publish(subject, 1, 2);
+    final TestSubscriber<Todo.Change> following = subject.changes(null).test();
+    subject.reset();
+    following.awaitDone(5, TimeUnit.SECONDS).assertError(ChangeFeed.MissedChanges.class);
+    Assertions.assertEquals(3, subject.sequence());
+    subject
+        .changes(2L)
+        .test()
+        .awaitDone(5, TimeUnit.SECONDS)
+        .assertError(ChangeFeed.MissedChanges.class);
+    final TestSubscriber<Todo.Change> resumed = subject.changes(3L).test();
+    publish(subject, 4, 4);
+    resumed.awaitCount(1).assertNoErrors().assertValueCount(1);
+  }
+
+  @Test
+  void testFollowersThatFallBehindAreDropped() {
+    final ChangeFeed subject = new ChangeFeed(8, 4);
+    final TestSubscriber<Todo.Change> slow = subject.changes(null).test(0);
+    publish(subject, 1, 1000);
+    slow.awaitDone(5, TimeUnit.SECONDS).assertError(MissingBackpressureException.class);
+    final TestSubscriber<Todo.Change> fast = subject.changes(null).test();
+    publish(subject, 1001, 1001);
+    fast.awaitCount(1).assertNoErrors().assertValueCount(1);
+  }
+}
@@ -0,0 +1,89 @@
+package todddo.java.domain.services;
+
+import io.reactivex.Maybe;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.MaybeSubject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.domain.models.Todo;
+
+public class GetCoalescingSpec {
+
+  private final Todo todo =
+      Todo.builder()
+          .id(Todo.Id.builder().value(1).build())
+          .task(Todo.Task.builder().value("share me").build())
+          .version(1)
+          .build();
+  private final AtomicInteger lookedUp = new AtomicInteger();
+  private MaybeSubject<Todo> lookup = MaybeSubject.create();
+
+  private Maybe<Todo> lookup(final Todo.Id id) {
+    lookedUp.incrementAndGet();
+    return lookup;
+  }
+
+  @Test
+  public void testConcurrentGetsShareOneLookup() {
+    final GetCoalescing subject = GetCoalescing.enabled();
+    final List<TestObserver<Todo>> gets = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      gets.add(subject.get(todo.getId(), this::lookup).test());
+    }
+    Assertions.assertEquals(lookedUp.get(), 1);
+    Assertions.assertEquals(subject.inFlight(), 1);
+    lookup.onSuccess(todo);
+    gets.forEach(get -> get.assertResult(todo));
+    Assertions.assertEquals(subject.inFlight(), 0);
+    Assertions.assertEquals(subject.gets(), 10);
+    Assertions.assertEquals(subject.lookups(), 1);
+
+    lookup = MaybeSubject.create();
+    final TestObserver<Todo> later = subject.get(todo.getId(), this::lookup).test();
+    Assertions.assertEquals(lookedUp.get(), 2);
+    lookup.onComplete();
+    later.assertResult();
+  }
+
+  @Test
+  public void testForgottenLookupIsNotJoined() {
+    final GetCoalescing subject = GetCoalescing.enabled();
+    final MaybeSubject<Todo> before = lookup;
+    final TestObserver<Todo> stale = subject.get(todo.getId(), this::lookup).test();
+    subject.forget(todo.getId());
+    lookup = MaybeSubject.create();
+    final TestObserver<Todo> fresh = subject.get(todo.getId(), this::lookup).test();
+    Assertions.assertEquals(lookedUp.get(), 2);
+    before.onComplete();
+    stale.assertResult();
+    // The earlier lookup completing does not stop the later one being shared
+    subject.get(todo.getId(), this::lookup).test();
+    Assertions.assertEquals(lookedUp.get(), 2);
+    lookup.onSuccess(todo);
+    fresh.assertResult(todo);
+  }
+
+  @Test
+  public void testFailedLookupFailsEveryGet() {
+    final GetCoalescing subject = GetCoalescing.enabled();
+    final TestObserver<Todo> first = subject.get(todo.getId(), this::lookup).test();
+    final TestObserver<Todo> second = subject.get(todo.getId(), this::lookup).test();
+    final IllegalStateException failure = new IllegalStateException("store down");
+    lookup.onError(failure);
+    first.assertError(failure);
+    second.assertError(failure);
+    Assertions.assertEquals(subject.inFlight(), 0);
+  }
+
+  @Test
+  public void testDisabledLooksUpEveryTime() {
+    final GetCoalescing subject = GetCoalescing.disabled();
+    subject.get(todo.getId(), this::lookup).test();
+    subject.get(todo.getId(), this::lookup).test();
+    Assertions.assertEquals(lookedUp.get(), 2);
+    Assertions.assertEquals(subject.inFlight(), 0);
+  }
+}
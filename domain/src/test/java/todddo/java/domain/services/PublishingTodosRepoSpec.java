@@ -0,0 +1,58 @@
+package todddo.java.domain.services;
+
+import fj.data.Either;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.subscribers.TestSubscriber;
+import java.util.Arrays;
+import java.util.Optional;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import todddo.java.domain.models.Todo;
+
+public class PublishingTodosRepoSpec {
+
+  private final Todo todo =
+      Todo.builder()
+          .id(Todo.Id.builder().value(1).build())
+          .task(Todo.Task.builder().value("follow me").build())
+          .version(1)
+          .build();
+  private final Todo.Repo store = Mockito.mock(Todo.Repo.class);
+  private final ChangeFeed feed = new ChangeFeed(16, 16);
+  private final PublishingTodosRepo subject = new PublishingTodosRepo(store, feed);
+
+  @Test
+  public void writesArePublishedAsChanges() {
+    Mockito.when(store.create(Mockito.any())).thenReturn(Single.just(todo));
+    Mockito.when(store.compareAndUpdate(Mockito.any(), Mockito.anyLong()))
+        .thenReturn(Maybe.just(Either.left(todo)));
+    Mockito.when(store.deleteAll(Mockito.any()))
+        .thenReturn(Single.just(Arrays.asList(Optional.of(todo), Optional.empty())));
+    final TestSubscriber<Todo.Change> changes = feed.changes(null).test();
+    subject.create(todo.getTask()).blockingGet();
+    subject.compareAndUpdate(todo, 0).blockingGet();
+    subject.deleteAll(Arrays.asList(todo.getId(), todo.getId())).blockingGet();
+    changes.awaitCount(2).assertValueCount(2);
+    Assertions.assertEquals(Todo.Change.Kind.Created, changes.values().get(0).getKind());
+    Assertions.assertEquals(Todo.Change.Kind.Deleted, changes.values().get(1).getKind());
+    Assertions.assertEquals(2, changes.values().get(1).getSequence());
+  }
+
+  @Test
+  public void writesThroughTheServiceArePublished() {
+    Mockito.when(store.put(Mockito.any(), Mockito.any())).thenReturn(Single.just(todo));
+    final TodosService service = new TodosService(subject, feed);
+    service.put(todo.getId(), todo.getTask()).blockingGet();
+    Assertions.assertEquals(1, feed.sequence());
+    Assertions.assertEquals(1, service.lastChange());
+  }
+
+  @Test
+  public void readsAreNotPublished() {
+    Mockito.when(store.get(todo.getId())).thenReturn(Maybe.just(todo));
+    Assertions.assertEquals(todo, subject.get(todo.getId()).blockingGet());
+    Assertions.assertEquals(0, feed.sequence());
+  }
+}
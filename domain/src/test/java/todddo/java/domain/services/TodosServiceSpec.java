@@ -1,9 +1,15 @@
 package todddo.java.domain.services;
 
+import fj.data.Either;
+import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.MaybeSubject;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -15,10 +21,14 @@ public class TodosServiceSpec {
     return Mockito.mock(Todo.Repo.class);
   }
 
+  private static ChangeFeed changeFeed() {
+    return new ChangeFeed(16, 16);
+  }
+
   @Test
   public void emptyTaskFailsCreate() {
     final Todo.Repo repo = mockRepo();
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     Assertions.assertEquals(
         service.create(Todo.Task.builder().value("").build()).blockingGet().left().value(),
         TodosService.CreateError.EmptyTask);
@@ -36,7 +46,7 @@ public class TodosServiceSpec {
                         .id(Todo.Id.builder().value(1).build())
                         .task(invocation.getArgument(0))
                         .build()));
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     final Todo.Task arg = Todo.Task.builder().value("do somefing").build();
     final Todo expected = Todo.builder().id(Todo.Id.builder().value(1).build()).task(arg).build();
 
@@ -44,12 +54,45 @@ public class TodosServiceSpec {
     Mockito.verify(repo, Mockito.times(1)).create(arg);
   }
 
+  @Test
+  public void putStoresUnderTheGivenId() {
+    final Todo.Repo repo = mockRepo();
+    final Todo.Id id = Todo.Id.builder().value(42).build();
+    final Todo.Task task = Todo.Task.builder().value("do somefing").build();
+    final Todo expected = Todo.builder().id(id).task(task).version(1).build();
+    Mockito.when(repo.put(id, task)).thenReturn(Single.just(expected));
+    final TodosService service = new TodosService(repo, changeFeed());
+
+    Assertions.assertEquals(service.put(id, task).blockingGet().right().value(), expected);
+    Assertions.assertEquals(
+        service.put(id, Todo.Task.builder().value(" ").build()).blockingGet().left().value(),
+        TodosService.CreateError.EmptyTask);
+    Mockito.verify(repo, Mockito.times(1)).put(Mockito.any(), Mockito.any());
+  }
+
+  @Test
+  public void putIfAbsentFailsOnATakenId() {
+    final Todo.Repo repo = mockRepo();
+    final Todo.Id id = Todo.Id.builder().value(42).build();
+    final Todo.Task task = Todo.Task.builder().value("do somefing").build();
+    final Todo taken = Todo.builder().id(id).task(task).version(1).build();
+    Mockito.when(repo.putIfAbsent(id, task))
+        .thenReturn(Single.just(Either.right(taken)))
+        .thenReturn(Single.just(Either.left(taken)));
+    final TodosService service = new TodosService(repo, changeFeed());
+
+    Assertions.assertEquals(service.putIfAbsent(id, task).blockingGet().right().value(), taken);
+    Assertions.assertEquals(
+        service.putIfAbsent(id, task).blockingGet().left().value(),
+        TodosService.CreateError.IdTaken);
+  }
+
   @Test
   public void getByUnsavedIdFails() {
     final Todo.Id id = Todo.Id.builder().value(1).build();
     final Todo.Repo repo = mockRepo();
     Mockito.when(repo.get(Mockito.eq(id))).thenAnswer(invocation -> Maybe.empty());
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     Assertions.assertEquals(
         service.get(id).blockingGet().left().value(), TodosService.GetError.NoSuchTodo);
     Mockito.verify(repo, Mockito.times(1)).get(id);
@@ -62,7 +105,7 @@ public class TodosServiceSpec {
     final Todo expected = Todo.builder().id(id).task(task).build();
     final Todo.Repo repo = mockRepo();
     Mockito.when(repo.get(Mockito.eq(id))).thenAnswer(invocation -> Maybe.just(expected));
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     Assertions.assertEquals(service.get(id).blockingGet().right().value(), expected);
     Mockito.verify(repo, Mockito.times(1)).get(id);
   }
@@ -72,7 +115,7 @@ public class TodosServiceSpec {
     final Todo.Id id = Todo.Id.builder().value(1).build();
     final Todo.Repo repo = mockRepo();
     Mockito.when(repo.delete(Mockito.eq(id))).thenAnswer(invocation -> Maybe.empty());
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     Assertions.assertEquals(
         service.delete(id).blockingGet().left().value(), TodosService.DeleteError.NoSuchTodo);
     Mockito.verify(repo, Mockito.times(1)).delete(id);
@@ -85,7 +128,7 @@ public class TodosServiceSpec {
     final Todo expected = Todo.builder().id(id).task(task).build();
     final Todo.Repo repo = mockRepo();
     Mockito.when(repo.delete(Mockito.eq(id))).thenAnswer(invocation -> Maybe.just(expected));
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     Assertions.assertEquals(service.delete(id).blockingGet().right().value(), expected);
     Mockito.verify(repo, Mockito.times(1)).delete(id);
   }
@@ -98,18 +141,49 @@ public class TodosServiceSpec {
     final List<Todo> expectedList = Collections.singletonList(expected);
     final Todo.Repo repo = mockRepo();
     Mockito.when(repo.list()).thenReturn(Single.just(expectedList));
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     Assertions.assertEquals(service.list().blockingGet(), expectedList);
     Mockito.verify(repo, Mockito.times(1)).list();
   }
 
+  @Test
+  public void listPageDelegatesToRepo() {
+    final Todo.Id after = Todo.Id.builder().value(1).build();
+    final Todo expected =
+        Todo.builder()
+            .id(Todo.Id.builder().value(2).build())
+            .task(Todo.Task.builder().value("do somefing").build())
+            .build();
+    final List<Todo> expectedList = Collections.singletonList(expected);
+    final Todo.Repo repo = mockRepo();
+    Mockito.when(repo.list(after, 1)).thenReturn(Single.just(expectedList));
+    final TodosService service = new TodosService(repo, changeFeed());
+    Assertions.assertEquals(service.list(after, 1).blockingGet(), expectedList);
+    Mockito.verify(repo, Mockito.times(1)).list(after, 1);
+  }
+
+  @Test
+  public void streamDelegatesToRepo() {
+    final Todo expected =
+        Todo.builder()
+            .id(Todo.Id.builder().value(1).build())
+            .task(Todo.Task.builder().value("do somefing").build())
+            .build();
+    final Todo.Repo repo = mockRepo();
+    Mockito.when(repo.stream(null)).thenReturn(Flowable.just(expected));
+    final TodosService service = new TodosService(repo, changeFeed());
+    Assertions.assertEquals(
+        service.stream(null).toList().blockingGet(), Collections.singletonList(expected));
+    Mockito.verify(repo, Mockito.times(1)).stream(null);
+  }
+
   @Test
   public void updatewithEmptyTaskFails() {
     final Todo.Id id = Todo.Id.builder().value(1).build();
     final Todo.Task task = Todo.Task.builder().value("").build();
     final Todo expected = Todo.builder().id(id).task(task).build();
     final Todo.Repo repo = mockRepo();
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     Assertions.assertEquals(
         service.update(expected).blockingGet().left().value(), TodosService.UpdateError.EmptyTask);
     Mockito.verifyNoInteractions(repo);
@@ -122,7 +196,7 @@ public class TodosServiceSpec {
     final Todo expected = Todo.builder().id(id).task(task).build();
     final Todo.Repo repo = mockRepo();
     Mockito.when(repo.update(Mockito.eq(expected))).thenAnswer(invocation -> Maybe.empty());
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     Assertions.assertEquals(
         service.update(expected).blockingGet().left().value(), TodosService.UpdateError.NoSuchTodo);
     Mockito.verify(repo, Mockito.times(1)).update(expected);
@@ -135,8 +209,213 @@ public class TodosServiceSpec {
     final Todo expected = Todo.builder().id(id).task(task).build();
     final Todo.Repo repo = mockRepo();
     Mockito.when(repo.update(Mockito.eq(expected))).thenAnswer(invocation -> Maybe.just(expected));
-    final TodosService service = new TodosService(repo);
+    final TodosService service = new TodosService(repo, changeFeed());
     Assertions.assertEquals(service.update(expected).blockingGet().right().value(), expected);
     Mockito.verify(repo, Mockito.times(1)).update(expected);
   }
+
+  @Test
+  public void conditionalUpdateReportsVersionMismatch() {
+    final Todo.Id id = Todo.Id.builder().value(1).build();
+    final Todo todo =
+        Todo.builder().id(id).task(Todo.Task.builder().value("do somefing").build()).build();
+    final Todo current = Todo.builder().id(id).task(todo.getTask()).version(3).build();
+    final Todo updated = Todo.builder().id(id).task(todo.getTask()).version(4).build();
+    final Todo.Repo repo = mockRepo();
+    Mockito.when(repo.compareAndUpdate(todo, 2)).thenReturn(Maybe.just(Either.left(current)));
+    Mockito.when(repo.compareAndUpdate(todo, 3)).thenReturn(Maybe.just(Either.right(updated)));
+    Mockito.when(repo.compareAndUpdate(todo, 4)).thenReturn(Maybe.empty());
+    final TodosService service = new TodosService(repo, changeFeed());
+    Assertions.assertEquals(
+        service.update(todo, 2).blockingGet().left().value(),
+        TodosService.UpdateError.VersionMismatch);
+    Assertions.assertEquals(service.update(todo, 3).blockingGet().right().value(), updated);
+    Assertions.assertEquals(
+        service.update(todo, 4).blockingGet().left().value(), TodosService.UpdateError.NoSuchTodo);
+  }
+
+  @Test
+  public void conditionalUpdateWithEmptyTaskFails() {
+    final Todo todo =
+        Todo.builder()
+            .id(Todo.Id.builder().value(1).build())
+            .task(Todo.Task.builder().value(" ").build())
+            .build();
+    final Todo.Repo repo = mockRepo();
+    final TodosService service = new TodosService(repo, changeFeed());
+    Assertions.assertEquals(
+        service.update(todo, 1).blockingGet().left().value(), TodosService.UpdateError.EmptyTask);
+    Mockito.verifyNoInteractions(repo);
+  }
+
+  @Test
+  public void conditionalDeleteReportsVersionMismatch() {
+    final Todo.Id id = Todo.Id.builder().value(1).build();
+    final Todo current =
+        Todo.builder()
+            .id(id)
+            .task(Todo.Task.builder().value("do somefing").build())
+            .version(3)
+            .build();
+    final Todo.Repo repo = mockRepo();
+    Mockito.when(repo.compareAndDelete(id, 2)).thenReturn(Maybe.just(Either.left(current)));
+    Mockito.when(repo.compareAndDelete(id, 3)).thenReturn(Maybe.just(Either.right(current)));
+    final TodosService service = new TodosService(repo, changeFeed());
+    Assertions.assertEquals(
+        service.delete(id, 2).blockingGet().left().value(),
+        TodosService.DeleteError.VersionMismatch);
+    Assertions.assertEquals(service.delete(id, 3).blockingGet().right().value(), current);
+  }
+
+  @Test
+  public void conditionalWritesFromAnotherEpochReportVersionMismatch() {
+    final Todo.Id id = Todo.Id.builder().value(1).build();
+    final Todo todo =
+        Todo.builder().id(id).task(Todo.Task.builder().value("do somefing").build()).build();
+    final Todo current = Todo.builder().id(id).task(todo.getTask()).version(3).build();
+    final Todo.Repo repo = mockRepo();
+    Mockito.when(repo.epoch()).thenReturn(7L);
+    Mockito.when(repo.compareAndUpdate(todo, 3)).thenReturn(Maybe.just(Either.right(current)));
+    Mockito.when(repo.compareAndUpdate(todo, TodosService.NO_VERSION))
+        .thenReturn(Maybe.just(Either.left(current)));
+    Mockito.when(repo.compareAndDelete(id, TodosService.NO_VERSION))
+        .thenReturn(Maybe.just(Either.left(current)));
+    final TodosService service = new TodosService(repo, changeFeed());
+    Assertions.assertEquals(service.update(todo, 7, 3).blockingGet().right().value(), current);
+    Assertions.assertEquals(
+        service.update(todo, 8, 3).blockingGet().left().value(),
+        TodosService.UpdateError.VersionMismatch);
+    Assertions.assertEquals(
+        service.delete(id, 8, 3).blockingGet().left().value(),
+        TodosService.DeleteError.VersionMismatch);
+  }
+
+  @Test
+  public void createAllOnlyPassesValidTasksToRepo() {
+    final Todo.Repo repo = mockRepo();
+    final Todo.Task valid = Todo.Task.builder().value("do somefing").build();
+    final Todo.Task empty = Todo.Task.builder().value(" ").build();
+    final Todo created = Todo.builder().id(Todo.Id.builder().value(1).build()).task(valid).build();
+    Mockito.when(repo.createAll(Collections.singletonList(valid)))
+        .thenReturn(Single.just(Collections.singletonList(created)));
+    final TodosService service = new TodosService(repo, changeFeed());
+
+    final List<Either<TodosService.CreateError, Todo>> results =
+        service.createAll(Arrays.asList(empty, valid)).blockingGet();
+    Assertions.assertEquals(results.get(0).left().value(), TodosService.CreateError.EmptyTask);
+    Assertions.assertEquals(results.get(1).right().value(), created);
+    Mockito.verify(repo, Mockito.times(1)).createAll(Collections.singletonList(valid));
+  }
+
+  @Test
+  public void updateAllReportsPerItemErrors() {
+    final Todo.Repo repo = mockRepo();
+    final Todo exists =
+        Todo.builder()
+            .id(Todo.Id.builder().value(1).build())
+            .task(Todo.Task.builder().value("exists").build())
+            .build();
+    final Todo missing =
+        Todo.builder()
+            .id(Todo.Id.builder().value(2).build())
+            .task(Todo.Task.builder().value("missing").build())
+            .build();
+    final Todo empty =
+        Todo.builder()
+            .id(Todo.Id.builder().value(1).build())
+            .task(Todo.Task.builder().value("").build())
+            .build();
+    Mockito.when(repo.updateAll(Arrays.asList(exists, missing)))
+        .thenReturn(Single.just(Arrays.asList(Optional.of(exists), Optional.empty())));
+    final TodosService service = new TodosService(repo, changeFeed());
+
+    final List<Either<TodosService.UpdateError, Todo>> results =
+        service.updateAll(Arrays.asList(exists, empty, missing)).blockingGet();
+    Assertions.assertEquals(results.get(0).right().value(), exists);
+    Assertions.assertEquals(results.get(1).left().value(), TodosService.UpdateError.EmptyTask);
+    Assertions.assertEquals(results.get(2).left().value(), TodosService.UpdateError.NoSuchTodo);
+  }
+
+  @Test
+  public void deleteAllReportsPerItemErrors() {
+    final Todo.Repo repo = mockRepo();
+    final Todo exists =
+        Todo.builder()
+            .id(Todo.Id.builder().value(1).build())
+            .task(Todo.Task.builder().value("exists").build())
+            .build();
+    final Todo.Id missing = Todo.Id.builder().value(2).build();
+    Mockito.when(repo.deleteAll(Arrays.asList(exists.getId(), missing)))
+        .thenReturn(Single.just(Arrays.asList(Optional.of(exists), Optional.empty())));
+    final TodosService service = new TodosService(repo, changeFeed());
+
+    final List<Either<TodosService.DeleteError, Todo>> results =
+        service.deleteAll(Arrays.asList(exists.getId(), missing)).blockingGet();
+    Assertions.assertEquals(results.get(0).right().value(), exists);
+    Assertions.assertEquals(results.get(1).left().value(), TodosService.DeleteError.NoSuchTodo);
+  }
+
+  @Test
+  public void searchPassesDistinctTermsToTheRepo() {
+    final Todo.Repo repo = mockRepo();
+    final Todo found =
+        Todo.builder()
+            .id(Todo.Id.builder().value(1).build())
+            .task(Todo.Task.builder().value("buy milk").build())
+            .build();
+    Mockito.when(repo.search(Arrays.asList("buy", "milk"), 0, 10))
+        .thenReturn(Single.just(Collections.singletonList(found)));
+    final TodosService subject = new TodosService(repo, changeFeed());
+    Assertions.assertEquals(
+        Collections.singletonList(found), subject.search("Buy MILK, buy!", 0, 10).blockingGet());
+  }
+
+  @Test
+  public void searchWithoutTermsMatchesNothing() {
+    final Todo.Repo repo = mockRepo();
+    final TodosService subject = new TodosService(repo, changeFeed());
+    Assertions.assertTrue(subject.search(" ?! ", 0, 10).blockingGet().isEmpty());
+    Mockito.verify(repo, Mockito.never())
+        .search(Mockito.anyList(), Mockito.anyInt(), Mockito.anyInt());
+  }
+
+  @Test
+  public void suggestNormalisesThePrefix() {
+    final Todo.Repo repo = mockRepo();
+    Mockito.when(repo.suggest("buy m", 5)).thenReturn(Single.just(Collections.emptyList()));
+    final TodosService subject = new TodosService(repo, changeFeed());
+    Assertions.assertTrue(subject.suggest("Buy  M", 5).blockingGet().isEmpty());
+    Mockito.verify(repo, Mockito.times(1)).suggest("buy m", 5);
+  }
+
+  @Test
+  public void suggestWithoutPrefixSuggestsNothing() {
+    final Todo.Repo repo = mockRepo();
+    final TodosService subject = new TodosService(repo, changeFeed());
+    Assertions.assertTrue(subject.suggest(" ", 5).blockingGet().isEmpty());
+    Mockito.verify(repo, Mockito.never()).suggest(Mockito.anyString(), Mockito.anyInt());
+  }
+
+  @Test
+  public void getAfterAWriteDoesNotShareALookupFromBefore() {
+    final Todo todo =
+        Todo.builder()
+            .id(Todo.Id.builder().value(1).build())
+            .task(Todo.Task.builder().value("share me").build())
+            .version(2)
+            .build();
+    final MaybeSubject<Todo> before = MaybeSubject.create();
+    final Todo.Repo repo = mockRepo();
+    Mockito.when(repo.get(Mockito.any())).thenReturn(before).thenReturn(Maybe.just(todo));
+    Mockito.when(repo.update(Mockito.any())).thenReturn(Maybe.just(todo));
+    final TodosService subject = new TodosService(repo, changeFeed(), GetCoalescing.enabled());
+    final TestObserver<Either<TodosService.GetError, Todo>> racing =
+        subject.get(todo.getId()).test();
+    subject.get(todo.getId()).test();
+    Mockito.verify(repo, Mockito.times(1)).get(todo.getId());
+    subject.update(todo).blockingGet();
+    Assertions.assertEquals(subject.get(todo.getId()).blockingGet().right().value(), todo);
+    Mockito.verify(repo, Mockito.times(2)).get(todo.getId());
+    racing.assertNotComplete();
+  }
 }
@@ -0,0 +1,183 @@
+package todddo.java.infra.cache;
+
+import fj.data.Either;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.functions.Action;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import todddo.java.domain.models.Todo;
+
+/**
+ * Answers gets from a {@link TodoCache} where it can, reading through to the store otherwise, and
+ * invalidates each Todo a write touches as soon as the store has written it, whether or not the
+ * write succeeded. Everything else goes straight to the store, so lists and searches neither use
+ * nor fill the cache.
+ *
+ * <p>Cached gets complete on the subscribing thread, without the store's scheduling.
+ */
+public class CachingTodosRepo implements Todo.Repo {
+
+  private final Todo.Repo store;
+  private final TodoCache cache;
+
+  public CachingTodosRepo(@Nonnull final Todo.Repo store, @Nonnull final TodoCache cache) {
+    this.store = store;
+    this.cache = cache;
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> create(@Nonnull final Todo.Task task) {
+    return store.create(task);
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> get(@Nonnull final Todo.Id id) {
+    return Maybe.defer(
+        () -> {
+          final Todo cached = cache.get(id);
+          if (cached != null) {
+            return Maybe.just(cached);
+          }
+          final TodoCache.Reservation reservation = cache.reserve(id);
+          return store
+              .get(id)
+              .doOnSuccess(todo -> cache.add(todo, reservation))
+              .doFinally(() -> cache.release(id, reservation));
+        });
+  }
+
+  /** From the cached Todo if there is one, but does not fill the cache otherwise. */
+  @Nonnull
+  @Override
+  public Maybe<Long> versionOf(@Nonnull final Todo.Id id) {
+    return Maybe.defer(
+        () -> {
+          final Todo cached = cache.get(id);
+          return cached == null ? store.versionOf(id) : Maybe.just(cached.getVersion());
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> delete(@Nonnull final Todo.Id id) {
+    return invalidating(store.delete(id), id);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list() {
+    return store.list();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    return store.list(after, limit);
+  }
+
+  @Nonnull
+  @Override
+  public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+    return store.stream(after);
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> update(@Nonnull final Todo todo) {
+    return invalidating(store.update(todo), todo.getId());
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> put(@Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return invalidating(store.put(id, task), () -> cache.invalidate(id));
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<Todo, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return invalidating(store.putIfAbsent(id, task), () -> cache.invalidate(id));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndUpdate(
+      @Nonnull final Todo todo, final long expectedVersion) {
+    return invalidating(store.compareAndUpdate(todo, expectedVersion), todo.getId());
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndDelete(
+      @Nonnull final Todo.Id id, final long expectedVersion) {
+    return invalidating(store.compareAndDelete(id, expectedVersion), id);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> search(
+      @Nonnull final List<String> terms, final int offset, final int limit) {
+    return store.search(terms, offset, limit);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> suggest(@Nonnull final String prefix, final int limit) {
+    return store.suggest(prefix, limit);
+  }
+
+  @Override
+  public long epoch() {
+    return store.epoch();
+  }
+
+  @Override
+  public long version() {
+    return store.version();
+  }
+
+  @Override
+  public long size() {
+    return store.size();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> createAll(@Nonnull final List<Todo.Task> tasks) {
+    return store.createAll(tasks);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> updateAll(@Nonnull final List<Todo> todos) {
+    return invalidating(
+        store.updateAll(todos), () -> todos.forEach(todo -> cache.invalidate(todo.getId())));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> deleteAll(@Nonnull final List<Todo.Id> ids) {
+    return invalidating(store.deleteAll(ids), () -> ids.forEach(cache::invalidate));
+  }
+
+  /**
+   * Invalidates once the write is done, before anything downstream sees its result, or if it is
+   * disposed of, in case the store wrote anyway.
+   */
+  private <T> Maybe<T> invalidating(final Maybe<T> write, final Todo.Id id) {
+    return write
+        .doOnEvent((written, error) -> cache.invalidate(id))
+        .doOnDispose(() -> cache.invalidate(id));
+  }
+
+  private <T> Single<T> invalidating(final Single<T> write, final Action invalidate) {
+    return write.doOnEvent((written, error) -> invalidate.run()).doOnDispose(invalidate);
+  }
+}
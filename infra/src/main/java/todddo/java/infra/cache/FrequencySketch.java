@@ -0,0 +1,76 @@
+package todddo.java.infra.cache;
+
+/**
+ * Roughly how often each key was seen lately, as a count-min sketch of 4-bit counters, 16 to a
+ * long, four per key. Once there have been ten times as many increments as the cache holds entries,
+ * every counter is halved, so keys that were popular a while ago give way to new ones.
+ *
+ * <p>Not thread-safe.
+ */
+final class FrequencySketch {
+
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+  };
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+  private static final int MAX = 15;
+
+  private final long[] table;
+  private final int counterMask;
+  private final int sampleSize;
+  private int additions;
+
+  /** @param entries how many entries the cache holds, which sizes the table */
+  FrequencySketch(final int entries) {
+    final int words = Math.max(Integer.highestOneBit(Math.max(entries, 16) - 1) << 1, 16);
+    this.table = new long[words];
+    this.counterMask = words * 16 - 1;
+    this.sampleSize = Math.max(entries, 1) * 10;
+  }
+
+  /** How often the key was seen, up to 15. */
+  int frequency(final long key) {
+    int frequency = MAX;
+    for (final long seed : SEEDS) {
+      final int counter = counter(key, seed);
+      frequency = Math.min(frequency, (int) (table[counter >>> 4] >>> shift(counter)) & MAX);
+    }
+    return frequency;
+  }
+
+  void increment(final long key) {
+    boolean added = false;
+    for (final long seed : SEEDS) {
+      final int counter = counter(key, seed);
+      final int shift = shift(counter);
+      if (((table[counter >>> 4] >>> shift) & MAX) < MAX) {
+        table[counter >>> 4] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++additions == sampleSize) {
+      halve();
+    }
+  }
+
+  private void halve() {
+    int odd = 0;
+    for (int i = 0; i < table.length; i++) {
+      odd += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions = (additions - (odd >>> 2)) >>> 1;
+  }
+
+  private int counter(final long key, final long seed) {
+    long z = key + seed;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return (int) (z ^ (z >>> 31)) & counterMask;
+  }
+
+  private static int shift(final int counter) {
+    return (counter & 15) << 2;
+  }
+}
@@ -0,0 +1,36 @@
+package todddo.java.infra.cache;
+
+import io.micronaut.context.annotation.Requires;
+import javax.annotation.Nonnull;
+import javax.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.replication.ReplicaTodosRepo;
+
+/**
+ * Puts a {@link CachingTodosRepo} in front of whichever store todddo.repo.store selects, when
+ * todddo.repo.cache.enabled; see RepoPublishing, which hands it the store.
+ *
+ * <p>Except a replica: its Todos change as the primary's do, not through the repo, so a cache would
+ * keep serving what they were.
+ */
+@Slf4j
+@Singleton
+@Requires(property = "todddo.repo.cache.enabled", value = "true")
+public class RepoCaching {
+
+  private final TodoCache cache;
+
+  public RepoCaching(@Nonnull final TodoCache cache) {
+    this.cache = cache;
+  }
+
+  @Nonnull
+  public Todo.Repo around(@Nonnull final Todo.Repo store) {
+    if (store instanceof ReplicaTodosRepo) {
+      log.warn("Not caching Todos of a replica, which change under the repo");
+      return store;
+    }
+    return new CachingTodosRepo(store, cache);
+  }
+}
@@ -0,0 +1,282 @@
+package todddo.java.infra.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.jctools.queues.MpscArrayQueue;
+import org.jctools.queues.MpscUnboundedArrayQueue;
+import todddo.java.domain.models.Todo;
+
+/**
+ * Up to todddo.repo.cache.max-size Todos by Id, evicted as per W-TinyLFU: new entries go into a
+ * small LRU window, 1% of the cache, and when one falls out of it, it only displaces the least
+ * recently used entry of the main cache if it has been asked for more often lately, as per a {@link
+ * FrequencySketch} of every lookup. So a scan, or a burst of one-off reads, does not push out the
+ * Todos that are read again and again. The main cache is a segmented LRU: entries start out on
+ * probation, and move to the protected 80% once read again there.
+ *
+ * <p>Anything that changes a Todo must {@link #invalidate} it once it has. A Todo read from the
+ * store is only added under the {@link #reserve reservation} taken for its Id before reading it,
+ * which invalidating the Id drops, so a read that raced a write never puts back what the write
+ * replaced, and writes to other Todos do not get in its way.
+ *
+ * <p>Lookups only read a concurrent map. What they and writes mean for eviction is buffered, and
+ * applied to the LRU segments and the sketch by whichever thread gets their lock next, after a
+ * write or once a thread's buffer of lookups fills; lookups are dropped, rather than waited for, if
+ * it fills faster than that. So the cache may briefly hold a few more Todos than it should.
+ */
+@Singleton
+@Requires(property = "todddo.repo.cache.enabled", value = "true")
+public class TodoCache implements MeterBinder {
+
+  private static final int READ_BUFFER_SIZE = 128;
+
+  private final int windowSize;
+  private final int mainSize;
+  private final int protectedSize;
+
+  /** Per Id, its Todo or a {@link Reservation} for the Todo being read. */
+  private final ConcurrentHashMap<Long, Object> entries = new ConcurrentHashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /** Ids looked up, per stripe of threads. */
+  private final MpscArrayQueue<Long>[] reads;
+
+  private final MpscUnboundedArrayQueue<Runnable> writes = new MpscUnboundedArrayQueue<>(64);
+
+  /** Guards everything below. */
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  private final FrequencySketch sketch;
+  private final LinkedHashMap<Long, Todo> window = new LinkedHashMap<>(16, 0.75f, true);
+  private final LinkedHashMap<Long, Todo> probation = new LinkedHashMap<>(16, 0.75f, true);
+  private final LinkedHashMap<Long, Todo> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+  private volatile long evictions;
+
+  @Inject
+  @SuppressWarnings("unchecked")
+  public TodoCache(@Value("${todddo.repo.cache.max-size:10000}") final int maxSize) {
+    if (maxSize < 2) {
+      throw new IllegalArgumentException("Cache must hold at least 2 Todos, got " + maxSize);
+    }
+    this.windowSize = Math.max(1, maxSize / 100);
+    this.mainSize = maxSize - windowSize;
+    this.protectedSize = mainSize * 4 / 5;
+    this.sketch = new FrequencySketch(maxSize);
+    final int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+    this.reads = new MpscArrayQueue[stripes];
+    for (int i = 0; i < stripes; i++) {
+      reads[i] = new MpscArrayQueue<>(READ_BUFFER_SIZE);
+    }
+  }
+
+  /** The cached Todo, if any, counting the lookup either way. */
+  @Nullable
+  public Todo get(@Nonnull final Todo.Id id) {
+    final long key = id.getValue();
+    final Object entry = entries.get(key);
+    final MpscArrayQueue<Long> buffer =
+        reads[(int) Thread.currentThread().getId() & (reads.length - 1)];
+    if (!buffer.offer(key) || buffer.size() >= READ_BUFFER_SIZE / 2) {
+      maintainIfFree();
+    }
+    if (entry instanceof Todo) {
+      hits.increment();
+      return (Todo) entry;
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * To take before reading a Todo from the store, and give to {@link #add} with it, then to {@link
+   * #release} once the read is done either way. Reads of the same Id in flight at once share it.
+   */
+  @Nonnull
+  public Reservation reserve(@Nonnull final Todo.Id id) {
+    final Reservation reservation = new Reservation();
+    final Object entry = entries.putIfAbsent(id.getValue(), reservation);
+    return entry instanceof Reservation ? (Reservation) entry : reservation;
+  }
+
+  /**
+   * Adds a Todo read from the store, unless it was invalidated since the reservation was taken, or
+   * it is cached already.
+   */
+  public void add(@Nonnull final Todo todo, @Nonnull final Reservation reservation) {
+    final long key = todo.getId().getValue();
+    if (entries.replace(key, reservation, todo)) {
+      writes.offer(() -> added(key, todo));
+      maintainIfFree();
+    }
+  }
+
+  /** Gives up the reservation, if it has not been used or withdrawn. */
+  public void release(@Nonnull final Todo.Id id, @Nonnull final Reservation reservation) {
+    entries.remove(id.getValue(), reservation);
+  }
+
+  /** Drops the Todo, and any reservation for it, for when it has changed or gone. */
+  public void invalidate(@Nonnull final Todo.Id id) {
+    final long key = id.getValue();
+    final Object removed = entries.remove(key);
+    if (removed instanceof Todo) {
+      writes.offer(() -> removed(key, (Todo) removed));
+      maintainIfFree();
+    }
+  }
+
+  /** How many Todos are cached, once everything buffered has been applied. */
+  public int size() {
+    evictionLock.lock();
+    try {
+      maintain();
+      return window.size() + probation.size() + protectedSegment.size();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  public long hits() {
+    return hits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  /** How many Todos were dropped for want of room, including ones never let in. */
+  public long evictions() {
+    return evictions;
+  }
+
+  @Override
+  public void bindTo(@Nonnull final MeterRegistry registry) {
+    FunctionCounter.builder("todddo.repo.cache.requests", this, TodoCache::hits)
+        .description("Todo.Repo gets answered by the cache, or not")
+        .tag("result", "hit")
+        .register(registry);
+    FunctionCounter.builder("todddo.repo.cache.requests", this, TodoCache::misses)
+        .description("Todo.Repo gets answered by the cache, or not")
+        .tag("result", "miss")
+        .register(registry);
+    FunctionCounter.builder("todddo.repo.cache.evictions", this, TodoCache::evictions)
+        .description("Todos dropped from the cache for want of room")
+        .register(registry);
+    Gauge.builder("todddo.repo.cache.size", this, TodoCache::size)
+        .description("Todos in the cache")
+        .register(registry);
+  }
+
+  private void maintainIfFree() {
+    if (evictionLock.tryLock()) {
+      try {
+        maintain();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  /** Applies the buffered lookups, then writes. Must hold the eviction lock. */
+  private void maintain() {
+    for (final MpscArrayQueue<Long> buffer : reads) {
+      buffer.drain(this::read);
+    }
+    writes.drain(Runnable::run);
+  }
+
+  private void read(final long key) {
+    sketch.increment(key);
+    if (window.get(key) == null && protectedSegment.get(key) == null) {
+      final Todo todo = probation.remove(key);
+      if (todo != null) {
+        protect(key, todo);
+      }
+    }
+  }
+
+  private void added(final long key, final Todo todo) {
+    if (entries.get(key) != todo) {
+      // Invalidated since
+      return;
+    }
+    window.put(key, todo);
+    if (window.size() > windowSize) {
+      final Map.Entry<Long, Todo> candidate = eldest(window);
+      window.remove(candidate.getKey());
+      admit(candidate.getKey(), candidate.getValue());
+    }
+  }
+
+  private void removed(final long key, final Todo todo) {
+    if (!remove(window, key, todo) && !remove(probation, key, todo)) {
+      remove(protectedSegment, key, todo);
+    }
+  }
+
+  /** Moves a Todo read again on probation to protected, demoting the least recent if full. */
+  private void protect(final long key, final Todo todo) {
+    protectedSegment.put(key, todo);
+    if (protectedSegment.size() > protectedSize) {
+      final Map.Entry<Long, Todo> demoted = eldest(protectedSegment);
+      protectedSegment.remove(demoted.getKey());
+      probation.put(demoted.getKey(), demoted.getValue());
+    }
+  }
+
+  /** Lets a Todo out of the window into the main cache if there is room, or it is more popular. */
+  private void admit(final long key, final Todo todo) {
+    if (probation.size() + protectedSegment.size() < mainSize) {
+      probation.put(key, todo);
+      return;
+    }
+    evictions++;
+    final LinkedHashMap<Long, Todo> victims = probation.isEmpty() ? protectedSegment : probation;
+    final Map.Entry<Long, Todo> victim = eldest(victims);
+    if (sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+      victims.remove(victim.getKey());
+      evict(victim.getKey(), victim.getValue());
+      probation.put(key, todo);
+    } else {
+      evict(key, todo);
+    }
+  }
+
+  /** Drops the Todo from the map, if it is still the one there. */
+  private void evict(final long key, final Todo todo) {
+    entries.computeIfPresent(key, (ignored, entry) -> entry == todo ? null : entry);
+  }
+
+  private static boolean remove(
+      final LinkedHashMap<Long, Todo> segment, final long key, final Todo todo) {
+    if (segment.get(key) != todo) {
+      return false;
+    }
+    segment.remove(key);
+    return true;
+  }
+
+  private static Map.Entry<Long, Todo> eldest(final LinkedHashMap<Long, Todo> segment) {
+    return segment.entrySet().iterator().next();
+  }
+
+  /** A claim on adding the Todo read for an Id, which invalidating the Id withdraws. */
+  public static final class Reservation {
+    private Reservation() {}
+  }
+}
@@ -0,0 +1,39 @@
+package todddo.java.infra.changes;
+
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Singleton;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
+import todddo.java.domain.services.PublishingTodosRepo;
+import todddo.java.infra.cache.RepoCaching;
+import todddo.java.infra.replication.ReplicaTodosRepo;
+
+/**
+ * Puts a {@link PublishingTodosRepo} around whichever store todddo.repo.store selects, so that
+ * every write to it is on the ChangeFeed, then the cache in front of that if there is one. Both are
+ * done here, so they always wrap the store in that order.
+ *
+ * <p>A replica is not wrapped for publishing, as it cannot be written to.
+ */
+@Singleton
+public class RepoPublishing implements BeanCreatedEventListener<Todo.Repo> {
+
+  private final ChangeFeed changeFeed;
+  @Nullable private final RepoCaching caching;
+
+  public RepoPublishing(@Nonnull final ChangeFeed changeFeed, @Nullable final RepoCaching caching) {
+    this.changeFeed = changeFeed;
+    this.caching = caching;
+  }
+
+  @Override
+  public Todo.Repo onCreated(final BeanCreatedEvent<Todo.Repo> event) {
+    final Todo.Repo store = event.getBean();
+    final Todo.Repo published =
+        store instanceof ReplicaTodosRepo ? store : new PublishingTodosRepo(store, changeFeed);
+    return caching == null ? published : caching.around(published);
+  }
+}
@@ -0,0 +1,208 @@
+package todddo.java.infra.execution;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Wraps a Scheduler to count the tasks that are due to run but have not started, i.e. are queued
+ * behind other work on its threads.
+ *
+ * <p>Delayed tasks are not counted while they wait for their delay. A task stops being counted when
+ * it starts, or is disposed, or when the worker it was scheduled on is disposed.
+ */
+public final class QueueCountingScheduler extends Scheduler {
+
+  @Nullable private static volatile QueueCountingScheduler io;
+  @Nullable private static volatile QueueCountingScheduler computation;
+
+  private final Scheduler delegate;
+  private final LongAdder queued = new LongAdder();
+
+  public QueueCountingScheduler(@Nonnull final Scheduler delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Makes Schedulers.io() and Schedulers.computation() return counting wrappers from now on. Only
+   * the first call does anything; the application's is made by {@link SchedulerInstrumentation}.
+   */
+  public static synchronized void instrumentRxSchedulers() {
+    if (io == null) {
+      final QueueCountingScheduler ioScheduler = new QueueCountingScheduler(Schedulers.io());
+      final QueueCountingScheduler computationScheduler =
+          new QueueCountingScheduler(Schedulers.computation());
+      RxJavaPlugins.setIoSchedulerHandler(ignored -> ioScheduler);
+      RxJavaPlugins.setComputationSchedulerHandler(ignored -> computationScheduler);
+      io = ioScheduler;
+      computation = computationScheduler;
+    }
+  }
+
+  /** Tasks queued on Schedulers.io(); 0 until {@link #instrumentRxSchedulers()}. */
+  public static long ioQueued() {
+    final QueueCountingScheduler scheduler = io;
+    return scheduler == null ? 0 : scheduler.queued();
+  }
+
+  /** Tasks queued on Schedulers.computation(); 0 until {@link #instrumentRxSchedulers()}. */
+  public static long computationQueued() {
+    final QueueCountingScheduler scheduler = computation;
+    return scheduler == null ? 0 : scheduler.queued();
+  }
+
+  public long queued() {
+    return queued.sum();
+  }
+
+  @Nonnull
+  @Override
+  public Disposable scheduleDirect(
+      @Nonnull final Runnable run, final long delay, @Nonnull final TimeUnit unit) {
+    if (delay > 0) {
+      return delegate.scheduleDirect(run, delay, unit);
+    }
+    final DirectTask task = new DirectTask(run);
+    queued.increment();
+    task.scheduled(delegate.scheduleDirect(task, delay, unit));
+    return task;
+  }
+
+  @Nonnull
+  @Override
+  public Worker createWorker() {
+    return new CountingWorker(delegate.createWorker());
+  }
+
+  @Override
+  public long now(@Nonnull final TimeUnit unit) {
+    return delegate.now(unit);
+  }
+
+  @Override
+  public void start() {
+    delegate.start();
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  /** Uncounts itself on whichever of starting or being disposed comes first. */
+  private final class DirectTask extends AtomicBoolean implements Runnable, Disposable {
+
+    private final Runnable run;
+    @Nullable private volatile Disposable scheduled;
+    private volatile boolean disposed;
+
+    DirectTask(final Runnable run) {
+      this.run = run;
+    }
+
+    void scheduled(final Disposable disposable) {
+      scheduled = disposable;
+      if (disposed) {
+        disposable.dispose();
+      }
+    }
+
+    @Override
+    public void run() {
+      uncount();
+      run.run();
+    }
+
+    @Override
+    public void dispose() {
+      disposed = true;
+      uncount();
+      final Disposable disposable = scheduled;
+      if (disposable != null) {
+        disposable.dispose();
+      }
+    }
+
+    @Override
+    public boolean isDisposed() {
+      return disposed;
+    }
+
+    private void uncount() {
+      if (compareAndSet(false, true)) {
+        queued.decrement();
+      }
+    }
+  }
+
+  /**
+   * Workers dispose their own pending tasks without running them, so a worker keeps count of its
+   * queued tasks and uncounts all of them when it is disposed.
+   */
+  private final class CountingWorker extends Worker {
+
+    private final Worker worker;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    CountingWorker(final Worker worker) {
+      this.worker = worker;
+    }
+
+    @Nonnull
+    @Override
+    public Disposable schedule(
+        @Nonnull final Runnable run, final long delay, @Nonnull final TimeUnit unit) {
+      if (delay > 0 || worker.isDisposed()) {
+        return worker.schedule(run, delay, unit);
+      }
+      pending.incrementAndGet();
+      queued.increment();
+      final Disposable scheduled =
+          worker.schedule(
+              () -> {
+                started();
+                run.run();
+              },
+              delay,
+              unit);
+      if (worker.isDisposed()) {
+        uncountPending();
+      }
+      return scheduled;
+    }
+
+    @Override
+    public void dispose() {
+      worker.dispose();
+      uncountPending();
+    }
+
+    @Override
+    public boolean isDisposed() {
+      return worker.isDisposed();
+    }
+
+    private void started() {
+      int n;
+      do {
+        n = pending.get();
+        if (n == 0) {
+          // Already uncounted by dispose
+          return;
+        }
+      } while (!pending.compareAndSet(n, n - 1));
+      queued.decrement();
+    }
+
+    private void uncountPending() {
+      queued.add(-pending.getAndSet(0));
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package todddo.java.infra.execution;
+
+import io.micronaut.context.annotation.Value;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import todddo.java.infra.tracing.Trace;
+import todddo.java.infra.tracing.Tracing;
+
+/**
+ * Decides which threads repo operations run on, and which threads their results are delivered on.
+ *
+ * <p>Selected with todddo.repo.execution.mode:
+ *
+ * <ul>
+ *   <li>synchronous: run on the subscribing thread, which is the Netty event loop when serving a
+ *       request. Only suitable for stores that never block.
+ *   <li>bounded-pool: run on a dedicated pool of todddo.repo.execution.pool-size threads and
+ *       deliver results from there. For stores that block on IO.
+ *   <li>io-computation: subscribe on the io scheduler, then hop to the computation scheduler to
+ *       deliver results. The default, and what repos always did before this was configurable.
+ * </ul>
+ *
+ * <p>When a request is traced, single and maybe operations add spans for waiting to be run
+ * (scheduler.subscribe-on), running (repo) and waiting to be delivered (scheduler.observe-on).
+ */
+@Singleton
+public class RepoExecution {
+
+  public enum Mode {
+    SYNCHRONOUS,
+    BOUNDED_POOL,
+    IO_COMPUTATION
+  }
+
+  private final Mode mode;
+  @Nullable private final ExecutorService pool;
+  @Nullable private final Scheduler pooled;
+  private final Tracing tracing;
+
+  public RepoExecution(final Mode mode, final int poolSize) {
+    this(mode, poolSize, Tracing.disabled());
+  }
+
+  @Inject
+  public RepoExecution(
+      @Value("${todddo.repo.execution.mode:io-computation}") final Mode mode,
+      @Value("${todddo.repo.execution.pool-size:8}") final int poolSize,
+      final Tracing tracing) {
+    this.tracing = tracing;
+    this.mode = mode;
+    if (mode == Mode.BOUNDED_POOL) {
+      this.pool = Executors.newFixedThreadPool(poolSize, new RepoThreadFactory());
+      this.pooled = Schedulers.from(pool);
+    } else {
+      this.pool = null;
+      this.pooled = null;
+    }
+  }
+
+  @Nonnull
+  public static RepoExecution synchronous() {
+    return new RepoExecution(Mode.SYNCHRONOUS, 0);
+  }
+
+  @Nonnull
+  public static RepoExecution boundedPool(final int poolSize) {
+    return new RepoExecution(Mode.BOUNDED_POOL, poolSize);
+  }
+
+  @Nonnull
+  public static RepoExecution ioComputation() {
+    return new RepoExecution(Mode.IO_COMPUTATION, 0);
+  }
+
+  @Nonnull
+  public <T> Single<T> single(@Nonnull final Callable<T> callable) {
+    if (!tracing.isEnabled()) {
+      return schedule(Single.fromCallable(callable));
+    }
+    return Single.defer(
+        () -> {
+          final Trace trace = tracing.current();
+          if (trace == null) {
+            return schedule(Single.fromCallable(callable));
+          }
+          final RepoSpans spans = new RepoSpans(trace, subscribeOn() != null, observeOn() != null);
+          return schedule(Single.fromCallable(spans.around(callable)))
+              .doOnEvent((result, error) -> spans.delivered());
+        });
+  }
+
+  /** The callable may return null to signal an empty Maybe. */
+  @Nonnull
+  public <T> Maybe<T> maybe(@Nonnull final Callable<T> callable) {
+    if (!tracing.isEnabled()) {
+      return schedule(Maybe.fromCallable(callable));
+    }
+    return Maybe.defer(
+        () -> {
+          final Trace trace = tracing.current();
+          if (trace == null) {
+            return schedule(Maybe.fromCallable(callable));
+          }
+          final RepoSpans spans = new RepoSpans(trace, subscribeOn() != null, observeOn() != null);
+          return schedule(Maybe.fromCallable(spans.around(callable)))
+              .doOnEvent((result, error) -> spans.delivered());
+        });
+  }
+
+  /**
+   * For operations that already complete on a thread of the repo's own, e.g. once a write is
+   * durable: nothing is subscribed on another scheduler, and results are handed off to the
+   * scheduler they would otherwise be delivered on, so that downstream work stays off the repo's
+   * thread. In synchronous mode they are delivered on the repo's thread.
+   */
+  @Nonnull
+  public <T> Maybe<T> maybe(@Nonnull final Maybe<T> maybe) {
+    final Scheduler observeOn = observeOn();
+    final Scheduler deliverOn = observeOn != null ? observeOn : subscribeOn();
+    if (!tracing.isEnabled()) {
+      return deliverOn == null ? maybe : maybe.observeOn(deliverOn);
+    }
+    return Maybe.defer(
+        () -> {
+          final Trace trace = tracing.current();
+          if (trace == null) {
+            return deliverOn == null ? maybe : maybe.observeOn(deliverOn);
+          }
+          final RepoSpans spans = new RepoSpans(trace, false, deliverOn != null);
+          final Maybe<T> ran = maybe.doOnEvent((result, error) -> spans.ran());
+          return (deliverOn == null ? ran : ran.observeOn(deliverOn))
+              .doOnEvent((result, error) -> spans.delivered());
+        });
+  }
+
+  /** Not traced: a stream outlives the response it is written to. */
+  @Nonnull
+  public <T> Flowable<T> flowable(@Nonnull final Flowable<T> flowable) {
+    final Scheduler subscribeOn = subscribeOn();
+    final Scheduler observeOn = observeOn();
+    Flowable<T> scheduled = flowable;
+    if (subscribeOn != null) {
+      scheduled = scheduled.subscribeOn(subscribeOn);
+    }
+    if (observeOn != null) {
+      scheduled = scheduled.observeOn(observeOn);
+    }
+    return scheduled;
+  }
+
+  private <T> Single<T> schedule(final Single<T> single) {
+    final Scheduler subscribeOn = subscribeOn();
+    final Scheduler observeOn = observeOn();
+    Single<T> scheduled = single;
+    if (subscribeOn != null) {
+      scheduled = scheduled.subscribeOn(subscribeOn);
+    }
+    if (observeOn != null) {
+      scheduled = scheduled.observeOn(observeOn);
+    }
+    return scheduled;
+  }
+
+  private <T> Maybe<T> schedule(final Maybe<T> maybe) {
+    final Scheduler subscribeOn = subscribeOn();
+    final Scheduler observeOn = observeOn();
+    Maybe<T> scheduled = maybe;
+    if (subscribeOn != null) {
+      scheduled = scheduled.subscribeOn(subscribeOn);
+    }
+    if (observeOn != null) {
+      scheduled = scheduled.observeOn(observeOn);
+    }
+    return scheduled;
+  }
+
+  /**
+   * Rx's schedulers are looked up each time rather than kept, so whichever handlers are installed
+   * for them, e.g. by {@link SchedulerInstrumentation}, apply.
+   */
+  @Nullable
+  private Scheduler subscribeOn() {
+    switch (mode) {
+      case SYNCHRONOUS:
+        return null;
+      case BOUNDED_POOL:
+        return pooled;
+      case IO_COMPUTATION:
+      default:
+        return Schedulers.io();
+    }
+  }
+
+  @Nullable
+  private Scheduler observeOn() {
+    return mode == Mode.IO_COMPUTATION ? Schedulers.computation() : null;
+  }
+
+  @PreDestroy
+  public void close() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  /** Times one repo operation of a traced request, from when it was subscribed to. */
+  private static class RepoSpans {
+
+    private final Trace trace;
+    private final boolean queued;
+    private final boolean handedOff;
+    private final long subscribed = System.nanoTime();
+    private volatile long started = subscribed;
+    private volatile long ran;
+
+    RepoSpans(final Trace trace, final boolean queued, final boolean handedOff) {
+      this.trace = trace;
+      this.queued = queued;
+      this.handedOff = handedOff;
+    }
+
+    <T> Callable<T> around(final Callable<T> callable) {
+      return () -> {
+        started = System.nanoTime();
+        if (queued) {
+          trace.span("scheduler.subscribe-on", subscribed, started);
+        }
+        try {
+          return callable.call();
+        } finally {
+          ran();
+        }
+      };
+    }
+
+    void ran() {
+      ran = System.nanoTime();
+      trace.span("repo", started, ran);
+    }
+
+    void delivered() {
+      if (handedOff) {
+        trace.span("scheduler.observe-on", ran, System.nanoTime());
+      }
+    }
+  }
+
+  private static class RepoThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(@Nonnull final Runnable r) {
+      final Thread thread = new Thread(r, "todddo-repo-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package todddo.java.infra.execution;
+
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.StartupEvent;
+import javax.annotation.Nonnull;
+import javax.inject.Singleton;
+
+/**
+ * Installs the queue-counting RxJava scheduler handlers once, when the application starts, so that
+ * neither the repos' execution nor the metrics that read the counts change global Rx state.
+ */
+@Singleton
+public class SchedulerInstrumentation implements ApplicationEventListener<StartupEvent> {
+
+  @Override
+  public void onApplicationEvent(@Nonnull final StartupEvent event) {
+    QueueCountingScheduler.instrumentRxSchedulers();
+  }
+}
@@ -0,0 +1,98 @@
+package todddo.java.infra.ids;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * The Ids a store was given Todos under, e.g. by another node, that are outside of its own
+ * generator's range, so that stores that list Todos by walking their own range list those too.
+ *
+ * <p>Every other range is wholly below or wholly above the generator's, so in Id order these Ids
+ * come either before all of its own or after them. Thread-safe.
+ */
+public final class ForeignIds {
+
+  private final IdGenerator ids;
+  private final ConcurrentSkipListSet<Long> foreign = new ConcurrentSkipListSet<>();
+
+  public ForeignIds(@Nonnull final IdGenerator ids) {
+    this.ids = ids;
+  }
+
+  /**
+   * Makes sure the generator never hands the Id out, and keeps it if it is not the generator's.
+   * Call once there is a Todo under it.
+   */
+  public void put(final long id) {
+    ids.advancePast(id);
+    if (!own(id)) {
+      foreign.add(id);
+    }
+  }
+
+  /**
+   * Forgets the Id, once there is no Todo under it, unless one was put back under it meanwhile.
+   *
+   * @param present whether there is a Todo under an Id, checked after forgetting it
+   */
+  public void remove(final long id, @Nonnull final LongPredicate present) {
+    if (!own(id) && foreign.remove(id) && present.test(id)) {
+      foreign.add(id);
+    }
+  }
+
+  /**
+   * The Todos under these Ids, around those of the store's own range, all in ascending Id order.
+   *
+   * @param after exclusive cursor, or 0 to start from the first Todo
+   * @param own the store's own Todos with Ids greater than after, in ascending Id order
+   * @param read the Todo under an Id, or null if there no longer is one
+   */
+  @Nonnull
+  public <T> Iterator<T> around(
+      final long after, @Nonnull final Iterator<T> own, @Nonnull final LongFunction<T> read) {
+    final Iterator<Long> before =
+        after < ids.first() - 1
+            ? foreign.subSet(after, false, ids.first(), false).iterator()
+            : Collections.<Long>emptyIterator();
+    final Iterator<Long> beyond = foreign.tailSet(Math.max(after, ids.first()), false).iterator();
+    return new Iterator<T>() {
+
+      @Nullable private T next;
+
+      @Override
+      public boolean hasNext() {
+        while (next == null && before.hasNext()) {
+          next = read.apply(before.next());
+        }
+        if (next == null && own.hasNext()) {
+          next = own.next();
+        }
+        while (next == null && beyond.hasNext()) {
+          next = read.apply(beyond.next());
+        }
+        return next != null;
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final T found = next;
+        next = null;
+        return found;
+      }
+    };
+  }
+
+  private boolean own(final long id) {
+    return id >= ids.first() && id <= ids.last();
+  }
+}
@@ -0,0 +1,33 @@
+package todddo.java.infra.ids;
+
+/**
+ * Where a store's Todo Ids come from.
+ *
+ * <p>Ids are handed out in ascending order from a range of their own, starting at first, so that
+ * stores can walk the Ids handed out so far in order. Implementations must be thread-safe, and
+ * should not allocate, as next is called on every create.
+ */
+public interface IdGenerator {
+
+  /** An Id greater than any handed out before. */
+  long next();
+
+  /**
+   * Contiguous Ids, greater than any handed out before.
+   *
+   * @return the first of count Ids
+   */
+  long range(final int count);
+
+  /** The least Id this ever hands out. */
+  long first();
+
+  /** The greatest Id handed out so far, or first - 1 if none have been. */
+  long last();
+
+  /**
+   * Makes sure the Id is never handed out, e.g. because it was recovered from disk. Ids outside of
+   * this generator's range are ignored.
+   */
+  void advancePast(final long id);
+}
@@ -0,0 +1,92 @@
+package todddo.java.infra.ids;
+
+import io.micronaut.context.annotation.Value;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Ids from a range of the node's own, so that instances given different todddo.repo.ids.node
+ * numbers never hand out the same Id, without talking to each other.
+ *
+ * <p>The top bits of an Id are the node, the rest count up from 1 within the node's range, so node
+ * 0 hands out 1, 2, 3... as a single instance always has, and each node's Ids are dense for the
+ * stores that walk them. Ids sort by node first, not by when they were created.
+ *
+ * <p>Use another IdGenerator by replacing this bean.
+ */
+@Singleton
+public final class NodeIds implements IdGenerator {
+
+  /** Bits of an Id that count within a node; the rest, bar the sign bit, are the node. */
+  static final int COUNTER_BITS = 47;
+
+  /** How many nodes there can be: node numbers go from 0 up to one less than this. */
+  public static final int NODES = 1 << (Long.SIZE - 1 - COUNTER_BITS);
+
+  private final int node;
+  private final long first;
+  private final long max;
+  private final AtomicLong next;
+
+  @Inject
+  public NodeIds(@Value("${todddo.repo.ids.node:0}") final int node) {
+    if (node < 0 || node >= NODES) {
+      throw new IllegalArgumentException(
+          "Node must be from 0 to " + (NODES - 1) + ", got [" + node + "]");
+    }
+    this.node = node;
+    this.first = ((long) node << COUNTER_BITS) + 1L;
+    this.max = first + ((1L << COUNTER_BITS) - 2L);
+    this.next = new AtomicLong(first);
+  }
+
+  /** Ids for a single instance: 1, 2, 3... */
+  public static NodeIds single() {
+    return new NodeIds(0);
+  }
+
+  public int node() {
+    return node;
+  }
+
+  @Override
+  public long next() {
+    final long id = next.getAndIncrement();
+    if (id < first || id > max) {
+      throw exhausted();
+    }
+    return id;
+  }
+
+  @Override
+  public long range(final int count) {
+    final long id = next.getAndAdd(count);
+    if (id < first || id > max - count + 1L) {
+      throw exhausted();
+    }
+    return id;
+  }
+
+  @Override
+  public long first() {
+    return first;
+  }
+
+  @Override
+  public long last() {
+    final long unused = next.get();
+    return unused < first ? max : Math.min(unused - 1L, max);
+  }
+
+  @Override
+  public void advancePast(final long id) {
+    if (id >= first && id <= max) {
+      next.accumulateAndGet(id + 1L, Math::max);
+    }
+  }
+
+  private IllegalStateException exhausted() {
+    return new IllegalStateException("Node [" + node + "] has handed out all of its Ids");
+  }
+}
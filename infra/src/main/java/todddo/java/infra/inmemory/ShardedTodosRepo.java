@@ -0,0 +1,553 @@
+package todddo.java.infra.inmemory;
+
+import fj.data.Either;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.jctools.maps.NonBlockingHashMapLong;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.ids.ForeignIds;
+import todddo.java.infra.ids.IdGenerator;
+import todddo.java.infra.ids.NodeIds;
+import todddo.java.infra.metrics.Metered;
+import todddo.java.infra.versions.VersionedTask;
+import todddo.java.infra.versions.Versions;
+
+/**
+ * An in-memory repo that partitions Todos across shards, each with its own blocks of Todos and
+ * versions, so creates on different threads share no counter.
+ *
+ * <p>Ids come from {@link IdBlocks}: each stripe of threads, one per shard, leases a block of Ids
+ * at a time, and a block's Todos are kept in one array of slots, in one shard, with consecutive
+ * blocks going to consecutive shards. A get finds the block in its shard's map, then reads a slot;
+ * a create, once its stripe has a block, only touches that block and its shard's versions. Ids are
+ * unique and roughly ordered: a Todo may get a smaller Id than one created just before it on
+ * another thread. A block is dropped once its last Todo is deleted, unless it is still being leased
+ * from, so deleted Todos do not keep their blocks around.
+ *
+ * <p>Each Todo's versions come from its shard, so they only order writes to that Todo. The
+ * collection's version is the sum of the shards', which, as they only go up, is the same later only
+ * if each of them is.
+ *
+ * <p>Listing walks blocks in Id order, skipping empty slots, so as with {@link CompactTodosRepo} a
+ * page costs O(limit + deleted or unused Ids in range) rather than a sort, and nothing is locked:
+ * writes compare-and-swap the slot they read. Todos put under Ids from outside of the generator's
+ * range, e.g. by another node, are kept in blocks all the same, and listed from a {@link
+ * ForeignIds} set around it.
+ */
+@Singleton
+@Requires(property = "todddo.repo.store", value = "sharded")
+@Metered
+public class ShardedTodosRepo implements Todo.Repo {
+
+  private final RepoExecution execution;
+  private final IdBlocks ids;
+  private final ForeignIds foreign;
+  private final Shard[] shards;
+  private final long epoch = Versions.newEpoch();
+
+  @Inject
+  public ShardedTodosRepo(
+      @Nonnull final RepoExecution execution,
+      @Nonnull final IdGenerator ids,
+      @Value("${todddo.repo.sharded.shards:0}") final int shards,
+      @Value("${todddo.repo.sharded.id-block-size:1024}") final int idBlockSize) {
+    this.execution = execution;
+    this.shards = new Shard[powerOfTwoAtLeast(shards > 0 ? shards : availableProcessors())];
+    this.ids = new IdBlocks(ids, idBlockSize, this.shards.length);
+    this.foreign = new ForeignIds(ids);
+    for (int i = 0; i < this.shards.length; i++) {
+      this.shards[i] = new Shard();
+    }
+  }
+
+  /** A repo for a single instance, with Ids from 1. */
+  public ShardedTodosRepo(
+      @Nonnull final RepoExecution execution, final int shards, final int idBlockSize) {
+    this(execution, NodeIds.single(), shards, idBlockSize);
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> create(@Nonnull final Todo.Task task) {
+    return execution.single(
+        () -> {
+          while (true) {
+            final Todo created = insert(ids.next(), task);
+            if (created != null) {
+              return created;
+            }
+          }
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> put(@Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return execution.single(
+        () -> {
+          final Todo put = write(id.getValue(), task);
+          foreign.put(id.getValue());
+          return put;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<Todo, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return execution.single(
+        () -> {
+          while (true) {
+            final Todo put = insert(id.getValue(), task);
+            if (put != null) {
+              foreign.put(id.getValue());
+              return Either.right(put);
+            }
+            // Taken, unless deleted again before we could read it
+            final Todo current = VersionedTask.decodeOrNull(id.getValue(), read(id.getValue()));
+            if (current != null) {
+              return Either.left(current);
+            }
+          }
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> get(@Nonnull final Todo.Id id) {
+    return execution.maybe(() -> VersionedTask.decodeOrNull(id.getValue(), read(id.getValue())));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Long> versionOf(@Nonnull final Todo.Id id) {
+    return execution.maybe(() -> VersionedTask.versionOrNull(read(id.getValue())));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> delete(@Nonnull final Todo.Id id) {
+    return execution.maybe(() -> remove(id.getValue()));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list() {
+    return list(null, Integer.MAX_VALUE);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    return execution.single(
+        () -> {
+          final List<Todo> page = new ArrayList<>();
+          final Iterator<Todo> todos = ordered(after);
+          while (page.size() < limit && todos.hasNext()) {
+            page.add(todos.next());
+          }
+          return page;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+    return execution.flowable(Flowable.fromIterable(() -> ordered(after)));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> update(@Nonnull final Todo todo) {
+    return execution.maybe(() -> replace(todo));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndUpdate(
+      @Nonnull final Todo todo, final long expectedVersion) {
+    return execution.maybe(
+        () -> {
+          final long id = todo.getId().getValue();
+          final Shard shard = shard(id);
+          final Block block = block(id);
+          while (true) {
+            final byte[] current = block == null ? null : block.get(ids.slot(id));
+            if (current == null) {
+              return null;
+            } else if (VersionedTask.version(current) != expectedVersion) {
+              return Either.left(VersionedTask.decodeOrNull(id, current));
+            }
+            final long version = shard.versions.next();
+            if (block.compareAndSet(
+                ids.slot(id), current, VersionedTask.encode(version, todo.getTask()))) {
+              shard.versions.written();
+              return Either.right(todo(id, todo.getTask(), version));
+            }
+          }
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndDelete(
+      @Nonnull final Todo.Id id, final long expectedVersion) {
+    return execution.maybe(
+        () -> {
+          final Shard shard = shard(id.getValue());
+          final Block block = block(id.getValue());
+          final int slot = ids.slot(id.getValue());
+          while (true) {
+            final byte[] current = block == null ? null : block.get(slot);
+            if (current == null) {
+              return null;
+            } else if (VersionedTask.version(current) != expectedVersion) {
+              return Either.left(VersionedTask.decodeOrNull(id.getValue(), current));
+            } else if (block.compareAndSet(slot, current, null)) {
+              emptied(id.getValue(), block);
+              foreign.remove(id.getValue(), this::present);
+              shard.size.decrement();
+              shard.versions.written();
+              return Either.right(VersionedTask.decodeOrNull(id.getValue(), current));
+            }
+          }
+        });
+  }
+
+  @Override
+  public long epoch() {
+    return epoch;
+  }
+
+  @Override
+  public long version() {
+    long version = 0;
+    for (final Shard shard : shards) {
+      version += shard.versions.collection();
+    }
+    return version;
+  }
+
+  @Override
+  public long size() {
+    long size = 0;
+    for (final Shard shard : shards) {
+      size += shard.size.sum();
+    }
+    return size;
+  }
+
+  /** How many shards there are, after rounding up to a power of two. */
+  int shards() {
+    return shards.length;
+  }
+
+  /** How many blocks are kept, across shards. */
+  long blocks() {
+    long blocks = 0;
+    for (final Shard shard : shards) {
+      blocks += shard.blocks.size();
+    }
+    return blocks;
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> createAll(@Nonnull final List<Todo.Task> tasks) {
+    return execution.single(
+        () -> {
+          final long firstId = ids.range(tasks.size());
+          final List<Todo> created = new ArrayList<>(tasks.size());
+          for (int i = 0; i < tasks.size(); i++) {
+            created.add(write(firstId + i, tasks.get(i)));
+          }
+          return created;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> updateAll(@Nonnull final List<Todo> todos) {
+    return execution.single(
+        () -> {
+          final List<Optional<Todo>> updated = new ArrayList<>(todos.size());
+          for (final Todo todo : todos) {
+            updated.add(Optional.ofNullable(replace(todo)));
+          }
+          return updated;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> deleteAll(@Nonnull final List<Todo.Id> ids) {
+    return execution.single(
+        () -> {
+          final List<Optional<Todo>> deleted = new ArrayList<>(ids.size());
+          for (final Todo.Id id : ids) {
+            deleted.add(Optional.ofNullable(remove(id.getValue())));
+          }
+          return deleted;
+        });
+  }
+
+  private Shard shard(final long id) {
+    return shards[(int) (ids.block(id) & (shards.length - 1))];
+  }
+
+  /** The block an Id is in, or null if there is no Todo in it. */
+  @Nullable
+  private Block block(final long id) {
+    return shard(id).blocks.get(ids.block(id));
+  }
+
+  private boolean present(final long id) {
+    return read(id) != null;
+  }
+
+  @Nullable
+  private byte[] read(final long id) {
+    final Block block = block(id);
+    return block == null ? null : block.get(ids.slot(id));
+  }
+
+  /** Writes the task under the Id, whether or not there is a Todo under it already. */
+  private Todo write(final long id, final Todo.Task task) {
+    final Shard shard = shard(id);
+    final Block block = claimed(id);
+    final long version = shard.versions.next();
+    if (block.getAndSet(ids.slot(id), VersionedTask.encode(version, task)) == null) {
+      shard.size.increment();
+    } else {
+      // Replaced a Todo, which had the slot claimed already
+      block.unclaim();
+    }
+    shard.versions.written();
+    return todo(id, task, version);
+  }
+
+  /**
+   * Writes the task under the Id only if there is no Todo under it, e.g. one put there under an Id
+   * still in a thread's lease.
+   *
+   * @return the created Todo, or null if the Id was taken
+   */
+  @Nullable
+  private Todo insert(final long id, final Todo.Task task) {
+    final Shard shard = shard(id);
+    final Block block = claimed(id);
+    final long version = shard.versions.next();
+    if (!block.compareAndSet(ids.slot(id), null, VersionedTask.encode(version, task))) {
+      emptied(id, block);
+      return null;
+    }
+    shard.size.increment();
+    shard.versions.written();
+    return todo(id, task, version);
+  }
+
+  /**
+   * The block an Id is in, made if there is none, with a slot claimed to write the Id's Todo to.
+   * Give the claim back with {@link #emptied} if nothing is written after all.
+   */
+  private Block claimed(final long id) {
+    final Shard shard = shard(id);
+    final long number = ids.block(id);
+    while (true) {
+      final Block block = shard.blocks.get(number);
+      if (block == null) {
+        final Block empty = new Block(ids.blockSize());
+        empty.claim();
+        final Block raced = shard.blocks.putIfAbsent(number, empty);
+        if (raced == null) {
+          return empty;
+        }
+      } else if (block.claim()) {
+        return block;
+      } else {
+        // Dropped, but not out of the map yet
+        shard.blocks.remove(number, block);
+      }
+    }
+  }
+
+  /**
+   * Counts a slot of the block as empty again, and drops the block if it was its last Todo, and it
+   * is not leased: while it is, it gets Todos again.
+   */
+  private void emptied(final long id, final Block block) {
+    final long number = ids.block(id);
+    if (block.unclaim() && !ids.leased(number) && block.drop()) {
+      shard(id).blocks.remove(number, block);
+    }
+  }
+
+  @Nullable
+  private Todo remove(final long id) {
+    final Block block = block(id);
+    final byte[] removed = block == null ? null : block.getAndSet(ids.slot(id), null);
+    if (removed != null) {
+      emptied(id, block);
+      foreign.remove(id, this::present);
+      final Shard shard = shard(id);
+      shard.size.decrement();
+      shard.versions.written();
+    }
+    return VersionedTask.decodeOrNull(id, removed);
+  }
+
+  /**
+   * As in CompactTodosRepo, takes the new version after reading the current bytes, and only swaps
+   * them if they are still current.
+   *
+   * @return the updated Todo, or null if there was no such Todo
+   */
+  @Nullable
+  private Todo replace(final Todo todo) {
+    final long id = todo.getId().getValue();
+    final Shard shard = shard(id);
+    final Block block = block(id);
+    if (block == null) {
+      return null;
+    }
+    while (true) {
+      final byte[] current = block.get(ids.slot(id));
+      if (current == null) {
+        return null;
+      }
+      final long version = shard.versions.next();
+      if (block.compareAndSet(
+          ids.slot(id), current, VersionedTask.encode(version, todo.getTask()))) {
+        shard.versions.written();
+        return todo(id, todo.getTask(), version);
+      }
+    }
+  }
+
+  private Iterator<Todo> ordered(@Nullable final Todo.Id after) {
+    return foreign.around(
+        after == null ? 0 : after.getValue(),
+        new OrderedIterator(after),
+        id -> VersionedTask.decodeOrNull(id, read(id)));
+  }
+
+  private static Todo todo(final long id, final Todo.Task task, final long version) {
+    return Todo.builder()
+        .id(Todo.Id.builder().value(id).build())
+        .task(task)
+        .version(version)
+        .build();
+  }
+
+  private static int availableProcessors() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  private static int powerOfTwoAtLeast(final int n) {
+    return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+  }
+
+  private static final class Shard {
+    /** Blocks with Todos in them, by block number. */
+    final NonBlockingHashMapLong<Block> blocks = new NonBlockingHashMapLong<>();
+
+    final LongAdder size = new LongAdder();
+    final Versions versions = new Versions();
+  }
+
+  /**
+   * A block's Todos by slot, null if there is none in a slot, and how many slots are taken or about
+   * to be. Once dropped, with none taken, nothing more is written to it: writers make another.
+   */
+  private static final class Block extends AtomicReferenceArray<byte[]> {
+    private static final int DROPPED = -1;
+
+    private final AtomicInteger claimed = new AtomicInteger();
+
+    Block(final int size) {
+      super(size);
+    }
+
+    /** Claims a slot to write to, unless the block has been dropped. */
+    boolean claim() {
+      while (true) {
+        final int current = claimed.get();
+        if (current == DROPPED) {
+          return false;
+        } else if (claimed.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /** @return whether that was the last slot claimed */
+    boolean unclaim() {
+      return claimed.decrementAndGet() == 0;
+    }
+
+    /** Drops the block, unless a slot has been claimed since. */
+    boolean drop() {
+      return claimed.compareAndSet(0, DROPPED);
+    }
+  }
+
+  /**
+   * Walks Ids in ascending order up to the last one leased when iteration started, looking each
+   * block up once and skipping blocks nothing was written to.
+   */
+  private class OrderedIterator implements Iterator<Todo> {
+
+    private final long last = ids.lastLeased();
+    private long cursor;
+    private long blockNumber = -1L;
+    @Nullable private Block block;
+    @Nullable private Todo next;
+
+    OrderedIterator(@Nullable final Todo.Id after) {
+      this.cursor = Math.max(ids.first() - 1, after == null ? 0 : after.getValue());
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && cursor < last) {
+        cursor++;
+        if (ids.block(cursor) != blockNumber) {
+          blockNumber = ids.block(cursor);
+          block = block(cursor);
+        }
+        if (block == null) {
+          cursor = ids.first() - 1 + (blockNumber + 1) * ids.blockSize();
+        } else {
+          next = VersionedTask.decodeOrNull(cursor, block.get(ids.slot(cursor)));
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public Todo next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final Todo todo = next;
+      next = null;
+      return todo;
+    }
+  }
+}
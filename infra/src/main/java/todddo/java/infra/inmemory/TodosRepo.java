@@ -1,30 +1,77 @@
 package todddo.java.infra.inmemory;
 
+import fj.data.Either;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
-import io.reactivex.schedulers.Schedulers;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.NavigableMap;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
 import javax.inject.Singleton;
 import lombok.Builder;
 import lombok.NonNull;
-import lombok.Value;
 import org.mapstruct.Mapping;
 import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.ids.IdGenerator;
+import todddo.java.infra.ids.NodeIds;
+import todddo.java.infra.metrics.Metered;
+import todddo.java.infra.search.Indexer;
+import todddo.java.infra.versions.Versions;
 
+/**
+ * An in-memory repo of boxed Ids to PersistedTodos, in an ordered map.
+ *
+ * <p>With todddo.repo.in-memory.search-index on, searches and suggestions use an {@link Indexer}
+ * that writes only queue their Ids for; otherwise, as with the other stores, they look at every
+ * Todo, and writes pay nothing for them.
+ */
 @Singleton
+@Requires(property = "todddo.repo.store", value = "in-memory", defaultValue = "in-memory")
+@Metered
 public class TodosRepo implements Todo.Repo {
 
+  /** Ids writes may queue for the index before one of them brings it up to date. */
+  private static final int INDEX_CATCH_UP_AFTER = 4096;
+
   private final Mapper mapper;
-  private final AtomicLong idGenerator = new AtomicLong(1L);
+  private final RepoExecution execution;
+  private final IdGenerator ids;
+  private final Versions versions = new Versions();
+  @Nullable private final Indexer indexer;
 
-  public TodosRepo(@Nonnull final Mapper mapper) {
+  @Inject
+  public TodosRepo(
+      @Nonnull final Mapper mapper,
+      @Nonnull final RepoExecution execution,
+      @Nonnull final IdGenerator ids,
+      @Value("${todddo.repo.in-memory.search-index:false}") final boolean searchIndex) {
     this.mapper = mapper;
+    this.execution = execution;
+    this.ids = ids;
+    this.indexer = searchIndex ? new Indexer(this::task, INDEX_CATCH_UP_AFTER) : null;
+  }
+
+  /** A repo for a single instance, with Ids from 1 and a search index if asked for. */
+  public TodosRepo(
+      @Nonnull final Mapper mapper,
+      @Nonnull final RepoExecution execution,
+      final boolean searchIndex) {
+    this(mapper, execution, NodeIds.single(), searchIndex);
+  }
+
+  /** A repo for a single instance, with Ids from 1 and no search index. */
+  public TodosRepo(@Nonnull final Mapper mapper, @Nonnull final RepoExecution execution) {
+    this(mapper, execution, false);
   }
 
   @org.mapstruct.Mapper(
@@ -34,93 +81,355 @@ public class TodosRepo implements Todo.Repo {
 
     @Mapping(source = "id", target = "id")
     @Mapping(source = "persistedTodo.task", target = "task")
+    @Mapping(source = "persistedTodo.version", target = "version")
     Todo persistedToDomainTodo(Todo.Id id, PersistedTodo persistedTodo);
 
     @Mapping(source = "task", target = "task")
-    PersistedTodo domainTaskToPersisted(Todo.Task task);
+    @Mapping(source = "version", target = "version")
+    PersistedTodo domainTaskToPersisted(Todo.Task task, long version);
   }
 
-  @Value
+  @lombok.Value
   @Builder
   static class PersistedTodo {
 
     @NonNull Task task;
+    long version;
 
-    @Value
+    @lombok.Value
     @Builder
     static class Task {
       @NonNull String value;
     }
   }
 
-  private ConcurrentHashMap<Todo.Id, PersistedTodo> map = new ConcurrentHashMap<>();
+  /** Kept ordered by Id so that listing never needs to sort, and pages can start from a cursor. */
+  private ConcurrentSkipListMap<Todo.Id, PersistedTodo> map = new ConcurrentSkipListMap<>();
+
+  /** Counted alongside the map, whose own size walks every entry. */
+  private final LongAdder size = new LongAdder();
 
   @Override
   @Nonnull
   public Single<Todo> create(@Nonnull final Todo.Task task) {
-    return Single.fromCallable(
-            () -> {
-              final PersistedTodo persistable = mapper.domainTaskToPersisted(task);
-              final Todo.Id id = Todo.Id.builder().value(idGenerator.getAndIncrement()).build();
-              map.put(id, persistable);
-              return mapper.persistedToDomainTodo(id, persistable);
-            })
-        .subscribeOn(Schedulers.io())
-        .observeOn(Schedulers.computation());
+    return execution.single(
+        () -> {
+          final PersistedTodo persistable = mapper.domainTaskToPersisted(task, versions.next());
+          final Todo.Id id = Todo.Id.builder().value(ids.next()).build();
+          map.put(id, persistable);
+          size.increment();
+          indexed(id);
+          versions.written();
+          return mapper.persistedToDomainTodo(id, persistable);
+        });
   }
 
   @Nonnull
   @Override
   public Maybe<Todo> get(@Nonnull final Todo.Id id) {
-    return Maybe.fromCallable(
-            () ->
-                Optional.ofNullable(map.get(id))
-                    .map(
-                        persisted -> {
-                          return mapper.persistedToDomainTodo(id, persisted);
-                        })
-                    .orElse(null))
-        .subscribeOn(Schedulers.io())
-        .observeOn(Schedulers.computation());
+    return execution.maybe(
+        () ->
+            Optional.ofNullable(map.get(id))
+                .map(
+                    persisted -> {
+                      return mapper.persistedToDomainTodo(id, persisted);
+                    })
+                .orElse(null));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Long> versionOf(@Nonnull final Todo.Id id) {
+    return execution.maybe(
+        () -> {
+          final PersistedTodo persisted = map.get(id);
+          return persisted == null ? null : persisted.getVersion();
+        });
   }
 
   @Nonnull
   @Override
   public Maybe<Todo> delete(@Nonnull final Todo.Id id) {
-    return Maybe.fromCallable(
-            () ->
-                Optional.ofNullable(map.remove(id))
-                    .map(persisted -> mapper.persistedToDomainTodo(id, persisted))
-                    .orElse(null))
-        .subscribeOn(Schedulers.io())
-        .observeOn(Schedulers.computation());
+    return execution.maybe(
+        () ->
+            Optional.ofNullable(remove(id))
+                .map(persisted -> mapper.persistedToDomainTodo(id, persisted))
+                .orElse(null));
   }
 
   @Nonnull
   @Override
   public Single<List<Todo>> list() {
-    return Single.fromCallable(
-            () ->
-                map.entrySet().stream()
-                    .map(entry -> mapper.persistedToDomainTodo(entry.getKey(), entry.getValue()))
-                    .sorted(Comparator.comparingLong(t -> t.getId().getValue()))
-                    .collect(Collectors.toList()))
-        .subscribeOn(Schedulers.io())
-        .observeOn(Schedulers.computation());
+    return execution.single(
+        () ->
+            map.entrySet().stream()
+                .map(entry -> mapper.persistedToDomainTodo(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList()));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    return execution.single(
+        () -> {
+          final NavigableMap<Todo.Id, PersistedTodo> page =
+              after == null ? map : map.tailMap(after, false);
+          return page.entrySet().stream()
+              .limit(limit)
+              .map(entry -> mapper.persistedToDomainTodo(entry.getKey(), entry.getValue()))
+              .collect(Collectors.toList());
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+    return execution.flowable(
+        Flowable.defer(
+                () -> {
+                  final NavigableMap<Todo.Id, PersistedTodo> tail =
+                      after == null ? map : map.tailMap(after, false);
+                  return Flowable.fromIterable(tail.entrySet());
+                })
+            .map(entry -> mapper.persistedToDomainTodo(entry.getKey(), entry.getValue())));
   }
 
   @Nonnull
   @Override
   public Maybe<Todo> update(@Nonnull final Todo todo) {
+    return execution.maybe(() -> replace(todo.getId(), todo.getTask()));
+  }
+
+  /** Moves this repo's own Ids past the given one, so it never hands it out itself. */
+  @Nonnull
+  @Override
+  public Single<Todo> put(@Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return execution.single(
+        () -> {
+          while (true) {
+            final PersistedTodo current = map.get(id);
+            final PersistedTodo persisted = mapper.domainTaskToPersisted(task, versions.next());
+            if (current == null
+                ? map.putIfAbsent(id, persisted) == null
+                : map.replace(id, current, persisted)) {
+              if (current == null) {
+                size.increment();
+              }
+              indexed(id);
+              ids.advancePast(id.getValue());
+              versions.written();
+              return mapper.persistedToDomainTodo(id, persisted);
+            }
+          }
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<Todo, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return execution.single(
+        () -> {
+          final PersistedTodo persisted = mapper.domainTaskToPersisted(task, versions.next());
+          final PersistedTodo current = map.putIfAbsent(id, persisted);
+          if (current != null) {
+            return Either.left(mapper.persistedToDomainTodo(id, current));
+          }
+          size.increment();
+          indexed(id);
+          ids.advancePast(id.getValue());
+          versions.written();
+          return Either.right(mapper.persistedToDomainTodo(id, persisted));
+        });
+  }
+
+  /** Swaps in the new Todo only if the one whose version was checked is still current. */
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndUpdate(
+      @Nonnull final Todo todo, final long expectedVersion) {
+    return execution.maybe(
+        () -> {
+          final Todo.Id id = todo.getId();
+          while (true) {
+            final PersistedTodo current = map.get(id);
+            if (current == null) {
+              return null;
+            } else if (current.getVersion() != expectedVersion) {
+              return Either.left(mapper.persistedToDomainTodo(id, current));
+            }
+            final PersistedTodo persisted =
+                mapper.domainTaskToPersisted(todo.getTask(), versions.next());
+            if (map.replace(id, current, persisted)) {
+              indexed(id);
+              versions.written();
+              return Either.right(mapper.persistedToDomainTodo(id, persisted));
+            }
+          }
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndDelete(
+      @Nonnull final Todo.Id id, final long expectedVersion) {
+    return execution.maybe(
+        () -> {
+          while (true) {
+            final PersistedTodo current = map.get(id);
+            if (current == null) {
+              return null;
+            } else if (current.getVersion() != expectedVersion) {
+              return Either.left(mapper.persistedToDomainTodo(id, current));
+            } else if (map.remove(id, current)) {
+              size.decrement();
+              indexed(id);
+              versions.written();
+              return Either.right(mapper.persistedToDomainTodo(id, current));
+            }
+          }
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> search(
+      @Nonnull final List<String> terms, final int offset, final int limit) {
+    if (indexer == null) {
+      return Todo.Repo.super.search(terms, offset, limit);
+    }
+    return execution.single(() -> found(indexer.search(terms, offset, limit)));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> suggest(@Nonnull final String prefix, final int limit) {
+    if (indexer == null) {
+      return Todo.Repo.super.suggest(prefix, limit);
+    }
+    return execution.single(() -> found(indexer.suggest(prefix, limit)));
+  }
+
+  /** Those of the Ids still in the map, in the same order. */
+  private List<Todo> found(final long[] ids) {
+    final List<Todo> found = new ArrayList<>(ids.length);
+    for (final long value : ids) {
+      final Todo.Id id = Todo.Id.builder().value(value).build();
+      final PersistedTodo persisted = map.get(id);
+      if (persisted != null) {
+        found.add(mapper.persistedToDomainTodo(id, persisted));
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public long epoch() {
+    return versions.epoch();
+  }
+
+  @Override
+  public long version() {
+    return versions.collection();
+  }
+
+  @Override
+  public long size() {
+    return size.sum();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> createAll(@Nonnull final List<Todo.Task> tasks) {
+    return execution.single(
+        () -> {
+          final long firstId = ids.range(tasks.size());
+          final List<Todo> created = new ArrayList<>(tasks.size());
+          for (int i = 0; i < tasks.size(); i++) {
+            final PersistedTodo persistable =
+                mapper.domainTaskToPersisted(tasks.get(i), versions.next());
+            final Todo.Id id = Todo.Id.builder().value(firstId + i).build();
+            map.put(id, persistable);
+            size.increment();
+            indexed(id);
+            created.add(mapper.persistedToDomainTodo(id, persistable));
+          }
+          versions.written();
+          return created;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> updateAll(@Nonnull final List<Todo> todos) {
+    return execution.single(
+        () -> {
+          final List<Optional<Todo>> updated = new ArrayList<>(todos.size());
+          for (final Todo todo : todos) {
+            updated.add(Optional.ofNullable(replace(todo.getId(), todo.getTask())));
+          }
+          return updated;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> deleteAll(@Nonnull final List<Todo.Id> ids) {
+    return execution.single(
+        () -> {
+          final List<Optional<Todo>> deleted = new ArrayList<>(ids.size());
+          for (final Todo.Id id : ids) {
+            deleted.add(
+                Optional.ofNullable(remove(id))
+                    .map(persisted -> mapper.persistedToDomainTodo(id, persisted)));
+          }
+          return deleted;
+        });
+  }
+
+  @Nullable
+  private PersistedTodo remove(final Todo.Id id) {
+    final PersistedTodo removed = map.remove(id);
+    if (removed != null) {
+      size.decrement();
+      indexed(id);
+      versions.written();
+    }
+    return removed;
+  }
+
+  /**
+   * Takes the new version after reading the current Todo, and only swaps it in if that is still
+   * current, so each Todo's versions stay in order without a lock.
+   *
+   * @return the updated Todo, or null if there was no such Todo
+   */
+  @Nullable
+  private Todo replace(final Todo.Id id, final Todo.Task task) {
+    while (true) {
+      final PersistedTodo current = map.get(id);
+      if (current == null) {
+        return null;
+      }
+      final PersistedTodo persisted = mapper.domainTaskToPersisted(task, versions.next());
+      if (map.replace(id, current, persisted)) {
+        indexed(id);
+        versions.written();
+        return mapper.persistedToDomainTodo(id, persisted);
+      }
+    }
+  }
+
+  /** Queues the Todo to be indexed as it now is, if there is an index. */
+  private void indexed(final Todo.Id id) {
+    if (indexer != null) {
+      indexer.changed(id.getValue());
+    }
+  }
 
-    return Maybe.fromCallable(
-            () -> {
-              final PersistedTodo p = mapper.domainTaskToPersisted(todo.getTask());
-              return Optional.ofNullable(map.replace(todo.getId(), p))
-                  .map(ignoredPreviousValue -> todo)
-                  .orElse(null);
-            })
-        .subscribeOn(Schedulers.io())
-        .observeOn(Schedulers.computation());
+  @Nullable
+  private String task(final long id) {
+    final PersistedTodo persisted = map.get(Todo.Id.builder().value(id).build());
+    return persisted == null ? null : persisted.getTask().getValue();
   }
 }
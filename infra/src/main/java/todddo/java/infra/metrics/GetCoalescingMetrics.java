@@ -0,0 +1,38 @@
+package todddo.java.infra.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import javax.annotation.Nonnull;
+import javax.inject.Singleton;
+import todddo.java.domain.services.GetCoalescing;
+
+/**
+ * A todddo.todos.gets counter of gets of a Todo, by whether they looked it up (lookup) or joined a
+ * lookup in flight (coalesced), and a todddo.todos.gets.in-flight gauge of lookups in flight.
+ */
+@Singleton
+public class GetCoalescingMetrics implements MeterBinder {
+
+  private final GetCoalescing coalescing;
+
+  public GetCoalescingMetrics(@Nonnull final GetCoalescing coalescing) {
+    this.coalescing = coalescing;
+  }
+
+  @Override
+  public void bindTo(@Nonnull final MeterRegistry registry) {
+    FunctionCounter.builder("todddo.todos.gets", coalescing, GetCoalescing::lookups)
+        .description("Gets of a Todo, by whether they looked it up or shared a lookup")
+        .tag("source", "lookup")
+        .register(registry);
+    FunctionCounter.builder("todddo.todos.gets", coalescing, c -> c.gets() - c.lookups())
+        .description("Gets of a Todo, by whether they looked it up or shared a lookup")
+        .tag("source", "coalesced")
+        .register(registry);
+    Gauge.builder("todddo.todos.gets.in-flight", coalescing, GetCoalescing::inFlight)
+        .description("Lookups of a Todo that gets can share")
+        .register(registry);
+  }
+}
@@ -0,0 +1,20 @@
+package todddo.java.infra.metrics;
+
+import io.micronaut.aop.Around;
+import io.micronaut.context.annotation.Type;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Times every Single, Maybe and Flowable returned by the public methods of the annotated bean; see
+ * {@link RepoMetricsInterceptor}.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Around
+@Type(RepoMetricsInterceptor.class)
+public @interface Metered {}
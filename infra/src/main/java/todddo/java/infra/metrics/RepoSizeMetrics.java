@@ -0,0 +1,28 @@
+package todddo.java.infra.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import javax.annotation.Nonnull;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import todddo.java.domain.models.Todo;
+
+/** A todddo.repo.size gauge of how many Todos the repo holds. */
+@Singleton
+public class RepoSizeMetrics implements MeterBinder {
+
+  /** A Provider, as the repo's own metrics need the registry this is bound to. */
+  private final Provider<Todo.Repo> repo;
+
+  public RepoSizeMetrics(@Nonnull final Provider<Todo.Repo> repo) {
+    this.repo = repo;
+  }
+
+  @Override
+  public void bindTo(@Nonnull final MeterRegistry registry) {
+    Gauge.builder("todddo.repo.size", repo, r -> r.get().size())
+        .description("Todos in the repo")
+        .register(registry);
+  }
+}
@@ -0,0 +1,32 @@
+package todddo.java.infra.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.function.ToDoubleFunction;
+import javax.annotation.Nonnull;
+import javax.inject.Singleton;
+import todddo.java.infra.execution.QueueCountingScheduler;
+
+/**
+ * An rx.scheduler.queued gauge of the tasks waiting for a thread, per RxJava scheduler, as counted
+ * once {@link todddo.java.infra.execution.SchedulerInstrumentation} has installed the counting
+ * schedulers.
+ */
+@Singleton
+public class SchedulerQueueMetrics implements MeterBinder {
+
+  @Override
+  public void bindTo(@Nonnull final MeterRegistry registry) {
+    register(registry, "io", ignored -> QueueCountingScheduler.ioQueued());
+    register(registry, "computation", ignored -> QueueCountingScheduler.computationQueued());
+  }
+
+  private void register(
+      final MeterRegistry registry, final String scheduler, final ToDoubleFunction<Object> queued) {
+    Gauge.builder("rx.scheduler.queued", this, queued)
+        .description("Tasks due to run on the scheduler that have not started")
+        .tag("scheduler", scheduler)
+        .register(registry);
+  }
+}
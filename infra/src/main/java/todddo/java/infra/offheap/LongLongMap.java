@@ -0,0 +1,159 @@
+package todddo.java.infra.offheap;
+
+/**
+ * An open-addressing, linear-probing map of positive long keys to long values, held in a single
+ * flat long[] of interleaved keys and values so that it costs no objects per entry.
+ *
+ * <p>Not thread-safe: writers need to be serialised externally. Reads never throw and always
+ * terminate, even when racing a writer, which makes them safe to use under an optimistic read stamp
+ * as long as the result is validated afterwards.
+ */
+final class LongLongMap {
+
+  private static final long EMPTY = 0L;
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] table;
+  private int size;
+
+  LongLongMap() {
+    this(MIN_CAPACITY);
+  }
+
+  LongLongMap(final int expectedSize) {
+    this.table = new long[capacityFor(expectedSize) * 2];
+  }
+
+  int size() {
+    return size;
+  }
+
+  private int capacity() {
+    return table.length >> 1;
+  }
+
+  /** Returns the value for the key, or missing if there is none. */
+  long get(final long key, final long missing) {
+    if (key <= EMPTY) {
+      return missing;
+    }
+    final long[] t = table;
+    final int mask = (t.length >> 1) - 1;
+    int slot = slotFor(key, mask);
+    for (int probes = 0; probes <= mask; probes++) {
+      final long k = t[slot << 1];
+      if (k == key) {
+        return t[(slot << 1) + 1];
+      } else if (k == EMPTY) {
+        return missing;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return missing;
+  }
+
+  /**
+   * Associates the value with the key, returning the previous value, or missing if there was none.
+   */
+  long put(final long key, final long value, final long missing) {
+    if (key <= EMPTY) {
+      throw new IllegalArgumentException("Keys must be positive, got [" + key + "]");
+    }
+    if ((size + 1) * 4L >= capacity() * 3L) {
+      resize(capacity() * 2);
+    }
+    final int mask = (table.length >> 1) - 1;
+    int slot = slotFor(key, mask);
+    while (true) {
+      final long k = table[slot << 1];
+      if (k == key) {
+        final long previous = table[(slot << 1) + 1];
+        table[(slot << 1) + 1] = value;
+        return previous;
+      } else if (k == EMPTY) {
+        table[(slot << 1) + 1] = value;
+        table[slot << 1] = key;
+        size++;
+        return missing;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /** Removes the key, returning its value, or missing if there was none. */
+  long remove(final long key, final long missing) {
+    if (key <= EMPTY) {
+      return missing;
+    }
+    final int mask = (table.length >> 1) - 1;
+    int slot = slotFor(key, mask);
+    while (true) {
+      final long k = table[slot << 1];
+      if (k == EMPTY) {
+        return missing;
+      } else if (k == key) {
+        final long previous = table[(slot << 1) + 1];
+        shiftBack(slot, mask);
+        size--;
+        return previous;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Backward-shift deletion: pulls later entries of the probe run into the hole so that lookups
+   * never need tombstones.
+   */
+  private void shiftBack(int hole, final int mask) {
+    int slot = (hole + 1) & mask;
+    while (true) {
+      final long k = table[slot << 1];
+      if (k == EMPTY) {
+        break;
+      }
+      final int home = slotFor(k, mask);
+      final boolean movable =
+          hole <= slot ? (home <= hole || home > slot) : (home <= hole && home > slot);
+      if (movable) {
+        table[hole << 1] = k;
+        table[(hole << 1) + 1] = table[(slot << 1) + 1];
+        hole = slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    table[hole << 1] = EMPTY;
+    table[(hole << 1) + 1] = EMPTY;
+  }
+
+  private void resize(final int newCapacity) {
+    final long[] old = table;
+    final long[] resized = new long[newCapacity * 2];
+    final int mask = newCapacity - 1;
+    for (int i = 0; i < old.length; i += 2) {
+      final long k = old[i];
+      if (k != EMPTY) {
+        int slot = slotFor(k, mask);
+        while (resized[slot << 1] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        resized[slot << 1] = k;
+        resized[(slot << 1) + 1] = old[i + 1];
+      }
+    }
+    table = resized;
+  }
+
+  private static int capacityFor(final int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * 3L <= expectedSize * 4L) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  private static int slotFor(final long key, final int mask) {
+    final long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+}
@@ -0,0 +1,175 @@
+package todddo.java.infra.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Stores byte arrays off-heap in direct ByteBuffer slabs.
+ *
+ * <p>Blocks are carved out of the current slab in power-of-two size classes, starting at 16 bytes.
+ * Each block starts with an int holding the length of its contents. Freed blocks go onto a per size
+ * class free list and are handed out again before any new space is carved, so a steady stream of
+ * updates and deletes does not grow the arena.
+ *
+ * <p>A block is addressed by a handle: the slab index in the upper 32 bits, the offset within the
+ * slab in the lower 32. Handles are never negative.
+ *
+ * <p>Not thread-safe: writers need to be serialised externally. {@link #read(long)} never throws,
+ * so it can be used under an optimistic read stamp as long as the result is validated afterwards.
+ */
+final class SlabArena {
+
+  private static final int HEADER_BYTES = Integer.BYTES;
+  private static final int MIN_BLOCK_SHIFT = 4;
+
+  private final int slabSize;
+  private final LongStack[] freeLists;
+
+  private ByteBuffer[] slabs = new ByteBuffer[8];
+  private int slabCount;
+  private int bumpOffset;
+
+  SlabArena(final int slabSize) {
+    if (Integer.bitCount(slabSize) != 1 || slabSize < (1 << MIN_BLOCK_SHIFT)) {
+      throw new IllegalArgumentException(
+          "Slab size must be a power of two of at least 16 bytes, got [" + slabSize + "]");
+    }
+    this.slabSize = slabSize;
+    this.freeLists = new LongStack[sizeClass(slabSize) + 1];
+    for (int i = 0; i < freeLists.length; i++) {
+      freeLists[i] = new LongStack();
+    }
+    this.bumpOffset = slabSize;
+  }
+
+  /** Copies the bytes into a newly allocated block and returns its handle. */
+  long allocate(@Nonnull final byte[] bytes) {
+    final int sizeClass = sizeClass(blockBytesFor(bytes.length));
+    final LongStack freeList = freeLists[sizeClass];
+    final long handle = freeList.isEmpty() ? carve(blockSize(sizeClass)) : freeList.pop();
+    write(handle, bytes);
+    return handle;
+  }
+
+  /**
+   * Overwrites the block in place if the bytes fit into its size class.
+   *
+   * @return whether the block was overwritten
+   */
+  boolean tryRewrite(final long handle, @Nonnull final byte[] bytes) {
+    if (sizeClass(blockBytesFor(bytes.length)) == sizeClass(blockBytesFor(length(handle)))) {
+      write(handle, bytes);
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  void free(final long handle) {
+    freeLists[sizeClass(blockBytesFor(length(handle)))].push(handle);
+  }
+
+  /**
+   * Copies out the contents of a block.
+   *
+   * @return the contents, or null if the handle does not point at a plausible block, which can only
+   *     happen when racing a writer
+   */
+  @Nullable
+  byte[] read(final long handle) {
+    try {
+      final ByteBuffer slab = slabs[slabIndex(handle)];
+      final int offset = offset(handle);
+      final int length = slab.getInt(offset);
+      if (length < 0 || offset + HEADER_BYTES + length > slabSize) {
+        return null;
+      }
+      final byte[] bytes = new byte[length];
+      final ByteBuffer view = slab.duplicate();
+      view.position(offset + HEADER_BYTES);
+      view.get(bytes);
+      return bytes;
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  /** Bytes of direct memory reserved by slabs so far. */
+  long reservedBytes() {
+    return (long) slabCount * slabSize;
+  }
+
+  private long carve(final int blockSize) {
+    if (bumpOffset + blockSize > slabSize) {
+      if (slabCount == slabs.length) {
+        slabs = Arrays.copyOf(slabs, slabs.length * 2);
+      }
+      slabs[slabCount++] = ByteBuffer.allocateDirect(slabSize);
+      bumpOffset = 0;
+    }
+    final long handle = ((long) (slabCount - 1) << 32) | bumpOffset;
+    bumpOffset += blockSize;
+    return handle;
+  }
+
+  private void write(final long handle, final byte[] bytes) {
+    final ByteBuffer view = slabs[slabIndex(handle)].duplicate();
+    view.position(offset(handle));
+    view.putInt(bytes.length);
+    view.put(bytes);
+  }
+
+  private int length(final long handle) {
+    return slabs[slabIndex(handle)].getInt(offset(handle));
+  }
+
+  private int blockBytesFor(final int length) {
+    final int blockBytes = HEADER_BYTES + length;
+    if (length < 0 || blockBytes > slabSize) {
+      throw new IllegalArgumentException(
+          "Cannot store [" + length + "] bytes in slabs of [" + slabSize + "] bytes");
+    }
+    return blockBytes;
+  }
+
+  private static int sizeClass(final int blockBytes) {
+    final int shift = 32 - Integer.numberOfLeadingZeros(Math.max(blockBytes, 1) - 1);
+    return Math.max(shift, MIN_BLOCK_SHIFT) - MIN_BLOCK_SHIFT;
+  }
+
+  private static int blockSize(final int sizeClass) {
+    return 1 << (sizeClass + MIN_BLOCK_SHIFT);
+  }
+
+  private static int slabIndex(final long handle) {
+    return (int) (handle >>> 32);
+  }
+
+  private static int offset(final long handle) {
+    return (int) handle;
+  }
+
+  /** A growable stack of primitive longs. */
+  private static final class LongStack {
+
+    private long[] elements = new long[16];
+    private int size;
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    void push(final long element) {
+      if (size == elements.length) {
+        elements = Arrays.copyOf(elements, size * 2);
+      }
+      elements[size++] = element;
+    }
+
+    long pop() {
+      return elements[--size];
+    }
+  }
+}
@@ -0,0 +1,656 @@
+package todddo.java.infra.persistence;
+
+import fj.data.Either;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.MaybeEmitter;
+import io.reactivex.Single;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.ids.IdGenerator;
+import todddo.java.infra.metrics.Metered;
+import todddo.java.infra.versions.Versions;
+
+/**
+ * A repo that survives restarts by logging every create, update and delete to a write-ahead log
+ * before acknowledging it.
+ *
+ * <p>Writes are group-committed: concurrent writes share an fsync, and each write's Single or Maybe
+ * only completes once the batch holding it is on disk. createAll, updateAll and deleteAll are each
+ * one write, whatever their size: one range of Ids, one append and one fsync, durable as a whole.
+ * Writes become visible to reads at the same point, so nothing is ever read that a crash could take
+ * back.
+ *
+ * <p>All Todos are also held in memory, so reads never touch the disk. Every snapshot-interval, if
+ * at least snapshot-min-log-bytes have been logged since the last one, a {@link Snapshot} is taken
+ * in the background and the log segments it covers are deleted. Recovery loads the latest snapshot
+ * and replays only the segments after it, so it takes time in proportion to the number of Todos and
+ * the writes since the last snapshot, not the whole history.
+ *
+ * <p>Versions are not logged: each Todo gets a new one as it is recovered. Writes take theirs as
+ * they are prepared, in the same order they commit in, so conditional writes compare against every
+ * write prepared before them.
+ *
+ * <p>Created eagerly, so that recovery happens, and is logged, during startup rather than on the
+ * first request.
+ */
+@Slf4j
+@Context
+@Requires(property = "todddo.repo.store", value = "durable")
+@Metered
+public class DurableTodosRepo implements Todo.Repo, AutoCloseable {
+
+  private final RepoExecution execution;
+  private final Path directory;
+  private final long snapshotMinLogBytes;
+  private final ConcurrentSkipListMap<Long, Stored> map = new ConcurrentSkipListMap<>();
+
+  /** Counted alongside the map, whose own size walks every entry. */
+  private final LongAdder size = new LongAdder();
+
+  private final Versions versions = new Versions();
+  private final GroupCommitLog commitLog;
+  private final Recovery recovery;
+  @Nullable private final ScheduledExecutorService snapshotter;
+
+  /** Writes prepared but not yet durable, by Id. Only touched on the committer thread. */
+  private final Map<Long, Staged> staged = new HashMap<>();
+
+  /** Moved past every Id recovered, then only handing out Ids on the committer thread. */
+  private final IdGenerator ids;
+
+  @Inject
+  public DurableTodosRepo(
+      @Nonnull final RepoExecution execution,
+      @Nonnull final IdGenerator ids,
+      @Value("${todddo.repo.durable.directory:data}") final String directory,
+      @Value("${todddo.repo.durable.max-batch:1024}") final int maxBatch,
+      @Value("${todddo.repo.durable.snapshot-interval:1m}") final Duration snapshotInterval,
+      @Value("${todddo.repo.durable.snapshot-min-log-bytes:1048576}")
+          final long snapshotMinLogBytes) {
+    this(execution, ids, Paths.get(directory), maxBatch, snapshotInterval, snapshotMinLogBytes);
+  }
+
+  /** A null snapshotInterval leaves snapshots to {@link #snapshot()}. */
+  DurableTodosRepo(
+      @Nonnull final RepoExecution execution,
+      @Nonnull final IdGenerator ids,
+      @Nonnull final Path directory,
+      final int maxBatch,
+      @Nullable final Duration snapshotInterval,
+      final long snapshotMinLogBytes) {
+    this.execution = execution;
+    this.ids = ids;
+    this.directory = directory;
+    this.snapshotMinLogBytes = snapshotMinLogBytes;
+    final long started = System.nanoTime();
+    final long[] replayed = {0};
+    try {
+      Files.createDirectories(directory);
+      final Snapshot snapshot =
+          Snapshot.loadLatest(
+              directory,
+              (id, task) -> {
+                if (map.put(id, new Stored(task, versions.next())) == null) {
+                  size.increment();
+                }
+              });
+      if (snapshot != null) {
+        ids.advancePast(snapshot.getNextId() - 1);
+      }
+      final WriteAheadLog wal =
+          WriteAheadLog.open(
+              directory,
+              snapshot == null ? 1L : snapshot.getSegment(),
+              record -> {
+                replay(record);
+                replayed[0]++;
+              });
+      this.commitLog = new GroupCommitLog(wal, maxBatch);
+      this.recovery =
+          Recovery.builder()
+              .took(Duration.ofNanos(System.nanoTime() - started))
+              .snapshotTodos(snapshot == null ? 0 : snapshot.getTodos())
+              .replayedRecords(replayed[0])
+              .build();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not recover from [" + directory + "]", e);
+    }
+    log.info(
+        "Recovered {} Todos from [{}] in {} ms: {} from the snapshot, then {} log records",
+        map.size(),
+        directory,
+        recovery.getTook().toMillis(),
+        recovery.getSnapshotTodos(),
+        recovery.getReplayedRecords());
+    if (snapshotInterval == null || snapshotInterval.isZero()) {
+      this.snapshotter = null;
+    } else {
+      this.snapshotter =
+          Executors.newSingleThreadScheduledExecutor(
+              r -> {
+                final Thread thread = new Thread(r, "todddo-snapshotter");
+                thread.setDaemon(true);
+                return thread;
+              });
+      this.snapshotter.scheduleWithFixedDelay(
+          this::snapshotIfDue,
+          snapshotInterval.toMillis(),
+          snapshotInterval.toMillis(),
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Nonnull
+  public Recovery getRecovery() {
+    return recovery;
+  }
+
+  /**
+   * Takes a snapshot as of a new log segment, then deletes the segments and snapshots it makes
+   * redundant. Blocks until done.
+   */
+  @Nonnull
+  Snapshot snapshot() throws IOException {
+    final long segment;
+    try {
+      segment = commitLog.roll().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for the log to roll", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not roll the log", e.getCause());
+    }
+    final Snapshot snapshot =
+        Snapshot.write(
+            directory,
+            segment,
+            ids.last() + 1,
+            () ->
+                map.entrySet().stream()
+                    .map(
+                        e ->
+                            (Map.Entry<Long, String>)
+                                new AbstractMap.SimpleImmutableEntry<>(
+                                    e.getKey(), e.getValue().task))
+                    .iterator());
+    WriteAheadLog.deleteSegmentsBefore(directory, segment);
+    Snapshot.deleteBefore(directory, segment);
+    return snapshot;
+  }
+
+  private void snapshotIfDue() {
+    if (commitLog.segmentBytes() < snapshotMinLogBytes) {
+      return;
+    }
+    try {
+      final long started = System.nanoTime();
+      final Snapshot snapshot = snapshot();
+      log.info(
+          "Snapshotted {} Todos in {} ms",
+          snapshot.getTodos(),
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    } catch (IOException | RuntimeException e) {
+      log.warn("Snapshot failed, will retry at the next interval", e);
+    }
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> create(@Nonnull final Todo.Task task) {
+    return execution
+        .maybe(
+            Maybe.<Todo>create(
+                emitter ->
+                    commitLog.submit(
+                        new Mutation<Todo>(emitter) {
+                          @Override
+                          Todo stage() {
+                            return put(ids.next(), task.getValue());
+                          }
+                        })))
+        .toSingle();
+  }
+
+  /** Logged as a record like that of any other write of the Todo's task. */
+  @Nonnull
+  @Override
+  public Single<Todo> put(@Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return execution
+        .maybe(
+            Maybe.<Todo>create(
+                emitter ->
+                    commitLog.submit(
+                        new Mutation<Todo>(emitter) {
+                          @Override
+                          Todo stage() {
+                            ids.advancePast(id.getValue());
+                            return put(id.getValue(), task.getValue());
+                          }
+                        })))
+        .toSingle();
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<Todo, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return execution
+        .maybe(
+            Maybe.<Either<Todo, Todo>>create(
+                emitter ->
+                    commitLog.submit(
+                        new Mutation<Either<Todo, Todo>>(emitter) {
+                          @Override
+                          Either<Todo, Todo> stage() {
+                            final Stored current = current(id.getValue());
+                            if (current != null) {
+                              return Either.left(toTodoOrNull(id.getValue(), current));
+                            }
+                            ids.advancePast(id.getValue());
+                            return Either.right(put(id.getValue(), task.getValue()));
+                          }
+                        })))
+        .toSingle();
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> get(@Nonnull final Todo.Id id) {
+    return execution.maybe(() -> toTodoOrNull(id.getValue(), map.get(id.getValue())));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Long> versionOf(@Nonnull final Todo.Id id) {
+    return execution.maybe(
+        () -> {
+          final Stored stored = map.get(id.getValue());
+          return stored == null ? null : stored.version;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> delete(@Nonnull final Todo.Id id) {
+    return execution.maybe(
+        Maybe.create(
+            emitter ->
+                commitLog.submit(
+                    new Mutation<Todo>(emitter) {
+                      @Override
+                      Todo stage() {
+                        final Stored current = current(id.getValue());
+                        return current == null ? null : delete(id.getValue(), current);
+                      }
+                    })));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndDelete(
+      @Nonnull final Todo.Id id, final long expectedVersion) {
+    return execution.maybe(
+        Maybe.create(
+            emitter ->
+                commitLog.submit(
+                    new Mutation<Either<Todo, Todo>>(emitter) {
+                      @Override
+                      Either<Todo, Todo> stage() {
+                        final Stored current = current(id.getValue());
+                        if (current == null) {
+                          return null;
+                        } else if (current.version != expectedVersion) {
+                          return Either.left(toTodoOrNull(id.getValue(), current));
+                        } else {
+                          return Either.right(delete(id.getValue(), current));
+                        }
+                      }
+                    })));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list() {
+    return list(null, Integer.MAX_VALUE);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    return execution.single(
+        () ->
+            tail(after).entrySet().stream()
+                .limit(limit)
+                .map(e -> toTodoOrNull(e.getKey(), e.getValue()))
+                .collect(Collectors.toList()));
+  }
+
+  @Nonnull
+  @Override
+  public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+    return execution.flowable(
+        Flowable.defer(() -> Flowable.fromIterable(tail(after).entrySet()))
+            .map(e -> toTodoOrNull(e.getKey(), e.getValue())));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> update(@Nonnull final Todo todo) {
+    final long id = todo.getId().getValue();
+    return execution.maybe(
+        Maybe.create(
+            emitter ->
+                commitLog.submit(
+                    new Mutation<Todo>(emitter) {
+                      @Override
+                      Todo stage() {
+                        return current(id) == null ? null : put(id, todo.getTask().getValue());
+                      }
+                    })));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndUpdate(
+      @Nonnull final Todo todo, final long expectedVersion) {
+    final long id = todo.getId().getValue();
+    return execution.maybe(
+        Maybe.create(
+            emitter ->
+                commitLog.submit(
+                    new Mutation<Either<Todo, Todo>>(emitter) {
+                      @Override
+                      Either<Todo, Todo> stage() {
+                        final Stored current = current(id);
+                        if (current == null) {
+                          return null;
+                        } else if (current.version != expectedVersion) {
+                          return Either.left(toTodoOrNull(id, current));
+                        } else {
+                          return Either.right(put(id, todo.getTask().getValue()));
+                        }
+                      }
+                    })));
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> createAll(@Nonnull final List<Todo.Task> tasks) {
+    return execution
+        .maybe(
+            Maybe.<List<Todo>>create(
+                emitter ->
+                    commitLog.submit(
+                        new Mutation<List<Todo>>(emitter) {
+                          @Override
+                          List<Todo> stage() {
+                            final long firstId = ids.range(tasks.size());
+                            final List<Todo> created = new ArrayList<>(tasks.size());
+                            for (int i = 0; i < tasks.size(); i++) {
+                              created.add(put(firstId + i, tasks.get(i).getValue()));
+                            }
+                            return created;
+                          }
+                        })))
+        .toSingle();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> updateAll(@Nonnull final List<Todo> todos) {
+    return execution
+        .maybe(
+            Maybe.<List<Optional<Todo>>>create(
+                emitter ->
+                    commitLog.submit(
+                        new Mutation<List<Optional<Todo>>>(emitter) {
+                          @Override
+                          List<Optional<Todo>> stage() {
+                            final List<Optional<Todo>> updated = new ArrayList<>(todos.size());
+                            for (final Todo todo : todos) {
+                              final long id = todo.getId().getValue();
+                              updated.add(
+                                  current(id) == null
+                                      ? Optional.empty()
+                                      : Optional.of(put(id, todo.getTask().getValue())));
+                            }
+                            return updated;
+                          }
+                        })))
+        .toSingle();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Optional<Todo>>> deleteAll(@Nonnull final List<Todo.Id> ids) {
+    return execution
+        .maybe(
+            Maybe.<List<Optional<Todo>>>create(
+                emitter ->
+                    commitLog.submit(
+                        new Mutation<List<Optional<Todo>>>(emitter) {
+                          @Override
+                          List<Optional<Todo>> stage() {
+                            final List<Optional<Todo>> deleted = new ArrayList<>(ids.size());
+                            for (final Todo.Id id : ids) {
+                              final Stored current = current(id.getValue());
+                              deleted.add(
+                                  current == null
+                                      ? Optional.empty()
+                                      : Optional.of(delete(id.getValue(), current)));
+                            }
+                            return deleted;
+                          }
+                        })))
+        .toSingle();
+  }
+
+  @Override
+  public long epoch() {
+    return versions.epoch();
+  }
+
+  @Override
+  public long version() {
+    return versions.collection();
+  }
+
+  @Override
+  public long size() {
+    return size.sum();
+  }
+
+  /** Stops accepting writes and closes the log; anything acknowledged is already on disk. */
+  @PreDestroy
+  @Override
+  public void close() throws IOException {
+    if (snapshotter != null) {
+      snapshotter.shutdownNow();
+    }
+    commitLog.close();
+  }
+
+  private NavigableMap<Long, Stored> tail(@Nullable final Todo.Id after) {
+    return after == null ? map : map.tailMap(after.getValue(), false);
+  }
+
+  private void replay(final LogRecord record) {
+    switch (record.getType()) {
+      case PUT:
+        apply(record.getId(), new Stored(record.getTask(), versions.next()));
+        break;
+      case DELETE:
+        apply(record.getId(), null);
+        break;
+    }
+  }
+
+  /**
+   * Makes a Todo's new state visible, where null means deleted; how both replayed and committed
+   * records take effect.
+   */
+  private void apply(final long id, @Nullable final Stored stored) {
+    if (stored == null) {
+      if (map.remove(id) != null) {
+        size.decrement();
+      }
+    } else {
+      if (map.put(id, stored) == null) {
+        size.increment();
+      }
+      ids.advancePast(id);
+    }
+    versions.written();
+  }
+
+  /** The Todo as of every write prepared so far, durable or not. */
+  @Nullable
+  private Stored current(final long id) {
+    final Staged pending = staged.get(id);
+    return pending == null ? map.get(id) : pending.stored;
+  }
+
+  @Nullable
+  private static Todo toTodoOrNull(final long id, @Nullable final Stored stored) {
+    if (stored == null) {
+      return null;
+    } else {
+      return Todo.builder()
+          .id(Todo.Id.builder().value(id).build())
+          .task(Todo.Task.builder().value(stored.task).build())
+          .version(stored.version)
+          .build();
+    }
+  }
+
+  /** A Todo's task and version, once durable. */
+  private static final class Stored {
+
+    private final String task;
+    private final long version;
+
+    Stored(final String task, final long version) {
+      this.task = task;
+      this.version = version;
+    }
+  }
+
+  /** The state of a Todo after a prepared write; null means deleted. */
+  private static final class Staged {
+
+    private final long id;
+    @Nullable private final Stored stored;
+
+    Staged(final long id, @Nullable final Stored stored) {
+      this.id = id;
+      this.stored = stored;
+    }
+
+    LogRecord toRecord() {
+      return stored == null ? LogRecord.delete(id) : LogRecord.put(id, stored.task);
+    }
+  }
+
+  /**
+   * A write that stages its effect on one or more Todos, and emits its result once that is durable.
+   * All of its records are logged in the same batch, so they are durable or fail together.
+   */
+  private abstract class Mutation<T> implements GroupCommitLog.Write {
+
+    private final MaybeEmitter<T> emitter;
+    private final List<Staged> changes = new ArrayList<>(1);
+    @Nullable private T result;
+
+    Mutation(final MaybeEmitter<T> emitter) {
+      this.emitter = emitter;
+    }
+
+    /**
+     * Stages the changes, if any, by calling put or delete.
+     *
+     * @return what to emit once committed, or null to emit nothing
+     */
+    @Nullable
+    abstract T stage();
+
+    /** Stages a new task for the Todo, at a new version. */
+    Todo put(final long id, final String task) {
+      final Stored stored = new Stored(task, versions.next());
+      stageChange(new Staged(id, stored));
+      return toTodoOrNull(id, stored);
+    }
+
+    /** Stages deleting the Todo, currently as given. */
+    Todo delete(final long id, final Stored current) {
+      stageChange(new Staged(id, null));
+      return toTodoOrNull(id, current);
+    }
+
+    /** Later changes, in this write or later ones, see this one through current. */
+    private void stageChange(final Staged change) {
+      staged.put(change.id, change);
+      changes.add(change);
+    }
+
+    @Override
+    public void prepare(@Nonnull final List<LogRecord> records) {
+      result = stage();
+      for (final Staged change : changes) {
+        records.add(change.toRecord());
+      }
+    }
+
+    @Override
+    public void committed() {
+      for (final Staged change : changes) {
+        unstage(change);
+        apply(change.id, change.stored);
+      }
+      if (result == null) {
+        emitter.onComplete();
+      } else {
+        emitter.onSuccess(result);
+      }
+    }
+
+    @Override
+    public void failed(@Nonnull final Throwable error) {
+      changes.forEach(this::unstage);
+      emitter.onError(error);
+    }
+
+    /** Later changes to the same Id stay staged until they are committed too. */
+    private void unstage(final Staged change) {
+      staged.remove(change.id, change);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package todddo.java.infra.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import javax.annotation.Nonnull;
+
+/**
+ * Funnels writes from any number of threads through one committer thread that appends them to a
+ * {@link WriteAheadLog} in batches, paying one fsync per batch rather than one per write.
+ *
+ * <p>The committer takes whatever has queued up while the previous batch was syncing, up to
+ * maxBatch writes, so batches grow with concurrency and durable throughput grows with them. A lone
+ * writer still gets its own fsync without waiting for company.
+ */
+final class GroupCommitLog implements AutoCloseable {
+
+  /** A write, whose callbacks all run on the committer thread. */
+  interface Write {
+
+    /**
+     * Decides what to log, seeing the effect of every write prepared before it. Records of one
+     * write are appended together, and are all durable or all discarded.
+     *
+     * @param records where to add the records to log, if any
+     */
+    void prepare(@Nonnull List<LogRecord> records);
+
+    /** Called once the records are durable, in the order writes were prepared. */
+    void committed();
+
+    void failed(@Nonnull Throwable error);
+  }
+
+  private final WriteAheadLog log;
+  private final int maxBatch;
+  private final BlockingQueue<Write> queue = new LinkedBlockingQueue<>();
+  private final Thread committer;
+  private volatile boolean running = true;
+  private volatile long segmentBytes;
+
+  GroupCommitLog(@Nonnull final WriteAheadLog log, final int maxBatch) throws IOException {
+    this.log = log;
+    this.maxBatch = maxBatch;
+    this.segmentBytes = log.size();
+    this.committer = new Thread(this::run, "todddo-wal-committer");
+    this.committer.setDaemon(true);
+    this.committer.start();
+  }
+
+  /**
+   * Starts a new log segment after every write submitted so far.
+   *
+   * @return the number of the new segment, once every write before it is durable
+   */
+  @Nonnull
+  CompletableFuture<Long> roll() {
+    final Roll roll = new Roll();
+    submit(roll);
+    return roll.segment;
+  }
+
+  /** Bytes committed to the current segment, as of the last batch. */
+  long segmentBytes() {
+    return segmentBytes;
+  }
+
+  void submit(@Nonnull final Write write) {
+    if (!running) {
+      write.failed(new IllegalStateException("Log is closed"));
+      return;
+    }
+    queue.add(write);
+  }
+
+  /** Stops taking writes, fails any still queued, and closes the log. */
+  @Override
+  public void close() throws IOException {
+    running = false;
+    committer.interrupt();
+    try {
+      committer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    failQueued();
+    log.close();
+  }
+
+  private void run() {
+    final List<Write> batch = new ArrayList<>(maxBatch);
+    final List<LogRecord> records = new ArrayList<>(maxBatch);
+    while (running) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        break;
+      }
+      queue.drainTo(batch, maxBatch - 1);
+      commit(batch, records);
+      batch.clear();
+      records.clear();
+    }
+  }
+
+  private void commit(final List<Write> batch, final List<LogRecord> records) {
+    long sizeBefore = -1;
+    try {
+      for (final Write write : batch) {
+        write.prepare(records);
+      }
+      sizeBefore = log.size();
+      if (!records.isEmpty()) {
+        log.append(records);
+        log.sync();
+        segmentBytes = log.size();
+      }
+    } catch (IOException | RuntimeException e) {
+      discard(sizeBefore);
+      for (final Write write : batch) {
+        write.failed(e);
+      }
+      return;
+    }
+    for (final Write write : batch) {
+      write.committed();
+    }
+  }
+
+  /**
+   * Best effort at keeping a failed batch out of the log. If even the truncate fails, replay still
+   * drops a torn tail by checksum, but whole records from the batch may come back.
+   */
+  private void discard(final long sizeBefore) {
+    if (sizeBefore >= 0) {
+      try {
+        log.truncate(sizeBefore);
+      } catch (IOException ignored) {
+        // Nothing more to be done here; the writes have failed either way
+      }
+    }
+  }
+
+  /** Rolls the log as part of a batch; writes prepared before it land in the new segment too. */
+  private final class Roll implements Write {
+
+    private final CompletableFuture<Long> segment = new CompletableFuture<>();
+    private long rolledTo;
+
+    @Override
+    public void prepare(@Nonnull final List<LogRecord> records) {
+      try {
+        rolledTo = log.roll();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      segmentBytes = 0;
+    }
+
+    @Override
+    public void committed() {
+      segment.complete(rolledTo);
+    }
+
+    @Override
+    public void failed(@Nonnull final Throwable error) {
+      segment.completeExceptionally(error);
+    }
+  }
+
+  private void failQueued() {
+    final List<Write> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    for (final Write write : remaining) {
+      write.failed(new IllegalStateException("Log is closed"));
+    }
+  }
+}
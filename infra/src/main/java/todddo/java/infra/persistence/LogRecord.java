@@ -0,0 +1,94 @@
+package todddo.java.infra.persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * One entry in the write-ahead log: either the current task of a Todo, or its removal.
+ *
+ * <p>On disk a record is [int body length][int CRC32 of body][body], where the body is [byte
+ * type][long id][UTF-8 task bytes]. The checksum lets replay tell a torn final write apart from a
+ * complete one.
+ */
+@Value
+@Builder
+class LogRecord {
+
+  static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+  static final int MIN_BODY_BYTES = Byte.BYTES + Long.BYTES;
+
+  enum Type {
+    PUT,
+    DELETE
+  }
+
+  @NonNull Type type;
+  long id;
+  @Nullable String task;
+
+  @Nonnull
+  static LogRecord put(final long id, @Nonnull final String task) {
+    return LogRecord.builder().type(Type.PUT).id(id).task(task).build();
+  }
+
+  @Nonnull
+  static LogRecord delete(final long id) {
+    return LogRecord.builder().type(Type.DELETE).id(id).build();
+  }
+
+  /** Writes the record, header included, into a buffer that has room for it. */
+  void writeTo(@Nonnull final ByteBuffer buffer) {
+    final byte[] taskBytes = taskBytes();
+    final int bodyStart = buffer.position() + HEADER_BYTES;
+    buffer.position(bodyStart);
+    buffer.put((byte) type.ordinal());
+    buffer.putLong(id);
+    buffer.put(taskBytes);
+    final int bodyEnd = buffer.position();
+    final CRC32 crc = new CRC32();
+    final ByteBuffer body = buffer.duplicate();
+    body.position(bodyStart);
+    body.limit(bodyEnd);
+    crc.update(body);
+    buffer.putInt(bodyStart - HEADER_BYTES, bodyEnd - bodyStart);
+    buffer.putInt(bodyStart - Integer.BYTES, (int) crc.getValue());
+  }
+
+  /** Upper bound on the bytes {@link #writeTo(ByteBuffer)} needs. */
+  int maxEncodedBytes() {
+    return HEADER_BYTES + MIN_BODY_BYTES + (task == null ? 0 : task.length() * 3);
+  }
+
+  /**
+   * Reads a record body whose length and checksum have already been checked.
+   *
+   * @return the record, or null if the body is not a record this version understands
+   */
+  @Nullable
+  static LogRecord readBody(@Nonnull final ByteBuffer body) {
+    if (body.remaining() < MIN_BODY_BYTES) {
+      return null;
+    }
+    final int type = body.get();
+    final long id = body.getLong();
+    if (type == Type.PUT.ordinal()) {
+      final byte[] taskBytes = new byte[body.remaining()];
+      body.get(taskBytes);
+      return put(id, new String(taskBytes, StandardCharsets.UTF_8));
+    } else if (type == Type.DELETE.ordinal()) {
+      return delete(id);
+    } else {
+      return null;
+    }
+  }
+
+  private byte[] taskBytes() {
+    return task == null ? new byte[0] : task.getBytes(StandardCharsets.UTF_8);
+  }
+}
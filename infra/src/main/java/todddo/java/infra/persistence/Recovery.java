@@ -0,0 +1,20 @@
+package todddo.java.infra.persistence;
+
+import java.time.Duration;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/** How a {@link DurableTodosRepo} got back to where it was before it last stopped. */
+@Value
+@Builder
+public class Recovery {
+
+  @NonNull Duration took;
+
+  /** Todos loaded from the latest snapshot, before the log was replayed on top. */
+  long snapshotTodos;
+
+  /** Log records replayed after the snapshot. */
+  long replayedRecords;
+}
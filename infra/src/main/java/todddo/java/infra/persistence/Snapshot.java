@@ -0,0 +1,190 @@
+package todddo.java.infra.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * A point from which recovery can start: every Todo as of the start of a {@link WriteAheadLog}
+ * segment, so that only that segment and later ones need replaying.
+ *
+ * <p>On disk: [int magic][long segment][long next Id], then [long id][int length][UTF-8 task] per
+ * Todo, then [long count][int CRC32 of everything before it]. Snapshots are written to a temporary
+ * file and renamed into place, so a crash mid-write leaves the previous snapshot as the latest.
+ * Loading memory-maps the file rather than reading it through a stream, which also caps a snapshot
+ * at 2 GiB.
+ *
+ * <p>Snapshots may be fuzzy: written while writes carry on, so some Todos are captured as of later
+ * than the start of the segment. That is fine because replaying a PUT or DELETE is idempotent, and
+ * every change after the start of the segment is replayed in order on top.
+ */
+@Value
+@Builder
+class Snapshot {
+
+  private static final int MAGIC = 0x54444f31;
+  private static final String PREFIX = "snapshot-";
+  private static final String SUFFIX = ".snap";
+  private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES;
+  private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+  /** The first log segment not covered. */
+  long segment;
+
+  /** Every Id handed out before the segment is below this. */
+  long nextId;
+
+  long todos;
+
+  /** Writes a snapshot of the given Todos and returns what was written. */
+  @Nonnull
+  static Snapshot write(
+      @Nonnull final Path directory,
+      final long segment,
+      final long nextId,
+      @Nonnull final Iterable<Map.Entry<Long, String>> todos)
+      throws IOException {
+    final Path path = path(directory, segment);
+    final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    long count = 0;
+    try (final FileChannel channel =
+        FileChannel.open(
+            temporary,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      final CRC32 crc = new CRC32();
+      final DataOutputStream out =
+          new DataOutputStream(
+              new BufferedOutputStream(
+                  new CheckedOutputStream(Channels.newOutputStream(channel), crc), 1 << 16));
+      out.writeInt(MAGIC);
+      out.writeLong(segment);
+      out.writeLong(nextId);
+      for (final Map.Entry<Long, String> todo : todos) {
+        final byte[] task = todo.getValue().getBytes(StandardCharsets.UTF_8);
+        out.writeLong(todo.getKey());
+        out.writeInt(task.length);
+        out.write(task);
+        count++;
+      }
+      out.writeLong(count);
+      out.flush();
+      out.writeInt((int) crc.getValue());
+      out.flush();
+      channel.force(true);
+    }
+    Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+    WriteAheadLog.syncDirectory(directory);
+    return Snapshot.builder().segment(segment).nextId(nextId).todos(count).build();
+  }
+
+  /**
+   * Loads the latest snapshot in the directory, handing every Todo in it to the consumer.
+   *
+   * @return what was loaded, or null if there is no snapshot yet
+   */
+  @Nullable
+  static Snapshot loadLatest(
+      @Nonnull final Path directory, @Nonnull final BiConsumer<Long, String> todos)
+      throws IOException {
+    final List<Long> segments = segments(directory);
+    if (segments.isEmpty()) {
+      return null;
+    }
+    final Path path = path(directory, segments.get(segments.size() - 1));
+    final MappedByteBuffer mapped;
+    try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_BYTES + TRAILER_BYTES || channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Snapshot [" + path + "] has an impossible size");
+      }
+      mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    final int checked = mapped.capacity() - Integer.BYTES;
+    final ByteBuffer body = mapped.duplicate();
+    body.limit(checked);
+    final CRC32 crc = new CRC32();
+    crc.update(body);
+    if (mapped.getInt(0) != MAGIC || mapped.getInt(checked) != (int) crc.getValue()) {
+      throw new IOException("Snapshot [" + path + "] is damaged");
+    }
+    mapped.position(Integer.BYTES);
+    final long segment = mapped.getLong();
+    final long nextId = mapped.getLong();
+    final int todosEnd = mapped.capacity() - TRAILER_BYTES;
+    byte[] task = new byte[64];
+    long count = 0;
+    while (mapped.position() < todosEnd) {
+      final long id = mapped.getLong();
+      final int length = mapped.getInt();
+      if (task.length < length) {
+        task = new byte[Integer.highestOneBit(length) << 1];
+      }
+      mapped.get(task, 0, length);
+      todos.accept(id, new String(task, 0, length, StandardCharsets.UTF_8));
+      count++;
+    }
+    if (count != mapped.getLong(todosEnd)) {
+      throw new IOException("Snapshot [" + path + "] is damaged");
+    }
+    return Snapshot.builder().segment(segment).nextId(nextId).todos(count).build();
+  }
+
+  /** Deletes the snapshots older than the given one, and any left half-written. */
+  static void deleteBefore(@Nonnull final Path directory, final long segment) throws IOException {
+    for (final long existing : segments(directory)) {
+      if (existing < segment) {
+        Files.deleteIfExists(path(directory, existing));
+      }
+    }
+    try (final DirectoryStream<Path> files =
+        Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX + ".tmp")) {
+      for (final Path file : files) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  private static Path path(final Path directory, final long segment) {
+    return directory.resolve(String.format("%s%020d%s", PREFIX, segment, SUFFIX));
+  }
+
+  private static List<Long> segments(final Path directory) throws IOException {
+    final List<Long> segments = new ArrayList<>();
+    try (final DirectoryStream<Path> files =
+        Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+      for (final Path file : files) {
+        final String name = file.getFileName().toString();
+        try {
+          segments.add(
+              Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+        } catch (NumberFormatException ignored) {
+          // Not a snapshot
+        }
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+}
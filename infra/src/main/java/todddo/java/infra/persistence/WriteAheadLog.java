@@ -0,0 +1,243 @@
+package todddo.java.infra.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+
+/**
+ * An append-only log of {@link LogRecord}s, split into numbered segment files so that the part a
+ * {@link Snapshot} covers can be deleted.
+ *
+ * <p>Opening the log replays it. Anything after the last complete, checksummed record of the last
+ * segment is taken to be a write that was torn by a crash and is cut off, so appends always follow
+ * a good record. Earlier segments were synced before the next was started, so damage there is
+ * reported rather than skipped.
+ *
+ * <p>Not thread-safe: appends, syncs and rolls need to come from one thread at a time.
+ */
+final class WriteAheadLog implements AutoCloseable {
+
+  private static final String SEGMENT_SUFFIX = ".wal";
+  private static final int READ_CHUNK_BYTES = 1 << 16;
+
+  private final Path directory;
+  private FileChannel channel;
+  private long segment;
+  private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(READ_CHUNK_BYTES);
+
+  private WriteAheadLog(final Path directory, final FileChannel channel, final long segment) {
+    this.directory = directory;
+    this.channel = channel;
+    this.segment = segment;
+  }
+
+  /**
+   * Opens or creates the log in the directory, handing every intact record from the given segment
+   * onwards to the consumer in order.
+   */
+  @Nonnull
+  static WriteAheadLog open(
+      @Nonnull final Path directory,
+      final long fromSegment,
+      @Nonnull final Consumer<LogRecord> replay)
+      throws IOException {
+    final List<Long> segments = new ArrayList<>();
+    for (final long existing : segments(directory)) {
+      if (existing >= fromSegment) {
+        segments.add(existing);
+      }
+    }
+    if (segments.isEmpty()) {
+      segments.add(fromSegment);
+    }
+    for (final long earlier : segments.subList(0, segments.size() - 1)) {
+      try (final FileChannel channel =
+          FileChannel.open(segmentPath(directory, earlier), StandardOpenOption.READ)) {
+        if (replay(channel, replay) != channel.size()) {
+          throw new IOException("Log segment [" + earlier + "] in [" + directory + "] is damaged");
+        }
+      }
+    }
+    final long last = segments.get(segments.size() - 1);
+    final FileChannel channel =
+        FileChannel.open(
+            segmentPath(directory, last),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    try {
+      final long end = replay(channel, replay);
+      if (end < channel.size()) {
+        channel.truncate(end);
+        channel.force(false);
+      }
+      channel.position(end);
+      return new WriteAheadLog(directory, channel, last);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the records after those already in the log. They are not durable until {@link #sync()}.
+   */
+  void append(@Nonnull final List<LogRecord> records) throws IOException {
+    int maxBytes = 0;
+    for (final LogRecord record : records) {
+      maxBytes += record.maxEncodedBytes();
+    }
+    if (writeBuffer.capacity() < maxBytes) {
+      writeBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(maxBytes) << 1);
+    }
+    writeBuffer.clear();
+    for (final LogRecord record : records) {
+      record.writeTo(writeBuffer);
+    }
+    writeBuffer.flip();
+    while (writeBuffer.hasRemaining()) {
+      channel.write(writeBuffer);
+    }
+  }
+
+  /** Blocks until everything appended so far is on disk. */
+  void sync() throws IOException {
+    channel.force(false);
+  }
+
+  /**
+   * Syncs the current segment and starts appending to a new one.
+   *
+   * @return the number of the new segment, which no record appended before this is in
+   */
+  long roll() throws IOException {
+    channel.force(false);
+    final long next = segment + 1;
+    final FileChannel nextChannel =
+        FileChannel.open(
+            segmentPath(directory, next),
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    syncDirectory(directory);
+    channel.close();
+    channel = nextChannel;
+    segment = next;
+    return next;
+  }
+
+  /** Bytes in the current segment. */
+  long size() throws IOException {
+    return channel.position();
+  }
+
+  /** Cuts the current segment back to the given size, e.g. to drop a batch whose write failed. */
+  void truncate(final long size) throws IOException {
+    channel.truncate(size);
+    channel.position(size);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /** Deletes the segments before the given one, which must no longer be needed for recovery. */
+  static void deleteSegmentsBefore(@Nonnull final Path directory, final long segment)
+      throws IOException {
+    for (final long existing : segments(directory)) {
+      if (existing < segment) {
+        Files.deleteIfExists(segmentPath(directory, existing));
+      }
+    }
+  }
+
+  /** Makes creates, renames and deletes in the directory durable, where the platform allows it. */
+  static void syncDirectory(@Nonnull final Path directory) {
+    try (final FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // Not every platform can open a directory; the files themselves are still synced
+    }
+  }
+
+  private static Path segmentPath(final Path directory, final long segment) {
+    return directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+  }
+
+  private static List<Long> segments(final Path directory) throws IOException {
+    final List<Long> segments = new ArrayList<>();
+    try (final DirectoryStream<Path> files =
+        Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (final Path file : files) {
+        final String name = file.getFileName().toString();
+        try {
+          segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+        } catch (NumberFormatException ignored) {
+          // Not a segment
+        }
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  /** Returns the offset just past the last intact record. */
+  private static long replay(final FileChannel channel, final Consumer<LogRecord> replay)
+      throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(LogRecord.HEADER_BYTES);
+    ByteBuffer body = ByteBuffer.allocate(READ_CHUNK_BYTES);
+    final long size = channel.size();
+    long position = 0;
+    while (position + LogRecord.HEADER_BYTES <= size) {
+      header.clear();
+      readFully(channel, header, position);
+      final int length = header.getInt(0);
+      final int checksum = header.getInt(Integer.BYTES);
+      final long bodyStart = position + LogRecord.HEADER_BYTES;
+      if (length < LogRecord.MIN_BODY_BYTES || bodyStart + length > size) {
+        break;
+      }
+      if (body.capacity() < length) {
+        body = ByteBuffer.allocate(Integer.highestOneBit(length) << 1);
+      }
+      body.clear();
+      body.limit(length);
+      readFully(channel, body, bodyStart);
+      body.flip();
+      final CRC32 crc = new CRC32();
+      crc.update(body.array(), 0, length);
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+      final LogRecord record = LogRecord.readBody(body);
+      if (record == null) {
+        break;
+      }
+      replay.accept(record);
+      position = bodyStart + length;
+    }
+    return position;
+  }
+
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of log at [" + position + "]");
+      }
+      position += read;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package todddo.java.infra.replication;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import javax.annotation.Nonnull;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.versions.VersionedTask;
+
+/**
+ * The replication protocol: frames of a type byte and its fields, each prefixed with its length.
+ *
+ * <ul>
+ *   <li>SUBSCRIBE, replica to primary: the epoch and sequence of the last change applied, or -1 for
+ *       none.
+ *   <li>SNAPSHOT with the primary's epoch, then a TODO per Todo, then SNAPSHOT_END with the
+ *       sequence of the last change the Todos are at least as new as. Replaces everything the
+ *       replica has.
+ *   <li>CHANGE: a change's sequence, kind and Todo.
+ *   <li>HEARTBEAT: the primary's latest sequence, sent every heartbeat interval.
+ * </ul>
+ *
+ * Sequences start over when the primary does, so it picks a random epoch when it starts, and
+ * replicas resuming from another epoch get a snapshot. Todos are sent as {@link VersionedTask}
+ * bytes after their Id.
+ */
+final class Frames {
+
+  static final byte SUBSCRIBE = 1;
+  static final byte SNAPSHOT = 2;
+  static final byte TODO = 3;
+  static final byte SNAPSHOT_END = 4;
+  static final byte CHANGE = 5;
+  static final byte HEARTBEAT = 6;
+
+  private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+  private static final Todo.Change.Kind[] KINDS = Todo.Change.Kind.values();
+
+  private Frames() {}
+
+  /** A frame, encoded once there is a channel to allocate it from. */
+  interface Frame {
+    ByteBuf encode(ByteBufAllocator alloc);
+  }
+
+  static void addCodec(@Nonnull final ChannelPipeline pipeline) {
+    pipeline.addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_BYTES, 0, 4, 0, 4));
+    pipeline.addLast(new LengthFieldPrepender(4));
+  }
+
+  static Frame subscribe(final long epoch, final long after) {
+    return alloc -> alloc.buffer(17).writeByte(SUBSCRIBE).writeLong(epoch).writeLong(after);
+  }
+
+  static Frame snapshot(final long epoch) {
+    return alloc -> alloc.buffer(9).writeByte(SNAPSHOT).writeLong(epoch);
+  }
+
+  static Frame todo(@Nonnull final Todo todo) {
+    return alloc -> {
+      final byte[] task = VersionedTask.encode(todo.getVersion(), todo.getTask());
+      return alloc
+          .buffer(9 + task.length)
+          .writeByte(TODO)
+          .writeLong(todo.getId().getValue())
+          .writeBytes(task);
+    };
+  }
+
+  static Frame snapshotEnd(final long sequence) {
+    return alloc -> alloc.buffer(9).writeByte(SNAPSHOT_END).writeLong(sequence);
+  }
+
+  static Frame change(@Nonnull final Todo.Change change) {
+    return alloc -> {
+      final Todo todo = change.getTodo();
+      final byte[] task = VersionedTask.encode(todo.getVersion(), todo.getTask());
+      return alloc
+          .buffer(18 + task.length)
+          .writeByte(CHANGE)
+          .writeLong(change.getSequence())
+          .writeByte(change.getKind().ordinal())
+          .writeLong(todo.getId().getValue())
+          .writeBytes(task);
+    };
+  }
+
+  static Frame heartbeat(final long sequence) {
+    return alloc -> alloc.buffer(9).writeByte(HEARTBEAT).writeLong(sequence);
+  }
+
+  static Todo.Change.Kind kind(final byte ordinal) {
+    return KINDS[ordinal];
+  }
+
+  /** The rest of the frame, as VersionedTask bytes. */
+  static byte[] rest(@Nonnull final ByteBuf frame) {
+    final byte[] bytes = new byte[frame.readableBytes()];
+    frame.readBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,9 @@
+package todddo.java.infra.replication;
+
+/** A write was sent to a replica, which only takes writes from its primary. */
+public class ReadOnlyReplicaException extends RuntimeException {
+
+  ReadOnlyReplicaException() {
+    super("This instance is a read-only replica; send writes to its primary");
+  }
+}
@@ -0,0 +1,260 @@
+package todddo.java.infra.replication;
+
+import fj.data.Either;
+import io.micronaut.context.annotation.Requires;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.metrics.Metered;
+import todddo.java.infra.versions.VersionedTask;
+import todddo.java.infra.versions.Versions;
+
+/**
+ * A read-only copy of a primary's Todos, kept up to date by a {@link ReplicationClient}. Writes
+ * fail with {@link ReadOnlyReplicaException}.
+ *
+ * <p>Todos keep the primary's Ids and versions. Those start over when the primary restarts, and the
+ * replica then loads a snapshot under the primary's new epoch, so that is the epoch versions count
+ * from here. Changes may arrive in a different order from the one they were made in (see
+ * ChangeFeed), so one is only applied if its version is newer than that of the Todo held, or of the
+ * Todo last deleted with that Id. Those deleted versions are kept until the next snapshot.
+ *
+ * <p>Changes are applied on one thread, the client's, while reads see either the Todos before a
+ * snapshot or after it, never part of one. Each change applied is published to the ChangeFeed, if
+ * given one, for followers of the replica; a snapshot, swapping in every Todo at once, resets the
+ * ChangeFeed instead, so that they list the Todos again.
+ */
+@Singleton
+@Requires(property = "todddo.repo.store", value = "replica")
+@Metered
+public class ReplicaTodosRepo implements Todo.Repo {
+
+  private static final long NONE = -1L;
+
+  private final RepoExecution execution;
+  @Nullable private final ChangeFeed changeFeed;
+  private final Versions versions = new Versions();
+  private volatile ConcurrentSkipListMap<Long, byte[]> todos = new ConcurrentSkipListMap<>();
+
+  /** Counted alongside todos, whose own size walks every entry. */
+  private final LongAdder size = new LongAdder();
+
+  private volatile long sequence = NONE;
+  private volatile long epoch;
+
+  /** Only touched by the applying thread. */
+  private final Map<Long, Long> deleted = new HashMap<>();
+
+  @Nullable private ConcurrentSkipListMap<Long, byte[]> loading;
+  private long loadingEpoch;
+  private long loadingSize;
+
+  @Inject
+  public ReplicaTodosRepo(
+      @Nonnull final RepoExecution execution, @Nullable final ChangeFeed changeFeed) {
+    this.execution = execution;
+    this.changeFeed = changeFeed;
+  }
+
+  public ReplicaTodosRepo(@Nonnull final RepoExecution execution) {
+    this(execution, null);
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> create(@Nonnull final Todo.Task task) {
+    return Single.error(new ReadOnlyReplicaException());
+  }
+
+  @Nonnull
+  @Override
+  public Single<Todo> put(@Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return Single.error(new ReadOnlyReplicaException());
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<Todo, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return Single.error(new ReadOnlyReplicaException());
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> get(@Nonnull final Todo.Id id) {
+    return execution.maybe(
+        () -> VersionedTask.decodeOrNull(id.getValue(), todos.get(id.getValue())));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Long> versionOf(@Nonnull final Todo.Id id) {
+    return execution.maybe(() -> VersionedTask.versionOrNull(todos.get(id.getValue())));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> delete(@Nonnull final Todo.Id id) {
+    return Maybe.error(new ReadOnlyReplicaException());
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list() {
+    return list(null, Integer.MAX_VALUE);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    return execution.single(
+        () -> {
+          final List<Todo> page = new ArrayList<>();
+          final Iterator<Map.Entry<Long, byte[]>> entries = from(after).entrySet().iterator();
+          while (page.size() < limit && entries.hasNext()) {
+            final Map.Entry<Long, byte[]> entry = entries.next();
+            page.add(VersionedTask.decodeOrNull(entry.getKey(), entry.getValue()));
+          }
+          return page;
+        });
+  }
+
+  @Nonnull
+  @Override
+  public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+    return execution.flowable(
+        Flowable.defer(
+            () ->
+                Flowable.fromIterable(from(after).entrySet())
+                    .map(entry -> VersionedTask.decodeOrNull(entry.getKey(), entry.getValue()))));
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Todo> update(@Nonnull final Todo todo) {
+    return Maybe.error(new ReadOnlyReplicaException());
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndUpdate(
+      @Nonnull final Todo todo, final long expectedVersion) {
+    return Maybe.error(new ReadOnlyReplicaException());
+  }
+
+  @Nonnull
+  @Override
+  public Maybe<Either<Todo, Todo>> compareAndDelete(
+      @Nonnull final Todo.Id id, final long expectedVersion) {
+    return Maybe.error(new ReadOnlyReplicaException());
+  }
+
+  @Override
+  public long version() {
+    return versions.collection();
+  }
+
+  @Override
+  public long size() {
+    return size.sum();
+  }
+
+  /** The sequence of the last change applied, or -1 if no snapshot has been applied yet. */
+  public long sequence() {
+    return sequence;
+  }
+
+  /**
+   * The primary's epoch that the sequence and the versions of the Todos are from. It only changes
+   * once the snapshot from the new one is in, so Todos read after it are from it too.
+   */
+  @Override
+  public long epoch() {
+    return epoch;
+  }
+
+  void snapshotStarted(final long epoch) {
+    loading = new ConcurrentSkipListMap<>();
+    loadingSize = 0;
+    loadingEpoch = epoch;
+  }
+
+  void snapshotTodo(final long id, @Nonnull final byte[] versionedTask) {
+    if (loading != null && loading.put(id, versionedTask) == null) {
+      loadingSize++;
+    }
+  }
+
+  void snapshotEnded(final long sequence) {
+    if (loading != null) {
+      todos = loading;
+      size.reset();
+      size.add(loadingSize);
+      loading = null;
+      deleted.clear();
+      this.epoch = loadingEpoch;
+      this.sequence = sequence;
+      versions.written();
+      if (changeFeed != null) {
+        changeFeed.reset();
+      }
+    }
+  }
+
+  void changed(
+      final long sequence,
+      @Nonnull final Todo.Change.Kind kind,
+      final long id,
+      @Nonnull final byte[] versionedTask) {
+    final long version = VersionedTask.version(versionedTask);
+    final byte[] current = todos.get(id);
+    final long newest =
+        Math.max(
+            current == null ? NONE : VersionedTask.version(current),
+            deleted.getOrDefault(id, NONE));
+    if (kind == Todo.Change.Kind.Deleted) {
+      if (version >= newest) {
+        deleted.put(id, version);
+        if (todos.remove(id) != null) {
+          size.decrement();
+          versions.written();
+          published(kind, id, versionedTask);
+        }
+      }
+    } else if (version > newest) {
+      if (todos.put(id, versionedTask) == null) {
+        size.increment();
+      }
+      versions.written();
+      published(kind, id, versionedTask);
+    }
+    this.sequence = sequence;
+  }
+
+  private void published(
+      final Todo.Change.Kind kind, final long id, @Nonnull final byte[] versionedTask) {
+    if (changeFeed != null) {
+      changeFeed.publish(kind, VersionedTask.decodeOrNull(id, versionedTask));
+    }
+  }
+
+  private NavigableMap<Long, byte[]> from(@Nullable final Todo.Id after) {
+    final ConcurrentSkipListMap<Long, byte[]> current = todos;
+    return after == null ? current : current.tailMap(after.getValue(), false);
+  }
+}
@@ -0,0 +1,199 @@
+package todddo.java.infra.replication;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps a {@link ReplicaTodosRepo} up to date with the primary at todddo.replication.primary,
+ * reconnecting after todddo.replication.reconnect-delay whenever the connection drops, and resuming
+ * from the last change applied.
+ *
+ * <p>How far behind the replica is shows as two gauges: todddo.replication.lag.changes, how many
+ * changes the primary had made, as of its last heartbeat, that are not applied yet, and
+ * todddo.replication.lag.seconds, how long it has been since the replica was last known to be
+ * caught up. The latter keeps growing while the primary cannot be reached, so alerting on it bounds
+ * how stale reads may be.
+ */
+@Slf4j
+@Context
+@Requires(property = "todddo.repo.store", value = "replica")
+public class ReplicationClient implements MeterBinder, AutoCloseable {
+
+  private final ReplicaTodosRepo repo;
+  private final String host;
+  private final int port;
+  private final Duration reconnectDelay;
+  private final EventLoopGroup group = new NioEventLoopGroup(1);
+  private final Bootstrap bootstrap;
+  private final long started = System.nanoTime();
+  private volatile boolean closed;
+  private volatile boolean connected;
+  private volatile long primarySequence = -1L;
+  private volatile long caughtUpAt = -1L;
+
+  @Inject
+  public ReplicationClient(
+      @Nonnull final ReplicaTodosRepo repo,
+      @Value("${todddo.replication.primary}") final String primary,
+      @Value("${todddo.replication.reconnect-delay:1s}") final Duration reconnectDelay) {
+    this.repo = repo;
+    final int colon = primary.lastIndexOf(':');
+    if (colon < 0) {
+      throw new IllegalArgumentException("Primary must be host:port, got [" + primary + "]");
+    }
+    this.host = primary.substring(0, colon);
+    this.port = Integer.parseInt(primary.substring(colon + 1));
+    this.reconnectDelay = reconnectDelay;
+    this.bootstrap =
+        new Bootstrap()
+            .group(group)
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.TCP_NODELAY, true)
+            .handler(
+                new ChannelInitializer<SocketChannel>() {
+                  @Override
+                  protected void initChannel(final SocketChannel channel) {
+                    Frames.addCodec(channel.pipeline());
+                    channel.pipeline().addLast(new Applier());
+                  }
+                });
+    connect();
+  }
+
+  public boolean connected() {
+    return connected;
+  }
+
+  /** Changes the primary has made, as of its last heartbeat, that are not applied yet. */
+  public long lagChanges() {
+    return Math.max(0L, primarySequence - repo.sequence());
+  }
+
+  /** Seconds since the replica was last known to be caught up with the primary. */
+  public double lagSeconds() {
+    final long since = caughtUpAt < 0 ? started : caughtUpAt;
+    return (System.nanoTime() - since) / 1e9;
+  }
+
+  @Override
+  public void bindTo(@Nonnull final MeterRegistry registry) {
+    Gauge.builder("todddo.replication.lag.changes", this, ReplicationClient::lagChanges)
+        .description("Changes made on the primary that this replica has not applied yet")
+        .register(registry);
+    Gauge.builder("todddo.replication.lag.seconds", this, ReplicationClient::lagSeconds)
+        .description("Seconds since this replica was last known to be caught up")
+        .register(registry);
+    Gauge.builder("todddo.replication.connected", this, c -> c.connected() ? 1 : 0)
+        .description("Whether this replica is connected to its primary")
+        .register(registry);
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    closed = true;
+    group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+  }
+
+  private void connect() {
+    if (closed) {
+      return;
+    }
+    bootstrap
+        .connect(host, port)
+        .addListener(
+            (ChannelFuture future) -> {
+              if (!future.isSuccess()) {
+                log.debug("Could not connect to primary {}:{}", host, port, future.cause());
+                reconnectLater(future.channel());
+              }
+            });
+  }
+
+  private void reconnectLater(final Channel channel) {
+    if (!closed) {
+      channel.eventLoop().schedule(this::connect, reconnectDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Marks the replica caught up if it has applied everything the primary last said it had. */
+  private void checkCaughtUp() {
+    if (primarySequence >= 0 && repo.sequence() >= primarySequence) {
+      caughtUpAt = System.nanoTime();
+    }
+  }
+
+  /** Applies frames from the primary on the client's single event loop thread. */
+  private class Applier extends SimpleChannelInboundHandler<ByteBuf> {
+
+    @Override
+    public void channelActive(final ChannelHandlerContext ctx) {
+      connected = true;
+      log.info("Connected to primary {}:{}, resuming after {}", host, port, repo.sequence());
+      ctx.writeAndFlush(Frames.subscribe(repo.epoch(), repo.sequence()).encode(ctx.alloc()));
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final ByteBuf frame) {
+      switch (frame.readByte()) {
+        case Frames.SNAPSHOT:
+          repo.snapshotStarted(frame.readLong());
+          break;
+        case Frames.TODO:
+          repo.snapshotTodo(frame.readLong(), Frames.rest(frame));
+          break;
+        case Frames.SNAPSHOT_END:
+          repo.snapshotEnded(frame.readLong());
+          checkCaughtUp();
+          break;
+        case Frames.CHANGE:
+          final long sequence = frame.readLong();
+          final byte kind = frame.readByte();
+          repo.changed(sequence, Frames.kind(kind), frame.readLong(), Frames.rest(frame));
+          checkCaughtUp();
+          break;
+        case Frames.HEARTBEAT:
+          primarySequence = frame.readLong();
+          checkCaughtUp();
+          break;
+        default:
+          break;
+      }
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) {
+      connected = false;
+      log.info("Disconnected from primary {}:{}", host, port);
+      reconnectLater(ctx.channel());
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+      log.warn("Replication from primary {}:{} failed", host, port, cause);
+      ctx.close();
+    }
+  }
+}
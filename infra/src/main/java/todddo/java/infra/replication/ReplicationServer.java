@@ -0,0 +1,232 @@
+package todddo.java.infra.replication;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micronaut.context.annotation.Context;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.reactivex.Flowable;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
+
+/**
+ * Streams this instance's Todos, then every change made to them, to each {@link ReplicationClient}
+ * that connects, over plain TCP; see {@link Frames}.
+ *
+ * <p>A replica that has applied no changes, or resumes from one that the ChangeFeed no longer
+ * keeps, first gets a snapshot streamed from the repo. Each replica is sent frames only as fast as
+ * its socket takes them; one that falls further behind than the ChangeFeed's buffer is
+ * disconnected, and resumes from where it got to when it reconnects.
+ */
+@Slf4j
+@Context
+@Requires(property = "todddo.replication.enabled", value = "true")
+public class ReplicationServer implements MeterBinder, AutoCloseable {
+
+  private final Todo.Repo repo;
+  private final ChangeFeed changes;
+  private final Duration heartbeatInterval;
+  private final long epoch = ThreadLocalRandom.current().nextLong();
+  private final EventLoopGroup group = new NioEventLoopGroup(1);
+  private final ChannelGroup replicas = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+  private final Channel server;
+
+  @Inject
+  public ReplicationServer(
+      @Nonnull final Todo.Repo repo,
+      @Nonnull final ChangeFeed changes,
+      @Value("${todddo.replication.port:7070}") final int port,
+      @Value("${todddo.replication.heartbeat-interval:1s}") final Duration heartbeatInterval) {
+    this.repo = repo;
+    this.changes = changes;
+    this.heartbeatInterval = heartbeatInterval;
+    this.server =
+        new ServerBootstrap()
+            .group(group)
+            .channel(NioServerSocketChannel.class)
+            .childOption(ChannelOption.TCP_NODELAY, true)
+            .childOption(
+                ChannelOption.WRITE_BUFFER_WATER_MARK,
+                new WriteBufferWaterMark(256 * 1024, 1024 * 1024))
+            .childHandler(
+                new ChannelInitializer<SocketChannel>() {
+                  @Override
+                  protected void initChannel(final SocketChannel channel) {
+                    Frames.addCodec(channel.pipeline());
+                    channel.pipeline().addLast(new Replica());
+                  }
+                })
+            .bind(port)
+            .syncUninterruptibly()
+            .channel();
+    log.info("Replicating to replicas that connect to port {}", port());
+  }
+
+  /** The port replicas connect to, which is the one bound if 0 was asked for. */
+  public int port() {
+    return ((InetSocketAddress) server.localAddress()).getPort();
+  }
+
+  @Override
+  public void bindTo(@Nonnull final MeterRegistry registry) {
+    Gauge.builder("todddo.replication.replicas", replicas, ChannelGroup::size)
+        .description("Replicas connected to this primary")
+        .register(registry);
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    server.close().syncUninterruptibly();
+    replicas.close().syncUninterruptibly();
+    group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+  }
+
+  /** Everything a replica needs to catch up from the given sequence, then to keep up. */
+  private Flowable<Frames.Frame> frames(final long epoch, final long after) {
+    if (epoch != this.epoch || after < 0) {
+      return snapshot();
+    }
+    return changes
+        .changes(after)
+        .<Frames.Frame>map(Frames::change)
+        .onErrorResumeNext(
+            (Throwable e) ->
+                e instanceof ChangeFeed.MissedChanges ? snapshot() : Flowable.error(e));
+  }
+
+  private Flowable<Frames.Frame> snapshot() {
+    return Flowable.defer(
+        () -> {
+          final long sequence = changes.sequence();
+          return Flowable.concat(
+              Flowable.just(Frames.snapshot(epoch)),
+              repo.stream(null).map(Frames::todo),
+              Flowable.just(Frames.snapshotEnd(sequence)),
+              frames(epoch, sequence));
+        });
+  }
+
+  /**
+   * One connected replica: subscribes to its frames once it says where to start from, asking for
+   * the next frame only while its socket is writable.
+   */
+  private class Replica extends SimpleChannelInboundHandler<ByteBuf>
+      implements Subscriber<Frames.Frame> {
+
+    private final AtomicBoolean waitingForWritable = new AtomicBoolean();
+    @Nullable private volatile Subscription subscription;
+    @Nullable private ScheduledFuture<?> heartbeats;
+    private ChannelHandlerContext ctx;
+
+    @Override
+    public void channelActive(final ChannelHandlerContext ctx) {
+      this.ctx = ctx;
+      replicas.add(ctx.channel());
+      heartbeats =
+          ctx.executor()
+              .scheduleAtFixedRate(
+                  () -> ctx.writeAndFlush(Frames.heartbeat(changes.sequence()).encode(ctx.alloc())),
+                  0,
+                  heartbeatInterval.toMillis(),
+                  TimeUnit.MILLISECONDS);
+      log.info("Replica {} connected", ctx.channel().remoteAddress());
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final ByteBuf frame) {
+      if (frame.readByte() == Frames.SUBSCRIBE && subscription == null) {
+        final long epoch = frame.readLong();
+        frames(epoch, frame.readLong()).subscribe(this);
+      }
+    }
+
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext ctx) {
+      final Subscription current = subscription;
+      if (ctx.channel().isWritable()
+          && current != null
+          && waitingForWritable.compareAndSet(true, false)) {
+        current.request(1);
+      }
+    }
+
+    @Override
+    public void channelInactive(final ChannelHandlerContext ctx) {
+      if (heartbeats != null) {
+        heartbeats.cancel(false);
+      }
+      final Subscription current = subscription;
+      if (current != null) {
+        current.cancel();
+      }
+      log.info("Replica {} disconnected", ctx.channel().remoteAddress());
+    }
+
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+      log.warn("Replica {} failed", ctx.channel().remoteAddress(), cause);
+      ctx.close();
+    }
+
+    @Override
+    public void onSubscribe(final Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(1);
+    }
+
+    @Override
+    public void onNext(final Frames.Frame frame) {
+      ctx.writeAndFlush(frame.encode(ctx.alloc()));
+      if (ctx.channel().isWritable()) {
+        subscription.request(1);
+      } else {
+        waitingForWritable.set(true);
+        // It may have drained in between, in which case no writability change is coming
+        if (ctx.channel().isWritable() && waitingForWritable.compareAndSet(true, false)) {
+          subscription.request(1);
+        }
+      }
+    }
+
+    @Override
+    public void onError(final Throwable e) {
+      log.info("Disconnecting replica {}: {}", ctx.channel().remoteAddress(), e.toString());
+      ctx.close();
+    }
+
+    @Override
+    public void onComplete() {
+      ctx.close();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+package todddo.java.infra.search;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.jctools.queues.MpscUnboundedArrayQueue;
+
+/**
+ * Keeps an {@link InvertedIndex} and a {@link PrefixIndex} following a store's Tasks, off the
+ * store's write path.
+ *
+ * <p>Writes only queue the Id they changed, without locking anything. Whoever needs the indexes
+ * next brings them up to date: a search or suggestion before it looks, or a write that finds more
+ * than catchUpAfter Ids queued and nobody else catching up. Catching up reads each queued Id's Task
+ * from the store as it is then, and changes the indexes from the Task last indexed for it, so it
+ * does not matter in which order, or how often, writes to the same Todo queued it.
+ *
+ * <p>A search sees every write that completed before it started. Catching up is done by one thread
+ * at a time, and only for the Ids queued when it started, so it cannot be kept at it by writes.
+ */
+public final class Indexer {
+
+  private final LongFunction<String> tasks;
+  private final int catchUpAfter;
+  private final InvertedIndex index = new InvertedIndex();
+  private final PrefixIndex prefixes = new PrefixIndex();
+  private final MpscUnboundedArrayQueue<Long> queued = new MpscUnboundedArrayQueue<>(1024);
+  private final ReentrantLock catchingUp = new ReentrantLock();
+
+  /** Per Id, the Task as last indexed. Only touched while catching up. */
+  private final Map<Long, String> indexed = new HashMap<>();
+
+  /**
+   * @param tasks the store's current Task for an Id, or null if it has no Todo with that Id
+   * @param catchUpAfter how many Ids may be queued before a write catches up, if nobody else is
+   */
+  public Indexer(@Nonnull final LongFunction<String> tasks, final int catchUpAfter) {
+    this.tasks = tasks;
+    this.catchUpAfter = catchUpAfter;
+  }
+
+  /** Call once the Todo with the Id has been created, changed or deleted in the store. */
+  public void changed(final long id) {
+    queued.offer(id);
+    if (queued.size() > catchUpAfter && catchingUp.tryLock()) {
+      try {
+        catchUp(queued.size());
+      } finally {
+        catchingUp.unlock();
+      }
+    }
+  }
+
+  /** As per InvertedIndex.search, once every write before it has been indexed. */
+  @Nonnull
+  public long[] search(@Nonnull final List<String> terms, final int offset, final int limit) {
+    caughtUp();
+    return index.search(terms, offset, limit);
+  }
+
+  /** As per PrefixIndex.suggest, once every write before it has been indexed. */
+  @Nonnull
+  public long[] suggest(@Nonnull final String prefix, final int limit) {
+    caughtUp();
+    return prefixes.suggest(prefix, limit);
+  }
+
+  /** How many Ids are queued to be indexed. */
+  public int lag() {
+    return queued.size();
+  }
+
+  private void caughtUp() {
+    // Whoever is catching up may have taken Ids off the queue, but not indexed them yet
+    if (queued.isEmpty() && !catchingUp.isLocked()) {
+      return;
+    }
+    catchingUp.lock();
+    try {
+      catchUp(queued.size());
+    } finally {
+      catchingUp.unlock();
+    }
+  }
+
+  /** Must hold catchingUp. */
+  private void catchUp(final int count) {
+    for (int i = 0; i < count; i++) {
+      final Long id = queued.poll();
+      if (id == null) {
+        return;
+      }
+      reindex(id);
+    }
+  }
+
+  private void reindex(final long id) {
+    @Nullable final String task = tasks.apply(id);
+    @Nullable final String previous = indexed.get(id);
+    if (Objects.equals(task, previous)) {
+      return;
+    } else if (previous == null) {
+      index.add(id, task);
+      prefixes.add(id, task);
+      indexed.put(id, task);
+    } else if (task == null) {
+      index.remove(id, previous);
+      prefixes.remove(id, previous);
+      indexed.remove(id);
+    } else {
+      index.replace(id, previous, task);
+      prefixes.replace(id, previous, task);
+      indexed.put(id, task);
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package todddo.java.infra.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.Nonnull;
+import todddo.java.domain.models.Terms;
+
+/**
+ * Which Todo Ids each term of their Tasks occurs in, for searching without looking at every Todo.
+ *
+ * <p>Kept up to date with the store by an {@link Indexer}, one Task at a time. Searches find the
+ * Ids with every term by walking the shortest list of Ids and skipping ahead through the others,
+ * then keep only the best offset + limit, so cost grows with the rarest term's matches rather than
+ * the number of Todos.
+ */
+public class InvertedIndex {
+
+  private static final long[] NONE = new long[0];
+
+  private final Map<String, Postings> postings = new HashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private long documents;
+  private long totalLength;
+
+  public void add(final long id, @Nonnull final String task) {
+    final List<String> terms = Terms.of(task);
+    final Map<String, Integer> frequencies = frequencies(terms);
+    lock.writeLock().lock();
+    try {
+      for (final Map.Entry<String, Integer> term : frequencies.entrySet()) {
+        postings
+            .computeIfAbsent(term.getKey(), ignored -> new Postings())
+            .put(id, Postings.stats(term.getValue(), terms.size()));
+      }
+      documents++;
+      totalLength += terms.size();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** The task must be the one the Id was added with. */
+  public void remove(final long id, @Nonnull final String task) {
+    final List<String> terms = Terms.of(task);
+    lock.writeLock().lock();
+    try {
+      for (final String term : frequencies(terms).keySet()) {
+        final Postings ids = postings.get(term);
+        if (ids != null && ids.remove(id) && ids.size() == 0) {
+          postings.remove(term);
+        }
+      }
+      documents--;
+      totalLength -= terms.size();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Only the terms the Task no longer has, or newly has, add or remove Ids; the rest have their
+   * stats overwritten in place.
+   */
+  public void replace(final long id, @Nonnull final String previous, @Nonnull final String task) {
+    final List<String> previousTerms = Terms.of(previous);
+    final List<String> terms = Terms.of(task);
+    final Map<String, Integer> frequencies = frequencies(terms);
+    lock.writeLock().lock();
+    try {
+      for (final String term : frequencies(previousTerms).keySet()) {
+        if (!frequencies.containsKey(term)) {
+          final Postings ids = postings.get(term);
+          if (ids != null && ids.remove(id) && ids.size() == 0) {
+            postings.remove(term);
+          }
+        }
+      }
+      for (final Map.Entry<String, Integer> term : frequencies.entrySet()) {
+        postings
+            .computeIfAbsent(term.getKey(), ignored -> new Postings())
+            .put(id, Postings.stats(term.getValue(), terms.size()));
+      }
+      totalLength += terms.size() - previousTerms.size();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param terms distinct terms, all of which must match
+   * @return the Ids of at most limit matches, after skipping offset, best first then ascending
+   */
+  @Nonnull
+  public long[] search(@Nonnull final List<String> terms, final int offset, final int limit) {
+    lock.readLock().lock();
+    try {
+      if (terms.isEmpty()) {
+        return NONE;
+      }
+      final Postings[] lists = new Postings[terms.size()];
+      for (int i = 0; i < lists.length; i++) {
+        lists[i] = postings.get(terms.get(i));
+        if (lists[i] == null) {
+          return NONE;
+        }
+      }
+      Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+      final int wanted = (int) Math.min(lists[0].size(), (long) offset + limit);
+      if (offset >= wanted) {
+        return NONE;
+      }
+      return page(top(lists, wanted), offset);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Worst of the best wanted matches first, so it is the one to evict. */
+  private PriorityQueue<Match> top(final Postings[] lists, final int wanted) {
+    final double averageLength = documents == 0 ? 0 : (double) totalLength / documents;
+    final Postings.Cursor[] cursors = new Postings.Cursor[lists.length];
+    final double[] idfs = new double[lists.length];
+    for (int i = 0; i < lists.length; i++) {
+      cursors[i] = lists[i].cursor();
+      idfs[i] = Terms.idf(lists[i].size(), documents);
+    }
+    final PriorityQueue<Match> best = new PriorityQueue<>(wanted + 1);
+    final Postings.Cursor lead = cursors[0];
+    candidates:
+    while (!lead.done()) {
+      final long id = lead.id();
+      double score = score(lead.stats(), idfs[0], averageLength);
+      for (int i = 1; i < cursors.length; i++) {
+        final Postings.Cursor cursor = cursors[i];
+        cursor.seek(id);
+        if (cursor.done()) {
+          break candidates;
+        }
+        if (cursor.id() != id) {
+          lead.seek(cursor.id());
+          continue candidates;
+        }
+        score += score(cursor.stats(), idfs[i], averageLength);
+      }
+      if (best.size() < wanted) {
+        best.add(new Match(id, score));
+      } else if (Match.compare(score, id, best.peek()) > 0) {
+        best.poll();
+        best.add(new Match(id, score));
+      }
+      lead.next();
+    }
+    return best;
+  }
+
+  private static double score(final int stats, final double idf, final double averageLength) {
+    return Terms.score(Postings.frequency(stats), Postings.length(stats), idf, averageLength);
+  }
+
+  private static long[] page(final PriorityQueue<Match> best, final int offset) {
+    final long[] ids = new long[Math.max(0, best.size() - offset)];
+    for (int i = best.size() - 1; i >= 0; i--) {
+      final long id = best.poll().id;
+      if (i >= offset) {
+        ids[i - offset] = id;
+      }
+    }
+    return ids;
+  }
+
+  private static Map<String, Integer> frequencies(final List<String> terms) {
+    final Map<String, Integer> frequencies = new HashMap<>();
+    for (final String term : terms) {
+      frequencies.merge(term, 1, Integer::sum);
+    }
+    return frequencies;
+  }
+
+  private static class Match implements Comparable<Match> {
+
+    final long id;
+    final double score;
+
+    Match(final long id, final double score) {
+      this.id = id;
+      this.score = score;
+    }
+
+    /** Positive if the score and Id rank above the match: a higher score, or a lower Id. */
+    static int compare(final double score, final long id, final Match match) {
+      final int byScore = Double.compare(score, match.score);
+      return byScore != 0 ? byScore : Long.compare(match.id, id);
+    }
+
+    @Override
+    public int compareTo(final Match other) {
+      return compare(score, id, other);
+    }
+  }
+}
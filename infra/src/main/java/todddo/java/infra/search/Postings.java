@@ -0,0 +1,194 @@
+package todddo.java.infra.search;
+
+import java.util.Arrays;
+
+/**
+ * The Ids a term occurs in, ascending, each with how often it occurs there and how long that Task
+ * is. Kept in blocks of at most BLOCK Ids, so adding or removing one shifts at most a block, and
+ * finding one is a binary search over the blocks' first Ids, then within a block. The first Ids are
+ * also kept in an array of their own, so the first search does not touch every block it passes.
+ */
+final class Postings {
+
+  static final int BLOCK = 128;
+
+  private long[][] ids = new long[4][];
+  private int[][] stats = new int[4][];
+  private int[] sizes = new int[4];
+  private long[] firsts = new long[4];
+  private int blocks;
+  private int size;
+
+  int size() {
+    return size;
+  }
+
+  static int stats(final int frequency, final int length) {
+    return Math.min(frequency, 0xFFFF) << 16 | Math.min(length, 0xFFFF);
+  }
+
+  static int frequency(final int stats) {
+    return stats >>> 16;
+  }
+
+  static int length(final int stats) {
+    return stats & 0xFFFF;
+  }
+
+  /** Adds the Id, or replaces its stats if already present. */
+  void put(final long id, final int stats) {
+    if (blocks == 0) {
+      insertBlock(0);
+    }
+    int block = blockFor(id, 0);
+    int pos = Arrays.binarySearch(ids[block], 0, sizes[block], id);
+    if (pos >= 0) {
+      this.stats[block][pos] = stats;
+      return;
+    }
+    pos = -pos - 1;
+    if (sizes[block] == BLOCK) {
+      if (block == blocks - 1 && pos == BLOCK) {
+        // Appending, as every create does: start a new block rather than leave two half full
+        insertBlock(++block);
+        pos = 0;
+      } else {
+        split(block);
+        if (pos > BLOCK / 2) {
+          block++;
+          pos -= BLOCK / 2;
+        }
+      }
+    }
+    final int n = sizes[block];
+    System.arraycopy(ids[block], pos, ids[block], pos + 1, n - pos);
+    System.arraycopy(this.stats[block], pos, this.stats[block], pos + 1, n - pos);
+    ids[block][pos] = id;
+    this.stats[block][pos] = stats;
+    sizes[block]++;
+    size++;
+    firsts[block] = ids[block][0];
+  }
+
+  boolean remove(final long id) {
+    if (blocks == 0) {
+      return false;
+    }
+    final int block = blockFor(id, 0);
+    final int pos = Arrays.binarySearch(ids[block], 0, sizes[block], id);
+    if (pos < 0) {
+      return false;
+    }
+    final int n = --sizes[block];
+    System.arraycopy(ids[block], pos + 1, ids[block], pos, n - pos);
+    System.arraycopy(stats[block], pos + 1, stats[block], pos, n - pos);
+    size--;
+    if (n == 0) {
+      removeBlock(block);
+    } else {
+      firsts[block] = ids[block][0];
+    }
+    return true;
+  }
+
+  Cursor cursor() {
+    return new Cursor();
+  }
+
+  /** The last block, from the given one on, whose first Id is at most id; or the given one. */
+  private int blockFor(final long id, final int from) {
+    int lo = from + 1;
+    int hi = blocks - 1;
+    int found = from;
+    while (lo <= hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (firsts[mid] <= id) {
+        found = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return found;
+  }
+
+  private void insertBlock(final int block) {
+    if (blocks == ids.length) {
+      ids = Arrays.copyOf(ids, blocks * 2);
+      stats = Arrays.copyOf(stats, blocks * 2);
+      sizes = Arrays.copyOf(sizes, blocks * 2);
+      firsts = Arrays.copyOf(firsts, blocks * 2);
+    }
+    System.arraycopy(ids, block, ids, block + 1, blocks - block);
+    System.arraycopy(stats, block, stats, block + 1, blocks - block);
+    System.arraycopy(sizes, block, sizes, block + 1, blocks - block);
+    System.arraycopy(firsts, block, firsts, block + 1, blocks - block);
+    ids[block] = new long[BLOCK];
+    stats[block] = new int[BLOCK];
+    sizes[block] = 0;
+    blocks++;
+  }
+
+  private void split(final int block) {
+    insertBlock(block + 1);
+    final int half = BLOCK / 2;
+    System.arraycopy(ids[block], half, ids[block + 1], 0, BLOCK - half);
+    System.arraycopy(stats[block], half, stats[block + 1], 0, BLOCK - half);
+    sizes[block + 1] = BLOCK - half;
+    sizes[block] = half;
+    firsts[block + 1] = ids[block + 1][0];
+  }
+
+  private void removeBlock(final int block) {
+    System.arraycopy(ids, block + 1, ids, block, blocks - block - 1);
+    System.arraycopy(stats, block + 1, stats, block, blocks - block - 1);
+    System.arraycopy(sizes, block + 1, sizes, block, blocks - block - 1);
+    System.arraycopy(firsts, block + 1, firsts, block, blocks - block - 1);
+    blocks--;
+    ids[blocks] = null;
+    stats[blocks] = null;
+  }
+
+  /** Walks the Ids in ascending order. Only valid while the Postings are not changed. */
+  final class Cursor {
+
+    private int block;
+    private int pos;
+
+    boolean done() {
+      return block >= blocks;
+    }
+
+    long id() {
+      return ids[block][pos];
+    }
+
+    int stats() {
+      return Postings.this.stats[block][pos];
+    }
+
+    void next() {
+      if (++pos == sizes[block]) {
+        block++;
+        pos = 0;
+      }
+    }
+
+    /** Moves forward to the first Id at least target, if there is one. */
+    void seek(final long target) {
+      if (done() || id() >= target) {
+        return;
+      }
+      if (ids[block][sizes[block] - 1] < target) {
+        block = blockFor(target, block);
+        pos = 0;
+        if (ids[block][sizes[block] - 1] < target) {
+          block++;
+          return;
+        }
+      }
+      final int found = Arrays.binarySearch(ids[block], pos, sizes[block], target);
+      pos = found >= 0 ? found : -found - 1;
+    }
+  }
+}
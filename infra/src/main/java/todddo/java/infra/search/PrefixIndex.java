@@ -0,0 +1,272 @@
+package todddo.java.infra.search;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.annotation.Nonnull;
+import todddo.java.domain.models.Terms;
+
+/**
+ * Todo Ids by their normalised Task, in a radix tree, for suggesting Todos as their Task is typed.
+ *
+ * <p>Each edge holds as many characters as its Tasks share, so there is a node per Task and per
+ * point where Tasks diverge, rather than per character. Children are sorted, so walking the subtree
+ * under a prefix finds its completions alphabetically, and stops after the first limit. Each node
+ * counts the Ids under it, so a suggestion allocates no more than it returns. Reads share a lock,
+ * so any number of suggestions can be made at once.
+ */
+public class PrefixIndex {
+
+  private static final long[] NONE = new long[0];
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Node root = new Node(new char[0]);
+
+  public void add(final long id, @Nonnull final String task) {
+    final String key = Terms.normalise(task);
+    lock.writeLock().lock();
+    try {
+      root.add(key, 0, id);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** The task must be the one the Id was added with. */
+  public void remove(final long id, @Nonnull final String task) {
+    final String key = Terms.normalise(task);
+    lock.writeLock().lock();
+    try {
+      root.remove(key, 0, id);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void replace(final long id, @Nonnull final String previous, @Nonnull final String task) {
+    final String previousKey = Terms.normalise(previous);
+    final String key = Terms.normalise(task);
+    if (previousKey.equals(key)) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      root.remove(previousKey, 0, id);
+      root.add(key, 0, id);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param prefix as produced by Terms.prefix
+   * @return the Ids of the first limit Todos whose normalised Task starts with the prefix,
+   *     alphabetically by Task, then ascending
+   */
+  @Nonnull
+  public long[] suggest(@Nonnull final String prefix, final int limit) {
+    lock.readLock().lock();
+    try {
+      Node node = root;
+      int from = 0;
+      while (from < prefix.length()) {
+        final int child = node.child(prefix.charAt(from));
+        if (child < 0) {
+          return NONE;
+        }
+        final Node next = node.children[child];
+        final int common = next.common(prefix, from);
+        if (from + common < prefix.length() && common < next.label.length) {
+          return NONE;
+        }
+        node = next;
+        from += common;
+      }
+      final long[] ids = new long[Math.min(limit, node.total)];
+      node.collect(ids, 0);
+      return ids;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private static final class Node {
+
+    private static final Node[] LEAF = new Node[0];
+
+    /** The characters on the edge into this node. */
+    char[] label;
+
+    /** Sorted by the first character of their labels, which differ. */
+    Node[] children = LEAF;
+
+    /** Of Todos whose Task ends here, ascending; null if there are none. */
+    long[] ids;
+
+    int size;
+
+    /** How many Ids there are in this subtree, this node's included. */
+    int total;
+
+    Node(final char[] label) {
+      this.label = label;
+    }
+
+    /** The index of the child whose label starts with c, or where it would be inserted, negated. */
+    int child(final char c) {
+      int lo = 0;
+      int hi = children.length - 1;
+      while (lo <= hi) {
+        final int mid = (lo + hi) >>> 1;
+        final char first = children[mid].label[0];
+        if (first < c) {
+          lo = mid + 1;
+        } else if (first > c) {
+          hi = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(lo + 1);
+    }
+
+    /** How many characters of the label match the key from the given index. */
+    int common(final String key, final int from) {
+      final int max = Math.min(label.length, key.length() - from);
+      int i = 0;
+      while (i < max && label[i] == key.charAt(from + i)) {
+        i++;
+      }
+      return i;
+    }
+
+    /**
+     * Adds the Id under the rest of the key, from the given index.
+     *
+     * @return whether it was not there already
+     */
+    boolean add(final String key, final int from, final long id) {
+      final boolean added = addUnder(key, from, id);
+      if (added) {
+        total++;
+      }
+      return added;
+    }
+
+    private boolean addUnder(final String key, final int from, final long id) {
+      if (from == key.length()) {
+        return addId(id);
+      }
+      final int child = child(key.charAt(from));
+      if (child < 0) {
+        final Node leaf = new Node(key.substring(from).toCharArray());
+        leaf.add(key, key.length(), id);
+        final int at = -child - 1;
+        final Node[] grown = new Node[children.length + 1];
+        System.arraycopy(children, 0, grown, 0, at);
+        System.arraycopy(children, at, grown, at + 1, children.length - at);
+        grown[at] = leaf;
+        children = grown;
+        return true;
+      }
+      Node next = children[child];
+      final int common = next.common(key, from);
+      if (common < next.label.length) {
+        final Node split = new Node(Arrays.copyOf(next.label, common));
+        next.label = Arrays.copyOfRange(next.label, common, next.label.length);
+        split.children = new Node[] {next};
+        split.total = next.total;
+        children[child] = split;
+        next = split;
+      }
+      return next.add(key, from + common, id);
+    }
+
+    /**
+     * Removes the Id from under the rest of the key, pruning and merging the nodes it leaves.
+     *
+     * @return whether it was there
+     */
+    boolean remove(final String key, final int from, final long id) {
+      final boolean removed = removeUnder(key, from, id);
+      if (removed) {
+        total--;
+      }
+      return removed;
+    }
+
+    private boolean removeUnder(final String key, final int from, final long id) {
+      if (from == key.length()) {
+        return removeId(id);
+      }
+      final int child = child(key.charAt(from));
+      if (child < 0) {
+        return false;
+      }
+      final Node next = children[child];
+      if (next.common(key, from) < next.label.length) {
+        return false;
+      }
+      if (!next.remove(key, from + next.label.length, id)) {
+        return false;
+      }
+      if (next.size == 0 && next.children.length == 0) {
+        final Node[] shrunk = new Node[children.length - 1];
+        System.arraycopy(children, 0, shrunk, 0, child);
+        System.arraycopy(children, child + 1, shrunk, child, shrunk.length - child);
+        children = shrunk.length == 0 ? LEAF : shrunk;
+      } else if (next.size == 0 && next.children.length == 1) {
+        final Node only = next.children[0];
+        final char[] merged = Arrays.copyOf(next.label, next.label.length + only.label.length);
+        System.arraycopy(only.label, 0, merged, next.label.length, only.label.length);
+        only.label = merged;
+        children[child] = only;
+      }
+      return true;
+    }
+
+    /** Fills ids from the given index with this subtree's, in order, until full. */
+    int collect(final long[] into, final int from) {
+      int at = from;
+      final int own = Math.min(size, into.length - at);
+      if (own > 0) {
+        System.arraycopy(ids, 0, into, at, own);
+        at += own;
+      }
+      for (int i = 0; i < children.length && at < into.length; i++) {
+        at = children[i].collect(into, at);
+      }
+      return at;
+    }
+
+    private boolean addId(final long id) {
+      if (ids == null) {
+        ids = new long[1];
+      }
+      final int at = Arrays.binarySearch(ids, 0, size, id);
+      if (at >= 0) {
+        return false;
+      }
+      final int insert = -at - 1;
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      System.arraycopy(ids, insert, ids, insert + 1, size - insert);
+      ids[insert] = id;
+      size++;
+      return true;
+    }
+
+    private boolean removeId(final long id) {
+      final int at = ids == null ? -1 : Arrays.binarySearch(ids, 0, size, id);
+      if (at < 0) {
+        return false;
+      }
+      System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+      if (--size == 0) {
+        ids = null;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package todddo.java.infra.tracing;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nonnull;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Where the time of one request went, as spans of its stages. Spans are added as each stage ends,
+ * from whichever thread it ran on.
+ */
+public final class Trace {
+
+  private final String request;
+  private final Instant startedAt = Instant.now();
+  private final long startNanos = System.nanoTime();
+  private final List<Span> spans = new ArrayList<>(8);
+  private volatile long serviceStartNanos = startNanos;
+  private volatile int status;
+  private volatile long totalNanos;
+
+  Trace(@Nonnull final String request) {
+    this.request = request;
+  }
+
+  public synchronized void span(
+      @Nonnull final String stage, final long fromNanos, final long toNanos) {
+    spans.add(
+        Span.builder()
+            .stage(stage)
+            .thread(Thread.currentThread().getName())
+            .startMicros(micros(fromNanos - startNanos))
+            .durationMicros(micros(toNanos - fromNanos))
+            .build());
+  }
+
+  /** Ends the deserialize stage; the service stage starts here, rather than at the start. */
+  public void deserialized() {
+    final long now = System.nanoTime();
+    span("deserialize", startNanos, now);
+    serviceStartNanos = now;
+  }
+
+  public long getServiceStartNanos() {
+    return serviceStartNanos;
+  }
+
+  void finish(final int status, final long endNanos) {
+    this.status = status;
+    this.totalNanos = endNanos - startNanos;
+  }
+
+  long getTotalNanos() {
+    return totalNanos;
+  }
+
+  @Nonnull
+  public String getRequest() {
+    return request;
+  }
+
+  @Nonnull
+  public Instant getStartedAt() {
+    return startedAt;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public double getTotalMicros() {
+    return micros(totalNanos);
+  }
+
+  /** In the order they started. */
+  @Nonnull
+  public synchronized List<Span> getSpans() {
+    final List<Span> ordered = new ArrayList<>(spans);
+    ordered.sort(Comparator.comparingDouble(Span::getStartMicros));
+    return ordered;
+  }
+
+  private static double micros(final long nanos) {
+    return nanos / 1000.0;
+  }
+
+  @Value
+  @Builder
+  public static class Span {
+
+    @NonNull String stage;
+
+    @NonNull String thread;
+
+    /** From the start of the request. */
+    double startMicros;
+
+    double durationMicros;
+  }
+}
@@ -0,0 +1,110 @@
+package todddo.java.infra.tracing;
+
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.context.ServerRequestContext;
+import io.reactivex.Single;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Traces requests when todddo.tracing.enabled is set, and keeps the most recent ones that took at
+ * least todddo.tracing.slow-threshold in a ring buffer of todddo.tracing.capacity.
+ *
+ * <p>A request's Trace is an attribute of the request, so any code running on its behalf can find
+ * it, on whichever thread. When tracing is off, every method here returns after checking a final
+ * field.
+ */
+@Singleton
+public class Tracing {
+
+  public static final String ATTRIBUTE = "todddo.trace";
+
+  private final boolean enabled;
+  private final long slowThresholdNanos;
+  private final AtomicReferenceArray<Trace> slow;
+  private final AtomicLong kept = new AtomicLong();
+
+  @Inject
+  public Tracing(
+      @Value("${todddo.tracing.enabled:false}") final boolean enabled,
+      @Value("${todddo.tracing.slow-threshold:10ms}") final Duration slowThreshold,
+      @Value("${todddo.tracing.capacity:100}") final int capacity) {
+    this.enabled = enabled;
+    this.slowThresholdNanos = slowThreshold.toNanos();
+    this.slow = new AtomicReferenceArray<>(Math.max(1, capacity));
+  }
+
+  @Nonnull
+  public static Tracing disabled() {
+    return new Tracing(false, Duration.ZERO, 1);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Nonnull
+  public Trace start(@Nonnull final String request) {
+    return new Trace(request);
+  }
+
+  /** The Trace of the request being served on this thread, if tracing is on. */
+  @Nullable
+  public Trace current() {
+    if (!enabled) {
+      return null;
+    }
+    return ServerRequestContext.currentRequest()
+        .flatMap(request -> request.getAttribute(ATTRIBUTE, Trace.class))
+        .orElse(null);
+  }
+
+  /** Ends the deserialize stage of the current request, if it is traced. */
+  public void deserialized() {
+    if (enabled) {
+      final Trace trace = current();
+      if (trace != null) {
+        trace.deserialized();
+      }
+    }
+  }
+
+  /**
+   * Ends the deserialize stage of the current request, if it is traced, once the body has been
+   * read. The body is read outside of the request, so its Trace is looked up now.
+   */
+  @Nonnull
+  public <T> Single<T> deserialized(@Nonnull final Single<T> body) {
+    final Trace trace = current();
+    return trace == null ? body : body.doOnSuccess(ignored -> trace.deserialized());
+  }
+
+  /** Keeps the Trace if the request was slow, overwriting the oldest kept one if full. */
+  public void finish(@Nonnull final Trace trace, final int status, final long endNanos) {
+    trace.finish(status, endNanos);
+    if (trace.getTotalNanos() >= slowThresholdNanos) {
+      slow.set((int) (kept.getAndIncrement() % slow.length()), trace);
+    }
+  }
+
+  /** Most recent first. */
+  @Nonnull
+  public List<Trace> slowRequests() {
+    final long newest = kept.get() - 1;
+    final List<Trace> traces = new ArrayList<>(slow.length());
+    for (long i = newest; i >= 0 && i > newest - slow.length(); i--) {
+      final Trace trace = slow.get((int) (i % slow.length()));
+      if (trace != null) {
+        traces.add(trace);
+      }
+    }
+    return traces;
+  }
+}
@@ -0,0 +1,58 @@
+package todddo.java.infra.versions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import todddo.java.domain.models.Todo;
+
+/** A Todo's version and the UTF-8 bytes of its Task, as one byte[] for stores that keep bytes. */
+public final class VersionedTask {
+
+  private static final int VERSION_BYTES = Long.BYTES;
+
+  private VersionedTask() {}
+
+  @Nonnull
+  public static byte[] encode(final long version, @Nonnull final Todo.Task task) {
+    final byte[] utf8 = task.getValue().getBytes(StandardCharsets.UTF_8);
+    return ByteBuffer.allocate(VERSION_BYTES + utf8.length).putLong(version).put(utf8).array();
+  }
+
+  /** Overwrites the version in encoded bytes, e.g. to encode before taking a lock. */
+  @Nonnull
+  public static byte[] stamp(@Nonnull final byte[] encoded, final long version) {
+    ByteBuffer.wrap(encoded).putLong(0, version);
+    return encoded;
+  }
+
+  public static long version(@Nonnull final byte[] encoded) {
+    return ByteBuffer.wrap(encoded).getLong();
+  }
+
+  @Nullable
+  public static Long versionOrNull(@Nullable final byte[] encoded) {
+    return encoded == null ? null : version(encoded);
+  }
+
+  @Nullable
+  public static Todo decodeOrNull(final long id, @Nullable final byte[] encoded) {
+    if (encoded == null) {
+      return null;
+    } else {
+      return Todo.builder()
+          .id(Todo.Id.builder().value(id).build())
+          .task(
+              Todo.Task.builder()
+                  .value(
+                      new String(
+                          encoded,
+                          VERSION_BYTES,
+                          encoded.length - VERSION_BYTES,
+                          StandardCharsets.UTF_8))
+                  .build())
+          .version(version(encoded))
+          .build();
+    }
+  }
+}
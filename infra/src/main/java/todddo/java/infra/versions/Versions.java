@@ -0,0 +1,45 @@
+package todddo.java.infra.versions;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions for a store: one per write for the Todo it writes, and one for the collection as a
+ * whole.
+ *
+ * <p>A write takes its Todo's version from next, then calls written once it is visible to reads.
+ * The collection's version only moves on after that, so a reader that reads it first sees every
+ * write up to it.
+ *
+ * <p>Versions are only kept in memory, and start over with the store, so each store has an epoch of
+ * its own, picked at random; see Todo.Repo.epoch.
+ */
+public final class Versions {
+
+  private final AtomicLong todos = new AtomicLong();
+  private final AtomicLong collection = new AtomicLong();
+  private final long epoch = newEpoch();
+
+  /** A version for a Todo being written, greater than any handed out before. */
+  public long next() {
+    return todos.incrementAndGet();
+  }
+
+  /** Moves the collection's version on, once a write is visible. */
+  public void written() {
+    collection.incrementAndGet();
+  }
+
+  public long collection() {
+    return collection.get();
+  }
+
+  public long epoch() {
+    return epoch;
+  }
+
+  /** An epoch for versions starting over now, e.g. for a store that keeps several Versions. */
+  public static long newEpoch() {
+    return ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+  }
+}
@@ -0,0 +1,110 @@
+package todddo.java.infra.cache;
+
+import io.reactivex.Single;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.annotation.Nonnull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.inmemory.CompactTodosRepo;
+
+public class CachingTodosRepoSpec {
+
+  private final CompactTodosRepo store = new CompactTodosRepo(RepoExecution.synchronous());
+  private final TodoCache cache = new TodoCache(100);
+  private final CachingTodosRepo subject = new CachingTodosRepo(store, cache);
+
+  @Test
+  public void testGetReadsThrough() {
+    final Todo created = subject.create(task("do something")).blockingGet();
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
+    Assertions.assertEquals(cache.misses(), 1);
+    Assertions.assertEquals(cache.hits(), 1);
+    Assertions.assertTrue(subject.get(id(100)).isEmpty().blockingGet());
+    Assertions.assertEquals(cache.size(), 1);
+    Assertions.assertEquals(
+        subject.versionOf(created.getId()).blockingGet(), (Long) created.getVersion());
+    Assertions.assertEquals(cache.hits(), 2);
+  }
+
+  @Test
+  public void testUpdateInvalidates() {
+    final Todo created = subject.create(task("do something")).blockingGet();
+    subject.get(created.getId()).blockingGet();
+    final Todo updated = subject.update(todo(created.getId(), "do it again")).blockingGet();
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), updated);
+    final Todo compared =
+        subject
+            .compareAndUpdate(todo(created.getId(), "and again"), updated.getVersion())
+            .blockingGet()
+            .right()
+            .value();
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), compared);
+    final Todo batched =
+        subject
+            .updateAll(Collections.singletonList(todo(created.getId(), "last")))
+            .blockingGet()
+            .get(0)
+            .get();
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), batched);
+  }
+
+  @Test
+  public void testDeleteInvalidates() {
+    final Todo first = subject.create(task("first")).blockingGet();
+    final Todo second = subject.create(task("second")).blockingGet();
+    final Todo third = subject.create(task("third")).blockingGet();
+    for (final Todo todo : Arrays.asList(first, second, third)) {
+      subject.get(todo.getId()).blockingGet();
+    }
+    subject.delete(first.getId()).blockingGet();
+    subject.compareAndDelete(second.getId(), second.getVersion()).blockingGet();
+    subject.deleteAll(Collections.singletonList(third.getId())).blockingGet();
+    for (final Todo todo : Arrays.asList(first, second, third)) {
+      Assertions.assertTrue(subject.get(todo.getId()).isEmpty().blockingGet());
+    }
+    Assertions.assertEquals(cache.size(), 0);
+  }
+
+  @Test
+  public void testFailedWriteInvalidates() {
+    final CompactTodosRepo failing =
+        new CompactTodosRepo(RepoExecution.synchronous()) {
+          @Nonnull
+          @Override
+          public Single<Todo> put(@Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+            return Single.error(new IllegalStateException("disk full"));
+          }
+        };
+    final CachingTodosRepo subject = new CachingTodosRepo(failing, cache);
+    final Todo created = subject.create(task("do something")).blockingGet();
+    subject.get(created.getId()).blockingGet();
+    Assertions.assertThrows(
+        IllegalStateException.class,
+        () -> subject.put(created.getId(), task("put here")).blockingGet());
+    Assertions.assertEquals(cache.size(), 0);
+  }
+
+  @Test
+  public void testPutInvalidates() {
+    final Todo created = subject.create(task("do something")).blockingGet();
+    subject.get(created.getId()).blockingGet();
+    final Todo put = subject.put(created.getId(), task("put here")).blockingGet();
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), put);
+  }
+
+  private static Todo.Id id(final long id) {
+    return Todo.Id.builder().value(id).build();
+  }
+
+  private static Todo todo(final Todo.Id id, final String task) {
+    return Todo.builder().id(id).task(task(task)).build();
+  }
+
+  private static Todo.Task task(final String task) {
+    return Todo.Task.builder().value(task).build();
+  }
+}
@@ -0,0 +1,141 @@
+package todddo.java.infra.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.domain.models.Todo;
+
+public class TodoCacheSpec {
+
+  @Test
+  public void testGetAfterAdd() {
+    final TodoCache subject = new TodoCache(100);
+    Assertions.assertNull(subject.get(id(1)));
+    subject.add(todo(1), subject.reserve(id(1)));
+    Assertions.assertEquals(subject.get(id(1)), todo(1));
+    Assertions.assertEquals(subject.hits(), 1);
+    Assertions.assertEquals(subject.misses(), 1);
+    Assertions.assertEquals(subject.size(), 1);
+  }
+
+  @Test
+  public void testInvalidate() {
+    final TodoCache subject = new TodoCache(100);
+    subject.add(todo(1), subject.reserve(id(1)));
+    subject.invalidate(id(1));
+    Assertions.assertNull(subject.get(id(1)));
+    Assertions.assertEquals(subject.size(), 0);
+  }
+
+  @Test
+  public void testReadRacingAWriteIsNotAdded() {
+    final TodoCache subject = new TodoCache(100);
+    final TodoCache.Reservation reservation = subject.reserve(id(1));
+    subject.invalidate(id(1));
+    subject.add(todo(1), reservation);
+    Assertions.assertNull(subject.get(id(1)));
+  }
+
+  @Test
+  public void testWritesToOtherTodosDoNotStopReads() {
+    final TodoCache subject = new TodoCache(100);
+    final TodoCache.Reservation first = subject.reserve(id(1));
+    final TodoCache.Reservation second = subject.reserve(id(1));
+    subject.invalidate(id(2));
+    subject.add(todo(1), second);
+    Assertions.assertEquals(subject.get(id(1)), todo(1));
+    // Shared by reads in flight together, and used up by the first to add
+    Assertions.assertSame(first, second);
+    subject.release(id(1), first);
+    Assertions.assertEquals(subject.get(id(1)), todo(1));
+    Assertions.assertEquals(subject.size(), 1);
+  }
+
+  @Test
+  public void testConcurrentReadsAndWritesStayWithinMaxSize() throws Exception {
+    final TodoCache subject = new TodoCache(100);
+    final Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int offset = t * 1000;
+      threads[t] =
+          new Thread(
+              () -> {
+                for (int i = 0; i < 20000; i++) {
+                  final long id = offset + i % 500;
+                  if (i % 7 == 0) {
+                    subject.invalidate(id(id));
+                  } else {
+                    read(subject, id);
+                  }
+                }
+              });
+      threads[t].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    Assertions.assertTrue(subject.size() <= 100, String.valueOf(subject.size()));
+    for (long id = 0; id < 4000; id++) {
+      final Todo cached = subject.get(id(id));
+      Assertions.assertTrue(cached == null || cached.equals(todo(id)));
+    }
+  }
+
+  @Test
+  public void testStaysWithinMaxSize() {
+    final TodoCache subject = new TodoCache(100);
+    for (int i = 0; i < 1000; i++) {
+      subject.get(id(i));
+      subject.add(todo(i), subject.reserve(id(i)));
+    }
+    Assertions.assertEquals(subject.size(), 100);
+    Assertions.assertEquals(subject.evictions(), 900);
+  }
+
+  @Test
+  public void testScanDoesNotEvictFrequentTodos() {
+    final TodoCache subject = new TodoCache(100);
+    // Each of 50 Todos is read again after 200 others, which an LRU cache of 100 would have evicted
+    for (int i = 0; i < 10000; i++) {
+      read(subject, 1000 + i);
+      if (i % 4 == 0) {
+        read(subject, i / 4 % 50);
+      }
+    }
+    final long hits = subject.hits();
+    for (int i = 0; i < 50; i++) {
+      read(subject, i);
+    }
+    Assertions.assertEquals(subject.hits() - hits, 50);
+  }
+
+  @Test
+  public void testFrequencyIsHalvedOverTime() {
+    final FrequencySketch subject = new FrequencySketch(16);
+    for (int i = 0; i < 15; i++) {
+      subject.increment(7);
+    }
+    Assertions.assertEquals(subject.frequency(7), 15);
+    for (int i = 0; i < 160; i++) {
+      subject.increment(1000 + i);
+    }
+    Assertions.assertTrue(subject.frequency(7) <= 7, String.valueOf(subject.frequency(7)));
+  }
+
+  private static void read(final TodoCache cache, final long id) {
+    if (cache.get(id(id)) == null) {
+      cache.add(todo(id), cache.reserve(id(id)));
+    }
+  }
+
+  private static Todo.Id id(final long id) {
+    return Todo.Id.builder().value(id).build();
+  }
+
+  private static Todo todo(final long id) {
+    return Todo.builder()
+        .id(id(id))
+        .task(Todo.Task.builder().value("todo " + id).build())
+        .version(1)
+        .build();
+  }
+}
@@ -0,0 +1,101 @@
+package todddo.java.infra.execution;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class QueueCountingSchedulerSpec {
+
+  private ExecutorService executor;
+  private QueueCountingScheduler subject;
+  private CountDownLatch release;
+
+  @BeforeEach
+  void setUp() throws InterruptedException {
+    executor = Executors.newSingleThreadExecutor();
+    subject = new QueueCountingScheduler(Schedulers.from(executor));
+    release = new CountDownLatch(1);
+    final CountDownLatch blocking = new CountDownLatch(1);
+    subject.scheduleDirect(
+        () -> {
+          blocking.countDown();
+          awaitRelease();
+        });
+    blocking.await();
+  }
+
+  @AfterEach
+  void tearDown() {
+    release.countDown();
+    executor.shutdownNow();
+  }
+
+  private void awaitRelease() {
+    try {
+      release.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  void countsDirectTasksUntilTheyStart() throws InterruptedException {
+    final CountDownLatch ran = new CountDownLatch(2);
+    subject.scheduleDirect(ran::countDown);
+    subject.scheduleDirect(ran::countDown);
+    Assertions.assertEquals(subject.queued(), 2);
+    release.countDown();
+    Assertions.assertTrue(ran.await(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(subject.queued(), 0);
+  }
+
+  @Test
+  void uncountsDisposedDirectTasks() {
+    final Disposable task = subject.scheduleDirect(() -> {});
+    Assertions.assertEquals(subject.queued(), 1);
+    task.dispose();
+    task.dispose();
+    Assertions.assertEquals(subject.queued(), 0);
+  }
+
+  @Test
+  void doesNotCountDelayedTasks() {
+    subject.scheduleDirect(() -> {}, 1, TimeUnit.HOURS);
+    Assertions.assertEquals(subject.queued(), 0);
+  }
+
+  @Test
+  void countsWorkerTasksUntilTheyStart() throws InterruptedException {
+    final Scheduler.Worker worker = subject.createWorker();
+    final CountDownLatch ran = new CountDownLatch(3);
+    worker.schedule(ran::countDown);
+    worker.schedule(ran::countDown);
+    worker.schedule(ran::countDown);
+    Assertions.assertEquals(subject.queued(), 3);
+    release.countDown();
+    Assertions.assertTrue(ran.await(5, TimeUnit.SECONDS));
+    Assertions.assertEquals(subject.queued(), 0);
+    worker.dispose();
+    Assertions.assertEquals(subject.queued(), 0);
+  }
+
+  @Test
+  void uncountsTasksOfDisposedWorkers() {
+    final Scheduler.Worker worker = subject.createWorker();
+    worker.schedule(() -> {});
+    worker.schedule(() -> {});
+    Assertions.assertEquals(subject.queued(), 2);
+    worker.dispose();
+    Assertions.assertEquals(subject.queued(), 0);
+    worker.schedule(() -> {});
+    Assertions.assertEquals(subject.queued(), 0);
+  }
+}
@@ -0,0 +1,80 @@
+package todddo.java.infra.execution;
+
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RepoExecutionSpec {
+
+  private static String currentThreadName() {
+    return Thread.currentThread().getName();
+  }
+
+  @Test
+  public void synchronousRunsOnCallingThread() {
+    final RepoExecution subject = RepoExecution.synchronous();
+    final String caller = currentThreadName();
+    Assertions.assertEquals(
+        subject.single(RepoExecutionSpec::currentThreadName).blockingGet(), caller);
+    Assertions.assertEquals(
+        subject.maybe(RepoExecutionSpec::currentThreadName).blockingGet(), caller);
+    Assertions.assertEquals(
+        subject
+            .flowable(Flowable.fromCallable(RepoExecutionSpec::currentThreadName))
+            .blockingFirst(),
+        caller);
+  }
+
+  @Test
+  public void boundedPoolRunsOnPoolThreads() {
+    final RepoExecution subject = RepoExecution.boundedPool(2);
+    try {
+      Assertions.assertTrue(
+          subject
+              .single(RepoExecutionSpec::currentThreadName)
+              .blockingGet()
+              .startsWith("todddo-repo-"));
+      Assertions.assertTrue(
+          subject
+              .maybe(RepoExecutionSpec::currentThreadName)
+              .blockingGet()
+              .startsWith("todddo-repo-"));
+    } finally {
+      subject.close();
+    }
+  }
+
+  @Test
+  public void ioComputationDeliversOnComputationThreads() {
+    final RepoExecution subject = RepoExecution.ioComputation();
+    final String deliveredOn =
+        subject
+            .single(RepoExecutionSpec::currentThreadName)
+            .map(ignored -> currentThreadName())
+            .blockingGet();
+    final String ranOn = subject.single(RepoExecutionSpec::currentThreadName).blockingGet();
+    Assertions.assertTrue(ranOn.startsWith("RxCachedThreadScheduler"));
+    Assertions.assertTrue(deliveredOn.startsWith("RxComputationThreadPool"));
+  }
+
+  @Test
+  public void maybeIsEmptyWhenCallableReturnsNull() {
+    Assertions.assertTrue(RepoExecution.synchronous().maybe(() -> null).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void asyncMaybeIsDeliveredOnPoolThreads() {
+    final RepoExecution subject = RepoExecution.boundedPool(1);
+    try {
+      Assertions.assertTrue(
+          subject
+              .maybe(Maybe.just("done"))
+              .map(ignored -> currentThreadName())
+              .blockingGet()
+              .startsWith("todddo-repo-"));
+    } finally {
+      subject.close();
+    }
+  }
+}
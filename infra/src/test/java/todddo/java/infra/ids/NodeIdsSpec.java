@@ -0,0 +1,140 @@
+package todddo.java.infra.ids;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class NodeIdsSpec {
+
+  @Test
+  public void testNodeZeroCountsFromOne() {
+    final NodeIds subject = NodeIds.single();
+    Assertions.assertEquals(subject.last(), 0);
+    Assertions.assertEquals(subject.next(), 1);
+    Assertions.assertEquals(subject.range(3), 2);
+    Assertions.assertEquals(subject.next(), 5);
+    Assertions.assertEquals(subject.last(), 5);
+  }
+
+  @Test
+  public void testNodesHaveDisjointRanges() {
+    final NodeIds first = new NodeIds(1);
+    final NodeIds second = new NodeIds(2);
+    Assertions.assertTrue(first.next() > NodeIds.single().next());
+    Assertions.assertTrue(second.first() > first.first());
+    first.advancePast(second.first() - 3);
+    Assertions.assertEquals(first.next(), second.first() - 2);
+    Assertions.assertThrows(IllegalStateException.class, first::next);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new NodeIds(NodeIds.NODES));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new NodeIds(-1));
+  }
+
+  @Test
+  public void testLastNodeDoesNotOverflow() {
+    final NodeIds subject = new NodeIds(NodeIds.NODES - 1);
+    Assertions.assertTrue(subject.next() > 0);
+    subject.advancePast(Long.MAX_VALUE - 1);
+    Assertions.assertEquals(subject.next(), Long.MAX_VALUE);
+    Assertions.assertThrows(IllegalStateException.class, subject::next);
+    Assertions.assertEquals(subject.last(), Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testAdvancePastIgnoresOtherNodes() {
+    final NodeIds subject = new NodeIds(1);
+    subject.advancePast(5);
+    subject.advancePast(new NodeIds(2).first());
+    Assertions.assertEquals(subject.next(), subject.first());
+    subject.advancePast(subject.first() + 10);
+    Assertions.assertEquals(subject.next(), subject.first() + 11);
+  }
+
+  /** Several JVMs, as several instances would be, each with its own node. */
+  @Test
+  public void testProcessesNeverCollide(@TempDir final Path directory) throws Exception {
+    final int processes = 4;
+    final int perProcess = 100_000;
+    final String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    final List<Process> started = new ArrayList<>();
+    for (int node = 0; node < processes; node++) {
+      started.add(
+          new ProcessBuilder(
+                  java,
+                  "-cp",
+                  System.getProperty("java.class.path"),
+                  Generate.class.getName(),
+                  String.valueOf(node),
+                  String.valueOf(perProcess),
+                  directory.resolve(node + ".ids").toString())
+              .redirectErrorStream(true)
+              .redirectOutput(directory.resolve(node + ".log").toFile())
+              .start());
+    }
+    for (final Process process : started) {
+      Assertions.assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+      Assertions.assertEquals(process.exitValue(), 0);
+    }
+
+    final long[] all = new long[processes * perProcess];
+    for (int node = 0; node < processes; node++) {
+      try (final InputStream in = Files.newInputStream(directory.resolve(node + ".ids"));
+          final DataInputStream data = new DataInputStream(in)) {
+        for (int i = 0; i < perProcess; i++) {
+          all[node * perProcess + i] = data.readLong();
+        }
+      }
+    }
+    Arrays.sort(all);
+    for (int i = 1; i < all.length; i++) {
+      Assertions.assertNotEquals(all[i], all[i - 1]);
+    }
+  }
+
+  /** Generates Ids from several threads, as one instance would, and writes them to a file. */
+  public static class Generate {
+    public static void main(final String[] args) throws Exception {
+      final NodeIds ids = new NodeIds(Integer.parseInt(args[0]));
+      final int count = Integer.parseInt(args[1]);
+      final int threads = 4;
+      final long[] generated = new long[count];
+      final List<Thread> generators = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int from = t;
+        generators.add(
+            new Thread(
+                () -> {
+                  for (int i = from; i < count; i += threads) {
+                    generated[i] = ids.next();
+                  }
+                }));
+      }
+      generators.forEach(Thread::start);
+      for (final Thread generator : generators) {
+        generator.join();
+      }
+      write(new File(args[2]), generated);
+    }
+
+    private static void write(final File file, final long[] ids) throws IOException {
+      try (final OutputStream out = Files.newOutputStream(file.toPath());
+          final DataOutputStream data = new DataOutputStream(out)) {
+        for (final long id : ids) {
+          data.writeLong(id);
+        }
+      }
+    }
+  }
+}
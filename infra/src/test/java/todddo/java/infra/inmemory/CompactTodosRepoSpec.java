@@ -0,0 +1,305 @@
+package todddo.java.infra.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.ids.NodeIds;
+
+public class CompactTodosRepoSpec {
+
+  private RepoExecution execution = RepoExecution.synchronous();
+
+  @Test
+  public void testCreate() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo.Task task = Todo.Task.builder().value("do something").build();
+    Assertions.assertEquals(subject.create(task).blockingGet().getTask(), task);
+  }
+
+  @Test
+  public void testNonAsciiRoundTrips() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo.Task task = Todo.Task.builder().value("やることリスト ✓").build();
+    final Todo created = subject.create(task).blockingGet();
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet().getTask(), task);
+  }
+
+  @Test
+  public void testGetNonExistent() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo.Id id = Todo.Id.builder().value(100).build();
+    Assertions.assertTrue(subject.get(id).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testGetExistent() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo.Task task = Todo.Task.builder().value("do something").build();
+    final Todo created = subject.create(task).blockingGet();
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
+    Assertions.assertEquals(
+        subject.versionOf(created.getId()).blockingGet(), (Long) created.getVersion());
+  }
+
+  @Test
+  public void testDeleteExistent() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo.Task task = Todo.Task.builder().value("do something").build();
+    final Todo created = subject.create(task).blockingGet();
+    Assertions.assertEquals(subject.delete(created.getId()).blockingGet(), created);
+    Assertions.assertTrue(subject.delete(created.getId()).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testListSkipsDeleted() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo.Task task = Todo.Task.builder().value("do something").build();
+    for (int i = 0; i < 10; ++i) {
+      subject.create(task).blockingGet();
+    }
+    final List<Todo> before = subject.list().blockingGet();
+    subject.delete(before.get(3).getId()).blockingGet();
+    subject.delete(before.get(4).getId()).blockingGet();
+    final List<Todo> firstPage = subject.list(null, 4).blockingGet();
+    Assertions.assertEquals(firstPage.size(), 4);
+    Assertions.assertEquals(firstPage.get(3), before.get(5));
+    final List<Todo> rest = subject.list(firstPage.get(3).getId(), 10).blockingGet();
+    Assertions.assertEquals(rest, before.subList(6, 10));
+    Assertions.assertEquals(subject.stream(before.get(7).getId()).toList().blockingGet().size(), 2);
+  }
+
+  @Test
+  public void testUpdateNonExistent() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo.Id id = Todo.Id.builder().value(100).build();
+    final Todo.Task task = Todo.Task.builder().value("meh").build();
+    final Todo todo = Todo.builder().id(id).task(task).build();
+    Assertions.assertTrue(subject.update(todo).isEmpty().blockingGet());
+    Assertions.assertTrue(subject.get(id).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testUpdateExistent() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo.Task task = Todo.Task.builder().value("meh").build();
+    final Todo todo = subject.create(task).blockingGet();
+    final Todo.Task updatedTask = Todo.Task.builder().value("meh 2").build();
+    final Todo updated = Todo.builder().id(todo.getId()).task(updatedTask).build();
+
+    final Todo result = subject.update(updated).blockingGet();
+    Assertions.assertEquals(result.getTask(), updatedTask);
+    Assertions.assertTrue(result.getVersion() > todo.getVersion());
+    Assertions.assertEquals(subject.get(updated.getId()).blockingGet(), result);
+  }
+
+  @Test
+  public void testBatchOperations() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final List<Todo.Task> tasks =
+        Arrays.asList(
+            Todo.Task.builder().value("first").build(),
+            Todo.Task.builder().value("second").build());
+    final List<Todo> created = subject.createAll(tasks).blockingGet();
+    Assertions.assertEquals(created.get(0).getTask(), tasks.get(0));
+    Assertions.assertEquals(
+        created.get(1).getId().getValue(), created.get(0).getId().getValue() + 1);
+    Assertions.assertEquals(subject.list().blockingGet(), created);
+
+    final Todo updated =
+        Todo.builder()
+            .id(created.get(0).getId())
+            .task(Todo.Task.builder().value("first, updated").build())
+            .build();
+    final Todo missing =
+        Todo.builder().id(Todo.Id.builder().value(100).build()).task(updated.getTask()).build();
+    final List<Optional<Todo>> results =
+        subject.updateAll(Arrays.asList(updated, missing)).blockingGet();
+    Assertions.assertEquals(results.get(0).map(Todo::getTask), Optional.of(updated.getTask()));
+    Assertions.assertFalse(results.get(1).isPresent());
+
+    Assertions.assertEquals(
+        subject.deleteAll(Arrays.asList(missing.getId(), created.get(1).getId())).blockingGet(),
+        Arrays.asList(Optional.empty(), Optional.of(created.get(1))));
+    Assertions.assertEquals(
+        subject.list().blockingGet(), Collections.singletonList(results.get(0).get()));
+  }
+
+  @Test
+  public void testVersions() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final long empty = subject.version();
+    final Todo created = subject.create(task("first")).blockingGet();
+    final Todo other = subject.create(task("second")).blockingGet();
+    Assertions.assertTrue(other.getVersion() > created.getVersion());
+    Assertions.assertTrue(subject.version() > empty);
+
+    final long beforeUpdate = subject.version();
+    final Todo updated =
+        subject
+            .update(Todo.builder().id(created.getId()).task(task("first, updated")).build())
+            .blockingGet();
+    Assertions.assertTrue(updated.getVersion() > other.getVersion());
+    Assertions.assertEquals(
+        subject.get(created.getId()).blockingGet().getVersion(), updated.getVersion());
+    Assertions.assertEquals(
+        subject.get(other.getId()).blockingGet().getVersion(), other.getVersion());
+    Assertions.assertTrue(subject.version() > beforeUpdate);
+
+    final long beforeMissing = subject.version();
+    final Todo.Id missing = Todo.Id.builder().value(100).build();
+    subject.update(Todo.builder().id(missing).task(task("meh")).build()).blockingGet();
+    subject.delete(missing).blockingGet();
+    Assertions.assertEquals(subject.version(), beforeMissing);
+
+    subject.delete(other.getId()).blockingGet();
+    Assertions.assertTrue(subject.version() > beforeMissing);
+  }
+
+  @Test
+  public void testCompareAndUpdate() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo created = subject.create(task("first")).blockingGet();
+    final Todo edit = Todo.builder().id(created.getId()).task(task("first, edited")).build();
+    final Todo updated =
+        subject.compareAndUpdate(edit, created.getVersion()).blockingGet().right().value();
+    Assertions.assertEquals(updated.getTask(), edit.getTask());
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), updated);
+
+    final Todo lost = Todo.builder().id(created.getId()).task(task("lost")).build();
+    Assertions.assertEquals(
+        subject.compareAndUpdate(lost, created.getVersion()).blockingGet().left().value(), updated);
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), updated);
+
+    final Todo missing =
+        Todo.builder().id(Todo.Id.builder().value(100).build()).task(task("meh")).build();
+    Assertions.assertTrue(subject.compareAndUpdate(missing, 0).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testCompareAndDelete() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo created = subject.create(task("first")).blockingGet();
+    Assertions.assertEquals(
+        subject
+            .compareAndDelete(created.getId(), created.getVersion() + 1)
+            .blockingGet()
+            .left()
+            .value(),
+        created);
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
+    Assertions.assertEquals(
+        subject
+            .compareAndDelete(created.getId(), created.getVersion())
+            .blockingGet()
+            .right()
+            .value(),
+        created);
+    Assertions.assertTrue(subject.get(created.getId()).isEmpty().blockingGet());
+    Assertions.assertTrue(
+        subject.compareAndDelete(created.getId(), created.getVersion()).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testCompareAndUpdateLosesNoUpdates() throws Exception {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution);
+    final Todo counter = subject.create(task("0")).blockingGet();
+    final int threads = 4;
+    final int increments = 500;
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<?>> done = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        done.add(
+            pool.submit(
+                () -> {
+                  for (int i = 0; i < increments; ) {
+                    final Todo current = subject.get(counter.getId()).blockingGet();
+                    final int count = Integer.parseInt(current.getTask().getValue());
+                    final Todo next =
+                        Todo.builder()
+                            .id(counter.getId())
+                            .task(task(String.valueOf(count + 1)))
+                            .build();
+                    if (subject
+                        .compareAndUpdate(next, current.getVersion())
+                        .blockingGet()
+                        .isRight()) {
+                      i++;
+                    }
+                  }
+                }));
+      }
+      for (final Future<?> future : done) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    Assertions.assertEquals(
+        subject.get(counter.getId()).blockingGet().getTask().getValue(),
+        String.valueOf(threads * increments));
+  }
+
+  @Test
+  public void testIdsFromAnotherNode() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution, new NodeIds(3));
+    final List<Todo> created = new ArrayList<>();
+    for (int i = 0; i < 5; ++i) {
+      created.add(subject.create(task("todo " + i)).blockingGet());
+    }
+    Assertions.assertEquals(created.get(0).getId().getValue(), new NodeIds(3).first());
+    Assertions.assertEquals(subject.list().blockingGet(), created);
+    Assertions.assertEquals(
+        subject.list(created.get(2).getId(), 10).blockingGet(), created.subList(3, 5));
+    Assertions.assertEquals(subject.get(created.get(4).getId()).blockingGet(), created.get(4));
+  }
+
+  @Test
+  public void testPutUnderIdsFromAnywhere() {
+    final CompactTodosRepo subject = new CompactTodosRepo(execution, new NodeIds(3));
+    final Todo created = subject.create(task("created")).blockingGet();
+    final Todo below = subject.put(id(new NodeIds(2).first()), task("from node 2")).blockingGet();
+    final Todo above = subject.put(id(new NodeIds(4).first()), task("from node 4")).blockingGet();
+    final Todo own =
+        subject.put(id(created.getId().getValue() + 1), task("not handed out yet")).blockingGet();
+    Assertions.assertEquals(
+        subject.list().blockingGet(), Arrays.asList(below, created, own, above));
+    Assertions.assertEquals(
+        subject.list(below.getId(), 2).blockingGet(), Arrays.asList(created, own));
+    Assertions.assertEquals(subject.list(own.getId(), 10).blockingGet(), Arrays.asList(above));
+    final Todo replaced = subject.put(below.getId(), task("and again")).blockingGet();
+    Assertions.assertTrue(replaced.getVersion() > below.getVersion());
+    Assertions.assertEquals(subject.get(below.getId()).blockingGet(), replaced);
+    // Never hands a put Id out itself
+    final Todo next = subject.create(task("next")).blockingGet();
+    Assertions.assertEquals(next.getId().getValue(), own.getId().getValue() + 1);
+    Assertions.assertEquals(subject.delete(above.getId()).blockingGet(), above);
+    Assertions.assertEquals(
+        subject.list().blockingGet(), Arrays.asList(replaced, created, own, next));
+    Assertions.assertEquals(subject.size(), 4);
+    Assertions.assertEquals(
+        subject.putIfAbsent(own.getId(), task("taken")).blockingGet().left().value(), own);
+    final Todo absent =
+        subject.putIfAbsent(above.getId(), task("gone")).blockingGet().right().value();
+    Assertions.assertEquals(subject.get(above.getId()).blockingGet(), absent);
+    Assertions.assertEquals(subject.size(), 5);
+  }
+
+  private static Todo.Id id(final long id) {
+    return Todo.Id.builder().value(id).build();
+  }
+
+  private static Todo.Task task(final String value) {
+    return Todo.Task.builder().value(value).build();
+  }
+}
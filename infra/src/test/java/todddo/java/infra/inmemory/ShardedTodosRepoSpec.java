@@ -0,0 +1,301 @@
+package todddo.java.infra.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.ids.NodeIds;
+
+public class ShardedTodosRepoSpec {
+
+  private RepoExecution execution = RepoExecution.synchronous();
+
+  /** Small blocks, so that a handful of Todos already spans every shard. */
+  private ShardedTodosRepo subject() {
+    return new ShardedTodosRepo(execution, 4, 2);
+  }
+
+  @Test
+  public void testShardsRoundUpToPowerOfTwo() {
+    Assertions.assertEquals(new ShardedTodosRepo(execution, 3, 2).shards(), 4);
+    Assertions.assertEquals(new ShardedTodosRepo(execution, 1, 2).shards(), 1);
+    Assertions.assertTrue(new ShardedTodosRepo(execution, 0, 2).shards() >= 1);
+  }
+
+  @Test
+  public void testGetExistent() {
+    final ShardedTodosRepo subject = subject();
+    final Todo created = subject.create(task("do something")).blockingGet();
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
+    Assertions.assertEquals(
+        subject.versionOf(created.getId()).blockingGet(), (Long) created.getVersion());
+    Assertions.assertTrue(
+        subject.get(Todo.Id.builder().value(100).build()).isEmpty().blockingGet());
+    Assertions.assertTrue(
+        subject.versionOf(Todo.Id.builder().value(100).build()).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testDeleteExistent() {
+    final ShardedTodosRepo subject = subject();
+    final Todo created = subject.create(task("do something")).blockingGet();
+    Assertions.assertEquals(subject.delete(created.getId()).blockingGet(), created);
+    Assertions.assertTrue(subject.delete(created.getId()).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testListWalksShardsInIdOrder() {
+    final ShardedTodosRepo subject = subject();
+    for (int i = 0; i < 20; ++i) {
+      subject.create(task("todo " + i)).blockingGet();
+    }
+    final List<Todo> before = subject.list().blockingGet();
+    Assertions.assertEquals(before.size(), 20);
+    for (int i = 1; i < before.size(); i++) {
+      Assertions.assertTrue(
+          before.get(i).getId().getValue() > before.get(i - 1).getId().getValue());
+    }
+    subject.delete(before.get(3).getId()).blockingGet();
+    subject.delete(before.get(4).getId()).blockingGet();
+    final List<Todo> firstPage = subject.list(null, 4).blockingGet();
+    Assertions.assertEquals(firstPage.get(3), before.get(5));
+    final List<Todo> rest = subject.list(firstPage.get(3).getId(), 100).blockingGet();
+    Assertions.assertEquals(rest, before.subList(6, 20));
+    Assertions.assertEquals(
+        subject.stream(before.get(17).getId()).toList().blockingGet(), before.subList(18, 20));
+    Assertions.assertEquals(subject.size(), 18);
+  }
+
+  @Test
+  public void testUpdateExistent() {
+    final ShardedTodosRepo subject = subject();
+    final Todo todo = subject.create(task("meh")).blockingGet();
+    final Todo updated = Todo.builder().id(todo.getId()).task(task("meh 2")).build();
+    final Todo result = subject.update(updated).blockingGet();
+    Assertions.assertEquals(result.getTask(), updated.getTask());
+    Assertions.assertTrue(result.getVersion() > todo.getVersion());
+    Assertions.assertEquals(subject.get(todo.getId()).blockingGet(), result);
+
+    final Todo missing =
+        Todo.builder().id(Todo.Id.builder().value(100).build()).task(task("meh")).build();
+    Assertions.assertTrue(subject.update(missing).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testBatchOperations() {
+    final ShardedTodosRepo subject = subject();
+    subject.create(task("leases a block")).blockingGet();
+    final List<Todo> created =
+        subject
+            .createAll(Arrays.asList(task("first"), task("second"), task("third")))
+            .blockingGet();
+    Assertions.assertEquals(
+        created.get(2).getId().getValue(), created.get(0).getId().getValue() + 2);
+    Assertions.assertEquals(subject.list().blockingGet().subList(1, 4), created);
+
+    final Todo updated =
+        Todo.builder().id(created.get(0).getId()).task(task("first, updated")).build();
+    final Todo missing =
+        Todo.builder().id(Todo.Id.builder().value(100).build()).task(updated.getTask()).build();
+    final List<Optional<Todo>> results =
+        subject.updateAll(Arrays.asList(updated, missing)).blockingGet();
+    Assertions.assertEquals(results.get(0).map(Todo::getTask), Optional.of(updated.getTask()));
+    Assertions.assertFalse(results.get(1).isPresent());
+
+    Assertions.assertEquals(
+        subject.deleteAll(Arrays.asList(missing.getId(), created.get(1).getId())).blockingGet(),
+        Arrays.asList(Optional.empty(), Optional.of(created.get(1))));
+  }
+
+  @Test
+  public void testVersions() {
+    final ShardedTodosRepo subject = subject();
+    final long empty = subject.version();
+    final Todo created = subject.create(task("first")).blockingGet();
+    Assertions.assertTrue(subject.version() > empty);
+
+    final long beforeUpdate = subject.version();
+    final Todo updated =
+        subject
+            .update(Todo.builder().id(created.getId()).task(task("first, updated")).build())
+            .blockingGet();
+    Assertions.assertTrue(updated.getVersion() > created.getVersion());
+    Assertions.assertTrue(subject.version() > beforeUpdate);
+
+    final long beforeMissing = subject.version();
+    final Todo.Id missing = Todo.Id.builder().value(100).build();
+    subject.update(Todo.builder().id(missing).task(task("meh")).build()).blockingGet();
+    subject.delete(missing).blockingGet();
+    Assertions.assertEquals(subject.version(), beforeMissing);
+
+    subject.delete(created.getId()).blockingGet();
+    Assertions.assertTrue(subject.version() > beforeMissing);
+  }
+
+  @Test
+  public void testCompareAndUpdateAndDelete() {
+    final ShardedTodosRepo subject = subject();
+    final Todo created = subject.create(task("first")).blockingGet();
+    final Todo edit = Todo.builder().id(created.getId()).task(task("first, edited")).build();
+    final Todo updated =
+        subject.compareAndUpdate(edit, created.getVersion()).blockingGet().right().value();
+    Assertions.assertEquals(
+        subject.compareAndUpdate(edit, created.getVersion()).blockingGet().left().value(), updated);
+    Assertions.assertEquals(
+        subject
+            .compareAndDelete(created.getId(), created.getVersion())
+            .blockingGet()
+            .left()
+            .value(),
+        updated);
+    Assertions.assertEquals(
+        subject
+            .compareAndDelete(created.getId(), updated.getVersion())
+            .blockingGet()
+            .right()
+            .value(),
+        updated);
+    Assertions.assertTrue(subject.get(created.getId()).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testConcurrentCreatesGetUniqueIds() throws Exception {
+    final ShardedTodosRepo subject = new ShardedTodosRepo(execution, 8, 16);
+    final int threads = 8;
+    final int creates = 1000;
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<List<Long>>> done = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        done.add(
+            pool.submit(
+                () -> {
+                  final List<Long> ids = new ArrayList<>(creates);
+                  for (int i = 0; i < creates; i++) {
+                    ids.add(subject.create(task("todo " + i)).blockingGet().getId().getValue());
+                  }
+                  return ids;
+                }));
+      }
+      final Set<Long> all = new HashSet<>();
+      for (final Future<List<Long>> future : done) {
+        final List<Long> ids = future.get(10, TimeUnit.SECONDS);
+        final List<Long> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        Assertions.assertEquals(ids, sorted);
+        all.addAll(ids);
+      }
+      Assertions.assertEquals(all.size(), threads * creates);
+      Assertions.assertEquals(
+          subject.list().blockingGet().stream()
+              .map(todo -> todo.getId().getValue())
+              .collect(Collectors.toList()),
+          all.stream().sorted().collect(Collectors.toList()));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testIdsFromAnotherNode() {
+    final ShardedTodosRepo subject = new ShardedTodosRepo(execution, new NodeIds(3), 4, 2);
+    final List<Todo> created = new ArrayList<>();
+    for (int i = 0; i < 5; ++i) {
+      created.add(subject.create(task("todo " + i)).blockingGet());
+    }
+    Assertions.assertEquals(created.get(0).getId().getValue(), new NodeIds(3).first());
+    Assertions.assertEquals(subject.list().blockingGet(), created);
+    Assertions.assertEquals(
+        subject.list(created.get(2).getId(), 10).blockingGet(), created.subList(3, 5));
+    Assertions.assertEquals(subject.get(created.get(4).getId()).blockingGet(), created.get(4));
+  }
+
+  @Test
+  public void testPutUnderIdsFromAnywhere() {
+    final ShardedTodosRepo subject = new ShardedTodosRepo(execution, new NodeIds(3), 4, 2);
+    final Todo created = subject.create(task("created")).blockingGet();
+    final Todo below = subject.put(id(new NodeIds(2).first()), task("from node 2")).blockingGet();
+    final Todo above = subject.put(id(new NodeIds(4).first()), task("from node 4")).blockingGet();
+    final Todo own =
+        subject.put(id(created.getId().getValue() + 1), task("not handed out yet")).blockingGet();
+    Assertions.assertEquals(
+        subject.list().blockingGet(), Arrays.asList(below, created, own, above));
+    Assertions.assertEquals(
+        subject.list(below.getId(), 2).blockingGet(), Arrays.asList(created, own));
+    Assertions.assertEquals(subject.list(own.getId(), 10).blockingGet(), Arrays.asList(above));
+    final Todo replaced = subject.put(below.getId(), task("and again")).blockingGet();
+    Assertions.assertTrue(replaced.getVersion() > below.getVersion());
+    Assertions.assertEquals(subject.get(below.getId()).blockingGet(), replaced);
+    // Never hands a put Id out itself
+    final Todo next = subject.create(task("next")).blockingGet();
+    Assertions.assertEquals(next.getId().getValue(), own.getId().getValue() + 1);
+    Assertions.assertEquals(subject.delete(above.getId()).blockingGet(), above);
+    Assertions.assertEquals(
+        subject.list().blockingGet(), Arrays.asList(replaced, created, own, next));
+    Assertions.assertEquals(subject.size(), 4);
+    Assertions.assertEquals(
+        subject.putIfAbsent(own.getId(), task("taken")).blockingGet().left().value(), own);
+    final Todo absent =
+        subject.putIfAbsent(above.getId(), task("gone")).blockingGet().right().value();
+    Assertions.assertEquals(subject.get(above.getId()).blockingGet(), absent);
+    Assertions.assertEquals(subject.size(), 5);
+  }
+
+  @Test
+  public void testBlocksAreDroppedOnceEmptyAndHandedOut() {
+    final ShardedTodosRepo subject = subject();
+    final List<Todo> batch =
+        subject.createAll(Arrays.asList(task("a"), task("b"), task("c"))).blockingGet();
+    final Todo first = subject.create(task("first of a lease")).blockingGet();
+    Assertions.assertEquals(subject.blocks(), 3);
+    for (final Todo todo : batch) {
+      subject.delete(todo.getId()).blockingGet();
+    }
+    subject.delete(first.getId()).blockingGet();
+    // The lease still has an Id to hand out in the last block, so that is kept for it
+    Assertions.assertEquals(subject.blocks(), 1);
+    final Todo last = subject.create(task("last of a lease")).blockingGet();
+    Assertions.assertEquals(last.getId().getValue(), first.getId().getValue() + 1);
+    subject.delete(last.getId()).blockingGet();
+    Assertions.assertEquals(subject.blocks(), 0);
+    Assertions.assertEquals(subject.size(), 0);
+    final Todo again = subject.put(first.getId(), task("put back")).blockingGet();
+    Assertions.assertEquals(subject.get(first.getId()).blockingGet(), again);
+    Assertions.assertEquals(subject.blocks(), 1);
+  }
+
+  @Test
+  public void testLeaseOutlivesTheThreadsUsingIt() throws Exception {
+    final ShardedTodosRepo subject = new ShardedTodosRepo(execution, 1, 4);
+    final List<Todo> created = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final Thread creating =
+          new Thread(() -> created.add(subject.create(task("on its own thread")).blockingGet()));
+      creating.start();
+      creating.join();
+    }
+    Assertions.assertEquals(
+        created.stream().map(todo -> todo.getId().getValue()).collect(Collectors.toList()),
+        Arrays.asList(1L, 2L, 3L));
+  }
+
+  private static Todo.Id id(final long id) {
+    return Todo.Id.builder().value(id).build();
+  }
+
+  private static Todo.Task task(final String value) {
+    return Todo.Task.builder().value(value).build();
+  }
+}
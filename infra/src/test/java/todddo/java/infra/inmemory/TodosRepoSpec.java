@@ -1,48 +1,93 @@
 package todddo.java.infra.inmemory;
 
+import io.reactivex.subscribers.TestSubscriber;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mapstruct.factory.Mappers;
 import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
 
 public class TodosRepoSpec {
 
   private TodosRepo.Mapper mapper = Mappers.getMapper(TodosRepo.Mapper.class);
+  private RepoExecution execution = RepoExecution.ioComputation();
 
   @Test
   public void testCreate() {
-    final TodosRepo subject = new TodosRepo(mapper);
+    final TodosRepo subject = new TodosRepo(mapper, execution);
     final Todo.Task task = Todo.Task.builder().value("do something").build();
     Assertions.assertEquals(subject.create(task).blockingGet().getTask(), task);
   }
 
   @Test
   public void testGetNonExistent() {
-    final TodosRepo subject = new TodosRepo(mapper);
+    final TodosRepo subject = new TodosRepo(mapper, execution);
     final Todo.Id id = Todo.Id.builder().value(100).build();
     Assertions.assertTrue(subject.get(id).isEmpty().blockingGet());
   }
 
   @Test
   public void testDGetExistent() {
-    final TodosRepo subject = new TodosRepo(mapper);
+    final TodosRepo subject = new TodosRepo(mapper, execution);
     final Todo.Task task = Todo.Task.builder().value("do something").build();
     final Todo created = subject.create(task).blockingGet();
     Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
     Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
+    Assertions.assertEquals(
+        subject.versionOf(created.getId()).blockingGet(), (Long) created.getVersion());
+  }
+
+  @Test
+  public void testPut() {
+    final TodosRepo subject = new TodosRepo(mapper, execution, true);
+    final Todo.Id id = Todo.Id.builder().value(100).build();
+    final Todo put = subject.put(id, Todo.Task.builder().value("put here").build()).blockingGet();
+    Assertions.assertEquals(subject.get(id).blockingGet(), put);
+    final Todo replaced =
+        subject.put(id, Todo.Task.builder().value("and again").build()).blockingGet();
+    Assertions.assertTrue(replaced.getVersion() > put.getVersion());
+    Assertions.assertEquals(subject.suggest("and", 10).blockingGet(), Arrays.asList(replaced));
+    Assertions.assertTrue(subject.suggest("put", 10).blockingGet().isEmpty());
+    // Never hands the Id out itself
+    final Todo created = subject.create(Todo.Task.builder().value("created").build()).blockingGet();
+    Assertions.assertEquals(created.getId().getValue(), 101);
+    Assertions.assertEquals(
+        subject
+            .putIfAbsent(id, Todo.Task.builder().value("taken").build())
+            .blockingGet()
+            .left()
+            .value(),
+        replaced);
+    final Todo.Id free = Todo.Id.builder().value(200).build();
+    final Todo absent =
+        subject
+            .putIfAbsent(free, Todo.Task.builder().value("free").build())
+            .blockingGet()
+            .right()
+            .value();
+    Assertions.assertEquals(subject.get(free).blockingGet(), absent);
+    Assertions.assertEquals(subject.size(), 3);
   }
 
   @Test
   public void testDeleteNonExistent() {
-    final TodosRepo subject = new TodosRepo(mapper);
+    final TodosRepo subject = new TodosRepo(mapper, execution);
     final Todo.Id id = Todo.Id.builder().value(100).build();
     Assertions.assertTrue(subject.delete(id).isEmpty().blockingGet());
   }
 
   @Test
   public void testDeleteExistent() {
-    final TodosRepo subject = new TodosRepo(mapper);
+    final TodosRepo subject = new TodosRepo(mapper, execution);
     final Todo.Task task = Todo.Task.builder().value("do something").build();
     final Todo created = subject.create(task).blockingGet();
     Assertions.assertEquals(subject.delete(created.getId()).blockingGet(), created);
@@ -51,7 +96,7 @@ public class TodosRepoSpec {
 
   @Test
   public void testList() {
-    final TodosRepo subject = new TodosRepo(mapper);
+    final TodosRepo subject = new TodosRepo(mapper, execution);
     final Todo.Task task = Todo.Task.builder().value("do something").build();
     final int times = 10;
     for (int i = 0; i < times; ++i) {
@@ -65,9 +110,71 @@ public class TodosRepoSpec {
         });
   }
 
+  @Test
+  public void testListPage() {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final Todo.Task task = Todo.Task.builder().value("do something").build();
+    final int times = 10;
+    for (int i = 0; i < times; ++i) {
+      subject.create(task).blockingGet();
+    }
+    final List<Todo> all = subject.list().blockingGet();
+    final List<Todo> firstPage = subject.list(null, 4).blockingGet();
+    Assertions.assertEquals(firstPage, all.subList(0, 4));
+    final List<Todo> secondPage =
+        subject.list(firstPage.get(firstPage.size() - 1).getId(), 4).blockingGet();
+    Assertions.assertEquals(secondPage, all.subList(4, 8));
+    final List<Todo> lastPage =
+        subject.list(secondPage.get(secondPage.size() - 1).getId(), 4).blockingGet();
+    Assertions.assertEquals(lastPage, all.subList(8, 10));
+  }
+
+  @Test
+  public void testListIsOrderedById() {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final Todo.Task task = Todo.Task.builder().value("do something").build();
+    for (int i = 0; i < 20; ++i) {
+      subject.create(task).blockingGet();
+    }
+    final List<Todo> retrieved = subject.list().blockingGet();
+    for (int i = 1; i < retrieved.size(); ++i) {
+      Assertions.assertTrue(
+          retrieved.get(i - 1).getId().getValue() < retrieved.get(i).getId().getValue());
+    }
+  }
+
+  @Test
+  public void testStream() {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final Todo.Task task = Todo.Task.builder().value("do something").build();
+    for (int i = 0; i < 10; ++i) {
+      subject.create(task).blockingGet();
+    }
+    final List<Todo> all = subject.list().blockingGet();
+    Assertions.assertEquals(subject.stream(null).toList().blockingGet(), all);
+    Assertions.assertEquals(
+        subject.stream(all.get(6).getId()).toList().blockingGet(), all.subList(7, 10));
+  }
+
+  @Test
+  public void testStreamHonoursBackpressure() {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final Todo.Task task = Todo.Task.builder().value("do something").build();
+    for (int i = 0; i < 10; ++i) {
+      subject.create(task).blockingGet();
+    }
+    final TestSubscriber<Todo> subscriber = subject.stream(null).test(0);
+    subscriber.assertNoValues();
+    subscriber.request(3);
+    subscriber.awaitCount(3);
+    subscriber.assertValueCount(3);
+    subscriber.assertNotComplete();
+    subscriber.requestMore(7).awaitDone(5, TimeUnit.SECONDS).assertValueCount(10).assertComplete();
+  }
+
   @Test
   public void testUpdateNonExistent() {
-    final TodosRepo subject = new TodosRepo(mapper);
+    final TodosRepo subject = new TodosRepo(mapper, execution);
     final Todo.Id id = Todo.Id.builder().value(100).build();
     final Todo.Task task = Todo.Task.builder().value("meh").build();
     final Todo todo = Todo.builder().id(id).task(task).build();
@@ -76,14 +183,224 @@ public class TodosRepoSpec {
 
   @Test
   public void testUpdateExistent() {
-    final TodosRepo subject = new TodosRepo(mapper);
+    final TodosRepo subject = new TodosRepo(mapper, execution);
     final Todo.Id id = Todo.Id.builder().value(100).build();
     final Todo.Task task = Todo.Task.builder().value("meh").build();
     final Todo todo = subject.create(task).blockingGet();
     final Todo.Task updatedTask = Todo.Task.builder().value("meh 2").build();
     final Todo updated = Todo.builder().id(todo.getId()).task(updatedTask).build();
 
-    Assertions.assertEquals(subject.update(updated).blockingGet(), updated);
-    Assertions.assertEquals(subject.get(updated.getId()).blockingGet(), updated);
+    final Todo result = subject.update(updated).blockingGet();
+    Assertions.assertEquals(result.getTask(), updatedTask);
+    Assertions.assertTrue(result.getVersion() > todo.getVersion());
+    Assertions.assertEquals(subject.get(updated.getId()).blockingGet(), result);
+  }
+
+  @Test
+  public void testBatchOperations() {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final List<Todo.Task> tasks =
+        Arrays.asList(
+            Todo.Task.builder().value("first").build(),
+            Todo.Task.builder().value("second").build());
+    final List<Todo> created = subject.createAll(tasks).blockingGet();
+    Assertions.assertEquals(created.get(0).getTask(), tasks.get(0));
+    Assertions.assertEquals(
+        created.get(1).getId().getValue(), created.get(0).getId().getValue() + 1);
+    Assertions.assertEquals(subject.list().blockingGet(), created);
+    Assertions.assertEquals(subject.size(), 2);
+
+    final Todo updated =
+        Todo.builder()
+            .id(created.get(0).getId())
+            .task(Todo.Task.builder().value("first, updated").build())
+            .build();
+    final Todo missing =
+        Todo.builder().id(Todo.Id.builder().value(100).build()).task(updated.getTask()).build();
+    final List<Optional<Todo>> results =
+        subject.updateAll(Arrays.asList(updated, missing)).blockingGet();
+    Assertions.assertEquals(results.get(0).map(Todo::getTask), Optional.of(updated.getTask()));
+    Assertions.assertFalse(results.get(1).isPresent());
+
+    Assertions.assertEquals(
+        subject.deleteAll(Arrays.asList(missing.getId(), created.get(1).getId())).blockingGet(),
+        Arrays.asList(Optional.empty(), Optional.of(created.get(1))));
+    Assertions.assertEquals(
+        subject.list().blockingGet(), Collections.singletonList(results.get(0).get()));
+    Assertions.assertEquals(subject.size(), 1);
+  }
+
+  @Test
+  public void testSearchFollowsWrites() {
+    final TodosRepo subject = new TodosRepo(mapper, execution, true);
+    final Todo milk = subject.create(Todo.Task.builder().value("buy milk").build()).blockingGet();
+    final Todo bread = subject.create(Todo.Task.builder().value("buy bread").build()).blockingGet();
+    final Todo eggs = subject.create(Todo.Task.builder().value("buy eggs").build()).blockingGet();
+    final Todo oatMilk =
+        subject
+            .update(
+                Todo.builder()
+                    .id(bread.getId())
+                    .task(Todo.Task.builder().value("buy oat milk").build())
+                    .build())
+            .blockingGet();
+    subject.delete(eggs.getId()).blockingGet();
+    Assertions.assertEquals(
+        Arrays.asList(milk, oatMilk),
+        subject.search(Arrays.asList("buy", "milk"), 0, 10).blockingGet());
+    Assertions.assertEquals(
+        Collections.emptyList(),
+        subject.search(Collections.singletonList("eggs"), 0, 10).blockingGet());
+  }
+
+  @Test
+  public void testSearchWithoutIndex() {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final Todo milk = subject.create(Todo.Task.builder().value("buy milk").build()).blockingGet();
+    subject.create(Todo.Task.builder().value("buy bread").build()).blockingGet();
+    Assertions.assertEquals(
+        Collections.singletonList(milk),
+        subject.search(Arrays.asList("buy", "milk"), 0, 10).blockingGet());
+    Assertions.assertEquals(
+        Collections.singletonList(milk), subject.suggest("buy m", 10).blockingGet());
+  }
+
+  @Test
+  public void testSuggestFollowsWrites() {
+    final TodosRepo subject = new TodosRepo(mapper, execution, true);
+    final Todo milk = subject.create(Todo.Task.builder().value("buy milk").build()).blockingGet();
+    final Todo bread = subject.create(Todo.Task.builder().value("buy bread").build()).blockingGet();
+    final Todo eggs = subject.create(Todo.Task.builder().value("Buy eggs").build()).blockingGet();
+    final Todo butter =
+        subject
+            .update(
+                Todo.builder()
+                    .id(milk.getId())
+                    .task(Todo.Task.builder().value("buy butter").build())
+                    .build())
+            .blockingGet();
+    subject.delete(bread.getId()).blockingGet();
+    Assertions.assertEquals(Arrays.asList(butter, eggs), subject.suggest("buy ", 10).blockingGet());
+    Assertions.assertEquals(Collections.emptyList(), subject.suggest("buy m", 10).blockingGet());
+  }
+
+  @Test
+  public void testVersions() {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final long empty = subject.version();
+    final Todo created = subject.create(task("first")).blockingGet();
+    final Todo other = subject.create(task("second")).blockingGet();
+    Assertions.assertTrue(other.getVersion() > created.getVersion());
+    Assertions.assertTrue(subject.version() > empty);
+
+    final long beforeUpdate = subject.version();
+    final Todo updated =
+        subject
+            .update(Todo.builder().id(created.getId()).task(task("first, updated")).build())
+            .blockingGet();
+    Assertions.assertTrue(updated.getVersion() > other.getVersion());
+    Assertions.assertEquals(
+        subject.get(created.getId()).blockingGet().getVersion(), updated.getVersion());
+    Assertions.assertEquals(
+        subject.get(other.getId()).blockingGet().getVersion(), other.getVersion());
+    Assertions.assertTrue(subject.version() > beforeUpdate);
+
+    final long beforeMissing = subject.version();
+    final Todo.Id missing = Todo.Id.builder().value(100).build();
+    subject.update(Todo.builder().id(missing).task(task("meh")).build()).blockingGet();
+    subject.delete(missing).blockingGet();
+    Assertions.assertEquals(subject.version(), beforeMissing);
+
+    subject.delete(other.getId()).blockingGet();
+    Assertions.assertTrue(subject.version() > beforeMissing);
+  }
+
+  @Test
+  public void testCompareAndUpdate() {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final Todo created = subject.create(task("first")).blockingGet();
+    final Todo edit = Todo.builder().id(created.getId()).task(task("first, edited")).build();
+    final Todo updated =
+        subject.compareAndUpdate(edit, created.getVersion()).blockingGet().right().value();
+    Assertions.assertEquals(updated.getTask(), edit.getTask());
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), updated);
+
+    final Todo lost = Todo.builder().id(created.getId()).task(task("lost")).build();
+    Assertions.assertEquals(
+        subject.compareAndUpdate(lost, created.getVersion()).blockingGet().left().value(), updated);
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), updated);
+
+    final Todo missing =
+        Todo.builder().id(Todo.Id.builder().value(100).build()).task(task("meh")).build();
+    Assertions.assertTrue(subject.compareAndUpdate(missing, 0).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testCompareAndDelete() {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final Todo created = subject.create(task("first")).blockingGet();
+    Assertions.assertEquals(
+        subject
+            .compareAndDelete(created.getId(), created.getVersion() + 1)
+            .blockingGet()
+            .left()
+            .value(),
+        created);
+    Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
+    Assertions.assertEquals(
+        subject
+            .compareAndDelete(created.getId(), created.getVersion())
+            .blockingGet()
+            .right()
+            .value(),
+        created);
+    Assertions.assertTrue(subject.get(created.getId()).isEmpty().blockingGet());
+    Assertions.assertTrue(
+        subject.compareAndDelete(created.getId(), created.getVersion()).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testCompareAndUpdateLosesNoUpdates() throws Exception {
+    final TodosRepo subject = new TodosRepo(mapper, execution);
+    final Todo counter = subject.create(task("0")).blockingGet();
+    final int threads = 4;
+    final int increments = 500;
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<?>> done = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        done.add(
+            pool.submit(
+                () -> {
+                  for (int i = 0; i < increments; ) {
+                    final Todo current = subject.get(counter.getId()).blockingGet();
+                    final int count = Integer.parseInt(current.getTask().getValue());
+                    final Todo next =
+                        Todo.builder()
+                            .id(counter.getId())
+                            .task(task(String.valueOf(count + 1)))
+                            .build();
+                    if (subject
+                        .compareAndUpdate(next, current.getVersion())
+                        .blockingGet()
+                        .isRight()) {
+                      i++;
+                    }
+                  }
+                }));
+      }
+      for (final Future<?> future : done) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    Assertions.assertEquals(
+        subject.get(counter.getId()).blockingGet().getTask().getValue(),
+        String.valueOf(threads * increments));
+  }
+
+  private static Todo.Task task(final String value) {
+    return Todo.Task.builder().value(value).build();
   }
 }
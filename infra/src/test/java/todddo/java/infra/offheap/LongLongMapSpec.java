@@ -0,0 +1,54 @@
+package todddo.java.infra.offheap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LongLongMapSpec {
+
+  private static final long MISSING = -1L;
+
+  @Test
+  public void testPutGetRemove() {
+    final LongLongMap subject = new LongLongMap();
+    Assertions.assertEquals(subject.put(1L, 10L, MISSING), MISSING);
+    Assertions.assertEquals(subject.put(1L, 11L, MISSING), 10L);
+    Assertions.assertEquals(subject.get(1L, MISSING), 11L);
+    Assertions.assertEquals(subject.remove(1L, MISSING), 11L);
+    Assertions.assertEquals(subject.get(1L, MISSING), MISSING);
+    Assertions.assertEquals(subject.size(), 0);
+  }
+
+  @Test
+  public void testRejectsNonPositiveKeys() {
+    final LongLongMap subject = new LongLongMap();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> subject.put(0L, 1L, MISSING));
+    Assertions.assertEquals(subject.get(0L, MISSING), MISSING);
+  }
+
+  @Test
+  public void testMatchesHashMapUnderChurn() {
+    final LongLongMap subject = new LongLongMap();
+    final Map<Long, Long> expected = new HashMap<>();
+    final Random random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      final long key = 1 + random.nextInt(5_000);
+      if (random.nextBoolean()) {
+        final Long previous = expected.put(key, (long) i);
+        Assertions.assertEquals(
+            subject.put(key, i, MISSING), previous == null ? MISSING : previous);
+      } else {
+        final Long previous = expected.remove(key);
+        Assertions.assertEquals(
+            subject.remove(key, MISSING), previous == null ? MISSING : previous);
+      }
+    }
+    Assertions.assertEquals(subject.size(), expected.size());
+    for (long key = 1; key <= 5_000; key++) {
+      final Long value = expected.get(key);
+      Assertions.assertEquals(subject.get(key, MISSING), value == null ? MISSING : value);
+    }
+  }
+}
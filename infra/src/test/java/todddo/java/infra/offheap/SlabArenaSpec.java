@@ -0,0 +1,67 @@
+package todddo.java.infra.offheap;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SlabArenaSpec {
+
+  @Test
+  public void testAllocateRead() {
+    final SlabArena subject = new SlabArena(1024);
+    final byte[] bytes = "do something".getBytes(StandardCharsets.UTF_8);
+    Assertions.assertArrayEquals(subject.read(subject.allocate(bytes)), bytes);
+    Assertions.assertArrayEquals(subject.read(subject.allocate(new byte[0])), new byte[0]);
+  }
+
+  @Test
+  public void testFreedBlocksAreReused() {
+    final SlabArena subject = new SlabArena(1024);
+    final long handle = subject.allocate(new byte[20]);
+    subject.free(handle);
+    Assertions.assertEquals(subject.allocate(new byte[28]), handle);
+  }
+
+  @Test
+  public void testChurnDoesNotGrowTheArena() {
+    final SlabArena subject = new SlabArena(1024);
+    long handle = subject.allocate(new byte[100]);
+    for (int i = 0; i < 10_000; i++) {
+      subject.free(handle);
+      handle = subject.allocate(new byte[100 + (i % 20)]);
+    }
+    Assertions.assertEquals(subject.reservedBytes(), 1024);
+  }
+
+  @Test
+  public void testRewriteInPlaceOnlyWithinSizeClass() {
+    final SlabArena subject = new SlabArena(1024);
+    final long handle = subject.allocate(new byte[20]);
+    Assertions.assertTrue(
+        subject.tryRewrite(handle, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13}));
+    Assertions.assertEquals(subject.read(handle).length, 13);
+    Assertions.assertFalse(subject.tryRewrite(handle, new byte[40]));
+  }
+
+  @Test
+  public void testRollsOverToNewSlabs() {
+    final SlabArena subject = new SlabArena(64);
+    for (int i = 0; i < 100; i++) {
+      final byte[] bytes = new byte[] {(byte) i};
+      Assertions.assertArrayEquals(subject.read(subject.allocate(bytes)), bytes);
+    }
+    Assertions.assertEquals(subject.reservedBytes(), 64 * 25);
+  }
+
+  @Test
+  public void testRejectsOversizedBlocks() {
+    final SlabArena subject = new SlabArena(64);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> subject.allocate(new byte[61]));
+  }
+
+  @Test
+  public void testReadOfBogusHandleIsNull() {
+    final SlabArena subject = new SlabArena(64);
+    Assertions.assertNull(subject.read(42L << 32));
+  }
+}
@@ -0,0 +1,430 @@
+package todddo.java.infra.persistence;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.ids.NodeIds;
+
+public class DurableTodosRepoSpec {
+
+  private RepoExecution execution = RepoExecution.synchronous();
+
+  @TempDir Path directory;
+
+  private DurableTodosRepo open() {
+    return new DurableTodosRepo(execution, NodeIds.single(), directory, 1024, null, 0);
+  }
+
+  private Path latest(final String glob) throws IOException {
+    Path latest = null;
+    try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, glob)) {
+      for (final Path file : files) {
+        if (latest == null || file.compareTo(latest) > 0) {
+          latest = file;
+        }
+      }
+    }
+    return latest;
+  }
+
+  private long count(final String glob) throws IOException {
+    long count = 0;
+    try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, glob)) {
+      for (final Path ignored : files) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static Todo.Task task(final String value) {
+    return Todo.Task.builder().value(value).build();
+  }
+
+  /** Versions start over on reopening, so compare Todos without them. */
+  private static List<Todo> unversioned(final List<Todo> todos) {
+    return todos.stream()
+        .map(todo -> Todo.builder().id(todo.getId()).task(todo.getTask()).build())
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void testCreateGet() throws IOException {
+    try (final DurableTodosRepo subject = open()) {
+      final Todo created = subject.create(task("do something")).blockingGet();
+      Assertions.assertEquals(created.getTask(), task("do something"));
+      Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
+      Assertions.assertEquals(
+          subject.versionOf(created.getId()).blockingGet(), (Long) created.getVersion());
+    }
+  }
+
+  @Test
+  public void testUpdateAndDeleteNonExistent() throws IOException {
+    try (final DurableTodosRepo subject = open()) {
+      final Todo.Id id = Todo.Id.builder().value(100).build();
+      final Todo todo = Todo.builder().id(id).task(task("meh")).build();
+      Assertions.assertTrue(subject.update(todo).isEmpty().blockingGet());
+      Assertions.assertTrue(subject.delete(id).isEmpty().blockingGet());
+      Assertions.assertTrue(subject.get(id).isEmpty().blockingGet());
+    }
+  }
+
+  @Test
+  public void testReopenedNodeCarriesOnFromItsIds() throws IOException {
+    final Todo last;
+    try (final DurableTodosRepo subject =
+        new DurableTodosRepo(execution, new NodeIds(3), directory, 1024, null, 0)) {
+      subject.create(task("first")).blockingGet();
+      subject.snapshot();
+      last = subject.create(task("second")).blockingGet();
+    }
+    try (final DurableTodosRepo subject =
+        new DurableTodosRepo(execution, new NodeIds(3), directory, 1024, null, 0)) {
+      Assertions.assertEquals(
+          subject.create(task("third")).blockingGet().getId().getValue(),
+          last.getId().getValue() + 1);
+    }
+  }
+
+  @Test
+  public void testPutSurvivesReopen() throws IOException {
+    final Todo.Id foreign = Todo.Id.builder().value(new NodeIds(2).first()).build();
+    final Todo.Id own = Todo.Id.builder().value(new NodeIds(3).first() + 5).build();
+    final List<Todo> put;
+    try (final DurableTodosRepo subject =
+        new DurableTodosRepo(execution, new NodeIds(3), directory, 1024, null, 0)) {
+      subject.put(foreign, task("from node 2")).blockingGet();
+      put =
+          Arrays.asList(
+              subject.put(foreign, task("and again")).blockingGet(),
+              subject.put(own, task("not handed out yet")).blockingGet());
+      Assertions.assertEquals(subject.list().blockingGet(), put);
+      Assertions.assertEquals(
+          subject.create(task("next")).blockingGet().getId().getValue(), own.getValue() + 1);
+    }
+    try (final DurableTodosRepo subject =
+        new DurableTodosRepo(execution, new NodeIds(3), directory, 1024, null, 0)) {
+      Assertions.assertEquals(unversioned(subject.list(null, 2).blockingGet()), unversioned(put));
+      Assertions.assertEquals(
+          subject.create(task("after")).blockingGet().getId().getValue(), own.getValue() + 2);
+      Assertions.assertEquals(
+          subject.putIfAbsent(foreign, task("taken")).blockingGet().left().value().getTask(),
+          task("and again"));
+      final Todo.Id free = Todo.Id.builder().value(new NodeIds(2).first() + 1).build();
+      Assertions.assertEquals(
+          subject.putIfAbsent(free, task("free")).blockingGet().right().value().getTask(),
+          task("free"));
+    }
+    try (final DurableTodosRepo subject =
+        new DurableTodosRepo(execution, new NodeIds(3), directory, 1024, null, 0)) {
+      Assertions.assertEquals(
+          subject
+              .get(Todo.Id.builder().value(new NodeIds(2).first() + 1).build())
+              .blockingGet()
+              .getTask(),
+          task("free"));
+    }
+  }
+
+  @Test
+  public void testSurvivesReopen() throws IOException {
+    final Todo kept;
+    final Todo updated;
+    final Todo deleted;
+    try (final DurableTodosRepo subject = open()) {
+      kept = subject.create(task("kept")).blockingGet();
+      final Todo original = subject.create(task("original")).blockingGet();
+      updated = Todo.builder().id(original.getId()).task(task("updated")).build();
+      subject.update(updated).blockingGet();
+      deleted = subject.create(task("deleted")).blockingGet();
+      Assertions.assertEquals(subject.delete(deleted.getId()).blockingGet(), deleted);
+    }
+    try (final DurableTodosRepo subject = open()) {
+      Assertions.assertEquals(
+          unversioned(subject.list().blockingGet()), unversioned(Arrays.asList(kept, updated)));
+      final Todo next = subject.create(task("next")).blockingGet();
+      Assertions.assertTrue(next.getId().compareTo(deleted.getId()) > 0);
+    }
+  }
+
+  @Test
+  public void testTornTailIsDropped() throws IOException {
+    final Todo kept;
+    try (final DurableTodosRepo subject = open()) {
+      kept = subject.create(task("kept")).blockingGet();
+      subject.create(task("torn")).blockingGet();
+    }
+    final Path log = latest("*.wal");
+    try (final FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 2);
+    }
+    try (final DurableTodosRepo subject = open()) {
+      Assertions.assertEquals(
+          unversioned(subject.list().blockingGet()), unversioned(Collections.singletonList(kept)));
+      final Todo next = subject.create(task("next")).blockingGet();
+      Assertions.assertEquals(subject.get(next.getId()).blockingGet(), next);
+    }
+    try (final DurableTodosRepo subject = open()) {
+      Assertions.assertEquals(subject.list().blockingGet().size(), 2);
+    }
+  }
+
+  @Test
+  public void testConcurrentWritersAreAllCommitted() throws Exception {
+    final int writers = 16;
+    final int perWriter = 50;
+    final Set<Todo.Id> ids = ConcurrentHashMap.newKeySet();
+    final ExecutorService pool = Executors.newFixedThreadPool(writers);
+    try (final DurableTodosRepo subject = open()) {
+      final CountDownLatch done = new CountDownLatch(writers);
+      for (int w = 0; w < writers; w++) {
+        pool.execute(
+            () -> {
+              for (int i = 0; i < perWriter; i++) {
+                ids.add(subject.create(task("todo")).blockingGet().getId());
+              }
+              done.countDown();
+            });
+      }
+      Assertions.assertTrue(done.await(30, TimeUnit.SECONDS));
+    } finally {
+      pool.shutdown();
+    }
+    Assertions.assertEquals(ids.size(), writers * perWriter);
+    try (final DurableTodosRepo subject = open()) {
+      Assertions.assertEquals(subject.list().blockingGet().size(), writers * perWriter);
+    }
+  }
+
+  @Test
+  public void testBatchesSurviveReopen() throws IOException {
+    final List<Todo> expected;
+    try (final DurableTodosRepo subject = open()) {
+      final List<Todo> created =
+          subject.createAll(Arrays.asList(task("a"), task("b"), task("c"))).blockingGet();
+      Assertions.assertEquals(
+          created.stream().map(todo -> todo.getId().getValue()).collect(Collectors.toList()),
+          Arrays.asList(1L, 2L, 3L));
+      final Todo.Id missing = Todo.Id.builder().value(100).build();
+      final List<Optional<Todo>> updated =
+          subject
+              .updateAll(
+                  Arrays.asList(
+                      Todo.builder().id(created.get(0).getId()).task(task("a1")).build(),
+                      Todo.builder().id(missing).task(task("nope")).build(),
+                      Todo.builder().id(created.get(0).getId()).task(task("a2")).build()))
+              .blockingGet();
+      Assertions.assertFalse(updated.get(1).isPresent());
+      Assertions.assertTrue(updated.get(2).get().getVersion() > updated.get(0).get().getVersion());
+      final List<Optional<Todo>> deleted =
+          subject
+              .deleteAll(Arrays.asList(created.get(1).getId(), created.get(1).getId(), missing))
+              .blockingGet();
+      Assertions.assertEquals(
+          deleted, Arrays.asList(Optional.of(created.get(1)), Optional.empty(), Optional.empty()));
+      expected = Arrays.asList(updated.get(2).get(), created.get(2));
+      Assertions.assertEquals(subject.list().blockingGet(), expected);
+    }
+    try (final DurableTodosRepo subject = open()) {
+      Assertions.assertEquals(unversioned(subject.list().blockingGet()), unversioned(expected));
+    }
+  }
+
+  @Test
+  public void testWritesAfterCloseFail() throws IOException {
+    final DurableTodosRepo subject = open();
+    subject.close();
+    Assertions.assertThrows(
+        IllegalStateException.class, () -> subject.create(task("too late")).blockingGet());
+  }
+
+  @Test
+  public void testRecoversFromSnapshotAndTail() throws IOException {
+    final List<Todo> expected;
+    final Todo deleted;
+    try (final DurableTodosRepo subject = open()) {
+      final Todo first = subject.create(task("first")).blockingGet();
+      for (int i = 0; i < 100; i++) {
+        subject
+            .update(Todo.builder().id(first.getId()).task(task("first " + i)).build())
+            .blockingGet();
+      }
+      deleted = subject.create(task("deleted")).blockingGet();
+      subject.delete(deleted.getId()).blockingGet();
+      final Snapshot snapshot = subject.snapshot();
+      Assertions.assertEquals(snapshot.getTodos(), 1);
+      subject.create(task("after the snapshot")).blockingGet();
+      expected = subject.list().blockingGet();
+    }
+    Assertions.assertEquals(count("*.wal"), 1);
+    Assertions.assertEquals(count("snapshot-*"), 1);
+    try (final DurableTodosRepo subject = open()) {
+      Assertions.assertEquals(subject.getRecovery().getSnapshotTodos(), 1);
+      Assertions.assertEquals(subject.getRecovery().getReplayedRecords(), 1);
+      Assertions.assertEquals(unversioned(subject.list().blockingGet()), unversioned(expected));
+      final Todo next = subject.create(task("next")).blockingGet();
+      Assertions.assertTrue(next.getId().compareTo(deleted.getId()) > 0);
+    }
+  }
+
+  @Test
+  public void testSnapshotsReplaceEachOther() throws IOException {
+    try (final DurableTodosRepo subject = open()) {
+      for (int i = 0; i < 3; i++) {
+        subject.create(task("todo " + i)).blockingGet();
+        subject.snapshot();
+      }
+    }
+    Assertions.assertEquals(count("*.wal"), 1);
+    Assertions.assertEquals(count("snapshot-*"), 1);
+    try (final DurableTodosRepo subject = open()) {
+      Assertions.assertEquals(subject.getRecovery().getSnapshotTodos(), 3);
+      Assertions.assertEquals(subject.getRecovery().getReplayedRecords(), 0);
+    }
+  }
+
+  @Test
+  public void testSnapshotWhileWriting() throws Exception {
+    final int writes = 2_000;
+    final ExecutorService pool = Executors.newSingleThreadExecutor();
+    final List<Todo> expected;
+    try (final DurableTodosRepo subject = open()) {
+      final Todo todo = subject.create(task("0")).blockingGet();
+      final Future<?> writer =
+          pool.submit(
+              () -> {
+                for (int i = 1; i <= writes; i++) {
+                  subject.create(task(String.valueOf(i))).blockingGet();
+                  subject
+                      .update(Todo.builder().id(todo.getId()).task(task(String.valueOf(i))).build())
+                      .blockingGet();
+                }
+              });
+      while (!writer.isDone()) {
+        subject.snapshot();
+      }
+      writer.get();
+      expected = subject.list().blockingGet();
+    } finally {
+      pool.shutdown();
+    }
+    try (final DurableTodosRepo subject = open()) {
+      Assertions.assertEquals(unversioned(subject.list().blockingGet()), unversioned(expected));
+    }
+  }
+
+  @Test
+  public void testDamagedSnapshotIsReported() throws IOException {
+    try (final DurableTodosRepo subject = open()) {
+      subject.create(task("todo")).blockingGet();
+      subject.snapshot();
+    }
+    try (final FileChannel channel =
+        FileChannel.open(latest("snapshot-*"), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {42}), 20);
+    }
+    Assertions.assertThrows(UncheckedIOException.class, this::open);
+  }
+
+  @Test
+  public void testVersions() throws IOException {
+    try (final DurableTodosRepo subject = open()) {
+      final long empty = subject.version();
+      final Todo created = subject.create(task("first")).blockingGet();
+      final Todo other = subject.create(task("second")).blockingGet();
+      Assertions.assertTrue(other.getVersion() > created.getVersion());
+      Assertions.assertTrue(subject.version() > empty);
+
+      final long beforeUpdate = subject.version();
+      final Todo updated =
+          subject
+              .update(Todo.builder().id(created.getId()).task(task("first, updated")).build())
+              .blockingGet();
+      Assertions.assertTrue(updated.getVersion() > other.getVersion());
+      Assertions.assertEquals(
+          subject.get(created.getId()).blockingGet().getVersion(), updated.getVersion());
+      Assertions.assertEquals(
+          subject.get(other.getId()).blockingGet().getVersion(), other.getVersion());
+      Assertions.assertTrue(subject.version() > beforeUpdate);
+
+      final long beforeMissing = subject.version();
+      final Todo.Id missing = Todo.Id.builder().value(100).build();
+      subject.update(Todo.builder().id(missing).task(task("meh")).build()).blockingGet();
+      subject.delete(missing).blockingGet();
+      Assertions.assertEquals(subject.version(), beforeMissing);
+
+      subject.delete(other.getId()).blockingGet();
+      Assertions.assertTrue(subject.version() > beforeMissing);
+    }
+  }
+
+  @Test
+  public void testCompareAndUpdate() throws IOException {
+    try (final DurableTodosRepo subject = open()) {
+      final Todo created = subject.create(task("first")).blockingGet();
+      final Todo edit = Todo.builder().id(created.getId()).task(task("first, edited")).build();
+      final Todo updated =
+          subject.compareAndUpdate(edit, created.getVersion()).blockingGet().right().value();
+      Assertions.assertEquals(updated.getTask(), edit.getTask());
+      Assertions.assertEquals(subject.get(created.getId()).blockingGet(), updated);
+
+      final Todo lost = Todo.builder().id(created.getId()).task(task("lost")).build();
+      Assertions.assertEquals(
+          subject.compareAndUpdate(lost, created.getVersion()).blockingGet().left().value(),
+          updated);
+      Assertions.assertEquals(subject.get(created.getId()).blockingGet(), updated);
+
+      final Todo missing =
+          Todo.builder().id(Todo.Id.builder().value(100).build()).task(task("meh")).build();
+      Assertions.assertTrue(subject.compareAndUpdate(missing, 0).isEmpty().blockingGet());
+    }
+  }
+
+  @Test
+  public void testCompareAndDelete() throws IOException {
+    try (final DurableTodosRepo subject = open()) {
+      final Todo created = subject.create(task("first")).blockingGet();
+      Assertions.assertEquals(
+          subject
+              .compareAndDelete(created.getId(), created.getVersion() + 1)
+              .blockingGet()
+              .left()
+              .value(),
+          created);
+      Assertions.assertEquals(subject.get(created.getId()).blockingGet(), created);
+      Assertions.assertEquals(
+          subject
+              .compareAndDelete(created.getId(), created.getVersion())
+              .blockingGet()
+              .right()
+              .value(),
+          created);
+      Assertions.assertTrue(subject.get(created.getId()).isEmpty().blockingGet());
+      Assertions.assertTrue(
+          subject.compareAndDelete(created.getId(), created.getVersion()).isEmpty().blockingGet());
+    }
+  }
+}
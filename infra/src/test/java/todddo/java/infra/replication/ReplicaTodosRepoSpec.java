@@ -0,0 +1,168 @@
+package todddo.java.infra.replication;
+
+import io.reactivex.subscribers.TestSubscriber;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.versions.VersionedTask;
+
+public class ReplicaTodosRepoSpec {
+
+  private static final long EPOCH = 42L;
+
+  private final RepoExecution execution = RepoExecution.synchronous();
+
+  @Test
+  public void testWritesFail() {
+    final ReplicaTodosRepo subject = new ReplicaTodosRepo(execution);
+    final Todo todo = todo(1, 1, "do something");
+    Assertions.assertThrows(
+        ReadOnlyReplicaException.class, () -> subject.create(todo.getTask()).blockingGet());
+    Assertions.assertThrows(
+        ReadOnlyReplicaException.class,
+        () -> subject.put(todo.getId(), todo.getTask()).blockingGet());
+    Assertions.assertThrows(
+        ReadOnlyReplicaException.class, () -> subject.update(todo).blockingGet());
+    Assertions.assertThrows(
+        ReadOnlyReplicaException.class, () -> subject.delete(todo.getId()).blockingGet());
+    Assertions.assertThrows(
+        ReadOnlyReplicaException.class, () -> subject.compareAndUpdate(todo, 1).blockingGet());
+    Assertions.assertThrows(
+        ReadOnlyReplicaException.class,
+        () -> subject.compareAndDelete(todo.getId(), 1).blockingGet());
+  }
+
+  @Test
+  public void testSnapshotIsSeenWhole() {
+    final ReplicaTodosRepo subject = new ReplicaTodosRepo(execution);
+    Assertions.assertEquals(subject.sequence(), -1);
+    subject.snapshotStarted(EPOCH);
+    subject.snapshotTodo(1, task(1, "first"));
+    subject.snapshotTodo(2, task(1, "second"));
+    Assertions.assertEquals(subject.size(), 0);
+    subject.snapshotEnded(7);
+    Assertions.assertEquals(subject.sequence(), 7);
+    Assertions.assertEquals(subject.epoch(), EPOCH);
+    Assertions.assertEquals(
+        subject.list().blockingGet(), Arrays.asList(todo(1, 1, "first"), todo(2, 1, "second")));
+  }
+
+  @Test
+  public void testSnapshotReplacesEverything() {
+    final ReplicaTodosRepo subject = new ReplicaTodosRepo(execution);
+    subject.snapshotStarted(EPOCH);
+    subject.snapshotTodo(1, task(1, "first"));
+    subject.snapshotEnded(1);
+    subject.snapshotStarted(EPOCH + 1);
+    subject.snapshotTodo(2, task(1, "second"));
+    subject.snapshotEnded(1);
+    Assertions.assertEquals(subject.list().blockingGet(), Arrays.asList(todo(2, 1, "second")));
+    Assertions.assertEquals(subject.size(), 1);
+    Assertions.assertEquals(subject.epoch(), EPOCH + 1);
+  }
+
+  @Test
+  public void testChangesApplyByVersion() {
+    final ReplicaTodosRepo subject = new ReplicaTodosRepo(execution);
+    subject.changed(1, Todo.Change.Kind.Created, 1, task(1, "first"));
+    subject.changed(3, Todo.Change.Kind.Updated, 1, task(3, "third"));
+    // Published after the newer one
+    subject.changed(2, Todo.Change.Kind.Updated, 1, task(2, "second"));
+    Assertions.assertEquals(subject.get(id(1)).blockingGet(), todo(1, 3, "third"));
+    Assertions.assertEquals(subject.versionOf(id(1)).blockingGet(), 3L);
+    Assertions.assertEquals(subject.sequence(), 2);
+  }
+
+  @Test
+  public void testDeletesAreNotUndone() {
+    final ReplicaTodosRepo subject = new ReplicaTodosRepo(execution);
+    subject.changed(1, Todo.Change.Kind.Created, 1, task(1, "first"));
+    subject.changed(2, Todo.Change.Kind.Deleted, 1, task(2, "second"));
+    // An update made before the delete, but published after it
+    subject.changed(3, Todo.Change.Kind.Updated, 1, task(2, "second"));
+    Assertions.assertTrue(subject.get(id(1)).isEmpty().blockingGet());
+    Assertions.assertEquals(subject.size(), 0);
+  }
+
+  @Test
+  public void testAppliedChangesArePublished() {
+    final ChangeFeed feed = new ChangeFeed(16, 16);
+    final ReplicaTodosRepo subject = new ReplicaTodosRepo(execution, feed);
+    final TestSubscriber<Todo.Change> changes = feed.changes(null).test();
+    subject.changed(1, Todo.Change.Kind.Created, 1, task(1, "first"));
+    subject.changed(3, Todo.Change.Kind.Updated, 1, task(3, "third"));
+    // Not applied, so not published either
+    subject.changed(2, Todo.Change.Kind.Updated, 1, task(2, "second"));
+    subject.changed(4, Todo.Change.Kind.Deleted, 1, task(3, "third"));
+    changes.awaitCount(3).assertValueCount(3);
+    Assertions.assertEquals(
+        changes.values().stream().map(Todo.Change::getTodo).collect(Collectors.toList()),
+        Arrays.asList(todo(1, 1, "first"), todo(1, 3, "third"), todo(1, 3, "third")));
+    Assertions.assertEquals(Todo.Change.Kind.Deleted, changes.values().get(2).getKind());
+    Assertions.assertTrue(subject.versionOf(id(1)).isEmpty().blockingGet());
+  }
+
+  @Test
+  public void testSnapshotsResetTheChangeFeed() {
+    final ChangeFeed feed = new ChangeFeed(16, 16);
+    final ReplicaTodosRepo subject = new ReplicaTodosRepo(execution, feed);
+    final TestSubscriber<Todo.Change> changes = feed.changes(null).test();
+    subject.snapshotStarted(EPOCH);
+    subject.snapshotTodo(1, task(1, "first"));
+    subject.snapshotEnded(1);
+    changes
+        .awaitDone(5, TimeUnit.SECONDS)
+        .assertNoValues()
+        .assertError(ChangeFeed.MissedChanges.class);
+  }
+
+  @Test
+  public void testListAndStreamAfter() {
+    final ReplicaTodosRepo subject = new ReplicaTodosRepo(execution);
+    for (long id = 1; id <= 5; id++) {
+      subject.changed(id, Todo.Change.Kind.Created, id, task(1, "todo " + id));
+    }
+    Assertions.assertEquals(
+        ids(subject.list(id(2), 2).blockingGet().stream().map(t -> t.getId().getValue())), "3,4");
+    Assertions.assertEquals(
+        ids(subject.stream(id(3)).toList().blockingGet().stream().map(t -> t.getId().getValue())),
+        "4,5");
+  }
+
+  @Test
+  public void testVersionMovesOnWithChanges() {
+    final ReplicaTodosRepo subject = new ReplicaTodosRepo(execution);
+    final long before = subject.version();
+    subject.changed(1, Todo.Change.Kind.Created, 1, task(1, "first"));
+    final long created = subject.version();
+    Assertions.assertNotEquals(created, before);
+    subject.changed(2, Todo.Change.Kind.Updated, 1, task(1, "first"));
+    Assertions.assertEquals(subject.version(), created);
+  }
+
+  private static String ids(final Stream<Long> ids) {
+    return ids.map(String::valueOf).collect(Collectors.joining(","));
+  }
+
+  private static byte[] task(final long version, final String task) {
+    return VersionedTask.encode(version, Todo.Task.builder().value(task).build());
+  }
+
+  private static Todo.Id id(final long id) {
+    return Todo.Id.builder().value(id).build();
+  }
+
+  private static Todo todo(final long id, final long version, final String task) {
+    return Todo.builder()
+        .id(id(id))
+        .version(version)
+        .task(Todo.Task.builder().value(task).build())
+        .build();
+  }
+}
@@ -0,0 +1,169 @@
+package todddo.java.infra.replication;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
+import todddo.java.domain.services.PublishingTodosRepo;
+import todddo.java.domain.services.TodosService;
+import todddo.java.infra.execution.RepoExecution;
+import todddo.java.infra.inmemory.CompactTodosRepo;
+
+public class ReplicationSpec {
+
+  private static final Duration HEARTBEAT = Duration.ofMillis(50);
+  private static final Duration RECONNECT = Duration.ofMillis(50);
+
+  private final CompactTodosRepo primary = new CompactTodosRepo(RepoExecution.synchronous());
+  private final ChangeFeed feed = new ChangeFeed(1024, 256);
+  private final TodosService service =
+      new TodosService(new PublishingTodosRepo(primary, feed), feed);
+  private final ReplicaTodosRepo replica = new ReplicaTodosRepo(RepoExecution.synchronous());
+
+  @Test
+  public void testReplicaCatchesUpThenKeepsUp() throws Exception {
+    final Todo kept = create(service, "kept");
+    final Todo updated = create(service, "updated");
+    final Todo deleted = create(service, "deleted");
+
+    try (final ReplicationServer server = new ReplicationServer(primary, feed, 0, HEARTBEAT);
+        final ReplicationClient client = client(replica, server.port())) {
+      await(() -> replica.size() == 3);
+
+      service.update(update(updated, "updated again")).blockingGet();
+      service.delete(deleted.getId()).blockingGet();
+      create(service, "created");
+      await(() -> replica.list().blockingGet().equals(primary.list().blockingGet()));
+      await(() -> client.lagChanges() == 0 && client.lagSeconds() < 1);
+      Assertions.assertEquals(replica.get(kept.getId()).blockingGet(), kept);
+    }
+  }
+
+  @Test
+  public void testReplicaResumesAfterReconnecting() throws Exception {
+    create(service, "first");
+    final ReplicationServer server = new ReplicationServer(primary, feed, 0, HEARTBEAT);
+    final int port = server.port();
+    try (final ReplicationClient client = client(replica, port)) {
+      await(() -> replica.size() == 1);
+      server.close();
+      await(() -> !client.connected());
+      create(service, "second");
+      final long resumedAfter = replica.sequence();
+      try (final ReplicationServer again = new ReplicationServer(primary, feed, port, HEARTBEAT)) {
+        await(() -> replica.size() == 2);
+        Assertions.assertEquals(replica.sequence(), resumedAfter + 1);
+      }
+    }
+  }
+
+  @Test
+  public void testReplicaOfRestartedPrimaryTakesSnapshot() throws Exception {
+    create(service, "before");
+    final ReplicationServer server = new ReplicationServer(primary, feed, 0, HEARTBEAT);
+    final int port = server.port();
+    try (final ReplicationClient client = client(replica, port)) {
+      await(() -> replica.sequence() == 1);
+      server.close();
+
+      // Starts over, so the same sequences now mean other changes
+      final CompactTodosRepo restarted = new CompactTodosRepo(RepoExecution.synchronous());
+      final ChangeFeed restartedFeed = new ChangeFeed(1024, 256);
+      final TodosService restartedService =
+          new TodosService(new PublishingTodosRepo(restarted, restartedFeed), restartedFeed);
+      create(restartedService, "after");
+      create(restartedService, "after again");
+      try (final ReplicationServer again =
+          new ReplicationServer(restarted, restartedFeed, port, HEARTBEAT)) {
+        await(() -> replica.list().blockingGet().equals(restarted.list().blockingGet()));
+      }
+    }
+  }
+
+  /** A replica in another JVM, as it would be on another instance. */
+  @Test
+  public void testReplicaInAnotherProcess(@TempDir final Path directory) throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      create(service, "before " + i);
+    }
+    try (final ReplicationServer server = new ReplicationServer(primary, feed, 0, HEARTBEAT)) {
+      final Path out = directory.resolve("replica.todos");
+      final Process replicating =
+          new ProcessBuilder(
+                  Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                  "-cp",
+                  System.getProperty("java.class.path"),
+                  Replicate.class.getName(),
+                  "localhost:" + server.port(),
+                  out.toString())
+              .redirectErrorStream(true)
+              .redirectOutput(directory.resolve("replica.log").toFile())
+              .start();
+      for (final Todo todo : primary.list(null, 100).blockingGet()) {
+        service.delete(todo.getId()).blockingGet();
+      }
+      for (final Todo todo : primary.list(null, 100).blockingGet()) {
+        service.update(update(todo, "updated " + todo.getId().getValue())).blockingGet();
+      }
+      for (int i = 0; i < 1000; i++) {
+        create(service, "after " + i);
+      }
+      create(service, Replicate.DONE);
+
+      Assertions.assertTrue(replicating.waitFor(60, TimeUnit.SECONDS));
+      Assertions.assertEquals(replicating.exitValue(), 0);
+      Assertions.assertEquals(Files.readAllLines(out), lines(primary.list().blockingGet()));
+    }
+  }
+
+  /** Replicates from a primary until it has a Todo marking the end, then writes out its Todos. */
+  public static class Replicate {
+    static final String DONE = "done";
+
+    public static void main(final String[] args) throws Exception {
+      final ReplicaTodosRepo replica = new ReplicaTodosRepo(RepoExecution.synchronous());
+      try (final ReplicationClient client = new ReplicationClient(replica, args[0], RECONNECT)) {
+        await(
+            () -> replica.stream(null).any(t -> DONE.equals(t.getTask().getValue())).blockingGet());
+        Files.write(Paths.get(args[1]), lines(replica.list().blockingGet()));
+      }
+    }
+  }
+
+  private static ReplicationClient client(final ReplicaTodosRepo replica, final int port) {
+    return new ReplicationClient(replica, "localhost:" + port, RECONNECT);
+  }
+
+  private static Todo create(final TodosService service, final String task) {
+    return service.create(Todo.Task.builder().value(task).build()).blockingGet().right().value();
+  }
+
+  private static Todo update(final Todo todo, final String task) {
+    return Todo.builder().id(todo.getId()).task(Todo.Task.builder().value(task).build()).build();
+  }
+
+  private static List<String> lines(final List<Todo> todos) {
+    return todos.stream()
+        .map(t -> t.getId().getValue() + " " + t.getVersion() + " " + t.getTask().getValue())
+        .collect(Collectors.toList());
+  }
+
+  private static void await(final BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) {
+        Assertions.fail("Timed out");
+      }
+      Thread.sleep(10);
+    }
+  }
+}
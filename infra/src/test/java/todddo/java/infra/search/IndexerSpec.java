@@ -0,0 +1,81 @@
+package todddo.java.infra.search;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class IndexerSpec {
+
+  private final Map<Long, String> store = new HashMap<>();
+
+  @Test
+  public void indexesTheStoreAsItIsWhenCatchingUp() {
+    final Indexer subject = new Indexer(store::get, 100);
+    store.put(1L, "buy milk");
+    subject.changed(1);
+    store.put(2L, "buy bread");
+    subject.changed(2);
+    store.put(1L, "sell milk");
+    store.remove(2L);
+    store.put(3L, "buy butter");
+    // Queued out of order and more than once, as racing writes might
+    subject.changed(3);
+    subject.changed(2);
+    subject.changed(1);
+    subject.changed(1);
+    Assertions.assertEquals(6, subject.lag());
+    Assertions.assertArrayEquals(new long[] {3}, subject.search(Arrays.asList("buy"), 0, 10));
+    Assertions.assertArrayEquals(new long[] {1}, subject.suggest("sell", 10));
+    Assertions.assertEquals(0, subject.lag());
+    store.remove(1L);
+    subject.changed(1);
+    Assertions.assertArrayEquals(new long[0], subject.search(Arrays.asList("milk"), 0, 10));
+  }
+
+  @Test
+  public void writesCatchUpOnceEnoughAreQueued() {
+    final Indexer subject = new Indexer(store::get, 3);
+    for (long id = 1; id <= 4; id++) {
+      store.put(id, "task " + id);
+      subject.changed(id);
+    }
+    Assertions.assertEquals(0, subject.lag());
+    store.put(5L, "task 5");
+    subject.changed(5);
+    Assertions.assertEquals(1, subject.lag());
+  }
+
+  @Test
+  public void searchWaitsForIdsTakenButNotYetIndexed() throws Exception {
+    final CountDownLatch reading = new CountDownLatch(1);
+    final CountDownLatch written = new CountDownLatch(1);
+    final Indexer subject =
+        new Indexer(
+            id -> {
+              reading.countDown();
+              try {
+                written.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return "buy milk";
+            },
+            0);
+    final Thread writer = new Thread(() -> subject.changed(1));
+    writer.start();
+    Assertions.assertTrue(reading.await(10, TimeUnit.SECONDS));
+    Assertions.assertEquals(0, subject.lag());
+    final CompletableFuture<long[]> found =
+        CompletableFuture.supplyAsync(() -> subject.search(Arrays.asList("milk"), 0, 10));
+    Assertions.assertThrows(TimeoutException.class, () -> found.get(100, TimeUnit.MILLISECONDS));
+    written.countDown();
+    Assertions.assertArrayEquals(new long[] {1}, found.get(10, TimeUnit.SECONDS));
+    writer.join();
+  }
+}
@@ -0,0 +1,99 @@
+package todddo.java.infra.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.domain.models.Terms;
+import todddo.java.domain.models.Todo;
+
+public class InvertedIndexSpec {
+
+  private static List<Long> search(final InvertedIndex index, final String... terms) {
+    return Arrays.stream(index.search(Arrays.asList(terms), 0, Integer.MAX_VALUE))
+        .boxed()
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void findsTodosWithEveryTerm() {
+    final InvertedIndex subject = new InvertedIndex();
+    subject.add(1, "buy milk");
+    subject.add(2, "buy bread");
+    subject.add(3, "Milk the cow, buy a pail");
+    Assertions.assertEquals(Arrays.asList(1L, 3L), search(subject, "milk", "buy"));
+    Assertions.assertEquals(Arrays.asList(2L), search(subject, "bread"));
+    Assertions.assertEquals(Collections.emptyList(), search(subject, "bread", "milk"));
+    Assertions.assertEquals(Collections.emptyList(), search(subject, "eggs"));
+  }
+
+  @Test
+  public void followsReplacesAndRemoves() {
+    final InvertedIndex subject = new InvertedIndex();
+    subject.add(1, "buy milk");
+    subject.add(2, "buy bread");
+    subject.replace(1, "buy milk", "sell milk");
+    subject.remove(2, "buy bread");
+    Assertions.assertEquals(Collections.emptyList(), search(subject, "buy"));
+    Assertions.assertEquals(Arrays.asList(1L), search(subject, "sell", "milk"));
+  }
+
+  @Test
+  public void pagesThroughMatches() {
+    final InvertedIndex subject = new InvertedIndex();
+    for (int id = 1; id <= 10; id++) {
+      subject.add(id, "task " + id);
+    }
+    Assertions.assertArrayEquals(
+        new long[] {4, 5, 6}, subject.search(Collections.singletonList("task"), 3, 3));
+    Assertions.assertArrayEquals(
+        new long[] {10}, subject.search(Collections.singletonList("task"), 9, 3));
+    Assertions.assertArrayEquals(
+        new long[0], subject.search(Collections.singletonList("task"), 10, 3));
+  }
+
+  /** Spans many blocks, with Ids added out of order and removed, to exercise splits and merges. */
+  @Test
+  public void agreesWithRankingEveryTodo() {
+    final Random random = new Random(42);
+    final String[] words = {"alpha", "beta", "gamma", "delta", "epsilon"};
+    final InvertedIndex subject = new InvertedIndex();
+    final List<Todo> todos = new ArrayList<>();
+    for (int id = 5000; id >= 1; id--) {
+      final StringBuilder task = new StringBuilder();
+      for (int i = 1 + random.nextInt(5); i > 0; i--) {
+        task.append(words[random.nextInt(words.length)]).append(' ');
+      }
+      if (id % 3 == 0) {
+        continue;
+      }
+      subject.add(id, task.toString());
+      if (id % 7 == 0) {
+        subject.remove(id, task.toString());
+      } else {
+        todos.add(
+            Todo.builder()
+                .id(Todo.Id.builder().value(id).build())
+                .task(Todo.Task.builder().value(task.toString()).build())
+                .build());
+      }
+    }
+    for (final List<String> terms :
+        Arrays.asList(
+            Arrays.asList("alpha"),
+            Arrays.asList("beta", "gamma"),
+            Arrays.asList("delta", "epsilon", "alpha"))) {
+      final List<Long> expected =
+          Terms.rank(todos, terms, 5, 50).stream()
+              .map(todo -> todo.getId().getValue())
+              .collect(Collectors.toList());
+      Assertions.assertEquals(
+          expected,
+          Arrays.stream(subject.search(terms, 5, 50)).boxed().collect(Collectors.toList()));
+    }
+  }
+}
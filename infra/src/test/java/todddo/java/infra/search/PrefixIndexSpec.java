@@ -0,0 +1,80 @@
+package todddo.java.infra.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.domain.models.Terms;
+import todddo.java.domain.models.Todo;
+
+public class PrefixIndexSpec {
+
+  @Test
+  public void suggestsCompletionsAlphabetically() {
+    final PrefixIndex subject = new PrefixIndex();
+    subject.add(1, "Buy milk");
+    subject.add(2, "buyer meeting");
+    subject.add(3, "buy  bread!");
+    subject.add(4, "Buy milk");
+    subject.add(5, "sell milk");
+    Assertions.assertArrayEquals(new long[] {3, 1, 4, 2}, subject.suggest("buy", 10));
+    Assertions.assertArrayEquals(new long[] {3, 1, 4}, subject.suggest("buy ", 10));
+    Assertions.assertArrayEquals(new long[] {1, 4}, subject.suggest("buy mi", 10));
+    Assertions.assertArrayEquals(new long[] {3, 1}, subject.suggest("b", 2));
+    Assertions.assertArrayEquals(new long[0], subject.suggest("buy x", 10));
+    Assertions.assertArrayEquals(new long[0], subject.suggest("buy milk and", 10));
+  }
+
+  @Test
+  public void followsReplacesAndRemoves() {
+    final PrefixIndex subject = new PrefixIndex();
+    subject.add(1, "buy milk");
+    subject.add(2, "buy bread");
+    subject.add(3, "buy butter");
+    subject.replace(1, "buy milk", "sell milk");
+    subject.remove(2, "buy bread");
+    Assertions.assertArrayEquals(new long[] {3}, subject.suggest("buy", 10));
+    Assertions.assertArrayEquals(new long[] {3}, subject.suggest("buy but", 10));
+    Assertions.assertArrayEquals(new long[] {1}, subject.suggest("s", 10));
+    subject.remove(3, "buy butter");
+    Assertions.assertArrayEquals(new long[0], subject.suggest("b", 10));
+  }
+
+  /** Adds and removes enough overlapping Tasks to split and merge edges many times over. */
+  @Test
+  public void agreesWithCompletingEveryTodo() {
+    final Random random = new Random(7);
+    final String[] words = {"a", "ab", "abc", "b", "ba", "bab"};
+    final PrefixIndex subject = new PrefixIndex();
+    final List<Todo> todos = new ArrayList<>();
+    for (int id = 1; id <= 3000; id++) {
+      final StringBuilder task = new StringBuilder();
+      for (int i = 1 + random.nextInt(3); i > 0; i--) {
+        task.append(words[random.nextInt(words.length)]).append(' ');
+      }
+      subject.add(id, task.toString());
+      if (id % 4 == 0) {
+        subject.remove(id, task.toString());
+      } else {
+        todos.add(
+            Todo.builder()
+                .id(Todo.Id.builder().value(id).build())
+                .task(Todo.Task.builder().value(task.toString()).build())
+                .build());
+      }
+    }
+    for (final String prefix : Arrays.asList("a", "ab", "ab ", "ab b", "b", "bab ba", "c")) {
+      final List<Long> expected =
+          Terms.complete(todos, prefix, 40).stream()
+              .map(todo -> todo.getId().getValue())
+              .collect(Collectors.toList());
+      Assertions.assertEquals(
+          expected,
+          Arrays.stream(subject.suggest(prefix, 40)).boxed().collect(Collectors.toList()),
+          prefix);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package todddo.java.infra.tracing;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TracingSpec {
+
+  private static List<String> requests(final Tracing tracing) {
+    return tracing.slowRequests().stream().map(Trace::getRequest).collect(Collectors.toList());
+  }
+
+  @Test
+  public void keepsOnlySlowRequests() {
+    final Tracing subject = new Tracing(true, Duration.ofSeconds(1), 4);
+    final Trace fast = subject.start("fast");
+    subject.finish(fast, 200, System.nanoTime());
+    final Trace slow = subject.start("slow");
+    subject.finish(slow, 200, System.nanoTime() + Duration.ofSeconds(2).toNanos());
+    Assertions.assertEquals(Arrays.asList("slow"), requests(subject));
+    Assertions.assertEquals(200, subject.slowRequests().get(0).getStatus());
+  }
+
+  @Test
+  public void overwritesTheOldestWhenFull() {
+    final Tracing subject = new Tracing(true, Duration.ZERO, 2);
+    for (final String request : Arrays.asList("a", "b", "c")) {
+      subject.finish(subject.start(request), 200, System.nanoTime());
+    }
+    Assertions.assertEquals(Arrays.asList("c", "b"), requests(subject));
+  }
+
+  @Test
+  public void spansAreOrderedByStart() {
+    final Trace subject = new Tracing(true, Duration.ZERO, 1).start("request");
+    final long now = System.nanoTime();
+    subject.span("later", now + 2000, now + 3000);
+    subject.span("earlier", now + 1000, now + 4000);
+    Assertions.assertEquals(
+        Arrays.asList("earlier", "later"),
+        subject.getSpans().stream().map(Trace.Span::getStage).collect(Collectors.toList()));
+    Assertions.assertEquals(3.0, subject.getSpans().get(0).getDurationMicros());
+  }
+
+  @Test
+  public void disabledTracesNothing() {
+    final Tracing subject = Tracing.disabled();
+    Assertions.assertFalse(subject.isEnabled());
+    Assertions.assertNull(subject.current());
+    subject.deserialized();
+    Assertions.assertTrue(subject.slowRequests().isEmpty());
+  }
+}
@@ -0,0 +1,351 @@
+package todddo.java.loadtest;
+
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.client.RxHttpClient;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.runtime.server.EmbeddedServer;
+import io.reactivex.Flowable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nonnull;
+import org.HdrHistogram.Histogram;
+import todddo.java.api.models.BatchRequest;
+import todddo.java.api.models.BatchResponse;
+import todddo.java.api.models.BatchResult;
+import todddo.java.api.models.TodoData;
+import todddo.java.api.models.TodoResponse;
+
+/**
+ * Boots the app on a random local port and drives its /todos endpoints at a fixed rate with a mix
+ * of requests, then reports latency percentiles and throughput per kind of request.
+ *
+ * <p>The load is open-loop: requests are sent on a fixed schedule whether or not earlier ones have
+ * answered, and latency is measured from when each request was due to be sent. A stall in the
+ * server, or in this process, then counts against every request it delays, instead of quietly
+ * lowering the rate and hiding itself (coordinated omission). Latency from the actual send is
+ * reported too; a large difference between the two means the sender could not keep up.
+ *
+ * <p>Configured with the loadtest.* system properties read in {@link Config}. Other properties,
+ * e.g. todddo.repo.store, configure the app as usual.
+ */
+public final class LoadTest {
+
+  private final Config config;
+  private final RxHttpClient client;
+  private final Map<Mix.Op, OpStats> stats = new EnumMap<>(Mix.Op.class);
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong lowestId = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong highestId = new AtomicLong(Long.MIN_VALUE);
+
+  /** Set by {@link #run()}, counting only what was due to be sent after the warmup. */
+  private long sent;
+
+  private long maxSendLagNanos;
+  private int unfinished;
+
+  private LoadTest(@Nonnull final Config config, @Nonnull final RxHttpClient client) {
+    this.config = config;
+    this.client = client;
+    for (final Mix.Op op : config.mix.ops()) {
+      stats.put(op, new OpStats());
+    }
+  }
+
+  public static void main(final String[] args) {
+    final Config config = Config.fromSystemProperties();
+    final Map<String, Object> properties = new HashMap<>();
+    properties.put("micronaut.server.port", -1);
+    properties.put("micronaut.http.client.pool.enabled", true);
+    properties.put("micronaut.http.client.pool.max-connections", config.connections);
+    int status = 0;
+    try (EmbeddedServer server = ApplicationContext.run(EmbeddedServer.class, properties)) {
+      final ApplicationContext context = server.getApplicationContext();
+      final RxHttpClient client = context.createBean(RxHttpClient.class, server.getURL());
+      final LoadTest loadTest = new LoadTest(config, client);
+      loadTest.seed();
+      loadTest.run();
+      loadTest.report(
+          System.out, context.getProperty("todddo.repo.store", String.class).orElse("in-memory"));
+    } catch (RuntimeException | IOException e) {
+      e.printStackTrace();
+      status = 1;
+    }
+    // Micronaut's scheduler threads are not daemons
+    System.exit(status);
+  }
+
+  /** Creates the Todos that get, list, update and delete pick from. */
+  private void seed() {
+    final int chunk = 1000;
+    for (int created = 0; created < config.todos; created += chunk) {
+      final List<TodoData> tasks = new ArrayList<>();
+      for (int i = created; i < Math.min(config.todos, created + chunk); i++) {
+        tasks.add(TodoData.builder().task("seeded task " + i).build());
+      }
+      final BatchResponse response =
+          client
+              .retrieve(
+                  HttpRequest.POST("/todos/batch", BatchRequest.builder().create(tasks).build()),
+                  BatchResponse.class)
+              .blockingFirst();
+      for (final BatchResult result : response.getCreate()) {
+        if (result.getTodo() != null) {
+          created(result.getTodo().getId());
+        }
+      }
+    }
+  }
+
+  private void run() {
+    final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.rate;
+    final long start = System.nanoTime();
+    final long measureFrom = start + TimeUnit.SECONDS.toNanos(config.warmupSeconds);
+    final long end = measureFrom + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+    long sent = 0;
+    long maxSendLag = 0;
+    for (long i = 0; ; i++) {
+      final long intended = start + i * intervalNanos;
+      if (intended >= end) {
+        break;
+      }
+      long now;
+      while ((now = System.nanoTime()) < intended) {
+        LockSupport.parkNanos(intended - now);
+      }
+      final boolean measured = intended >= measureFrom;
+      send(config.mix.next(), intended, now, measured);
+      if (measured) {
+        sent++;
+        maxSendLag = Math.max(maxSendLag, now - intended);
+      }
+    }
+    this.sent = sent;
+    this.maxSendLagNanos = maxSendLag;
+    final long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.drainSeconds);
+    while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+    this.unfinished = inFlight.get();
+  }
+
+  private void send(
+      final Mix.Op op, final long intendedNanos, final long sentNanos, final boolean measured) {
+    inFlight.incrementAndGet();
+    request(op)
+        .firstElement()
+        .subscribe(
+            response -> done(op, intendedNanos, sentNanos, measured, response.code()),
+            error ->
+                done(
+                    op,
+                    intendedNanos,
+                    sentNanos,
+                    measured,
+                    error instanceof HttpClientResponseException
+                        ? ((HttpClientResponseException) error).getStatus().getCode()
+                        : error.getClass().getSimpleName()));
+  }
+
+  private void done(
+      final Mix.Op op,
+      final long intendedNanos,
+      final long sentNanos,
+      final boolean measured,
+      final Object outcome) {
+    if (measured) {
+      stats.get(op).record(intendedNanos, sentNanos, System.nanoTime(), String.valueOf(outcome));
+    }
+    inFlight.decrementAndGet();
+  }
+
+  private Flowable<? extends HttpResponse<?>> request(final Mix.Op op) {
+    switch (op) {
+      case CREATE:
+        return client
+            .exchange(HttpRequest.POST("/todos", task()), TodoResponse.class)
+            .doOnNext(response -> response.getBody().ifPresent(t -> created(t.getId())));
+      case GET:
+        return client.exchange(HttpRequest.GET("/todos/" + randomId()));
+      case LIST:
+        return client.exchange(
+            HttpRequest.GET("/todos?after=" + randomId() + "&limit=" + config.listLimit));
+      case UPDATE:
+        return client.exchange(HttpRequest.PUT("/todos/" + randomId(), task()));
+      case DELETE:
+        return client.exchange(HttpRequest.DELETE("/todos/" + randomId()));
+      default:
+        throw new IllegalArgumentException("Unknown op [" + op + "]");
+    }
+  }
+
+  private static TodoData task() {
+    return TodoData.builder().task("load test task " + System.nanoTime()).build();
+  }
+
+  private void created(final long id) {
+    lowestId.accumulateAndGet(id, Math::min);
+    highestId.accumulateAndGet(id, Math::max);
+  }
+
+  /** Any Id ever created, so deleted ones are picked too and answer 404. */
+  private long randomId() {
+    final long lowest = lowestId.get();
+    return lowest == Long.MAX_VALUE
+        ? 1L
+        : ThreadLocalRandom.current().nextLong(lowest, highestId.get() + 1);
+  }
+
+  private void report(final PrintStream out, final String store) throws IOException {
+    final Path directory = Paths.get(config.outputDirectory);
+    Files.createDirectories(directory);
+    final Map<Mix.Op, Histogram> fromIntended = new EnumMap<>(Mix.Op.class);
+    final Map<Mix.Op, Histogram> fromSent = new EnumMap<>(Mix.Op.class);
+    stats.forEach(
+        (op, s) -> {
+          fromIntended.put(op, s.fromIntended());
+          fromSent.put(op, s.fromSent());
+        });
+    out.printf(
+        "%nstore %s, %d req/s for %d s after %d s warmup, mix %s, %d connections%n",
+        store,
+        config.rate,
+        config.durationSeconds,
+        config.warmupSeconds,
+        config.mix,
+        config.connections);
+    out.printf(
+        "sent %d (%.1f req/s), unfinished %d, sender fell at most %.3f ms behind schedule%n",
+        sent, (double) sent / config.durationSeconds, unfinished, maxSendLagNanos / 1e6);
+    out.printf("%nLatency in ms from the intended send time (coordinated-omission corrected)%n");
+    printTable(out, fromIntended);
+    out.printf("%nLatency in ms from the actual send time (uncorrected)%n");
+    printTable(out, fromSent);
+    out.printf("%nOutcomes%n");
+    stats.forEach((op, s) -> out.printf("%-8s %s%n", name(op), s.outcomes()));
+    for (final Mix.Op op : stats.keySet()) {
+      writeDistribution(directory.resolve(name(op) + ".hgrm"), fromIntended.get(op));
+      writeDistribution(directory.resolve(name(op) + "-uncorrected.hgrm"), fromSent.get(op));
+    }
+    out.printf("%nPercentile distributions written to %s%n", directory.toAbsolutePath());
+  }
+
+  private void printTable(final PrintStream out, final Map<Mix.Op, Histogram> histograms) {
+    out.printf(
+        "%-8s %9s %9s %9s %9s %9s %9s %9s %9s%n",
+        "op", "count", "req/s", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+    final Histogram all = new Histogram(3);
+    histograms.forEach(
+        (op, histogram) -> {
+          printRow(out, name(op), histogram);
+          all.add(histogram);
+        });
+    printRow(out, "all", all);
+  }
+
+  private void printRow(final PrintStream out, final String name, final Histogram histogram) {
+    out.printf(
+        "%-8s %9d %9.1f %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+        name,
+        histogram.getTotalCount(),
+        (double) histogram.getTotalCount() / config.durationSeconds,
+        millis(histogram, 50),
+        millis(histogram, 90),
+        millis(histogram, 99),
+        millis(histogram, 99.9),
+        millis(histogram, 99.99),
+        histogram.getMaxValue() / 1000.0);
+  }
+
+  private static double millis(final Histogram histogram, final double percentile) {
+    return histogram.getValueAtPercentile(percentile) / 1000.0;
+  }
+
+  private static void writeDistribution(final Path file, final Histogram histogram)
+      throws IOException {
+    try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+      histogram.outputPercentileDistribution(out, 1000.0);
+    }
+  }
+
+  private static String name(final Mix.Op op) {
+    return op.name().toLowerCase(Locale.ROOT);
+  }
+
+  /** What to run, from system properties; the defaults are in parentheses. */
+  static final class Config {
+
+    /** loadtest.rate (200): requests sent per second, across all kinds. */
+    final int rate;
+    /** loadtest.duration (30): seconds measured. */
+    final int durationSeconds;
+    /** loadtest.warmup (10): seconds of load before measuring starts. */
+    final int warmupSeconds;
+    /** loadtest.drain (30): most seconds to wait for outstanding requests at the end. */
+    final int drainSeconds;
+    /** loadtest.mix (get=50,list=10,create=15,update=20,delete=5): relative weights. */
+    final Mix mix;
+    /** loadtest.todos (10000): Todos created before starting. */
+    final int todos;
+    /** loadtest.list-limit (20): page size of list requests. */
+    final int listLimit;
+    /** loadtest.connections (64): most connections the client opens. */
+    final int connections;
+    /** loadtest.output (build/reports/loadtest): where to write .hgrm percentile distributions. */
+    final String outputDirectory;
+
+    private Config(
+        final int rate,
+        final int durationSeconds,
+        final int warmupSeconds,
+        final int drainSeconds,
+        final Mix mix,
+        final int todos,
+        final int listLimit,
+        final int connections,
+        final String outputDirectory) {
+      if (rate <= 0 || durationSeconds <= 0 || connections <= 0 || listLimit <= 0) {
+        throw new IllegalArgumentException(
+            "loadtest.rate, duration, connections and list-limit must be positive");
+      }
+      this.rate = rate;
+      this.durationSeconds = durationSeconds;
+      this.warmupSeconds = warmupSeconds;
+      this.drainSeconds = drainSeconds;
+      this.mix = mix;
+      this.todos = todos;
+      this.listLimit = listLimit;
+      this.connections = connections;
+      this.outputDirectory = outputDirectory;
+    }
+
+    static Config fromSystemProperties() {
+      return new Config(
+          Integer.getInteger("loadtest.rate", 200),
+          Integer.getInteger("loadtest.duration", 30),
+          Integer.getInteger("loadtest.warmup", 10),
+          Integer.getInteger("loadtest.drain", 30),
+          Mix.parse(
+              System.getProperty("loadtest.mix", "get=50,list=10,create=15,update=20,delete=5")),
+          Integer.getInteger("loadtest.todos", 10000),
+          Integer.getInteger("loadtest.list-limit", 20),
+          Integer.getInteger("loadtest.connections", 64),
+          System.getProperty("loadtest.output", "build/reports/loadtest"));
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package todddo.java.loadtest;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nonnull;
+
+/** How often each kind of request is sent, as relative weights, e.g. "get=70,list=10,create=20". */
+final class Mix {
+
+  enum Op {
+    CREATE,
+    GET,
+    LIST,
+    UPDATE,
+    DELETE
+  }
+
+  private final Map<Op, Integer> weights;
+  private final Op[] ops;
+  private final int[] cumulative;
+
+  private Mix(final Map<Op, Integer> weights) {
+    this.weights = weights;
+    this.ops = weights.keySet().toArray(new Op[0]);
+    this.cumulative = new int[ops.length];
+    int total = 0;
+    for (int i = 0; i < ops.length; i++) {
+      total += weights.get(ops[i]);
+      cumulative[i] = total;
+    }
+  }
+
+  @Nonnull
+  static Mix parse(@Nonnull final String spec) {
+    final Map<Op, Integer> weights = new EnumMap<>(Op.class);
+    for (final String part : spec.split(",")) {
+      final String[] kv = part.trim().split("=");
+      if (kv.length != 2) {
+        throw new IllegalArgumentException("Expected op=weight, got [" + part + "]");
+      }
+      final Op op = Op.valueOf(kv[0].trim().toUpperCase(Locale.ROOT));
+      final int weight = Integer.parseInt(kv[1].trim());
+      if (weight < 0) {
+        throw new IllegalArgumentException("Negative weight for [" + op + "]");
+      }
+      if (weight > 0) {
+        weights.put(op, weight);
+      }
+    }
+    if (weights.isEmpty()) {
+      throw new IllegalArgumentException("No ops with a positive weight in [" + spec + "]");
+    }
+    return new Mix(weights);
+  }
+
+  @Nonnull
+  Op next() {
+    final int r = ThreadLocalRandom.current().nextInt(cumulative[cumulative.length - 1]);
+    for (int i = 0; i < cumulative.length; i++) {
+      if (r < cumulative[i]) {
+        return ops[i];
+      }
+    }
+    throw new IllegalStateException("Unreachable");
+  }
+
+  @Nonnull
+  Op[] ops() {
+    return ops.clone();
+  }
+
+  @Override
+  public String toString() {
+    return weights.toString();
+  }
+}
@@ -0,0 +1,51 @@
+package todddo.java.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nonnull;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies, in microseconds, and outcomes of one kind of request. Recorded from whichever threads
+ * responses complete on.
+ */
+final class OpStats {
+
+  private final Recorder fromIntended = new Recorder(3);
+  private final Recorder fromSent = new Recorder(3);
+  private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+
+  void record(
+      final long intendedNanos,
+      final long sentNanos,
+      final long doneNanos,
+      @Nonnull final String outcome) {
+    fromIntended.recordValue(TimeUnit.NANOSECONDS.toMicros(doneNanos - intendedNanos));
+    fromSent.recordValue(TimeUnit.NANOSECONDS.toMicros(doneNanos - sentNanos));
+    outcomes.computeIfAbsent(outcome, ignored -> new LongAdder()).increment();
+  }
+
+  /** Latency from when each request was due to be sent; what a user would have seen. */
+  @Nonnull
+  Histogram fromIntended() {
+    return fromIntended.getIntervalHistogram();
+  }
+
+  /** Latency from when each request was actually sent; hides any time spent waiting to send. */
+  @Nonnull
+  Histogram fromSent() {
+    return fromSent.getIntervalHistogram();
+  }
+
+  /** Count of responses by status code, or by error for requests that got none. */
+  @Nonnull
+  Map<String, Long> outcomes() {
+    final Map<String, Long> counts = new TreeMap<>();
+    outcomes.forEach((outcome, count) -> counts.put(outcome, count.sum()));
+    return counts;
+  }
+}
@@ -0,0 +1,144 @@
+package todddo.java.api.cluster;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.client.DefaultHttpClient;
+import io.micronaut.http.client.DefaultHttpClientConfiguration;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import todddo.java.domain.models.Todo;
+
+/**
+ * The members of a cluster, as todddo.cluster.members lists them, and which of them owns each Todo,
+ * as per a {@link HashRing} of their names with todddo.cluster.virtual-nodes points each.
+ *
+ * <p>Every other member is reached through its own HTTP client, each with a pool of up to
+ * todddo.cluster.max-connections connections, so forwarded requests reuse connections rather than
+ * opening one each.
+ *
+ * <p>Members prove they are one to each other with todddo.cluster.secret, which every member must
+ * share, sent in the {@link #SECRET_HEADER} header of each /cluster request.
+ */
+@Singleton
+@Requires(property = "todddo.cluster.enabled", value = "true")
+public class Cluster implements AutoCloseable {
+
+  public static final String SECRET_HEADER = "X-Todddo-Cluster-Secret";
+
+  private final String self;
+  private final byte[] secret;
+  private final int virtualNodes;
+  private final int maxConnections;
+  private final Map<String, RemoteTodos> remotes = new ConcurrentHashMap<>();
+  private volatile HashRing ring;
+
+  @Inject
+  public Cluster(
+      @Value("${todddo.cluster.self}") final String self,
+      @Value("${todddo.cluster.members}") final List<String> members,
+      @Value("${todddo.cluster.virtual-nodes:128}") final int virtualNodes,
+      @Value("${todddo.cluster.max-connections:32}") final int maxConnections,
+      @Value("${todddo.cluster.secret:}") final String secret) {
+    if (secret.trim().isEmpty()) {
+      throw new IllegalArgumentException(
+          "todddo.cluster.secret must be set, to the same value on every member");
+    }
+    this.self = self;
+    this.secret = secret.getBytes(StandardCharsets.UTF_8);
+    this.virtualNodes = virtualNodes;
+    this.maxConnections = maxConnections;
+    final List<String> names = new ArrayList<>();
+    for (final String member : members) {
+      final int equals = member.indexOf('=');
+      if (equals < 1) {
+        throw new IllegalArgumentException("Members must be name=url, got [" + member + "]");
+      }
+      final String name = member.substring(0, equals).trim();
+      names.add(name);
+      if (!name.equals(self)) {
+        remotes.put(name, connect(member.substring(equals + 1).trim()));
+      }
+    }
+    if (!names.contains(self)) {
+      throw new IllegalArgumentException("This member [" + self + "] is not one of " + names);
+    }
+    this.ring = new HashRing(names, virtualNodes);
+  }
+
+  @Nonnull
+  public String self() {
+    return self;
+  }
+
+  @Nonnull
+  public List<String> members() {
+    return ring.members();
+  }
+
+  /** Whether a request presented this cluster's secret, compared in constant time. */
+  public boolean authorizes(@Nullable final String presented) {
+    return presented != null
+        && MessageDigest.isEqual(secret, presented.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** The member that owns the Todo with the given Id. */
+  @Nonnull
+  public String owner(@Nonnull final Todo.Id id) {
+    return ring.owner(id.getValue());
+  }
+
+  /**
+   * Adds a member, or changes where one is, after which it owns the Todos the ring now gives it.
+   * Moving those Todos there is up to the caller.
+   */
+  public synchronized void join(@Nonnull final String member, @Nonnull final String url) {
+    if (member.equals(self)) {
+      return;
+    }
+    final RemoteTodos previous = remotes.put(member, connect(url));
+    if (previous != null) {
+      previous.close();
+    }
+    ring = ring.with(member);
+  }
+
+  /** How to reach another member. */
+  @Nonnull
+  RemoteTodos remote(@Nonnull final String member) {
+    final RemoteTodos remote = remotes.get(member);
+    if (remote == null) {
+      throw new IllegalArgumentException("No member [" + member + "]");
+    }
+    return remote;
+  }
+
+  @Override
+  @PreDestroy
+  public void close() {
+    remotes.values().forEach(RemoteTodos::close);
+  }
+
+  private RemoteTodos connect(final String url) {
+    final DefaultHttpClientConfiguration configuration = new DefaultHttpClientConfiguration();
+    configuration.getConnectionPoolConfiguration().setEnabled(true);
+    configuration.getConnectionPoolConfiguration().setMaxConnections(maxConnections);
+    try {
+      return new RemoteTodos(
+          new DefaultHttpClient(new URL(url), configuration),
+          new String(secret, StandardCharsets.UTF_8));
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException("Not a URL [" + url + "]", e);
+    }
+  }
+}
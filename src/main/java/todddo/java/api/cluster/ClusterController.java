@@ -0,0 +1,167 @@
+package todddo.java.api.cluster;
+
+import fj.data.Either;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.annotation.Body;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Delete;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.Post;
+import io.micronaut.http.annotation.Put;
+import io.micronaut.http.annotation.QueryValue;
+import io.reactivex.Single;
+import io.swagger.v3.oas.annotations.Hidden;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import todddo.java.api.models.ClusterMembersResponse;
+import todddo.java.api.models.ClusterTodo;
+import todddo.java.api.models.TodoData;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.TodosService;
+
+/**
+ * What members of a {@link Cluster} call on each other: operations on this member's own Todos,
+ * answered as /todos would, but with versions in the body and without forwarding them any further.
+ * Also where a member is told that another has joined.
+ */
+@Hidden
+@Controller("/cluster")
+@Requires(property = "todddo.cluster.enabled", value = "true")
+public class ClusterController {
+
+  private static final Map<Enum<?>, HttpStatus> STATUSES = new HashMap<>();
+
+  static {
+    STATUSES.put(TodosService.CreateError.EmptyTask, HttpStatus.BAD_REQUEST);
+    STATUSES.put(TodosService.CreateError.IdTaken, HttpStatus.CONFLICT);
+    STATUSES.put(TodosService.GetError.NoSuchTodo, HttpStatus.NOT_FOUND);
+    STATUSES.put(TodosService.DeleteError.NoSuchTodo, HttpStatus.NOT_FOUND);
+    STATUSES.put(TodosService.DeleteError.VersionMismatch, HttpStatus.PRECONDITION_FAILED);
+    STATUSES.put(TodosService.UpdateError.EmptyTask, HttpStatus.BAD_REQUEST);
+    STATUSES.put(TodosService.UpdateError.NoSuchTodo, HttpStatus.NOT_FOUND);
+    STATUSES.put(TodosService.UpdateError.VersionMismatch, HttpStatus.PRECONDITION_FAILED);
+  }
+
+  private final ClusteredTodosService todos;
+  private final Cluster cluster;
+
+  public ClusterController(
+      @Nonnull final ClusteredTodosService todos, @Nonnull final Cluster cluster) {
+    this.todos = todos;
+    this.cluster = cluster;
+  }
+
+  @Get("/todos{?after,limit}")
+  public Single<List<ClusterTodo>> list(@Nullable final Long after, @Nullable final Integer limit) {
+    return todos
+        .local()
+        .list(
+            after == null ? null : Todo.Id.builder().value(after).build(),
+            limit == null ? Integer.MAX_VALUE : limit)
+        .map(page -> page.stream().map(this::clusterTodo).collect(Collectors.toList()));
+  }
+
+  @Get("/todos/{id}")
+  public Single<HttpResponse<ClusterTodo>> get(final long id) {
+    return todos.local().get(id(id)).map(this::response);
+  }
+
+  /** Replaces any Todo under the Id, unless ifAbsent, when that fails with 409 instead. */
+  @Post("/todos/{id}{?ifAbsent}")
+  public Single<HttpResponse<ClusterTodo>> put(
+      final long id, @Nullable @QueryValue final Boolean ifAbsent, @Body final TodoData data) {
+    final TodosService local = todos.local();
+    return (Boolean.TRUE.equals(ifAbsent)
+            ? local.putIfAbsent(id(id), task(data))
+            : local.put(id(id), task(data)))
+        .map(this::response);
+  }
+
+  /** With an expected epoch, only updates if it is this member's, as well as the version. */
+  @Put("/todos/{id}{?expectedEpoch,expectedVersion}")
+  public Single<HttpResponse<ClusterTodo>> update(
+      final long id,
+      @Nullable @QueryValue final Long expectedEpoch,
+      @Nullable @QueryValue final Long expectedVersion,
+      @Body final TodoData data) {
+    final Todo todo = Todo.builder().id(id(id)).task(task(data)).build();
+    final TodosService local = todos.local();
+    final Single<Either<TodosService.UpdateError, Todo>> updated;
+    if (expectedVersion == null) {
+      updated = local.update(todo);
+    } else if (expectedEpoch == null) {
+      updated = local.update(todo, expectedVersion);
+    } else {
+      updated = local.update(todo, expectedEpoch, expectedVersion);
+    }
+    return updated.map(this::response);
+  }
+
+  @Delete("/todos/{id}{?expectedEpoch,expectedVersion}")
+  public Single<HttpResponse<ClusterTodo>> delete(
+      final long id, @Nullable final Long expectedEpoch, @Nullable final Long expectedVersion) {
+    final TodosService local = todos.local();
+    final Single<Either<TodosService.DeleteError, Todo>> deleted;
+    if (expectedVersion == null) {
+      deleted = local.delete(id(id));
+    } else if (expectedEpoch == null) {
+      deleted = local.delete(id(id), expectedVersion);
+    } else {
+      deleted = local.delete(id(id), expectedEpoch, expectedVersion);
+    }
+    return deleted.map(this::response);
+  }
+
+  @Get("/members")
+  public ClusterMembersResponse members() {
+    return ClusterMembersResponse.builder().members(cluster.members()).handedOver(0).build();
+  }
+
+  /**
+   * Adds a member at the given URL, or moves it there, then hands it the Todos it now owns. Call on
+   * every member once the new one is up.
+   */
+  @Put("/members/{name}")
+  public Single<ClusterMembersResponse> join(final String name, @QueryValue final String url) {
+    cluster.join(name, url);
+    return todos
+        .handOver()
+        .map(
+            handedOver ->
+                ClusterMembersResponse.builder()
+                    .members(cluster.members())
+                    .handedOver(handedOver)
+                    .build());
+  }
+
+  /** The Todo with OK, or the status /todos would answer the error with. */
+  private HttpResponse<ClusterTodo> response(final Either<? extends Enum<?>, Todo> result) {
+    return result.either(
+        error ->
+            HttpResponse.status(STATUSES.getOrDefault(error, HttpStatus.INTERNAL_SERVER_ERROR)),
+        todo -> HttpResponse.ok(clusterTodo(todo)));
+  }
+
+  private ClusterTodo clusterTodo(final Todo todo) {
+    return ClusterTodo.builder()
+        .id(todo.getId().getValue())
+        .task(todo.getTask().getValue())
+        .version(todo.getVersion())
+        .epoch(todos.local().epochOf(todo.getId()))
+        .build();
+  }
+
+  private static Todo.Id id(final long id) {
+    return Todo.Id.builder().value(id).build();
+  }
+
+  private static Todo.Task task(final TodoData data) {
+    return Todo.Task.builder().value(data.getTask()).build();
+  }
+}
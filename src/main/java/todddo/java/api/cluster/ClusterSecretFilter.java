@@ -0,0 +1,37 @@
+package todddo.java.api.cluster;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.filter.OncePerRequestHttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.reactivex.Flowable;
+import javax.annotation.Nonnull;
+import org.reactivestreams.Publisher;
+
+/**
+ * Refuses /cluster requests with 403 unless they carry the cluster's secret, so that only members
+ * can read a member's Todos, write them without forwarding, or move Todos by joining it.
+ */
+@Filter("/cluster/**")
+@Requires(property = "todddo.cluster.enabled", value = "true")
+public class ClusterSecretFilter extends OncePerRequestHttpServerFilter {
+
+  private final Cluster cluster;
+
+  public ClusterSecretFilter(@Nonnull final Cluster cluster) {
+    this.cluster = cluster;
+  }
+
+  @Override
+  protected Publisher<MutableHttpResponse<?>> doFilterOnce(
+      final HttpRequest<?> request, final ServerFilterChain chain) {
+    if (cluster.authorizes(request.getHeaders().get(Cluster.SECRET_HEADER))) {
+      return chain.proceed(request);
+    }
+    return Flowable.just(HttpResponse.status(HttpStatus.FORBIDDEN));
+  }
+}
@@ -0,0 +1,261 @@
+package todddo.java.api.cluster;
+
+import fj.data.Either;
+import io.micronaut.context.annotation.Replaces;
+import io.micronaut.context.annotation.Requires;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
+import todddo.java.domain.services.GetCoalescing;
+import todddo.java.domain.services.TodosService;
+import todddo.java.infra.ids.IdGenerator;
+
+/**
+ * The TodosService of a member of a {@link Cluster}: each Todo lives on the member that owns its
+ * Id, and operations on it are forwarded there unless that is this member.
+ *
+ * <p>Creating a Todo takes the next Id from this member's IdGenerator, which with its own
+ * todddo.repo.ids.node never clashes with another member's, and puts the Todo on the Id's owner, so
+ * the owner's store must take Ids handed out elsewhere; see Todo.Repo.put. The generator starts
+ * over when the member restarts, so the owner only takes the Id if it has no Todo under it yet, and
+ * the next Id is tried if it has. Listing and streaming ask every member for its page and merge
+ * them by Id. Batches are forwarded a Todo at a time.
+ *
+ * <p>A Todo's version counts from its owner's epoch, which comes with each Todo a member sends, and
+ * conditional writes take the epoch the client's ETag has to the owner to check. Search,
+ * suggestions and the change feed only cover this member's own Todos. There is no collection
+ * version, as no member knows when the others change, so lists are never cached or answered with
+ * 304s.
+ */
+@Singleton
+@Replaces(TodosService.class)
+@Requires(property = "todddo.cluster.enabled", value = "true")
+public class ClusteredTodosService extends TodosService {
+
+  /** How many Todos a stream fetches from each member at a time. */
+  static final int STREAM_PAGE = 1000;
+
+  private final TodosService local;
+  private final Cluster cluster;
+  private final IdGenerator ids;
+
+  @Inject
+  public ClusteredTodosService(
+      @Nonnull final Todo.Repo repo,
+      @Nonnull final ChangeFeed changeFeed,
+      @Nonnull final GetCoalescing coalescing,
+      @Nonnull final Cluster cluster,
+      @Nonnull final IdGenerator ids) {
+    super(repo, changeFeed, coalescing);
+    this.local = new TodosService(repo, changeFeed, coalescing);
+    this.cluster = cluster;
+    this.ids = ids;
+  }
+
+  /** This member's own Todos, which forwarded operations are applied to. */
+  @Nonnull
+  TodosService local() {
+    return local;
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<CreateError, Todo>> create(@Nonnull final Todo.Task task) {
+    return Single.defer(() -> putIfAbsent(Todo.Id.builder().value(ids.next()).build(), task))
+        .flatMap(
+            created ->
+                created.isLeft() && created.left().value() == CreateError.IdTaken
+                    ? create(task)
+                    : Single.just(created));
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<CreateError, Todo>> put(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    final String owner = cluster.owner(id);
+    return isSelf(owner) ? local.put(id, task) : cluster.remote(owner).put(id, task);
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<CreateError, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    final String owner = cluster.owner(id);
+    return isSelf(owner)
+        ? local.putIfAbsent(id, task)
+        : cluster.remote(owner).putIfAbsent(id, task);
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<GetError, Todo>> get(@Nonnull final Todo.Id id) {
+    final String owner = cluster.owner(id);
+    return isSelf(owner) ? local.get(id) : cluster.remote(owner).get(id);
+  }
+
+  /** The owner's epoch, as last heard of from it for a Todo owned by another member. */
+  @Override
+  public long epochOf(@Nonnull final Todo.Id id) {
+    final String owner = cluster.owner(id);
+    return isSelf(owner) ? local.epochOf(id) : cluster.remote(owner).epoch();
+  }
+
+  /** Only for this member's own Todos: empty for one owned by another, as if there were none. */
+  @Nonnull
+  @Override
+  public Maybe<Long> versionOf(@Nonnull final Todo.Id id) {
+    return isSelf(cluster.owner(id)) ? local.versionOf(id) : Maybe.empty();
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<DeleteError, Todo>> delete(@Nonnull final Todo.Id id) {
+    final String owner = cluster.owner(id);
+    return isSelf(owner) ? local.delete(id) : cluster.remote(owner).delete(id, null, null);
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<DeleteError, Todo>> delete(
+      @Nonnull final Todo.Id id, final long expectedVersion) {
+    final String owner = cluster.owner(id);
+    return isSelf(owner)
+        ? local.delete(id, expectedVersion)
+        : cluster.remote(owner).delete(id, null, expectedVersion);
+  }
+
+  /** The owner checks the epoch, as the one this member last heard of may be out of date. */
+  @Nonnull
+  @Override
+  public Single<Either<DeleteError, Todo>> delete(
+      @Nonnull final Todo.Id id, final long expectedEpoch, final long expectedVersion) {
+    final String owner = cluster.owner(id);
+    return isSelf(owner)
+        ? local.delete(id, expectedEpoch, expectedVersion)
+        : cluster.remote(owner).delete(id, expectedEpoch, expectedVersion);
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<UpdateError, Todo>> update(@Nonnull final Todo todo) {
+    final String owner = cluster.owner(todo.getId());
+    return isSelf(owner) ? local.update(todo) : cluster.remote(owner).update(todo, null, null);
+  }
+
+  @Nonnull
+  @Override
+  public Single<Either<UpdateError, Todo>> update(
+      @Nonnull final Todo todo, final long expectedVersion) {
+    final String owner = cluster.owner(todo.getId());
+    return isSelf(owner)
+        ? local.update(todo, expectedVersion)
+        : cluster.remote(owner).update(todo, null, expectedVersion);
+  }
+
+  /** The owner checks the epoch, as the one this member last heard of may be out of date. */
+  @Nonnull
+  @Override
+  public Single<Either<UpdateError, Todo>> update(
+      @Nonnull final Todo todo, final long expectedEpoch, final long expectedVersion) {
+    final String owner = cluster.owner(todo.getId());
+    return isSelf(owner)
+        ? local.update(todo, expectedEpoch, expectedVersion)
+        : cluster.remote(owner).update(todo, expectedEpoch, expectedVersion);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list() {
+    return list(null, Integer.MAX_VALUE);
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    final List<Single<List<Todo>>> pages = new ArrayList<>();
+    for (final String member : cluster.members()) {
+      pages.add(
+          isSelf(member) ? local.list(after, limit) : cluster.remote(member).list(after, limit));
+    }
+    return Single.zip(
+        pages,
+        fetched -> {
+          final List<List<Todo>> lists = new ArrayList<>(fetched.length);
+          for (final Object page : fetched) {
+            @SuppressWarnings("unchecked")
+            final List<Todo> todos = (List<Todo>) page;
+            lists.add(todos);
+          }
+          return Merge.byId(lists, limit);
+        });
+  }
+
+  /** A page at a time from every member, fetching the next once the last has been taken. */
+  @Nonnull
+  @Override
+  public Flowable<Todo> stream(@Nullable final Todo.Id after) {
+    return list(after, STREAM_PAGE)
+        .flatMapPublisher(
+            page ->
+                page.size() < STREAM_PAGE
+                    ? Flowable.fromIterable(page)
+                    : Flowable.fromIterable(page)
+                        .concatWith(
+                            Flowable.defer(() -> stream(page.get(page.size() - 1).getId()))));
+  }
+
+  @Override
+  public long version() {
+    return NO_VERSION;
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Either<CreateError, Todo>>> createAll(@Nonnull final List<Todo.Task> tasks) {
+    return Flowable.fromIterable(tasks).concatMapSingle(this::create).toList();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Either<UpdateError, Todo>>> updateAll(@Nonnull final List<Todo> todos) {
+    return Flowable.fromIterable(todos).concatMapSingle(this::update).toList();
+  }
+
+  @Nonnull
+  @Override
+  public Single<List<Either<DeleteError, Todo>>> deleteAll(@Nonnull final List<Todo.Id> ids) {
+    return Flowable.fromIterable(ids).concatMapSingle(this::delete).toList();
+  }
+
+  /**
+   * Moves each of this member's Todos that another member now owns, e.g. after it joined, to that
+   * member, one at a time. Until a Todo has moved, its new owner does not have it.
+   *
+   * @return how many Todos were moved
+   */
+  @Nonnull
+  Single<Long> handOver() {
+    return local.stream(null)
+        .filter(todo -> !isSelf(cluster.owner(todo.getId())))
+        .concatMapSingle(
+            todo ->
+                cluster
+                    .remote(cluster.owner(todo.getId()))
+                    .put(todo.getId(), todo.getTask())
+                    .flatMap(put -> local.delete(todo.getId(), todo.getVersion())))
+        .count();
+  }
+
+  private boolean isSelf(final String member) {
+    return member.equals(cluster.self());
+  }
+}
@@ -0,0 +1,113 @@
+package todddo.java.api.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+
+/**
+ * Consistent hashing: each member is hashed to virtualNodes points on a ring of 64-bit hashes, and
+ * a key belongs to the member with the first point at or after the key's hash, wrapping around.
+ *
+ * <p>With many points per member, keys spread evenly over members, and a member joining only takes
+ * keys from the others, about 1 in (members + 1) of them, rather than reshuffling them all. Points
+ * depend only on member names, so members built with the same names agree on every key's owner.
+ *
+ * <p>Immutable; joining makes another ring.
+ */
+final class HashRing {
+
+  private final List<String> members;
+  private final int virtualNodes;
+
+  /** Sorted, with owners[i] the index in members of the member at points[i]. */
+  private final long[] points;
+
+  private final int[] owners;
+
+  HashRing(@Nonnull final Collection<String> members, final int virtualNodes) {
+    if (members.isEmpty()) {
+      throw new IllegalArgumentException("A ring needs at least one member");
+    }
+    if (virtualNodes < 1) {
+      throw new IllegalArgumentException(
+          "Virtual nodes must be positive, got [" + virtualNodes + "]");
+    }
+    this.members = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(members)));
+    this.virtualNodes = virtualNodes;
+
+    final int count = this.members.size() * virtualNodes;
+    final long[][] placed = new long[count][];
+    for (int m = 0; m < this.members.size(); m++) {
+      for (int v = 0; v < virtualNodes; v++) {
+        placed[m * virtualNodes + v] = new long[] {hash(this.members.get(m) + "#" + v), m};
+      }
+    }
+    // Ties, however unlikely, go the same way on every member
+    Arrays.sort(
+        placed,
+        (a, b) -> a[0] != b[0] ? Long.compareUnsigned(a[0], b[0]) : Long.compare(a[1], b[1]));
+    this.points = new long[count];
+    this.owners = new int[count];
+    for (int i = 0; i < count; i++) {
+      points[i] = placed[i][0];
+      owners[i] = (int) placed[i][1];
+    }
+  }
+
+  /** The member a key belongs to. */
+  @Nonnull
+  String owner(final long key) {
+    final long hash = mix(key);
+    int low = 0;
+    int high = points.length;
+    while (low < high) {
+      final int mid = (low + high) >>> 1;
+      if (Long.compareUnsigned(points[mid], hash) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return members.get(owners[low == points.length ? 0 : low]);
+  }
+
+  /** This ring with another member, or this ring if it is a member already. */
+  @Nonnull
+  HashRing with(@Nonnull final String member) {
+    if (members.contains(member)) {
+      return this;
+    }
+    final List<String> joined = new ArrayList<>(members);
+    joined.add(member);
+    return new HashRing(joined, virtualNodes);
+  }
+
+  /** Member names, in order. */
+  @Nonnull
+  List<String> members() {
+    return members;
+  }
+
+  /** FNV-1a over the UTF-8 bytes, then mixed, as FNV alone spreads similar names poorly. */
+  private static long hash(final String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (final byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  /** SplitMix64's finaliser: consecutive keys, as Ids are, land all over the ring. */
+  private static long mix(final long key) {
+    long z = key + 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,53 @@
+package todddo.java.api.cluster;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import javax.annotation.Nonnull;
+import todddo.java.domain.models.Todo;
+
+/** Merges pages of Todos that are each in ascending Id order, as every member lists them. */
+final class Merge {
+
+  private Merge() {}
+
+  /**
+   * The first Todos of all the pages, in ascending Id order, taking the least head of the pages
+   * from a heap each time: O(limit log pages), however long the pages are.
+   */
+  @Nonnull
+  static List<Todo> byId(@Nonnull final List<List<Todo>> pages, final int limit) {
+    final PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, pages.size()));
+    for (final List<Todo> page : pages) {
+      final Iterator<Todo> todos = page.iterator();
+      if (todos.hasNext()) {
+        heads.add(new Head(todos.next(), todos));
+      }
+    }
+    final List<Todo> merged = new ArrayList<>(Math.min(limit, 1024));
+    while (merged.size() < limit && !heads.isEmpty()) {
+      final Head head = heads.poll();
+      merged.add(head.todo);
+      if (head.rest.hasNext()) {
+        heads.add(new Head(head.rest.next(), head.rest));
+      }
+    }
+    return merged;
+  }
+
+  private static final class Head implements Comparable<Head> {
+    private final Todo todo;
+    private final Iterator<Todo> rest;
+
+    private Head(final Todo todo, final Iterator<Todo> rest) {
+      this.todo = todo;
+      this.rest = rest;
+    }
+
+    @Override
+    public int compareTo(@Nonnull final Head other) {
+      return todo.getId().compareTo(other.todo.getId());
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package todddo.java.api.cluster;
+
+import fj.data.Either;
+import io.micronaut.core.type.Argument;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MutableHttpRequest;
+import io.micronaut.http.client.RxHttpClient;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.http.uri.UriBuilder;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import todddo.java.api.models.ClusterTodo;
+import todddo.java.api.models.TodoData;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.TodosService;
+
+/**
+ * Another member's Todos, through its /cluster endpoints, with the same results as the TodosService
+ * there would give.
+ *
+ * <p>The epoch the member's versions count from comes with each Todo it sends, so the last one seen
+ * is kept, to tag its Todos with.
+ */
+class RemoteTodos implements AutoCloseable {
+
+  /** The epoch until the member has sent a Todo. */
+  static final long UNKNOWN_EPOCH = 0L;
+
+  private final RxHttpClient client;
+  private final String secret;
+  private volatile long epoch = UNKNOWN_EPOCH;
+
+  RemoteTodos(@Nonnull final RxHttpClient client, @Nonnull final String secret) {
+    this.client = client;
+    this.secret = secret;
+  }
+
+  @Nonnull
+  Single<Either<TodosService.GetError, Todo>> get(@Nonnull final Todo.Id id) {
+    return exchange(
+        HttpRequest.GET(path(id).build().toString()),
+        status -> status == HttpStatus.NOT_FOUND ? TodosService.GetError.NoSuchTodo : null);
+  }
+
+  @Nonnull
+  Single<Either<TodosService.CreateError, Todo>> put(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return exchange(
+        HttpRequest.POST(path(id).build().toString(), data(task)),
+        status -> status == HttpStatus.BAD_REQUEST ? TodosService.CreateError.EmptyTask : null);
+  }
+
+  @Nonnull
+  Single<Either<TodosService.CreateError, Todo>> putIfAbsent(
+      @Nonnull final Todo.Id id, @Nonnull final Todo.Task task) {
+    return exchange(
+        HttpRequest.POST(path(id).queryParam("ifAbsent", true).build().toString(), data(task)),
+        status -> {
+          switch (status) {
+            case BAD_REQUEST:
+              return TodosService.CreateError.EmptyTask;
+            case CONFLICT:
+              return TodosService.CreateError.IdTaken;
+            default:
+              return null;
+          }
+        });
+  }
+
+  /** With an expected epoch, the member checks it against its own, as well as the version. */
+  @Nonnull
+  Single<Either<TodosService.UpdateError, Todo>> update(
+      @Nonnull final Todo todo,
+      @Nullable final Long expectedEpoch,
+      @Nullable final Long expectedVersion) {
+    return exchange(
+        HttpRequest.PUT(
+            expecting(path(todo.getId()), expectedEpoch, expectedVersion).build().toString(),
+            data(todo.getTask())),
+        status -> {
+          switch (status) {
+            case BAD_REQUEST:
+              return TodosService.UpdateError.EmptyTask;
+            case NOT_FOUND:
+              return TodosService.UpdateError.NoSuchTodo;
+            case PRECONDITION_FAILED:
+              return TodosService.UpdateError.VersionMismatch;
+            default:
+              return null;
+          }
+        });
+  }
+
+  @Nonnull
+  Single<Either<TodosService.DeleteError, Todo>> delete(
+      @Nonnull final Todo.Id id,
+      @Nullable final Long expectedEpoch,
+      @Nullable final Long expectedVersion) {
+    return exchange(
+        HttpRequest.DELETE(expecting(path(id), expectedEpoch, expectedVersion).build().toString()),
+        status -> {
+          switch (status) {
+            case NOT_FOUND:
+              return TodosService.DeleteError.NoSuchTodo;
+            case PRECONDITION_FAILED:
+              return TodosService.DeleteError.VersionMismatch;
+            default:
+              return null;
+          }
+        });
+  }
+
+  /** The member's own Todos in ascending Id order, as per Todo.Repo.list. */
+  @Nonnull
+  Single<List<Todo>> list(@Nullable final Todo.Id after, final int limit) {
+    final UriBuilder uri = UriBuilder.of("/cluster/todos").queryParam("limit", limit);
+    if (after != null) {
+      uri.queryParam("after", after.getValue());
+    }
+    return client
+        .retrieve(
+            HttpRequest.GET(uri.build().toString()).header(Cluster.SECRET_HEADER, secret),
+            Argument.listOf(ClusterTodo.class))
+        .firstOrError()
+        .map(todos -> todos.stream().map(this::todo).collect(Collectors.toList()));
+  }
+
+  /** The epoch of the last Todo the member sent, or UNKNOWN_EPOCH. */
+  long epoch() {
+    return epoch;
+  }
+
+  @Override
+  public void close() {
+    client.close();
+  }
+
+  /**
+   * Sends the request, turning each status the endpoint answers with for a failure into the
+   * matching error, and any other into a failed Single.
+   */
+  private <E> Single<Either<E, Todo>> exchange(
+      final MutableHttpRequest<?> request, final Function<HttpStatus, E> errors) {
+    final Flowable<HttpResponse<ClusterTodo>> exchanged =
+        client.exchange(request.header(Cluster.SECRET_HEADER, secret), ClusterTodo.class);
+    return exchanged
+        .firstOrError()
+        .map(response -> Either.<E, Todo>right(todo(response.body())))
+        .onErrorResumeNext(
+            e -> {
+              if (e instanceof HttpClientResponseException) {
+                final E error = errors.apply(((HttpClientResponseException) e).getStatus());
+                if (error != null) {
+                  return Single.just(Either.left(error));
+                }
+              }
+              return Single.error(e);
+            });
+  }
+
+  private static UriBuilder path(final Todo.Id id) {
+    return UriBuilder.of("/cluster/todos").path(Long.toString(id.getValue()));
+  }
+
+  private static UriBuilder expecting(
+      final UriBuilder uri, @Nullable final Long epoch, @Nullable final Long version) {
+    if (epoch != null) {
+      uri.queryParam("expectedEpoch", epoch);
+    }
+    return version == null ? uri : uri.queryParam("expectedVersion", version);
+  }
+
+  private static TodoData data(final Todo.Task task) {
+    return TodoData.builder().task(task.getValue()).build();
+  }
+
+  private Todo todo(final ClusterTodo todo) {
+    epoch = todo.getEpoch();
+    return Todo.builder()
+        .id(Todo.Id.builder().value(todo.getId()).build())
+        .task(Todo.Task.builder().value(todo.getTask()).build())
+        .version(todo.getVersion())
+        .build();
+  }
+}
@@ -0,0 +1,57 @@
+package todddo.java.api.codecs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.codec.CodecException;
+import io.micronaut.jackson.codec.JsonMediaTypeCodec;
+import io.micronaut.runtime.ApplicationConfiguration;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import javax.inject.Singleton;
+
+/**
+ * Encodes every object as a single line of JSON, so that streamed responses come out as
+ * newline-delimited JSON.
+ *
+ * <p>Micronaut writes each element of a streamed body separately with the codec of the response
+ * media type, which is all we need to go from one Todo to the next without buffering.
+ */
+@Singleton
+public class NdJsonMediaTypeCodec extends JsonMediaTypeCodec {
+
+  public static final String APPLICATION_NDJSON = "application/x-ndjson";
+  public static final MediaType APPLICATION_NDJSON_TYPE = new MediaType(APPLICATION_NDJSON);
+
+  private static final byte NEWLINE = '\n';
+
+  public NdJsonMediaTypeCodec(
+      final ObjectMapper objectMapper, final ApplicationConfiguration applicationConfiguration) {
+    super(objectMapper, applicationConfiguration, null);
+  }
+
+  @Override
+  public Collection<MediaType> getMediaTypes() {
+    return Collections.singletonList(APPLICATION_NDJSON_TYPE);
+  }
+
+  @Override
+  public <T> void encode(final T object, final OutputStream outputStream) throws CodecException {
+    try {
+      outputStream.write(encode(object));
+    } catch (IOException e) {
+      throw new CodecException(
+          "Error encoding object [" + object + "] to NDJSON: " + e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public <T> byte[] encode(final T object) throws CodecException {
+    final byte[] json = super.encode(object);
+    final byte[] line = Arrays.copyOf(json, json.length + 1);
+    line[json.length] = NEWLINE;
+    return line;
+  }
+}
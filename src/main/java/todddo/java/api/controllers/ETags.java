@@ -0,0 +1,99 @@
+package todddo.java.api.controllers;
+
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Entity tags made from repo versions.
+ *
+ * <p>Versions start over now and then, so every tag also has the epoch they count from. Otherwise a
+ * tag from before a restart could match a different Todo after it. For the collection's version,
+ * that is a random one picked when the app starts; for a Todo's, the store's, as per
+ * Todo.Repo.epoch, which on a replica is the primary's.
+ */
+final class ETags {
+
+  private static final String EPOCH =
+      Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+  /** No Todo is ever at this version. */
+  private static final long NO_VERSION = -1L;
+
+  private ETags() {}
+
+  /** The tag for the collection at the version. */
+  @Nonnull
+  static String of(final long version) {
+    return "\"" + EPOCH + "-" + version + "\"";
+  }
+
+  /** The tag for a Todo at the version, which counts from the epoch. */
+  @Nonnull
+  static String of(final long epoch, final long version) {
+    return "\"" + Long.toString(epoch, 36) + "-" + version + "\"";
+  }
+
+  /** Whether an If-Match header is *, which any current Todo matches. */
+  static boolean isAny(@Nonnull final String ifMatch) {
+    return ifMatch.trim().equals("*");
+  }
+
+  /**
+   * The epoch in the first of our tags in an If-Match header, for whoever keeps the Todo to check
+   * against its own. Only strong tags count, as If-Match compares strongly.
+   *
+   * @return the epoch, or -1 if there was none
+   */
+  static long epoch(@Nonnull final String ifMatch) {
+    final long[] tag = first(ifMatch);
+    return tag == null ? NO_VERSION : tag[0];
+  }
+
+  /**
+   * The version in the first of our tags in an If-Match header, which counts from its epoch.
+   *
+   * @return the version, or -1 if there was none
+   */
+  static long version(@Nonnull final String ifMatch) {
+    final long[] tag = first(ifMatch);
+    return tag == null ? NO_VERSION : tag[1];
+  }
+
+  /**
+   * Whether an If-None-Match header lists the tag, or is *. Weak tags in it match too, as
+   * If-None-Match compares weakly.
+   */
+  static boolean matches(@Nullable final String ifNoneMatch, @Nonnull final String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (final String listed : ifNoneMatch.split(",")) {
+      final String tag = listed.trim();
+      if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** The epoch and version of the first strong tag of the form of, or null if there is none. */
+  @Nullable
+  private static long[] first(final String ifMatch) {
+    for (final String listed : ifMatch.split(",")) {
+      final String tag = listed.trim();
+      final int dash = tag.lastIndexOf('-');
+      if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"") && dash > 1) {
+        try {
+          return new long[] {
+            Long.parseLong(tag.substring(1, dash), 36),
+            Long.parseLong(tag.substring(dash + 1, tag.length() - 1))
+          };
+        } catch (NumberFormatException e) {
+          // Not one of ours
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,151 @@
+package todddo.java.api.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.http.codec.CodecException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
+
+/**
+ * When todddo.encoded-todos.enabled is set, each Todo's JSON, as GET /todos/{id} sends it, encoded
+ * when it is written and kept in direct memory.
+ *
+ * <p>Writes are followed on the ChangeFeed, so every write to the repo is encoded, whichever way it
+ * came, as are the changes a replica applies. Should it fall behind the feed, or the feed be reset,
+ * e.g. by a replica swapping in a snapshot, it forgets every Todo kept, as it may have missed
+ * deletes or the versions may have started over, and follows on from the latest change.
+ *
+ * <p>The repo still says whether a Todo exists and which version it is at; its JSON is only used if
+ * it was encoded from that version, and is encoded again otherwise, e.g. after a restart or if the
+ * read overtook the feed. A Todo only ever keeps its newest version's JSON. Responses wrap the kept
+ * bytes rather than copying them, and being direct, Netty writes them to the socket without copying
+ * them either.
+ *
+ * <p>Costs about as much direct memory again as the JSON of every Todo, which counts towards
+ * -XX:MaxDirectMemorySize.
+ */
+@Singleton
+public class EncodedTodos implements ApplicationEventListener<StartupEvent> {
+
+  private final ObjectMapper objectMapper;
+  private final TodosController.Mapper mapper;
+  private final ChangeFeed changeFeed;
+  private final boolean enabled;
+  private final ConcurrentMap<Long, Encoded> encoded = new ConcurrentHashMap<>();
+
+  @Inject
+  public EncodedTodos(
+      @Nonnull final ObjectMapper objectMapper,
+      @Nonnull final TodosController.Mapper mapper,
+      @Nonnull final ChangeFeed changeFeed,
+      @Value("${todddo.encoded-todos.enabled:false}") final boolean enabled) {
+    this.objectMapper = objectMapper;
+    this.mapper = mapper;
+    this.changeFeed = changeFeed;
+    this.enabled = enabled;
+  }
+
+  @Override
+  public void onApplicationEvent(final StartupEvent event) {
+    if (enabled) {
+      follow();
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * The JSON kept for the Todo with the Id, if it is at the version.
+   *
+   * @return a buffer of its own, for a response to consume, or null if none is kept for the version
+   */
+  @Nullable
+  public ByteBuf json(@Nonnull final Todo.Id id, final long version) {
+    final Encoded kept = encoded.get(id.getValue());
+    return kept != null && kept.version == version
+        ? Unpooled.wrappedBuffer(kept.json.duplicate())
+        : null;
+  }
+
+  /**
+   * The Todo's JSON, encoding it now unless it was already encoded at this version.
+   *
+   * @return a buffer of its own, for a response to consume, or null if not enabled
+   */
+  @Nullable
+  public ByteBuf json(@Nonnull final Todo todo) {
+    if (!enabled) {
+      return null;
+    }
+    final Encoded kept = encoded.get(todo.getId().getValue());
+    final ByteBuffer json =
+        kept != null && kept.version == todo.getVersion() ? kept.json : keep(todo);
+    return Unpooled.wrappedBuffer(json.duplicate());
+  }
+
+  private void follow() {
+    changeFeed
+        .changes(null)
+        .subscribe(
+            this::changed,
+            missed -> {
+              encoded.clear();
+              follow();
+            });
+  }
+
+  private void changed(final Todo.Change change) {
+    final Todo todo = change.getTodo();
+    if (change.getKind() == Todo.Change.Kind.Deleted) {
+      encoded.computeIfPresent(
+          todo.getId().getValue(), (id, kept) -> kept.version <= todo.getVersion() ? null : kept);
+    } else {
+      keep(todo);
+    }
+  }
+
+  private ByteBuffer keep(final Todo todo) {
+    final Encoded fresh = new Encoded(todo.getVersion(), encode(todo));
+    encoded.merge(
+        todo.getId().getValue(),
+        fresh,
+        (current, given) -> current.version >= given.version ? current : given);
+    return fresh.json;
+  }
+
+  private ByteBuffer encode(final Todo todo) {
+    final byte[] bytes;
+    try {
+      bytes = objectMapper.writeValueAsBytes(mapper.domainToApi(todo));
+    } catch (JsonProcessingException e) {
+      throw new CodecException("Error encoding Todo [" + todo + "] to JSON: " + e.getMessage(), e);
+    }
+    final ByteBuffer json = ByteBuffer.allocateDirect(bytes.length);
+    json.put(bytes).flip();
+    return json.asReadOnlyBuffer();
+  }
+
+  private static class Encoded {
+    private final long version;
+    private final ByteBuffer json;
+
+    private Encoded(final long version, final ByteBuffer json) {
+      this.version = version;
+      this.json = json;
+    }
+  }
+}
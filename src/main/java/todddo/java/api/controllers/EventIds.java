@@ -0,0 +1,46 @@
+package todddo.java.api.controllers;
+
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Server-sent event ids made from change sequences.
+ *
+ * <p>Like versions, sequences start over when the app does, so every id also has a random epoch
+ * picked at startup, and an id from before a restart is not mistaken for a later change.
+ */
+final class EventIds {
+
+  private static final String EPOCH =
+      Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+  /** No change is ever at this sequence. */
+  static final long UNKNOWN = -1L;
+
+  private EventIds() {}
+
+  @Nonnull
+  static String of(final long sequence) {
+    return EPOCH + "-" + sequence;
+  }
+
+  /**
+   * The sequence in an event id, if it is one of ours.
+   *
+   * @return the sequence, or -1 if the id is not one of ours, e.g. because it is from before a
+   *     restart
+   */
+  static long sequence(@Nullable final String id) {
+    final String prefix = EPOCH + "-";
+    if (id == null || !id.startsWith(prefix)) {
+      return UNKNOWN;
+    }
+    try {
+      final long sequence = Long.parseLong(id.substring(prefix.length()));
+      return sequence < 0 ? UNKNOWN : sequence;
+    } catch (NumberFormatException e) {
+      return UNKNOWN;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package todddo.java.api.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.http.codec.CodecException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import lombok.Builder;
+import todddo.java.api.models.TodoResponse;
+
+/**
+ * Pages of GET /todos already encoded as JSON, for the collection version they were listed at.
+ *
+ * <p>Every write moves the version on, so nothing needs invalidating: once a page is asked for at a
+ * newer version, the pages of the old one are dropped together, and each page is listed and encoded
+ * again the first time it is asked for. A page listed after the version was read may include a
+ * later write, which is as fresh as an uncached one would have been.
+ *
+ * <p>At most todddo.list-cache.max-bytes are cached per version; pages past that are encoded for
+ * each request, as are all of them when it is 0.
+ */
+@Singleton
+public class ListCache {
+
+  private final ObjectMapper objectMapper;
+  private final long maxBytes;
+  private final AtomicReference<Generation> current = new AtomicReference<>(new Generation(-1L));
+
+  @Inject
+  public ListCache(
+      @Nonnull final ObjectMapper objectMapper,
+      @Value("${todddo.list-cache.max-bytes:16777216}") final long maxBytes) {
+    this.objectMapper = objectMapper;
+    this.maxBytes = maxBytes;
+  }
+
+  /** The page, if it was cached at this version. */
+  @Nullable
+  public Page get(final long version, @Nullable final Long after, final int limit) {
+    final Generation generation = current.get();
+    return generation.version == version ? generation.pages.get(key(after, limit)) : null;
+  }
+
+  /**
+   * Encodes a page, and caches it if nothing newer than its version has been cached and there is
+   * room.
+   *
+   * @param link of the next page, if any
+   */
+  @Nonnull
+  public Page put(
+      final long version,
+      @Nullable final Long after,
+      final int limit,
+      @Nonnull final List<TodoResponse> todos,
+      @Nullable final String link) {
+    final Page page = uncached(todos, link);
+    if (page.json.length > maxBytes) {
+      return page;
+    }
+    Generation generation = current.get();
+    while (generation.version < version) {
+      final Generation newer = new Generation(version);
+      if (current.compareAndSet(generation, newer)) {
+        generation = newer;
+      } else {
+        generation = current.get();
+      }
+    }
+    if (generation.version == version && generation.bytes.addAndGet(page.json.length) <= maxBytes) {
+      generation.pages.putIfAbsent(key(after, limit), page);
+    }
+    return page;
+  }
+
+  /** Encodes a page without caching it, for when there is no version to cache it at. */
+  @Nonnull
+  public Page uncached(@Nonnull final List<TodoResponse> todos, @Nullable final String link) {
+    return Page.builder().json(encode(todos)).link(link).build();
+  }
+
+  private byte[] encode(final List<TodoResponse> todos) {
+    try {
+      return objectMapper.writeValueAsBytes(todos);
+    } catch (JsonProcessingException e) {
+      throw new CodecException("Error encoding Todos to JSON: " + e.getMessage(), e);
+    }
+  }
+
+  private static Key key(@Nullable final Long after, final int limit) {
+    return Key.builder().after(after == null ? 0L : after).limit(limit).build();
+  }
+
+  /** A page of Todos as a JSON array, with the Link to the next page. */
+  @lombok.Value
+  @Builder
+  public static class Page {
+    @Nonnull byte[] json;
+    @Nullable String link;
+  }
+
+  @lombok.Value
+  @Builder
+  private static class Key {
+    long after;
+    int limit;
+  }
+
+  private static class Generation {
+    private final long version;
+    private final ConcurrentMap<Key, Page> pages = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private Generation(final long version) {
+      this.version = version;
+    }
+  }
+}
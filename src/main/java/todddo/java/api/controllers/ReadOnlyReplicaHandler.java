@@ -0,0 +1,30 @@
+package todddo.java.api.controllers;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.annotation.Produces;
+import io.micronaut.http.server.exceptions.ExceptionHandler;
+import javax.inject.Singleton;
+import todddo.java.api.models.ErrorResponse;
+import todddo.java.infra.replication.ReadOnlyReplicaException;
+
+/** Turns writes sent to a replica into 503s, so clients and load balancers retry the primary. */
+@Produces
+@Singleton
+@Requires(property = "todddo.repo.store", value = "replica")
+public class ReadOnlyReplicaHandler
+    implements ExceptionHandler<ReadOnlyReplicaException, HttpResponse<ErrorResponse>> {
+
+  private final ErrorResponse readOnly =
+      ErrorResponse.builder()
+          .message("This instance is a read-only replica; send writes to the primary")
+          .build();
+
+  @Override
+  public HttpResponse<ErrorResponse> handle(
+      final HttpRequest request, final ReadOnlyReplicaException exception) {
+    return HttpResponse.<ErrorResponse>status(HttpStatus.SERVICE_UNAVAILABLE).body(readOnly);
+  }
+}
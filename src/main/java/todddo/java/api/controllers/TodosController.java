@@ -1,38 +1,77 @@
 package todddo.java.api.controllers;
 
+import fj.data.Either;
+import io.micronaut.http.HttpHeaders;
 import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.*;
+import io.micronaut.http.sse.Event;
+import io.micronaut.http.uri.UriBuilder;
+import io.netty.buffer.ByteBuf;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
 import io.reactivex.Single;
+import io.reactivex.exceptions.MissingBackpressureException;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
 import org.mapstruct.Mapping;
+import todddo.java.api.codecs.NdJsonMediaTypeCodec;
+import todddo.java.api.metrics.ErrorCounters;
+import todddo.java.api.models.BatchRequest;
+import todddo.java.api.models.BatchResponse;
+import todddo.java.api.models.BatchResult;
+import todddo.java.api.models.BatchUpdate;
+import todddo.java.api.models.ChangeResponse;
 import todddo.java.api.models.ErrorResponse;
 import todddo.java.api.models.ResponseBase;
 import todddo.java.api.models.TodoData;
 import todddo.java.api.models.TodoResponse;
 import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
 import todddo.java.domain.services.TodosService;
+import todddo.java.infra.tracing.Tracing;
 
 @Controller("/todos")
 public class TodosController {
 
   private final TodosService todosService;
   private final Mapper mapper;
+  private final ErrorCounters errorCounters;
+  private final Tracing tracing;
+  private final ListCache listCache;
+  private final EncodedTodos encodedTodos;
 
   /**
    * We need to inject the mapper in order for Graal native images to work.
    *
    * <p>Runtime explosion occurs if we try to use the canonical Mappers.getMapper.
    */
-  public TodosController(@Nonnull TodosService todosService, @Nonnull Mapper mapper) {
+  public TodosController(
+      @Nonnull TodosService todosService,
+      @Nonnull Mapper mapper,
+      @Nonnull ErrorCounters errorCounters,
+      @Nonnull Tracing tracing,
+      @Nonnull ListCache listCache,
+      @Nonnull EncodedTodos encodedTodos) {
     this.todosService = todosService;
     this.mapper = mapper;
+    this.errorCounters = errorCounters;
+    this.tracing = tracing;
+    this.listCache = listCache;
+    this.encodedTodos = encodedTodos;
   }
 
   /**
@@ -51,48 +90,301 @@ public class TodosController {
       description = "Invalid Task.",
       content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
   public Single<HttpResponse<ResponseBase>> createTodo(final @Body Single<TodoData> createReqObsv) {
-    return createReqObsv.flatMap(
-        createReq ->
-            todosService
-                .create(mapper.apiToDomainTask(createReq))
-                .map(
-                    result ->
-                        result.either(
-                            e -> {
-                              switch (e) {
-                                case EmptyTask:
-                                  return emptyTask(createReq.getTask());
-                                default:
-                                  return impossible;
-                              }
-                            },
-                            t -> HttpResponse.created(mapper.domainToApi(t)))));
+    return tracing
+        .deserialized(createReqObsv)
+        .flatMap(
+            createReq ->
+                todosService
+                    .create(mapper.apiToDomainTask(createReq))
+                    .map(
+                        result ->
+                            result.either(
+                                e -> {
+                                  errorCounters.increment(e);
+                                  switch (e) {
+                                    case EmptyTask:
+                                      return emptyTask(createReq.getTask());
+                                    default:
+                                      return impossible;
+                                  }
+                                },
+                                t ->
+                                    HttpResponse.<ResponseBase>created(mapper.domainToApi(t))
+                                        .header(
+                                            ETAG,
+                                            ETags.of(
+                                                todosService.epochOf(t.getId()),
+                                                t.getVersion())))));
   }
 
   /**
-   * Retrieves all existing Todos.
+   * Creates, then updates, then deletes many Todos in one request.
    *
+   * <p>Each kind of change is validated as a whole and applied in a single pass over the repo.
+   * Every item gets its own result, with the status it would have had as a request of its own, so
+   * some items can fail without failing the rest.
+   *
+   * @param batchReqObsv the Todos to create, update and delete
+   * @return per item, in request order, its result
+   */
+  @Post("/batch")
+  @ApiResponse(
+      responseCode = "200",
+      description = "Batch applied; see each item for its own result.",
+      content = @Content(schema = @Schema(implementation = BatchResponse.class)))
+  public Single<HttpResponse<BatchResponse>> batchTodos(
+      final @Body Single<BatchRequest> batchReqObsv) {
+    return tracing
+        .deserialized(batchReqObsv)
+        .flatMap(
+            batchReq -> {
+              final List<Todo.Task> tasks =
+                  batchReq.getCreate().stream()
+                      .map(mapper::apiToDomainTask)
+                      .collect(Collectors.toList());
+              final List<Todo> todos =
+                  batchReq.getUpdate().stream()
+                      .map(mapper::apiToDomainTodo)
+                      .collect(Collectors.toList());
+              final List<Todo.Id> ids =
+                  batchReq.getDelete().stream()
+                      .map(id -> Todo.Id.builder().value(id).build())
+                      .collect(Collectors.toList());
+              return todosService
+                  .createAll(tasks)
+                  .flatMap(
+                      created ->
+                          todosService
+                              .updateAll(todos)
+                              .flatMap(
+                                  updated ->
+                                      todosService
+                                          .deleteAll(ids)
+                                          .map(
+                                              deleted ->
+                                                  HttpResponse.ok(
+                                                      BatchResponse.builder()
+                                                          .create(createResults(batchReq, created))
+                                                          .update(updateResults(batchReq, updated))
+                                                          .delete(deleteResults(batchReq, deleted))
+                                                          .build()))));
+            });
+  }
+
+  /**
+   * Retrieves existing Todos in ascending Id order, or with a query, those whose Task has every
+   * word in it, best matches first.
+   *
+   * <p>When a limit is given, at most that many Todos are returned, and a full page comes with a
+   * Link header pointing at the next one. Searches always return pages, of 20 by default.
+   *
+   * <p>The ETag is the version of all the Todos, so it changes with any write. If the client
+   * already has it, the answer is 304 without reading any Todos. Listed pages are kept encoded for
+   * that version, so asking again before the next write costs neither reading nor encoding them.
+   * Without a version, as on a cluster, there is neither an ETag nor a cached page.
+   *
+   * @param after exclusive Id cursor to start listing from; not for searches
+   * @param limit maximum number of Todos to return, at most 1000
+   * @param q words to search Tasks for, ignoring case and punctuation
+   * @param offset how many of the best matches to skip, when searching
+   * @param ifNoneMatch ETags the client already has
    * @return a list of Todos.
    */
-  @Get
+  @Get("{?after,limit,q,offset}")
   @ApiResponse(
       responseCode = "200",
-      description = "Tasks retrieved",
+      description = "Tasks retrieved. A Link header with rel=\"next\" is set if more may follow.",
       content =
           @Content(array = @ArraySchema(schema = @Schema(implementation = TodoResponse.class))))
-  public Single<HttpResponse<List<TodoResponse>>> listTodos() {
+  @ApiResponse(responseCode = "304", description = "Tasks unchanged since the given ETag.")
+  public Single<HttpResponse<?>> listTodos(
+      final @QueryValue @Nullable @Positive Long after,
+      final @QueryValue @Nullable @Positive @Max(MAX_LIMIT) Integer limit,
+      final @QueryValue @Nullable String q,
+      final @QueryValue @Nullable @PositiveOrZero Integer offset,
+      final @Header(HttpHeaders.IF_NONE_MATCH) @Nullable String ifNoneMatch) {
+    tracing.deserialized();
+    // Read before the Todos, so that it is never newer than them
+    final long version = todosService.version();
+    final boolean versioned = version != TodosService.NO_VERSION;
+    final String etag = versioned ? ETags.of(version) : null;
+    if (versioned && ETags.matches(ifNoneMatch, etag)) {
+      return Single.just(HttpResponse.notModified().header(ETAG, etag));
+    }
+    if (q != null) {
+      return searchTodos(
+          q, offset == null ? 0 : offset, limit == null ? SEARCH_LIMIT : limit, etag);
+    }
+    final int pageLimit = limit == null ? Integer.MAX_VALUE : limit;
+    final ListCache.Page cached = versioned ? listCache.get(version, after, pageLimit) : null;
+    if (cached != null) {
+      return Single.just(listed(cached, etag));
+    }
+    final Single<List<Todo>> domainTodosObsv;
+    if (after == null && limit == null) {
+      domainTodosObsv = todosService.list();
+    } else {
+      domainTodosObsv =
+          todosService.list(
+              after == null ? null : Todo.Id.builder().value(after).build(), pageLimit);
+    }
+    return domainTodosObsv.map(
+        domainTodos -> {
+          final List<TodoResponse> todos =
+              domainTodos.stream().map(mapper::domainToApi).collect(Collectors.toList());
+          final String link =
+              limit != null && domainTodos.size() == limit
+                  ? nextPageLink(domainTodos.get(domainTodos.size() - 1), limit)
+                  : null;
+          return listed(
+              versioned
+                  ? listCache.put(version, after, pageLimit, todos, link)
+                  : listCache.uncached(todos, link),
+              etag);
+        });
+  }
+
+  private HttpResponse<?> listed(final ListCache.Page page, @Nullable final String etag) {
+    final MutableHttpResponse<byte[]> resp =
+        tagged(HttpResponse.ok(page.getJson()).contentType(MediaType.APPLICATION_JSON_TYPE), etag);
+    if (page.getLink() != null) {
+      resp.header(LINK, page.getLink());
+    }
+    return resp;
+  }
+
+  private Single<HttpResponse<?>> searchTodos(
+      final String q, final int offset, final int limit, @Nullable final String etag) {
     return todosService
-        .list()
+        .search(q, offset, limit)
         .map(
-            domainTodos ->
+            found -> {
+              final MutableHttpResponse<List<TodoResponse>> resp =
+                  tagged(
+                      HttpResponse.ok(
+                          found.stream().map(mapper::domainToApi).collect(Collectors.toList())),
+                      etag);
+              if (found.size() == limit) {
+                resp.header(LINK, nextSearchPageLink(q, offset + limit, limit));
+              }
+              return resp;
+            });
+  }
+
+  /**
+   * Suggests Todos as their Task is typed: those whose Task starts with the prefix, ignoring case
+   * and punctuation, in alphabetical order.
+   *
+   * @param prefix what has been typed so far; without one, nothing is suggested
+   * @param limit maximum number of Todos to return, 10 by default and at most 1000
+   * @return a list of Todos.
+   */
+  @Get("/suggest{?prefix,limit}")
+  @ApiResponse(
+      responseCode = "200",
+      description = "Tasks suggested.",
+      content =
+          @Content(array = @ArraySchema(schema = @Schema(implementation = TodoResponse.class))))
+  public Single<HttpResponse<List<TodoResponse>>> suggestTodos(
+      final @QueryValue @Nullable String prefix,
+      final @QueryValue @Nullable @Positive @Max(MAX_LIMIT) Integer limit) {
+    tracing.deserialized();
+    return todosService
+        .suggest(prefix == null ? "" : prefix, limit == null ? SUGGEST_LIMIT : limit)
+        .map(
+            found ->
                 HttpResponse.ok(
-                    domainTodos.stream().map(mapper::domainToApi).collect(Collectors.toList())));
+                    found.stream().map(mapper::domainToApi).collect(Collectors.toList())));
+  }
+
+  /**
+   * Streams existing Todos in ascending Id order.
+   *
+   * <p>Todos are read from the repo only as fast as the client consumes them, so neither the time
+   * to first byte nor memory use grow with the number of Todos. The response is a chunked JSON
+   * array, or newline-delimited JSON if the client accepts application/x-ndjson.
+   *
+   * @param headers of the request, used to pick the streaming format
+   * @param after exclusive Id cursor to start streaming from
+   * @return a stream of Todos.
+   */
+  @Get(
+      value = "/stream{?after}",
+      produces = {MediaType.APPLICATION_JSON, NdJsonMediaTypeCodec.APPLICATION_NDJSON})
+  @ApiResponse(
+      responseCode = "200",
+      description = "Tasks streamed.",
+      content =
+          @Content(array = @ArraySchema(schema = @Schema(implementation = TodoResponse.class))))
+  public HttpResponse<Flowable<TodoResponse>> streamTodos(
+      final HttpHeaders headers, final @QueryValue @Nullable @Positive Long after) {
+    final MediaType contentType =
+        headers.accept().contains(NdJsonMediaTypeCodec.APPLICATION_NDJSON_TYPE)
+            ? NdJsonMediaTypeCodec.APPLICATION_NDJSON_TYPE
+            : MediaType.APPLICATION_JSON_TYPE;
+    return HttpResponse.ok(
+            todosService.stream(after == null ? null : Todo.Id.builder().value(after).build())
+                .map(mapper::domainToApi))
+        .contentType(contentType);
+  }
+
+  /**
+   * Follows writes to Todos as server-sent events, instead of polling for them.
+   *
+   * <p>Each event is named after its kind, created, updated or deleted, and its id says where it is
+   * in the feed. A client that reconnects with the id of the last event it saw, as a Last-Event-ID
+   * header or the after parameter, gets the changes it missed before new ones. If those are no
+   * longer kept, or are from before a restart, it gets a reset event instead: the client should
+   * list the Todos again, and follow on from the reset event's id.
+   *
+   * <p>A client that falls too far behind is disconnected, and can resume the same way.
+   *
+   * @param after id of the last event seen, if there is no Last-Event-ID header
+   * @param lastEventId id of the last event seen
+   * @return a stream of changes.
+   */
+  @Get(value = "/changes{?after}", produces = MediaType.TEXT_EVENT_STREAM)
+  @ApiResponse(
+      responseCode = "200",
+      description = "Changes followed.",
+      content = @Content(schema = @Schema(implementation = ChangeResponse.class)))
+  public Flowable<Event<?>> followChanges(
+      final @QueryValue @Nullable String after,
+      final @Header(LAST_EVENT_ID) @Nullable String lastEventId) {
+    final String resumeFrom = lastEventId != null ? lastEventId : after;
+    final Long sequence = resumeFrom == null ? null : EventIds.sequence(resumeFrom);
+    if (sequence != null && sequence == EventIds.UNKNOWN) {
+      return Flowable.fromCallable(this::reset);
+    }
+    return todosService
+        .changes(sequence)
+        .<Event<?>>map(
+            change -> {
+              final ChangeResponse data = mapper.domainToApi(change);
+              return Event.of(data).name(data.getKind()).id(EventIds.of(change.getSequence()));
+            })
+        .onErrorResumeNext(
+            (Throwable e) -> {
+              if (e instanceof ChangeFeed.MissedChanges) {
+                return Flowable.fromCallable(this::reset);
+              } else if (e instanceof MissingBackpressureException) {
+                return Flowable.empty();
+              } else {
+                return Flowable.error(e);
+              }
+            });
   }
 
   /**
    * Get a single Todo by Id.
    *
+   * <p>The ETag is the Todo's version, with the epoch it counts from. If the client already has it,
+   * the answer is 304 without the Todo. With encoded Todos enabled, the Todo's version is looked up
+   * first, and if its JSON is kept for that version, that is the body, without reading the Todo
+   * itself.
+   *
    * @param id to get the Todo by
+   * @param ifNoneMatch ETags the client already has
    * @return retrieved Todo
    */
   @Get("/{id}")
@@ -104,27 +396,43 @@ public class TodosController {
       responseCode = "404",
       description = "No Todo by the given Id.",
       content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
-  public Single<HttpResponse<ResponseBase>> getTodo(final @Positive long id) {
+  @ApiResponse(responseCode = "304", description = "Task unchanged since the given ETag.")
+  public Single<HttpResponse<?>> getTodo(
+      final @Positive long id,
+      final @Header(HttpHeaders.IF_NONE_MATCH) @Nullable String ifNoneMatch) {
+    tracing.deserialized();
+    final Todo.Id todoId = Todo.Id.builder().value(id).build();
+    // Read before the Todo, so that a version is never tagged with an epoch newer than its own
+    final long epoch = todosService.epochOf(todoId);
+    if (!encodedTodos.isEnabled()) {
+      return fetched(todoId, epoch, ifNoneMatch);
+    }
     return todosService
-        .get(Todo.Id.builder().value(id).build())
-        .map(
-            result ->
-                result.either(
-                    e -> {
-                      switch (e) {
-                        case NoSuchTodo:
-                          return noSuchTodo(id);
-                        default:
-                          return impossible;
-                      }
-                    },
-                    t -> HttpResponse.ok(mapper.domainToApi(t))));
+        .versionOf(todoId)
+        .flatMap(
+            version -> {
+              final String etag = etag(todoId, epoch, version);
+              if (etag == null) {
+                return Maybe.<HttpResponse<?>>empty();
+              } else if (ETags.matches(ifNoneMatch, etag)) {
+                return Maybe.just(HttpResponse.notModified().header(ETAG, etag));
+              }
+              final ByteBuf json = encodedTodos.json(todoId, version);
+              return json == null
+                  ? Maybe.<HttpResponse<?>>empty()
+                  : Maybe.just(encoded(json, etag));
+            })
+        .switchIfEmpty(Single.defer(() -> fetched(todoId, epoch, ifNoneMatch)));
   }
 
   /**
    * Delete a single Todo by Id.
    *
+   * <p>With an If-Match header holding its ETag, the Todo is only deleted if it has not changed
+   * since, and the answer is 412 otherwise.
+   *
    * @param id to delete the Todo by
+   * @param ifMatch the ETag the Todo must still have, or * for any
    * @return deleted Todo
    */
   @Delete("/{id}")
@@ -137,28 +445,44 @@ public class TodosController {
       description = "No Todo by the given Id.",
       content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
   @ApiResponse(responseCode = "404", description = "No Todo by the given Id.")
-  public Single<HttpResponse<ResponseBase>> deleteTodo(final @Positive long id) {
-    return todosService
-        .delete(Todo.Id.builder().value(id).build())
-        .map(
-            result ->
-                result.either(
-                    e -> {
-                      switch (e) {
-                        case NoSuchTodo:
-                          return noSuchTodo(id);
-                        default:
-                          return impossible;
-                      }
-                    },
-                    t -> HttpResponse.ok(mapper.domainToApi(t))));
+  @ApiResponse(
+      responseCode = "412",
+      description = "The Todo has changed since the ETag in If-Match.",
+      content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+  public Single<HttpResponse<ResponseBase>> deleteTodo(
+      final @Positive long id, final @Header(HttpHeaders.IF_MATCH) @Nullable String ifMatch) {
+    tracing.deserialized();
+    final Todo.Id todoId = Todo.Id.builder().value(id).build();
+    final Single<Either<TodosService.DeleteError, Todo>> deleted =
+        ifMatch == null || ETags.isAny(ifMatch)
+            ? todosService.delete(todoId)
+            : todosService.delete(todoId, ETags.epoch(ifMatch), ETags.version(ifMatch));
+    return deleted.map(
+        result ->
+            result.either(
+                e -> {
+                  errorCounters.increment(e);
+                  switch (e) {
+                    case NoSuchTodo:
+                      return noSuchTodo(id);
+                    case VersionMismatch:
+                      return versionMismatch(id);
+                    default:
+                      return impossible;
+                  }
+                },
+                t -> HttpResponse.ok(mapper.domainToApi(t))));
   }
 
   /**
    * Updates a single Todo by Id.
    *
+   * <p>With an If-Match header holding its ETag, the Todo is only updated if it has not changed
+   * since, and the answer is 412 otherwise, so that concurrent edits are not lost.
+   *
    * @param id to update a Todo by
    * @param data holding the updated Task
+   * @param ifMatch the ETag the Todo must still have, or * for any
    * @return an updated Task
    */
   @Put("/{id}")
@@ -174,24 +498,41 @@ public class TodosController {
       responseCode = "404",
       description = "No Todo by the given id.",
       content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+  @ApiResponse(
+      responseCode = "412",
+      description = "The Todo has changed since the ETag in If-Match.",
+      content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
   public Single<HttpResponse<ResponseBase>> updateTodo(
-      final @Positive long id, final @Body TodoData data) {
-    return todosService
-        .update(mapper.apiToDomainTodo(Todo.Id.builder().value(id).build(), data))
-        .map(
-            result ->
-                result.either(
-                    e -> {
-                      switch (e) {
-                        case NoSuchTodo:
-                          return noSuchTodo(id);
-                        case EmptyTask:
-                          return emptyTask(data.getTask());
-                        default:
-                          return impossible;
-                      }
-                    },
-                    t -> HttpResponse.ok(mapper.domainToApi(t))));
+      final @Positive long id,
+      final @Body TodoData data,
+      final @Header(HttpHeaders.IF_MATCH) @Nullable String ifMatch) {
+    tracing.deserialized();
+    final Todo todo = mapper.apiToDomainTodo(Todo.Id.builder().value(id).build(), data);
+    final long epoch = todosService.epochOf(todo.getId());
+    final Single<Either<TodosService.UpdateError, Todo>> updated =
+        ifMatch == null || ETags.isAny(ifMatch)
+            ? todosService.update(todo)
+            : todosService.update(todo, ETags.epoch(ifMatch), ETags.version(ifMatch));
+    return updated.map(
+        result ->
+            result.either(
+                e -> {
+                  errorCounters.increment(e);
+                  switch (e) {
+                    case NoSuchTodo:
+                      return noSuchTodo(id);
+                    case EmptyTask:
+                      return emptyTask(data.getTask());
+                    case VersionMismatch:
+                      return versionMismatch(id);
+                    default:
+                      return impossible;
+                  }
+                },
+                t ->
+                    tagged(
+                        HttpResponse.<ResponseBase>ok(mapper.domainToApi(t)),
+                        etag(t.getId(), epoch, t.getVersion()))));
   }
 
   @org.mapstruct.Mapper(
@@ -200,31 +541,221 @@ public class TodosController {
   interface Mapper {
 
     @Mapping(source = "data.task", target = "task.value")
+    @Mapping(target = "version", ignore = true)
     Todo apiToDomainTodo(Todo.Id id, TodoData data);
 
     @Mapping(source = "request.task", target = "value")
     Todo.Task apiToDomainTask(TodoData request);
 
+    @Mapping(source = "update.id", target = "id.value")
+    @Mapping(source = "update.task", target = "task.value")
+    @Mapping(target = "version", ignore = true)
+    Todo apiToDomainTodo(BatchUpdate update);
+
     @Mapping(source = "todo.id.value", target = "id")
     @Mapping(source = "todo.task.value", target = "task")
     TodoResponse domainToApi(Todo todo);
+
+    @Mapping(
+        target = "kind",
+        expression = "java(change.getKind().name().toLowerCase(java.util.Locale.ROOT))")
+    @Mapping(source = "change.todo.version", target = "version")
+    ChangeResponse domainToApi(Todo.Change change);
+  }
+
+  private static final String LINK = "Link";
+
+  private static final String LAST_EVENT_ID = "Last-Event-ID";
+
+  private static final String ETAG = "ETag";
+
+  private static final int SEARCH_LIMIT = 20;
+
+  private static final int SUGGEST_LIMIT = 10;
+
+  /** Most Todos a client can ask for in one page, search or suggestion. */
+  private static final int MAX_LIMIT = 1000;
+
+  private String nextPageLink(Todo last, int limit) {
+    return "</todos?after=" + last.getId().getValue() + "&limit=" + limit + ">; rel=\"next\"";
+  }
+
+  private String nextSearchPageLink(String q, int offset, int limit) {
+    final URI next =
+        UriBuilder.of("/todos")
+            .queryParam("q", q)
+            .queryParam("offset", offset)
+            .queryParam("limit", limit)
+            .build();
+    return "<" + next + ">; rel=\"next\"";
+  }
+
+  private List<BatchResult> createResults(
+      BatchRequest batchReq, List<Either<TodosService.CreateError, Todo>> created) {
+    final List<BatchResult> results = new ArrayList<>(created.size());
+    for (int i = 0; i < created.size(); i++) {
+      final String task = batchReq.getCreate().get(i).getTask();
+      results.add(
+          created
+              .get(i)
+              .either(
+                  e -> {
+                    errorCounters.increment(e);
+                    switch (e) {
+                      case EmptyTask:
+                        return failed(HttpStatus.BAD_REQUEST, emptyTaskError(task));
+                      default:
+                        return impossibleResult;
+                    }
+                  },
+                  t -> succeeded(HttpStatus.CREATED, t)));
+    }
+    return results;
+  }
+
+  private List<BatchResult> updateResults(
+      BatchRequest batchReq, List<Either<TodosService.UpdateError, Todo>> updated) {
+    final List<BatchResult> results = new ArrayList<>(updated.size());
+    for (int i = 0; i < updated.size(); i++) {
+      final BatchUpdate update = batchReq.getUpdate().get(i);
+      results.add(
+          updated
+              .get(i)
+              .either(
+                  e -> {
+                    errorCounters.increment(e);
+                    switch (e) {
+                      case NoSuchTodo:
+                        return failed(HttpStatus.NOT_FOUND, noSuchTodoError(update.getId()));
+                      case EmptyTask:
+                        return failed(HttpStatus.BAD_REQUEST, emptyTaskError(update.getTask()));
+                      default:
+                        return impossibleResult;
+                    }
+                  },
+                  t -> succeeded(HttpStatus.OK, t)));
+    }
+    return results;
+  }
+
+  private List<BatchResult> deleteResults(
+      BatchRequest batchReq, List<Either<TodosService.DeleteError, Todo>> deleted) {
+    final List<BatchResult> results = new ArrayList<>(deleted.size());
+    for (int i = 0; i < deleted.size(); i++) {
+      final long id = batchReq.getDelete().get(i);
+      results.add(
+          deleted
+              .get(i)
+              .either(
+                  e -> {
+                    errorCounters.increment(e);
+                    switch (e) {
+                      case NoSuchTodo:
+                        return failed(HttpStatus.NOT_FOUND, noSuchTodoError(id));
+                      default:
+                        return impossibleResult;
+                    }
+                  },
+                  t -> succeeded(HttpStatus.OK, t)));
+    }
+    return results;
+  }
+
+  private BatchResult succeeded(HttpStatus status, Todo todo) {
+    return BatchResult.builder().status(status.getCode()).todo(mapper.domainToApi(todo)).build();
+  }
+
+  private BatchResult failed(HttpStatus status, ErrorResponse error) {
+    return BatchResult.builder().status(status.getCode()).error(error).build();
+  }
+
+  private Event<?> reset() {
+    return Event.of(
+            ErrorResponse.builder()
+                .message("Changes were missed; list the Todos again, then follow on from here")
+                .build())
+        .name("reset")
+        .id(EventIds.of(todosService.lastChange()));
+  }
+
+  /** The Todo as read from the service, tagged if its versions still count from the epoch. */
+  private Single<HttpResponse<?>> fetched(
+      final Todo.Id id, final long epoch, final @Nullable String ifNoneMatch) {
+    return todosService
+        .get(id)
+        .map(
+            result ->
+                result.either(
+                    e -> {
+                      errorCounters.increment(e);
+                      switch (e) {
+                        case NoSuchTodo:
+                          return noSuchTodo(id.getValue());
+                        default:
+                          return impossible;
+                      }
+                    },
+                    t -> {
+                      final String etag = etag(id, epoch, t.getVersion());
+                      if (etag != null && ETags.matches(ifNoneMatch, etag)) {
+                        return HttpResponse.notModified().header(ETAG, etag);
+                      }
+                      final ByteBuf json = encodedTodos.json(t);
+                      return json == null
+                          ? tagged(HttpResponse.ok(mapper.domainToApi(t)), etag)
+                          : encoded(json, etag);
+                    }));
+  }
+
+  private static HttpResponse<?> encoded(final ByteBuf json, @Nullable final String etag) {
+    return tagged(HttpResponse.ok(json).contentType(MediaType.APPLICATION_JSON_TYPE), etag);
+  }
+
+  /**
+   * The ETag of the Todo at the version, if its epoch is still the one read before the Todo was;
+   * null if it has moved on since, as the version could then be from either.
+   */
+  @Nullable
+  private String etag(final Todo.Id id, final long epoch, final long version) {
+    return todosService.epochOf(id) == epoch ? ETags.of(epoch, version) : null;
+  }
+
+  private static <T> MutableHttpResponse<T> tagged(
+      final MutableHttpResponse<T> resp, @Nullable final String etag) {
+    return etag == null ? resp : resp.header(ETAG, etag);
   }
 
   private HttpResponse<ResponseBase> noSuchTodo(long id) {
-    return HttpResponse.notFound(
-        ErrorResponse.builder().message("No todo with id [" + id + "]").build());
+    return HttpResponse.notFound(noSuchTodoError(id));
+  }
+
+  private ErrorResponse noSuchTodoError(long id) {
+    return ErrorResponse.builder().message("No todo with id [" + id + "]").build();
+  }
+
+  private HttpResponse<ResponseBase> versionMismatch(long id) {
+    return HttpResponse.<ResponseBase>status(HttpStatus.PRECONDITION_FAILED)
+        .body(
+            ErrorResponse.builder()
+                .message("Todo [" + id + "] has changed since the given ETag")
+                .build());
   }
 
   private HttpResponse<ResponseBase> emptyTask(String task) {
-    return HttpResponse.badRequest(
-        ErrorResponse.builder()
-            .message("The task was empty ['" + task + "']. You can't be *that* lazy.")
-            .build());
+    return HttpResponse.badRequest(emptyTaskError(task));
   }
 
-  private final HttpResponse<ResponseBase> impossible =
-      HttpResponse.serverError(
-          ErrorResponse.builder()
-              .message("The impossible happened. Go buy a lottery ticket")
-              .build());
+  private ErrorResponse emptyTaskError(String task) {
+    return ErrorResponse.builder()
+        .message("The task was empty ['" + task + "']. You can't be *that* lazy.")
+        .build();
+  }
+
+  private final ErrorResponse impossibleError =
+      ErrorResponse.builder().message("The impossible happened. Go buy a lottery ticket").build();
+
+  private final HttpResponse<ResponseBase> impossible = HttpResponse.serverError(impossibleError);
+
+  private final BatchResult impossibleResult =
+      failed(HttpStatus.INTERNAL_SERVER_ERROR, impossibleError);
 }
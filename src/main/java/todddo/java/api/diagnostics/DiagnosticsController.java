@@ -0,0 +1,43 @@
+package todddo.java.api.diagnostics;
+
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.swagger.v3.oas.annotations.Hidden;
+import java.util.List;
+import javax.annotation.Nonnull;
+import todddo.java.api.models.SlowRequestResponse;
+import todddo.java.api.models.SpanResponse;
+import todddo.java.infra.tracing.Trace;
+import todddo.java.infra.tracing.Tracing;
+
+@Hidden
+@Controller("/diagnostics")
+public class DiagnosticsController {
+
+  private final Tracing tracing;
+  private final Mapper mapper;
+
+  public DiagnosticsController(@Nonnull final Tracing tracing, @Nonnull final Mapper mapper) {
+    this.tracing = tracing;
+    this.mapper = mapper;
+  }
+
+  /**
+   * The most recent requests that took at least todddo.tracing.slow-threshold, newest first, with
+   * where their time went. Empty unless todddo.tracing.enabled is set.
+   */
+  @Get("/slow-requests")
+  public List<SlowRequestResponse> slowRequests() {
+    return mapper.traceToApi(tracing.slowRequests());
+  }
+
+  @org.mapstruct.Mapper(componentModel = "jsr330")
+  interface Mapper {
+
+    List<SlowRequestResponse> traceToApi(List<Trace> traces);
+
+    SlowRequestResponse traceToApi(Trace trace);
+
+    SpanResponse spanToApi(Trace.Span span);
+  }
+}
@@ -0,0 +1,58 @@
+package todddo.java.api.diagnostics;
+
+import io.micronaut.core.order.Ordered;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.filter.OncePerRequestHttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.reactivex.Flowable;
+import javax.annotation.Nonnull;
+import org.reactivestreams.Publisher;
+import todddo.java.infra.tracing.Trace;
+import todddo.java.infra.tracing.Tracing;
+
+/**
+ * Starts a Trace per /todos request when tracing is on, and ends it with the service and serialize
+ * spans.
+ *
+ * <p>Runs before any other filter, so the response it sees is the one about to be written: the body
+ * is encoded and handed to Netty as part of emitting it, which doAfterNext runs after.
+ */
+@Filter("/todos/**")
+public class TracingFilter extends OncePerRequestHttpServerFilter {
+
+  private final Tracing tracing;
+
+  public TracingFilter(@Nonnull final Tracing tracing) {
+    this.tracing = tracing;
+  }
+
+  @Override
+  public int getOrder() {
+    return Ordered.HIGHEST_PRECEDENCE;
+  }
+
+  @Override
+  protected Publisher<MutableHttpResponse<?>> doFilterOnce(
+      final HttpRequest<?> request, final ServerFilterChain chain) {
+    if (!tracing.isEnabled()) {
+      return chain.proceed(request);
+    }
+    final Trace trace = tracing.start(request.getMethod() + " " + request.getUri());
+    request.setAttribute(Tracing.ATTRIBUTE, trace);
+    final long[] ready = new long[1];
+    return Flowable.fromPublisher(chain.proceed(request))
+        .doOnNext(
+            response -> {
+              ready[0] = System.nanoTime();
+              trace.span("service", trace.getServiceStartNanos(), ready[0]);
+            })
+        .doAfterNext(
+            response -> {
+              final long written = System.nanoTime();
+              trace.span("serialize", ready[0], written);
+              tracing.finish(trace, response.getStatus().getCode(), written);
+            });
+  }
+}
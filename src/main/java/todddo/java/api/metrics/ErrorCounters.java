@@ -0,0 +1,43 @@
+package todddo.java.api.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.inject.Singleton;
+import todddo.java.domain.services.TodosService;
+
+/**
+ * A todddo.service.errors counter per operation and error the TodosService can return, all
+ * registered up front so that counting is a map lookup and an increment.
+ */
+@Singleton
+public class ErrorCounters {
+
+  private final Map<Enum<?>, Counter> counters = new HashMap<>();
+
+  public ErrorCounters(@Nonnull final MeterRegistry registry) {
+    register(registry, "create", TodosService.CreateError.values());
+    register(registry, "get", TodosService.GetError.values());
+    register(registry, "delete", TodosService.DeleteError.values());
+    register(registry, "update", TodosService.UpdateError.values());
+  }
+
+  public void increment(@Nonnull final Enum<?> error) {
+    counters.get(error).increment();
+  }
+
+  private void register(
+      final MeterRegistry registry, final String operation, final Enum<?>[] errors) {
+    for (final Enum<?> error : errors) {
+      counters.put(
+          error,
+          Counter.builder("todddo.service.errors")
+              .description("Errors returned by the TodosService")
+              .tag("operation", operation)
+              .tag("error", error.name())
+              .register(registry));
+    }
+  }
+}
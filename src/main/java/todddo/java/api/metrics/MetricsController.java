@@ -0,0 +1,30 @@
+package todddo.java.api.metrics;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.prometheus.client.exporter.common.TextFormat;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import io.swagger.v3.oas.annotations.Hidden;
+import javax.annotation.Nonnull;
+
+@Hidden
+@Controller("/metrics")
+public class MetricsController {
+
+  private final PrometheusMeterRegistry registry;
+
+  public MetricsController(@Nonnull final PrometheusMeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Every meter, in the Prometheus text format. Scraped off the event loop, as gauges such as the
+   * repo size can take a while.
+   */
+  @Get(produces = TextFormat.CONTENT_TYPE_004)
+  public Single<String> scrape() {
+    return Single.fromCallable(registry::scrape).subscribeOn(Schedulers.io());
+  }
+}
@@ -0,0 +1,50 @@
+package todddo.java.api.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.micronaut.context.annotation.Bean;
+import io.micronaut.context.annotation.Factory;
+import io.micronaut.context.annotation.Value;
+import java.util.Collection;
+import javax.inject.Singleton;
+
+@Factory
+public class MetricsFactory {
+
+  /**
+   * The one registry everything records to, with every MeterBinder bean bound to it.
+   *
+   * @param histograms whether timers also keep histogram buckets, so that Prometheus can compute
+   *     percentiles, including across instances. Costs a few KB per timer.
+   */
+  @Singleton
+  @Bean(preDestroy = "close")
+  PrometheusMeterRegistry prometheusMeterRegistry(
+      final Collection<MeterBinder> binders,
+      @Value("${todddo.metrics.percentile-histograms:false}") final boolean histograms) {
+    final PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    if (histograms) {
+      registry
+          .config()
+          .meterFilter(
+              new MeterFilter() {
+                @Override
+                public DistributionStatisticConfig configure(
+                    final Meter.Id id, final DistributionStatisticConfig config) {
+                  return id.getType() == Meter.Type.TIMER
+                      ? DistributionStatisticConfig.builder()
+                          .percentilesHistogram(true)
+                          .build()
+                          .merge(config)
+                      : config;
+                }
+              });
+    }
+    binders.forEach(binder -> binder.bindTo(registry));
+    return registry;
+  }
+}
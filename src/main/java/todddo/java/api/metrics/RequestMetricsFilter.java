@@ -0,0 +1,75 @@
+package todddo.java.api.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.http.HttpAttributes;
+import io.micronaut.http.HttpMethod;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.MutableHttpResponse;
+import io.micronaut.http.annotation.Filter;
+import io.micronaut.http.filter.OncePerRequestHttpServerFilter;
+import io.micronaut.http.filter.ServerFilterChain;
+import io.reactivex.Flowable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import lombok.Value;
+import org.reactivestreams.Publisher;
+
+/**
+ * Records an http.server.requests timer per method, route and status for the /todos endpoints.
+ *
+ * <p>Timed until the response is ready to be written, so a streamed body is not included. Routes
+ * are tagged by their template, e.g. /todos/{id}, to keep the number of timers bounded.
+ */
+@Filter("/todos/**")
+public class RequestMetricsFilter extends OncePerRequestHttpServerFilter {
+
+  private final MeterRegistry registry;
+  private final Map<Key, Timer> timers = new ConcurrentHashMap<>();
+
+  public RequestMetricsFilter(@Nonnull final MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  protected Publisher<MutableHttpResponse<?>> doFilterOnce(
+      final HttpRequest<?> request, final ServerFilterChain chain) {
+    final long start = System.nanoTime();
+    return Flowable.fromPublisher(chain.proceed(request))
+        .doOnNext(
+            response ->
+                timer(
+                        new Key(
+                            request.getMethod(),
+                            request
+                                .getAttribute(HttpAttributes.URI_TEMPLATE, String.class)
+                                .orElse("UNKNOWN"),
+                            response.getStatus().getCode()))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+  }
+
+  /** Tries get first, as computeIfAbsent locks even when the key is present on JDK 8. */
+  private Timer timer(final Key key) {
+    final Timer timer = timers.get(key);
+    return timer != null
+        ? timer
+        : timers.computeIfAbsent(
+            key,
+            k ->
+                Timer.builder("http.server.requests")
+                    .description("Requests to the /todos endpoints")
+                    .tag("method", k.method.name())
+                    .tag("uri", k.uri)
+                    .tag("status", String.valueOf(k.status))
+                    .register(registry));
+  }
+
+  @Value
+  private static class Key {
+    HttpMethod method;
+    String uri;
+    int status;
+  }
+}
@@ -0,0 +1,30 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import io.micronaut.core.annotation.Introspected;
+import java.util.Collections;
+import java.util.List;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/** Creates, then updates, then deletes; any of the three may be left out. */
+@Value
+@Builder(builderClassName = "BatchRequestBuilder")
+@JsonDeserialize(builder = BatchRequest.BatchRequestBuilder.class)
+@Introspected
+public class BatchRequest {
+
+  @Builder.Default @NonNull List<TodoData> create = Collections.emptyList();
+
+  @Builder.Default @NonNull List<BatchUpdate> update = Collections.emptyList();
+
+  @Builder.Default @NonNull List<Long> delete = Collections.emptyList();
+
+  @JsonPOJOBuilder(withPrefix = "")
+  @Introspected
+  public static class BatchRequestBuilder {
+    public BatchRequestBuilder() {}
+  }
+}
@@ -0,0 +1,33 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import io.micronaut.core.annotation.Introspected;
+import java.util.Collections;
+import java.util.List;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Per item of the batch request, in the same order, its result. Empty lists are left out of the
+ * JSON, so they default to empty when read back.
+ */
+@Value
+@Builder(builderClassName = "BatchResponseBuilder")
+@JsonDeserialize(builder = BatchResponse.BatchResponseBuilder.class)
+@Introspected
+public class BatchResponse {
+
+  @Builder.Default @NonNull List<BatchResult> create = Collections.emptyList();
+
+  @Builder.Default @NonNull List<BatchResult> update = Collections.emptyList();
+
+  @Builder.Default @NonNull List<BatchResult> delete = Collections.emptyList();
+
+  @JsonPOJOBuilder(withPrefix = "")
+  @Introspected
+  public static class BatchResponseBuilder {
+    public BatchResponseBuilder() {}
+  }
+}
@@ -0,0 +1,31 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import io.micronaut.core.annotation.Introspected;
+import javax.annotation.Nullable;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * The outcome of one item in a batch: the status it would have had as a request of its own, and
+ * either the Todo or the error.
+ */
+@Value
+@Builder(builderClassName = "BatchResultBuilder")
+@JsonDeserialize(builder = BatchResult.BatchResultBuilder.class)
+@Introspected
+public class BatchResult {
+
+  int status;
+
+  @Nullable TodoResponse todo;
+
+  @Nullable ErrorResponse error;
+
+  @JsonPOJOBuilder(withPrefix = "")
+  @Introspected
+  public static class BatchResultBuilder {
+    public BatchResultBuilder() {}
+  }
+}
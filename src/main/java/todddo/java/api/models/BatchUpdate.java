@@ -0,0 +1,25 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import io.micronaut.core.annotation.Introspected;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+@Builder(builderClassName = "BatchUpdateBuilder")
+@JsonDeserialize(builder = BatchUpdate.BatchUpdateBuilder.class)
+@Introspected
+public class BatchUpdate {
+
+  long id;
+
+  @NonNull String task;
+
+  @JsonPOJOBuilder(withPrefix = "")
+  @Introspected
+  public static class BatchUpdateBuilder {
+    public BatchUpdateBuilder() {}
+  }
+}
@@ -0,0 +1,31 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import io.micronaut.core.annotation.Introspected;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * A write to a Todo: created, updated or deleted, and the Todo as written or as it was when
+ * deleted. Its version orders writes to the same Todo.
+ */
+@Value
+@Builder(builderClassName = "ChangeResponseBuilder")
+@JsonDeserialize(builder = ChangeResponse.ChangeResponseBuilder.class)
+@Introspected
+public class ChangeResponse {
+
+  @NonNull String kind;
+
+  @NonNull TodoResponse todo;
+
+  long version;
+
+  @JsonPOJOBuilder(withPrefix = "")
+  @Introspected
+  public static class ChangeResponseBuilder {
+    public ChangeResponseBuilder() {}
+  }
+}
@@ -0,0 +1,27 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import io.micronaut.core.annotation.Introspected;
+import java.util.List;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+@Builder(builderClassName = "ClusterMembersResponseBuilder")
+@JsonDeserialize(builder = ClusterMembersResponse.ClusterMembersResponseBuilder.class)
+@Introspected
+public class ClusterMembersResponse {
+
+  @NonNull List<String> members;
+
+  /** How many Todos this member handed over to others as a result. */
+  long handedOver;
+
+  @JsonPOJOBuilder(withPrefix = "")
+  @Introspected
+  public static class ClusterMembersResponseBuilder {
+    public ClusterMembersResponseBuilder() {}
+  }
+}
@@ -0,0 +1,31 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import io.micronaut.core.annotation.Introspected;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/** A Todo as cluster members send it to each other, version and all. */
+@Value
+@Builder(builderClassName = "ClusterTodoBuilder")
+@JsonDeserialize(builder = ClusterTodo.ClusterTodoBuilder.class)
+@Introspected
+public class ClusterTodo extends ResponseBase {
+
+  long id;
+
+  @NonNull String task;
+
+  long version;
+
+  /** What the version counts from on the member that keeps the Todo; see Todo.Repo.epoch. */
+  long epoch;
+
+  @JsonPOJOBuilder(withPrefix = "")
+  @Introspected
+  public static class ClusterTodoBuilder {
+    public ClusterTodoBuilder() {}
+  }
+}
@@ -0,0 +1,38 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import io.micronaut.core.annotation.Introspected;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * A traced request and its spans. Spans may overlap: service includes the repo and scheduler spans
+ * of the operations it ran.
+ */
+@Value
+@Builder(builderClassName = "SlowRequestResponseBuilder")
+@JsonDeserialize(builder = SlowRequestResponse.SlowRequestResponseBuilder.class)
+@Introspected
+public class SlowRequestResponse {
+
+  @NonNull String request;
+
+  @NonNull Instant startedAt;
+
+  int status;
+
+  double totalMicros;
+
+  @Builder.Default @NonNull List<SpanResponse> spans = Collections.emptyList();
+
+  @JsonPOJOBuilder(withPrefix = "")
+  @Introspected
+  public static class SlowRequestResponseBuilder {
+    public SlowRequestResponseBuilder() {}
+  }
+}
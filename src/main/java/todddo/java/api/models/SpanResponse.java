@@ -0,0 +1,30 @@
+package todddo.java.api.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import io.micronaut.core.annotation.Introspected;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/** One stage of a request, timed from the start of the request. */
+@Value
+@Builder(builderClassName = "SpanResponseBuilder")
+@JsonDeserialize(builder = SpanResponse.SpanResponseBuilder.class)
+@Introspected
+public class SpanResponse {
+
+  @NonNull String stage;
+
+  @NonNull String thread;
+
+  double startMicros;
+
+  double durationMicros;
+
+  @JsonPOJOBuilder(withPrefix = "")
+  @Introspected
+  public static class SpanResponseBuilder {
+    public SpanResponseBuilder() {}
+  }
+}
@@ -4,17 +4,30 @@ import io.micronaut.core.type.Argument;
 import io.micronaut.http.HttpRequest;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.DefaultHttpClient;
 import io.micronaut.http.client.HttpClient;
 import io.micronaut.http.client.annotation.Client;
 import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.http.sse.Event;
 import io.micronaut.runtime.server.EmbeddedServer;
 import io.micronaut.test.annotation.MicronautTest;
+import io.reactivex.schedulers.Schedulers;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import todddo.java.api.codecs.NdJsonMediaTypeCodec;
+import todddo.java.api.models.BatchRequest;
+import todddo.java.api.models.BatchResponse;
+import todddo.java.api.models.BatchUpdate;
+import todddo.java.api.models.ChangeResponse;
+import todddo.java.api.models.ErrorResponse;
 import todddo.java.api.models.TodoData;
 import todddo.java.api.models.TodoResponse;
+import todddo.java.infra.execution.QueueCountingScheduler;
 
 @MicronautTest
 public class ApplicationSpec {
@@ -39,6 +52,23 @@ public class ApplicationSpec {
     }
   }
 
+  @Test
+  void testLimitsAreCapped() {
+    for (final String uri :
+        new String[] {
+          "/todos?limit=1001", "/todos?q=milk&limit=1001", "/todos/suggest?prefix=m&limit=1001"
+        }) {
+      final HttpClientResponseException e =
+          Assertions.assertThrows(
+              HttpClientResponseException.class,
+              () -> client.toBlocking().exchange(HttpRequest.GET(uri), String.class));
+      Assertions.assertEquals(e.getStatus(), HttpStatus.BAD_REQUEST);
+    }
+    Assertions.assertEquals(
+        client.toBlocking().exchange(HttpRequest.GET("/todos?limit=1000")).getStatus(),
+        HttpStatus.OK);
+  }
+
   @Test
   void testCreateNonEmptyTodo() {
     final TodoResponse resp =
@@ -159,6 +189,327 @@ public class ApplicationSpec {
     Assertions.assertTrue(list.size() >= times);
   }
 
+  @Test
+  void testListPaginated() {
+    final int times = 5;
+    for (int i = 0; i < times; ++i) {
+      client
+          .toBlocking()
+          .retrieve(
+              HttpRequest.POST("/todos", TodoData.builder().task("something").build()),
+              TodoResponse.class);
+    }
+    final HttpResponse<List<TodoResponse>> firstPage =
+        client
+            .toBlocking()
+            .exchange(HttpRequest.GET("/todos?limit=2"), Argument.listOf(TodoResponse.class));
+    final List<TodoResponse> firstTodos = firstPage.body();
+    Assertions.assertEquals(firstTodos.size(), 2);
+    final TodoResponse lastOfFirst = firstTodos.get(1);
+    Assertions.assertEquals(
+        firstPage.getHeaders().get("Link"),
+        "</todos?after=" + lastOfFirst.getId() + "&limit=2>; rel=\"next\"");
+    final List<TodoResponse> secondTodos =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.GET("/todos?after=" + lastOfFirst.getId() + "&limit=2"),
+                Argument.listOf(TodoResponse.class));
+    Assertions.assertEquals(secondTodos.size(), 2);
+    Assertions.assertTrue(secondTodos.get(0).getId() > lastOfFirst.getId());
+  }
+
+  @Test
+  void testSearch() {
+    final TodoResponse paint =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST("/todos", TodoData.builder().task("Paint the shed").build()),
+                TodoResponse.class);
+    final TodoResponse shedPaint =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST(
+                    "/todos", TodoData.builder().task("buy paint for the shed roof").build()),
+                TodoResponse.class);
+    final HttpResponse<List<TodoResponse>> firstPage =
+        client
+            .toBlocking()
+            .exchange(
+                HttpRequest.GET("/todos?q=shed%20PAINT&limit=1"),
+                Argument.listOf(TodoResponse.class));
+    Assertions.assertEquals(Collections.singletonList(paint), firstPage.body());
+    final String next = firstPage.getHeaders().get("Link");
+    Assertions.assertEquals("</todos?q=shed+PAINT&offset=1&limit=1>; rel=\"next\"", next);
+    final List<TodoResponse> secondPage =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.GET(next.substring(1, next.indexOf('>'))),
+                Argument.listOf(TodoResponse.class));
+    Assertions.assertEquals(Collections.singletonList(shedPaint), secondPage);
+  }
+
+  @Test
+  void testSuggest() {
+    final TodoResponse first =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST("/todos", TodoData.builder().task("Water the ferns").build()),
+                TodoResponse.class);
+    client
+        .toBlocking()
+        .retrieve(
+            HttpRequest.POST("/todos", TodoData.builder().task("water: the fig").build()),
+            TodoResponse.class);
+    final List<TodoResponse> suggested =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.GET("/todos/suggest?prefix=WATER%20THE%20FE&limit=5"),
+                Argument.listOf(TodoResponse.class));
+    Assertions.assertEquals(Collections.singletonList(first), suggested);
+  }
+
+  @Test
+  void testConditionalGets() {
+    final TodoResponse created =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST("/todos", TodoData.builder().task("cached").build()),
+                TodoResponse.class);
+    final String todoPath = "/todos/" + created.getId();
+    final HttpResponse<TodoResponse> first =
+        client.toBlocking().exchange(HttpRequest.GET(todoPath), TodoResponse.class);
+    final String etag = first.getHeaders().get("ETag");
+    Assertions.assertNotNull(etag);
+    final HttpResponse<TodoResponse> unchanged =
+        client
+            .toBlocking()
+            .exchange(HttpRequest.GET(todoPath).header("If-None-Match", etag), TodoResponse.class);
+    Assertions.assertEquals(HttpStatus.NOT_MODIFIED, unchanged.getStatus());
+    Assertions.assertEquals(etag, unchanged.getHeaders().get("ETag"));
+
+    final String listEtag =
+        client.toBlocking().exchange(HttpRequest.GET("/todos")).getHeaders().get("ETag");
+    Assertions.assertEquals(
+        HttpStatus.NOT_MODIFIED,
+        client
+            .toBlocking()
+            .exchange(HttpRequest.GET("/todos").header("If-None-Match", listEtag))
+            .getStatus());
+
+    client
+        .toBlocking()
+        .exchange(HttpRequest.PUT(todoPath, TodoData.builder().task("changed").build()));
+    final HttpResponse<TodoResponse> changed =
+        client
+            .toBlocking()
+            .exchange(HttpRequest.GET(todoPath).header("If-None-Match", etag), TodoResponse.class);
+    Assertions.assertEquals(HttpStatus.OK, changed.getStatus());
+    Assertions.assertEquals("changed", changed.body().getTask());
+    Assertions.assertNotEquals(etag, changed.getHeaders().get("ETag"));
+    Assertions.assertEquals(
+        HttpStatus.OK,
+        client
+            .toBlocking()
+            .exchange(HttpRequest.GET("/todos").header("If-None-Match", listEtag))
+            .getStatus());
+  }
+
+  @Test
+  void testFollowChanges() {
+    try (final DefaultHttpClient sseClient = new DefaultHttpClient(server.getURL())) {
+      final Event<ErrorResponse> reset =
+          sseClient
+              .eventStream(HttpRequest.GET("/todos/changes?after=unknown"), ErrorResponse.class)
+              .blockingFirst();
+      Assertions.assertEquals("reset", reset.getName());
+
+      final TodoResponse created =
+          client
+              .toBlocking()
+              .retrieve(
+                  HttpRequest.POST("/todos", TodoData.builder().task("follow me").build()),
+                  TodoResponse.class);
+      client
+          .toBlocking()
+          .exchange(HttpRequest.DELETE("/todos/" + created.getId()), TodoResponse.class);
+
+      final List<Event<ChangeResponse>> changes =
+          sseClient
+              .eventStream(
+                  HttpRequest.GET("/todos/changes").header("Last-Event-ID", reset.getId()),
+                  ChangeResponse.class)
+              .filter(event -> event.getData().getTodo().getId() == created.getId())
+              .take(2)
+              .timeout(10, TimeUnit.SECONDS)
+              .toList()
+              .blockingGet();
+      Assertions.assertEquals("created", changes.get(0).getName());
+      Assertions.assertEquals("follow me", changes.get(0).getData().getTodo().getTask());
+      Assertions.assertEquals("deleted", changes.get(1).getData().getKind());
+      Assertions.assertNotEquals(changes.get(0).getId(), changes.get(1).getId());
+    }
+  }
+
+  @Test
+  void testConditionalUpdates() {
+    final HttpResponse<TodoResponse> created =
+        client
+            .toBlocking()
+            .exchange(
+                HttpRequest.POST("/todos", TodoData.builder().task("edited twice").build()),
+                TodoResponse.class);
+    final String path = "/todos/" + created.body().getId();
+    final String etag = created.getHeaders().get("ETag");
+    final HttpResponse<TodoResponse> first =
+        client
+            .toBlocking()
+            .exchange(
+                HttpRequest.PUT(path, TodoData.builder().task("first edit").build())
+                    .header("If-Match", etag),
+                TodoResponse.class);
+    Assertions.assertEquals("first edit", first.body().getTask());
+
+    final HttpClientResponseException lost =
+        Assertions.assertThrows(
+            HttpClientResponseException.class,
+            () ->
+                client
+                    .toBlocking()
+                    .exchange(
+                        HttpRequest.PUT(path, TodoData.builder().task("second edit").build())
+                            .header("If-Match", etag)));
+    Assertions.assertEquals(HttpStatus.PRECONDITION_FAILED, lost.getStatus());
+    final HttpClientResponseException stale =
+        Assertions.assertThrows(
+            HttpClientResponseException.class,
+            () -> client.toBlocking().exchange(HttpRequest.DELETE(path).header("If-Match", etag)));
+    Assertions.assertEquals(HttpStatus.PRECONDITION_FAILED, stale.getStatus());
+
+    client
+        .toBlocking()
+        .exchange(HttpRequest.DELETE(path).header("If-Match", first.getHeaders().get("ETag")));
+    final HttpClientResponseException deleted =
+        Assertions.assertThrows(
+            HttpClientResponseException.class, () -> client.toBlocking().exchange(path));
+    Assertions.assertEquals(HttpStatus.NOT_FOUND, deleted.getStatus());
+  }
+
+  @Test
+  void testStreamAsJsonArray() {
+    final TodoResponse created =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST("/todos", TodoData.builder().task("streamed").build()),
+                TodoResponse.class);
+    final List<TodoResponse> streamed =
+        client
+            .toBlocking()
+            .retrieve(HttpRequest.GET("/todos/stream"), Argument.listOf(TodoResponse.class));
+    Assertions.assertTrue(streamed.contains(created));
+  }
+
+  @Test
+  void testStreamAsNdJson() {
+    for (int i = 0; i < 3; ++i) {
+      client
+          .toBlocking()
+          .retrieve(
+              HttpRequest.POST("/todos", TodoData.builder().task("streamed").build()),
+              TodoResponse.class);
+    }
+    final List<TodoResponse> all =
+        client
+            .toBlocking()
+            .retrieve(HttpRequest.GET("/todos"), Argument.listOf(TodoResponse.class));
+    final HttpResponse<String> resp =
+        client
+            .toBlocking()
+            .exchange(
+                HttpRequest.GET("/todos/stream?after=" + all.get(all.size() - 3).getId())
+                    .accept(NdJsonMediaTypeCodec.APPLICATION_NDJSON_TYPE),
+                String.class);
+    Assertions.assertEquals(
+        resp.getContentType().get(), NdJsonMediaTypeCodec.APPLICATION_NDJSON_TYPE);
+    final String[] lines = resp.body().split("\n");
+    Assertions.assertEquals(lines.length, 2);
+    Assertions.assertTrue(lines[0].contains("\"id\":" + all.get(all.size() - 2).getId()));
+  }
+
+  @Test
+  void testBatch() {
+    final TodoResponse existing =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST("/todos", TodoData.builder().task("existing").build()),
+                TodoResponse.class);
+    final BatchRequest batch =
+        BatchRequest.builder()
+            .create(
+                Arrays.asList(
+                    TodoData.builder().task("first").build(),
+                    TodoData.builder().task(" ").build(),
+                    TodoData.builder().task("second").build()))
+            .update(
+                Arrays.asList(
+                    BatchUpdate.builder().id(existing.getId()).task("updated").build(),
+                    BatchUpdate.builder().id(9999999999L).task("nope").build()))
+            .delete(Collections.singletonList(existing.getId()))
+            .build();
+    final BatchResponse resp =
+        client.toBlocking().retrieve(HttpRequest.POST("/todos/batch", batch), BatchResponse.class);
+
+    Assertions.assertEquals(resp.getCreate().size(), 3);
+    Assertions.assertEquals(resp.getCreate().get(0).getStatus(), 201);
+    Assertions.assertEquals(resp.getCreate().get(0).getTodo().getTask(), "first");
+    Assertions.assertEquals(resp.getCreate().get(1).getStatus(), 400);
+    Assertions.assertTrue(resp.getCreate().get(1).getError().getMessage().contains("lazy"));
+    Assertions.assertEquals(
+        resp.getCreate().get(2).getTodo().getId(), resp.getCreate().get(0).getTodo().getId() + 1);
+    Assertions.assertEquals(resp.getUpdate().get(0).getTodo().getTask(), "updated");
+    Assertions.assertEquals(resp.getUpdate().get(1).getStatus(), 404);
+    Assertions.assertEquals(resp.getDelete().get(0).getStatus(), 200);
+    Assertions.assertEquals(resp.getDelete().get(0).getTodo().getTask(), "updated");
+  }
+
+  @Test
+  void testMetrics() {
+    client
+        .toBlocking()
+        .retrieve(
+            HttpRequest.POST("/todos", TodoData.builder().task("measured").build()),
+            TodoResponse.class);
+    try {
+      client.toBlocking().exchange(HttpRequest.GET("/todos/9999999999"), TodoResponse.class);
+    } catch (HttpClientResponseException e) {
+      Assertions.assertEquals(e.getStatus(), HttpStatus.NOT_FOUND);
+    }
+    final String metrics = client.toBlocking().retrieve("/metrics");
+
+    Assertions.assertTrue(
+        metrics.contains(
+            "http_server_requests_seconds_count{method=\"POST\",status=\"201\",uri=\"/todos\",}"));
+    Assertions.assertTrue(
+        metrics.contains(
+            "todddo_repo_operations_seconds_count{method=\"create\",outcome=\"value\",}"));
+    Assertions.assertTrue(
+        metrics.contains(
+            "todddo_repo_operations_seconds_count{method=\"get\",outcome=\"empty\",}"));
+    Assertions.assertTrue(
+        metrics.contains("todddo_service_errors_total{error=\"NoSuchTodo\",operation=\"get\",}"));
+    Assertions.assertTrue(metrics.contains("todddo_repo_size "));
+    Assertions.assertTrue(metrics.contains("rx_scheduler_queued{scheduler=\"io\",}"));
+    Assertions.assertTrue(Schedulers.io() instanceof QueueCountingScheduler);
+  }
+
   @Test
   void getSwaggerUI() {
     final HttpResponse<String> r = client.toBlocking().exchange("/swagger-ui", String.class);
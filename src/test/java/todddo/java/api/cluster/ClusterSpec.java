@@ -0,0 +1,308 @@
+package todddo.java.api.cluster;
+
+import io.micronaut.context.ApplicationContext;
+import io.micronaut.core.type.Argument;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.RxHttpClient;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.runtime.server.EmbeddedServer;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.api.models.ClusterMembersResponse;
+import todddo.java.api.models.ClusterTodo;
+import todddo.java.api.models.TodoData;
+import todddo.java.api.models.TodoResponse;
+
+/** Members on their own ports in this JVM, as they would be on their own machines. */
+public class ClusterSpec {
+
+  private static final String SECRET = "shared by members";
+
+  private final List<EmbeddedServer> servers = new ArrayList<>();
+  private final Map<String, RxHttpClient> clients = new HashMap<>();
+
+  @AfterEach
+  void stop() {
+    clients.values().forEach(RxHttpClient::close);
+    servers.forEach(EmbeddedServer::stop);
+  }
+
+  @Test
+  void testTodosAreSpreadOverMembersAndReachableFromAny() throws IOException {
+    final Map<String, String> urls = urls("a", "b", "c");
+    urls.keySet().forEach(member -> start(member, urls));
+
+    final List<TodoResponse> created = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      created.add(create("a", "todo " + i));
+    }
+    int stored = 0;
+    for (final String member : urls.keySet()) {
+      final int own = local(member).size();
+      Assertions.assertTrue(own > 50, member + " has " + own);
+      stored += own;
+    }
+    Assertions.assertEquals(stored, 300);
+
+    for (final TodoResponse todo : created) {
+      Assertions.assertEquals(get("c", todo.getId()), todo);
+    }
+    created.sort(Comparator.comparingLong(TodoResponse::getId));
+    Assertions.assertEquals(list("b", "/todos"), created);
+    Assertions.assertNull(
+        clients.get("b").toBlocking().exchange(HttpRequest.GET("/todos")).header(HttpHeaders.ETAG));
+
+    final List<TodoResponse> paged = new ArrayList<>();
+    List<TodoResponse> page = list("c", "/todos?limit=70");
+    while (!page.isEmpty()) {
+      paged.addAll(page);
+      page = list("c", "/todos?limit=70&after=" + page.get(page.size() - 1).getId());
+    }
+    Assertions.assertEquals(paged, created);
+
+    final TodoResponse updated = created.get(0);
+    clients
+        .get("b")
+        .toBlocking()
+        .exchange(
+            HttpRequest.PUT(
+                "/todos/" + updated.getId(), TodoData.builder().task("updated").build()));
+    Assertions.assertEquals(get("a", updated.getId()).getTask(), "updated");
+
+    final TodoResponse deleted = created.get(1);
+    clients.get("c").toBlocking().exchange(HttpRequest.DELETE("/todos/" + deleted.getId()));
+    final HttpClientResponseException missing =
+        Assertions.assertThrows(HttpClientResponseException.class, () -> get("a", deleted.getId()));
+    Assertions.assertEquals(missing.getStatus(), HttpStatus.NOT_FOUND);
+  }
+
+  @Test
+  void testJoiningMemberIsHandedItsShare() throws IOException {
+    final Map<String, String> urls = urls("a", "b", "c");
+    final Map<String, String> before = new HashMap<>(urls);
+    before.remove("c");
+    start("a", before);
+    start("b", before);
+    final List<TodoResponse> created = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      created.add(create(i % 2 == 0 ? "a" : "b", "todo " + i));
+    }
+
+    start("c", urls);
+    long handedOver = 0;
+    for (final String member : before.keySet()) {
+      final ClusterMembersResponse joined =
+          clients
+              .get(member)
+              .toBlocking()
+              .retrieve(
+                  HttpRequest.PUT("/cluster/members/c?url=" + urls.get("c"), "")
+                      .header(Cluster.SECRET_HEADER, SECRET),
+                  ClusterMembersResponse.class);
+      Assertions.assertEquals(joined.getMembers().size(), 3);
+      handedOver += joined.getHandedOver();
+    }
+
+    Assertions.assertEquals(local("c").size(), handedOver);
+    Assertions.assertTrue(handedOver > 30, String.valueOf(handedOver));
+    Assertions.assertEquals(local("a").size() + local("b").size() + handedOver, 200);
+    for (final TodoResponse todo : created) {
+      for (final String member : urls.keySet()) {
+        Assertions.assertEquals(get(member, todo.getId()).getTask(), todo.getTask());
+      }
+    }
+  }
+
+  @Test
+  void testRestartedMemberCreatesUnderIdsNotTakenYet() throws IOException {
+    final Map<String, String> urls = urls("a", "b");
+    start("a", urls);
+    start("b", urls);
+    for (int i = 0; i < 40; i++) {
+      create("a", "before " + i);
+    }
+    final List<ClusterTodo> kept = local("b");
+    Assertions.assertFalse(kept.isEmpty());
+
+    restart("a", urls);
+    final List<TodoResponse> created = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      created.add(create("a", "after " + i));
+    }
+
+    Assertions.assertTrue(local("b").containsAll(kept));
+    for (final TodoResponse todo : created) {
+      Assertions.assertEquals(get("b", todo.getId()), todo);
+    }
+  }
+
+  @Test
+  void testETagsHoldAcrossMembersUntilTheOwnerRestarts() throws IOException {
+    final Map<String, String> urls = urls("a", "b", "c");
+    urls.keySet().forEach(member -> start(member, urls));
+    for (int i = 0; i < 30; i++) {
+      create("a", "todo " + i);
+    }
+    final ClusterTodo first =
+        local("b").stream().filter(todo -> todo.getVersion() == 1).findFirst().get();
+    final String path = "/todos/" + first.getId();
+    final String etag =
+        clients.get("a").toBlocking().exchange(HttpRequest.GET(path)).header(HttpHeaders.ETAG);
+    Assertions.assertEquals(
+        clients
+            .get("c")
+            .toBlocking()
+            .exchange(
+                HttpRequest.PUT(path, TodoData.builder().task("edited").build())
+                    .header(HttpHeaders.IF_MATCH, etag))
+            .getStatus(),
+        HttpStatus.OK);
+
+    // Back at version 1, under the restarted owner's epoch
+    restart("b", urls);
+    clients
+        .get("b")
+        .toBlocking()
+        .exchange(
+            HttpRequest.POST(
+                    "/cluster/todos/" + first.getId(), TodoData.builder().task("again").build())
+                .header(Cluster.SECRET_HEADER, SECRET));
+    for (int i = 0; i < 2; i++) {
+      Assertions.assertEquals(
+          clients
+              .get("a")
+              .toBlocking()
+              .exchange(HttpRequest.GET(path).header(HttpHeaders.IF_NONE_MATCH, etag))
+              .getStatus(),
+          HttpStatus.OK);
+    }
+    final HttpClientResponseException stale =
+        Assertions.assertThrows(
+            HttpClientResponseException.class,
+            () ->
+                clients
+                    .get("c")
+                    .toBlocking()
+                    .exchange(
+                        HttpRequest.PUT(path, TodoData.builder().task("lost").build())
+                            .header(HttpHeaders.IF_MATCH, etag)));
+    Assertions.assertEquals(stale.getStatus(), HttpStatus.PRECONDITION_FAILED);
+  }
+
+  @Test
+  void testClusterEndpointsNeedTheSecret() throws IOException {
+    start("a", urls("a"));
+    final TodoResponse created = create("a", "keep me");
+    final String elsewhere = "http://localhost:1";
+    for (final String secret : new String[] {null, "guessed"}) {
+      final HttpRequest<?> join =
+          HttpRequest.PUT("/cluster/members/b?url=" + elsewhere, "")
+              .header(Cluster.SECRET_HEADER, secret == null ? "" : secret);
+      final HttpClientResponseException refused =
+          Assertions.assertThrows(
+              HttpClientResponseException.class,
+              () -> clients.get("a").toBlocking().exchange(join));
+      Assertions.assertEquals(refused.getStatus(), HttpStatus.FORBIDDEN);
+    }
+    final HttpClientResponseException refused =
+        Assertions.assertThrows(
+            HttpClientResponseException.class,
+            () -> clients.get("a").toBlocking().exchange(HttpRequest.GET("/cluster/todos")));
+    Assertions.assertEquals(refused.getStatus(), HttpStatus.FORBIDDEN);
+    final ClusterMembersResponse members =
+        clients
+            .get("a")
+            .toBlocking()
+            .retrieve(
+                HttpRequest.GET("/cluster/members").header(Cluster.SECRET_HEADER, SECRET),
+                ClusterMembersResponse.class);
+    Assertions.assertEquals(members.getMembers(), Collections.singletonList("a"));
+    Assertions.assertEquals(get("a", created.getId()), created);
+  }
+
+  private void start(final String member, final Map<String, String> urls) {
+    final Map<String, Object> properties = new HashMap<>();
+    properties.put("micronaut.server.port", urls.get(member).replaceAll(".*:", ""));
+    properties.put("todddo.cluster.enabled", true);
+    properties.put("todddo.cluster.self", member);
+    properties.put(
+        "todddo.cluster.members",
+        urls.entrySet().stream()
+            .map(url -> url.getKey() + "=" + url.getValue())
+            .collect(Collectors.toList()));
+    properties.put("todddo.cluster.secret", SECRET);
+    properties.put("todddo.repo.ids.node", member.charAt(0) - 'a' + 1);
+    final EmbeddedServer server = ApplicationContext.run(EmbeddedServer.class, properties);
+    servers.add(server);
+    clients.put(member, RxHttpClient.create(server.getURL()));
+  }
+
+  /** Stops the member, losing the Todos it kept in memory, and starts it again on its URL. */
+  private void restart(final String member, final Map<String, String> urls) {
+    clients.remove(member).close();
+    final String port = urls.get(member).replaceAll(".*:", "");
+    servers.removeIf(
+        server -> {
+          final boolean stopped = String.valueOf(server.getPort()).equals(port);
+          if (stopped) {
+            server.stop();
+          }
+          return stopped;
+        });
+    start(member, urls);
+  }
+
+  private TodoResponse create(final String member, final String task) {
+    return clients
+        .get(member)
+        .toBlocking()
+        .retrieve(
+            HttpRequest.POST("/todos", TodoData.builder().task(task).build()), TodoResponse.class);
+  }
+
+  private TodoResponse get(final String member, final long id) {
+    return clients
+        .get(member)
+        .toBlocking()
+        .retrieve(HttpRequest.GET("/todos/" + id), TodoResponse.class);
+  }
+
+  private List<TodoResponse> list(final String member, final String path) {
+    return clients
+        .get(member)
+        .toBlocking()
+        .retrieve(HttpRequest.GET(path), Argument.listOf(TodoResponse.class));
+  }
+
+  /** The Todos the member keeps itself. */
+  private List<ClusterTodo> local(final String member) {
+    return clients
+        .get(member)
+        .toBlocking()
+        .retrieve(
+            HttpRequest.GET("/cluster/todos").header(Cluster.SECRET_HEADER, SECRET),
+            Argument.listOf(ClusterTodo.class));
+  }
+
+  private static Map<String, String> urls(final String... members) throws IOException {
+    final Map<String, String> urls = new HashMap<>();
+    for (final String member : members) {
+      try (final ServerSocket socket = new ServerSocket(0)) {
+        urls.put(member, "http://localhost:" + socket.getLocalPort());
+      }
+    }
+    return urls;
+  }
+}
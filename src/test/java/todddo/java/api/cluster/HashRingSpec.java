@@ -0,0 +1,63 @@
+package todddo.java.api.cluster;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HashRingSpec {
+
+  private static final int KEYS = 100_000;
+
+  @Test
+  public void testKeysSpreadEvenly() {
+    final HashRing subject = new HashRing(Arrays.asList("a", "b", "c", "d"), 128);
+    final Map<String, Integer> owned = new HashMap<>();
+    for (long key = 1; key <= KEYS; key++) {
+      owned.merge(subject.owner(key), 1, Integer::sum);
+    }
+    Assertions.assertEquals(owned.keySet(), new HashSet<>(subject.members()));
+    for (final int count : owned.values()) {
+      Assertions.assertTrue(Math.abs(count - KEYS / 4) < KEYS / 4 / 5, owned.toString());
+    }
+  }
+
+  @Test
+  public void testJoiningOnlyTakesKeysForItself() {
+    final HashRing before = new HashRing(Arrays.asList("a", "b", "c"), 128);
+    final HashRing after = before.with("d");
+    int moved = 0;
+    for (long key = 1; key <= KEYS; key++) {
+      final String owner = after.owner(key);
+      if (!owner.equals(before.owner(key))) {
+        Assertions.assertEquals(owner, "d");
+        moved++;
+      }
+    }
+    Assertions.assertTrue(Math.abs(moved - KEYS / 4) < KEYS / 4 / 5, String.valueOf(moved));
+    Assertions.assertSame(after.with("d"), after);
+  }
+
+  @Test
+  public void testMembersAgreeWhateverTheOrder() {
+    final HashRing one = new HashRing(Arrays.asList("a", "b", "c"), 16);
+    final HashRing other = new HashRing(Arrays.asList("c", "a", "b"), 16);
+    for (long key = 1; key <= 1000; key++) {
+      Assertions.assertEquals(one.owner(key), other.owner(key));
+    }
+    Assertions.assertEquals(one.members(), Arrays.asList("a", "b", "c"));
+  }
+
+  @Test
+  public void testSingleMemberOwnsEverything() {
+    final HashRing subject = new HashRing(Arrays.asList("a"), 1);
+    Assertions.assertEquals(subject.owner(Long.MIN_VALUE), "a");
+    Assertions.assertEquals(subject.owner(Long.MAX_VALUE), "a");
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new HashRing(Arrays.asList(), 128));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new HashRing(Arrays.asList("a"), 0));
+  }
+}
@@ -0,0 +1,61 @@
+package todddo.java.api.controllers;
+
+import io.micronaut.context.annotation.Property;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.test.annotation.MicronautTest;
+import javax.inject.Inject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.api.models.TodoData;
+import todddo.java.api.models.TodoResponse;
+import todddo.java.domain.models.Todo;
+import todddo.java.infra.cache.CachingTodosRepo;
+import todddo.java.infra.cache.TodoCache;
+
+@MicronautTest
+@Property(name = "todddo.repo.cache.enabled", value = "true")
+public class CachedTodosSpec {
+
+  @Inject
+  @Client("/")
+  HttpClient client;
+
+  @Inject Todo.Repo repo;
+
+  @Inject TodoCache cache;
+
+  @Test
+  void testGetsAreCachedUntilWritten() {
+    Assertions.assertTrue(repo instanceof CachingTodosRepo);
+    final TodoResponse created =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST("/todos", TodoData.builder().task("cache me").build()),
+                TodoResponse.class);
+    final String path = "/todos/" + created.getId();
+    final long hits = cache.hits();
+    client.toBlocking().retrieve(HttpRequest.GET(path), TodoResponse.class);
+    Assertions.assertEquals(
+        client.toBlocking().retrieve(HttpRequest.GET(path), TodoResponse.class), created);
+    Assertions.assertTrue(cache.hits() > hits);
+
+    client
+        .toBlocking()
+        .exchange(HttpRequest.PUT(path, TodoData.builder().task("cache me again").build()));
+    Assertions.assertEquals(
+        client.toBlocking().retrieve(HttpRequest.GET(path), TodoResponse.class).getTask(),
+        "cache me again");
+
+    client.toBlocking().exchange(HttpRequest.DELETE(path));
+    final HttpClientResponseException missing =
+        Assertions.assertThrows(
+            HttpClientResponseException.class,
+            () -> client.toBlocking().retrieve(HttpRequest.GET(path), TodoResponse.class));
+    Assertions.assertEquals(missing.getStatus(), HttpStatus.NOT_FOUND);
+  }
+}
@@ -0,0 +1,119 @@
+package todddo.java.api.controllers;
+
+import io.micronaut.context.annotation.Property;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.test.annotation.MicronautTest;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import javax.inject.Inject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.api.models.TodoData;
+import todddo.java.api.models.TodoResponse;
+import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
+
+@MicronautTest
+@Property(name = "todddo.encoded-todos.enabled", value = "true")
+public class EncodedTodosSpec {
+
+  @Inject
+  @Client("/")
+  HttpClient client;
+
+  @Inject EncodedTodos encodedTodos;
+
+  @Inject Todo.Repo repo;
+
+  @Inject ChangeFeed changeFeed;
+
+  @Test
+  void testGetServesJsonEncodedOnWrite() {
+    final TodoResponse created =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST("/todos", TodoData.builder().task("encode me").build()),
+                TodoResponse.class);
+    final String path = "/todos/" + created.getId();
+    final HttpResponse<TodoResponse> retrieved =
+        client.toBlocking().exchange(HttpRequest.GET(path), TodoResponse.class);
+    Assertions.assertEquals(created, retrieved.body());
+    Assertions.assertEquals(MediaType.APPLICATION_JSON_TYPE, retrieved.getContentType().get());
+
+    client
+        .toBlocking()
+        .exchange(HttpRequest.PUT(path, TodoData.builder().task("encode me again").build()));
+    final HttpResponse<TodoResponse> updated =
+        client.toBlocking().exchange(HttpRequest.GET(path), TodoResponse.class);
+    Assertions.assertEquals("encode me again", updated.body().getTask());
+    Assertions.assertNotEquals(
+        retrieved.getHeaders().get("ETag"), updated.getHeaders().get("ETag"));
+  }
+
+  @Test
+  void testWritesNotThroughTheControllerAreEncoded() throws InterruptedException {
+    final Todo put =
+        repo.put(
+                Todo.Id.builder().value(123456789L).build(),
+                Todo.Task.builder().value("handed over").build())
+            .blockingGet();
+    await(() -> encodedTodos.json(put.getId(), put.getVersion()) != null);
+    final HttpResponse<TodoResponse> retrieved =
+        client.toBlocking().exchange(HttpRequest.GET("/todos/123456789"), TodoResponse.class);
+    Assertions.assertEquals("handed over", retrieved.body().getTask());
+
+    repo.delete(put.getId()).blockingGet();
+    await(() -> encodedTodos.json(put.getId(), put.getVersion()) == null);
+  }
+
+  @Test
+  void testResetForgetsEveryTodo() throws InterruptedException {
+    final Todo.Id id = Todo.Id.builder().value(987654321L).build();
+    final Todo put = repo.put(id, Todo.Task.builder().value("forget me").build()).blockingGet();
+    await(() -> encodedTodos.json(id, put.getVersion()) != null);
+    changeFeed.reset();
+    await(() -> encodedTodos.json(id, put.getVersion()) == null);
+
+    final Todo again =
+        repo.put(id, Todo.Task.builder().value("then keep me").build()).blockingGet();
+    await(() -> encodedTodos.json(id, again.getVersion()) != null);
+  }
+
+  @Test
+  void testGetNotModifiedFromVersionAlone() {
+    final TodoResponse created =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST("/todos", TodoData.builder().task("unchanged").build()),
+                TodoResponse.class);
+    final String path = "/todos/" + created.getId();
+    final String etag =
+        client
+            .toBlocking()
+            .exchange(HttpRequest.GET(path), TodoResponse.class)
+            .getHeaders()
+            .get("ETag");
+    final HttpResponse<TodoResponse> notModified =
+        client
+            .toBlocking()
+            .exchange(HttpRequest.GET(path).header("If-None-Match", etag), TodoResponse.class);
+    Assertions.assertEquals(HttpStatus.NOT_MODIFIED, notModified.getStatus());
+  }
+
+  private static void await(final BooleanSupplier condition) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) {
+        Assertions.fail("Timed out");
+      }
+      Thread.sleep(10);
+    }
+  }
+}
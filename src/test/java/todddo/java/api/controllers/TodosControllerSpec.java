@@ -1,27 +1,66 @@
 package todddo.java.api.controllers;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import fj.data.Either;
-import io.micronaut.core.type.Argument;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.sse.Event;
+import io.micronaut.jackson.ObjectMapperFactory;
+import io.netty.buffer.ByteBuf;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
 import io.reactivex.Single;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.fest.util.Collections;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mapstruct.factory.Mappers;
 import org.mockito.Mockito;
+import todddo.java.api.codecs.NdJsonMediaTypeCodec;
+import todddo.java.api.metrics.ErrorCounters;
+import todddo.java.api.models.ChangeResponse;
 import todddo.java.api.models.ErrorResponse;
+import todddo.java.api.models.ResponseBase;
 import todddo.java.api.models.TodoData;
 import todddo.java.api.models.TodoResponse;
 import todddo.java.domain.models.Todo;
+import todddo.java.domain.services.ChangeFeed;
 import todddo.java.domain.services.TodosService;
+import todddo.java.infra.tracing.Tracing;
 
 public class TodosControllerSpec {
   private TodosController.Mapper mapper = Mappers.getMapper(TodosController.Mapper.class);
+  private ErrorCounters errorCounters = new ErrorCounters(new SimpleMeterRegistry());
+  private Tracing tracing = Tracing.disabled();
+  private ObjectMapper objectMapper = new ObjectMapperFactory().objectMapper(null, null);
+  private EncodedTodos encodedTodos =
+      new EncodedTodos(objectMapper, mapper, new ChangeFeed(16, 16), false);
 
   private static TodosService mockService() {
     return Mockito.mock(TodosService.class);
   }
 
+  private ListCache listCache() {
+    return new ListCache(objectMapper, 1 << 20);
+  }
+
+  private TodoResponse encodedBody(final HttpResponse<?> resp) throws IOException {
+    final ByteBuf json = (ByteBuf) resp.body();
+    Assertions.assertTrue(json.isDirect());
+    return objectMapper.readValue(json.toString(StandardCharsets.UTF_8), TodoResponse.class);
+  }
+
+  private List<TodoResponse> listed(final HttpResponse<?> resp) throws IOException {
+    return objectMapper.readValue((byte[]) resp.body(), new TypeReference<List<TodoResponse>>() {});
+  }
+
   private static Todo dummy =
       Todo.builder()
           .id(Todo.Id.builder().value(1).build())
@@ -33,7 +72,8 @@ public class TodosControllerSpec {
     final TodosService mockService = mockService();
     Mockito.when(mockService.create(Mockito.any()))
         .thenReturn(Single.just(Either.left(TodosService.CreateError.EmptyTask)));
-    final TodosController subject = new TodosController(mockService, mapper);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
     final ErrorResponse err =
         subject
             .createTodo(Single.just(TodoData.builder().task("").build()))
@@ -44,6 +84,35 @@ public class TodosControllerSpec {
     Mockito.verify(mockService, Mockito.times(1)).create(Mockito.any());
   }
 
+  @Test
+  void testErrorsAreCounted() {
+    final TodosService mockService = mockService();
+    Mockito.when(mockService.get(Mockito.any()))
+        .thenReturn(Single.just(Either.left(TodosService.GetError.NoSuchTodo)));
+    final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    final TodosController subject =
+        new TodosController(
+            mockService, mapper, new ErrorCounters(registry), tracing, listCache(), encodedTodos);
+    subject.getTodo(1, null).blockingGet();
+    subject.getTodo(2, null).blockingGet();
+    Assertions.assertEquals(
+        registry
+            .get("todddo.service.errors")
+            .tag("operation", "get")
+            .tag("error", "NoSuchTodo")
+            .counter()
+            .count(),
+        2.0);
+    Assertions.assertEquals(
+        registry
+            .get("todddo.service.errors")
+            .tag("operation", "delete")
+            .tag("error", "NoSuchTodo")
+            .counter()
+            .count(),
+        0.0);
+  }
+
   @Test
   void testCreateTodoOkFromService() {
     final TodosService mockService = mockService();
@@ -56,7 +125,8 @@ public class TodosControllerSpec {
                             .id(Todo.Id.builder().value(1).build())
                             .task(invocation.getArgument(0))
                             .build())));
-    final TodosController subject = new TodosController(mockService, mapper);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
     final String taskStr = "lala";
     final TodoResponse resp =
         subject
@@ -70,30 +140,186 @@ public class TodosControllerSpec {
   }
 
   @Test
-  void testListTodos() {
+  void testListTodos() throws IOException {
     final TodosService mockService = mockService();
     final List<Todo> expectedListResult = Collections.list(dummy);
     Mockito.when(mockService.list()).thenReturn(Single.just(expectedListResult));
-    final TodosController subject = new TodosController(mockService, mapper);
-    @SuppressWarnings("unchecked")
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
     final List<TodoResponse> resp =
-        subject
-            .listTodos()
-            .blockingGet()
-            .getBody(Argument.of(List.class, TodoResponse.class))
-            .get();
+        listed(subject.listTodos(null, null, null, null, null).blockingGet());
     Assertions.assertEquals(resp.get(0).getId(), expectedListResult.get(0).getId().getValue());
     Assertions.assertEquals(resp.get(0).getTask(), expectedListResult.get(0).getTask().getValue());
     Mockito.verify(mockService, Mockito.times(1)).list();
   }
 
+  @Test
+  void testListTodosFullPageHasNextLink() {
+    final TodosService mockService = mockService();
+    Mockito.when(mockService.list(null, 1)).thenReturn(Single.just(Collections.list(dummy)));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final HttpResponse<?> resp = subject.listTodos(null, 1, null, null, null).blockingGet();
+    Assertions.assertEquals(
+        resp.getHeaders().get("Link"), "</todos?after=1&limit=1>; rel=\"next\"");
+    Mockito.verify(mockService, Mockito.times(1)).list(null, 1);
+  }
+
+  @Test
+  void testListTodosPartialPageHasNoNextLink() {
+    final TodosService mockService = mockService();
+    final Todo.Id after = Todo.Id.builder().value(1).build();
+    Mockito.when(mockService.list(after, 2)).thenReturn(Single.just(Collections.list(dummy)));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final HttpResponse<?> resp = subject.listTodos(1L, 2, null, null, null).blockingGet();
+    Assertions.assertNull(resp.getHeaders().get("Link"));
+    Mockito.verify(mockService, Mockito.times(1)).list(after, 2);
+  }
+
+  @Test
+  void testListTodosCachedUntilVersionChanges() throws IOException {
+    final TodosService mockService = mockService();
+    Mockito.when(mockService.version()).thenReturn(3L);
+    Mockito.when(mockService.list()).thenReturn(Single.just(Collections.list(dummy)));
+    Mockito.when(mockService.list(null, 1)).thenReturn(Single.just(Collections.list(dummy)));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    subject.listTodos(null, null, null, null, null).blockingGet();
+    subject.listTodos(null, 1, null, null, null).blockingGet();
+    final HttpResponse<?> page = subject.listTodos(null, 1, null, null, null).blockingGet();
+    Assertions.assertEquals(
+        page.getHeaders().get("Link"), "</todos?after=1&limit=1>; rel=\"next\"");
+    Assertions.assertEquals(
+        listed(page).get(0).getId(),
+        listed(subject.listTodos(null, null, null, null, null).blockingGet()).get(0).getId());
+    Mockito.verify(mockService, Mockito.times(1)).list();
+    Mockito.verify(mockService, Mockito.times(1)).list(null, 1);
+    Mockito.when(mockService.version()).thenReturn(4L);
+    subject.listTodos(null, null, null, null, null).blockingGet();
+    Mockito.verify(mockService, Mockito.times(2)).list();
+  }
+
+  @Test
+  void testListCacheKeepsNewestVersion() {
+    final ListCache subject = listCache();
+    final List<TodoResponse> todos = Collections.list(mapper.domainToApi(dummy));
+    subject.put(2, null, 10, todos, null);
+    Assertions.assertNotNull(subject.get(2, null, 10));
+    Assertions.assertNull(subject.get(2, 1L, 10));
+    subject.put(1, null, 10, todos, null);
+    Assertions.assertNull(subject.get(1, null, 10));
+    subject.put(3, 1L, 10, todos, null);
+    Assertions.assertNull(subject.get(2, null, 10));
+    Assertions.assertNotNull(subject.get(3, 1L, 10));
+  }
+
+  @Test
+  void testListCacheSkipsPagesPastMaxBytes() {
+    final ListCache subject = new ListCache(objectMapper, 0);
+    final ListCache.Page page =
+        subject.put(1, null, 10, Collections.list(mapper.domainToApi(dummy)), null);
+    Assertions.assertTrue(page.getJson().length > 0);
+    Assertions.assertNull(subject.get(1, null, 10));
+  }
+
+  @Test
+  void testSearchTodosFullPageHasNextLink() {
+    final TodosService mockService = mockService();
+    Mockito.when(mockService.search("buy milk", 0, 1))
+        .thenReturn(Single.just(Collections.list(dummy)));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final HttpResponse<?> resp = subject.listTodos(null, 1, "buy milk", null, null).blockingGet();
+    @SuppressWarnings("unchecked")
+    final List<TodoResponse> found = (List<TodoResponse>) resp.body();
+    Assertions.assertEquals(found.get(0).getId(), dummy.getId().getValue());
+    Assertions.assertEquals(
+        resp.getHeaders().get("Link"), "</todos?q=buy+milk&offset=1&limit=1>; rel=\"next\"");
+  }
+
+  @Test
+  void testSearchTodosDefaultsToFirstPage() {
+    final TodosService mockService = mockService();
+    Mockito.when(mockService.search("milk", 0, 20))
+        .thenReturn(Single.just(Collections.<Todo>list()));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final HttpResponse<?> resp = subject.listTodos(null, null, "milk", null, null).blockingGet();
+    Assertions.assertTrue(((List<?>) resp.body()).isEmpty());
+    Assertions.assertNull(resp.getHeaders().get("Link"));
+  }
+
+  @Test
+  void testSuggestTodosDefaultsToTen() {
+    final TodosService mockService = mockService();
+    Mockito.when(mockService.suggest("bu", 10)).thenReturn(Single.just(Collections.list(dummy)));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final HttpResponse<List<TodoResponse>> resp = subject.suggestTodos("bu", null).blockingGet();
+    Assertions.assertEquals(resp.body().get(0).getId(), dummy.getId().getValue());
+  }
+
+  @Test
+  void testStreamTodosDefaultsToJson() {
+    final TodosService mockService = mockService();
+    Mockito.when(mockService.stream(null)).thenReturn(Flowable.just(dummy));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final HttpResponse<Flowable<TodoResponse>> resp =
+        subject.streamTodos(HttpRequest.GET("/todos/stream").getHeaders(), null);
+    Assertions.assertEquals(resp.getContentType().get(), MediaType.APPLICATION_JSON_TYPE);
+    final List<TodoResponse> streamed = resp.body().toList().blockingGet();
+    Assertions.assertEquals(streamed.get(0).getId(), dummy.getId().getValue());
+    Mockito.verify(mockService, Mockito.times(1)).stream(null);
+  }
+
+  @Test
+  void testStreamTodosNdJson() {
+    final TodosService mockService = mockService();
+    final Todo.Id after = Todo.Id.builder().value(1).build();
+    Mockito.when(mockService.stream(after)).thenReturn(Flowable.just(dummy));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final HttpResponse<Flowable<TodoResponse>> resp =
+        subject.streamTodos(
+            HttpRequest.GET("/todos/stream")
+                .accept(NdJsonMediaTypeCodec.APPLICATION_NDJSON_TYPE)
+                .getHeaders(),
+            1L);
+    Assertions.assertEquals(
+        resp.getContentType().get(), NdJsonMediaTypeCodec.APPLICATION_NDJSON_TYPE);
+    Mockito.verify(mockService, Mockito.times(1)).stream(after);
+  }
+
+  @Test
+  void testFollowChanges() {
+    final TodosService mockService = mockService();
+    final Todo.Change change =
+        Todo.Change.builder().sequence(4).kind(Todo.Change.Kind.Updated).todo(dummy).build();
+    Mockito.when(mockService.changes(3L)).thenReturn(Flowable.just(change));
+    Mockito.when(mockService.lastChange()).thenReturn(9L);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final Event<?> followed = subject.followChanges(null, EventIds.of(3)).blockingFirst();
+    Assertions.assertEquals("updated", followed.getName());
+    Assertions.assertEquals(EventIds.of(4), followed.getId());
+    Assertions.assertEquals(
+        dummy.getTask().getValue(), ((ChangeResponse) followed.getData()).getTodo().getTask());
+    final Event<?> reset = subject.followChanges("before a restart", null).blockingFirst();
+    Assertions.assertEquals("reset", reset.getName());
+    Assertions.assertEquals(EventIds.of(9), reset.getId());
+  }
+
   @Test
   void testGetTodoNonExistent() {
     final TodosService mockService = mockService();
     Mockito.when(mockService.get(Mockito.any()))
         .thenReturn(Single.just(Either.left(TodosService.GetError.NoSuchTodo)));
-    final TodosController subject = new TodosController(mockService, mapper);
-    final ErrorResponse err = subject.getTodo(1).blockingGet().getBody(ErrorResponse.class).get();
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final ErrorResponse err =
+        subject.getTodo(1, null).blockingGet().getBody(ErrorResponse.class).get();
     Assertions.assertTrue(err.getMessage().contains("No todo"));
     Mockito.verify(mockService, Mockito.times(1)).get(Mockito.any());
   }
@@ -102,20 +328,208 @@ public class TodosControllerSpec {
   void testGetTodoExistent() {
     final TodosService mockService = mockService();
     Mockito.when(mockService.get(Mockito.any())).thenReturn(Single.just(Either.right(dummy)));
-    final TodosController subject = new TodosController(mockService, mapper);
-    final TodoResponse resp = subject.getTodo(1).blockingGet().getBody(TodoResponse.class).get();
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final TodoResponse resp =
+        subject.getTodo(1, null).blockingGet().getBody(TodoResponse.class).get();
     Assertions.assertEquals(resp.getTask(), dummy.getTask().getValue());
     Mockito.verify(mockService, Mockito.times(1)).get(Mockito.any());
   }
 
+  @Test
+  void testGetTodoEncoded() throws IOException {
+    final TodosService mockService = mockService();
+    final Todo updated =
+        Todo.builder()
+            .id(dummy.getId())
+            .task(Todo.Task.builder().value("eh").build())
+            .version(4)
+            .build();
+    Mockito.when(mockService.versionOf(Mockito.any())).thenReturn(Maybe.just(dummy.getVersion()));
+    Mockito.when(mockService.get(Mockito.any())).thenReturn(Single.just(Either.right(dummy)));
+    final EncodedTodos encoded =
+        new EncodedTodos(objectMapper, mapper, new ChangeFeed(16, 16), true);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encoded);
+    Assertions.assertEquals(
+        dummy.getTask().getValue(), encodedBody(subject.getTodo(1, null).blockingGet()).getTask());
+    // Kept now, so served at that version without getting the Todo
+    Assertions.assertEquals(
+        dummy.getTask().getValue(), encodedBody(subject.getTodo(1, null).blockingGet()).getTask());
+    Mockito.verify(mockService, Mockito.times(1)).get(Mockito.any());
+
+    Mockito.when(mockService.versionOf(Mockito.any())).thenReturn(Maybe.just(updated.getVersion()));
+    Mockito.when(mockService.get(Mockito.any())).thenReturn(Single.just(Either.right(updated)));
+    Assertions.assertEquals("eh", encodedBody(subject.getTodo(1, null).blockingGet()).getTask());
+    Assertions.assertEquals("eh", encodedBody(subject.getTodo(1, null).blockingGet()).getTask());
+    Mockito.verify(mockService, Mockito.times(2)).get(Mockito.any());
+
+    Mockito.when(mockService.versionOf(Mockito.any())).thenReturn(Maybe.empty());
+    Mockito.when(mockService.get(Mockito.any()))
+        .thenReturn(Single.just(Either.left(TodosService.GetError.NoSuchTodo)));
+    Assertions.assertEquals(
+        HttpStatus.NOT_FOUND, subject.getTodo(1, null).blockingGet().getStatus());
+  }
+
+  @Test
+  void testEncodedTodosFollowWritesKeepingNewestVersion() throws InterruptedException {
+    final ChangeFeed feed = new ChangeFeed(16, 16);
+    final EncodedTodos subject = new EncodedTodos(objectMapper, mapper, feed, true);
+    subject.onApplicationEvent(null);
+    final Todo newer =
+        Todo.builder()
+            .id(dummy.getId())
+            .task(Todo.Task.builder().value("eh").build())
+            .version(2)
+            .build();
+    final Todo other =
+        Todo.builder()
+            .id(Todo.Id.builder().value(2).build())
+            .task(Todo.Task.builder().value("other").build())
+            .version(3)
+            .build();
+    feed.publish(Todo.Change.Kind.Updated, newer);
+    feed.publish(Todo.Change.Kind.Updated, dummy);
+    feed.publish(Todo.Change.Kind.Created, other);
+    // Changes are followed in order, so the others are in once the last one is
+    awaitKept(subject, other, true);
+    final ByteBuf kept = subject.json(newer.getId(), newer.getVersion());
+    Assertions.assertNull(subject.json(dummy.getId(), dummy.getVersion()));
+    Assertions.assertEquals(kept, subject.json(newer));
+    Assertions.assertEquals(kept.memoryAddress(), subject.json(newer).memoryAddress());
+
+    feed.publish(Todo.Change.Kind.Deleted, newer);
+    awaitKept(subject, newer, false);
+    Assertions.assertNotNull(subject.json(other.getId(), other.getVersion()));
+    Assertions.assertNull(
+        new EncodedTodos(objectMapper, mapper, feed, false).json(other.getId(), 3));
+    Assertions.assertNull(new EncodedTodos(objectMapper, mapper, feed, false).json(newer));
+  }
+
+  private static void awaitKept(final EncodedTodos subject, final Todo todo, final boolean kept)
+      throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while ((subject.json(todo.getId(), todo.getVersion()) != null) != kept) {
+      Assertions.assertTrue(System.nanoTime() < deadline, "Timed out");
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  void testGetTodoNotModified() {
+    final TodosService mockService = mockService();
+    final Todo versioned =
+        Todo.builder().id(dummy.getId()).task(dummy.getTask()).version(3).build();
+    Mockito.when(mockService.get(Mockito.any())).thenReturn(Single.just(Either.right(versioned)));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final HttpResponse<?> first = subject.getTodo(1, null).blockingGet();
+    final String etag = first.getHeaders().get("ETag");
+    Assertions.assertEquals(HttpStatus.OK, first.getStatus());
+    Assertions.assertNotNull(etag);
+    final HttpResponse<?> second = subject.getTodo(1, "W/" + etag).blockingGet();
+    Assertions.assertEquals(HttpStatus.NOT_MODIFIED, second.getStatus());
+    Assertions.assertEquals(etag, second.getHeaders().get("ETag"));
+    Assertions.assertFalse(second.getBody().isPresent());
+    final HttpResponse<?> changed = subject.getTodo(1, etag.replace("-3\"", "-2\"")).blockingGet();
+    Assertions.assertEquals(HttpStatus.OK, changed.getStatus());
+  }
+
+  @Test
+  void testListTodosNotModified() {
+    final TodosService mockService = mockService();
+    Mockito.when(mockService.version()).thenReturn(7L);
+    Mockito.when(mockService.list()).thenReturn(Single.just(Collections.list(dummy)));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final String etag =
+        subject.listTodos(null, null, null, null, null).blockingGet().getHeaders().get("ETag");
+    final HttpResponse<?> resp =
+        subject.listTodos(null, null, null, null, "\"other\", " + etag).blockingGet();
+    Assertions.assertEquals(HttpStatus.NOT_MODIFIED, resp.getStatus());
+    Mockito.verify(mockService, Mockito.times(1)).list();
+    Mockito.when(mockService.version()).thenReturn(8L);
+    Assertions.assertEquals(
+        HttpStatus.OK, subject.listTodos(null, null, null, null, etag).blockingGet().getStatus());
+    Mockito.verify(mockService, Mockito.times(2)).list();
+  }
+
+  @Test
+  void testConditionalUpdate() {
+    final TodosService mockService = mockService();
+    final Todo updated =
+        Todo.builder()
+            .id(dummy.getId())
+            .task(Todo.Task.builder().value("eh").build())
+            .version(4)
+            .build();
+    Mockito.when(mockService.update(Mockito.any(), Mockito.eq(5L), Mockito.eq(3L)))
+        .thenReturn(Single.just(Either.right(updated)));
+    // The service checks the epoch, as the Todo may be kept elsewhere, e.g. by another member
+    Mockito.when(mockService.update(Mockito.any(), Mockito.eq(4L), Mockito.eq(3L)))
+        .thenReturn(Single.just(Either.left(TodosService.UpdateError.VersionMismatch)));
+    Mockito.when(mockService.update(Mockito.any())).thenReturn(Single.just(Either.right(updated)));
+    Mockito.when(mockService.epochOf(Mockito.any())).thenReturn(5L);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final String etag = ETags.of(5, 3);
+    final HttpResponse<ResponseBase> resp =
+        subject.updateTodo(1, TodoData.builder().task("eh").build(), etag).blockingGet();
+    Assertions.assertEquals(HttpStatus.OK, resp.getStatus());
+    Assertions.assertEquals(ETags.of(5, 4), resp.getHeaders().get("ETag"));
+    final HttpResponse<ResponseBase> stale =
+        subject.updateTodo(1, TodoData.builder().task("eh").build(), ETags.of(4, 3)).blockingGet();
+    Assertions.assertEquals(HttpStatus.PRECONDITION_FAILED, stale.getStatus());
+    Assertions.assertTrue(
+        stale.getBody(ErrorResponse.class).get().getMessage().contains("has changed"));
+    subject.updateTodo(1, TodoData.builder().task("eh").build(), "*").blockingGet();
+    Mockito.verify(mockService, Mockito.times(1)).update(Mockito.any());
+  }
+
+  @Test
+  void testConditionalDelete() {
+    final TodosService mockService = mockService();
+    Mockito.when(mockService.delete(Mockito.any(), Mockito.eq(0L), Mockito.eq(1L)))
+        .thenReturn(Single.just(Either.left(TodosService.DeleteError.VersionMismatch)));
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    Assertions.assertEquals(
+        HttpStatus.PRECONDITION_FAILED,
+        subject.deleteTodo(1, "\"x\", " + ETags.of(0, 1)).blockingGet().getStatus());
+  }
+
+  @Test
+  void testGetTodoTaggedWithTheEpochItsVersionCountsFrom() {
+    final TodosService mockService = mockService();
+    final Todo versioned =
+        Todo.builder().id(dummy.getId()).task(dummy.getTask()).version(3).build();
+    Mockito.when(mockService.get(Mockito.any())).thenReturn(Single.just(Either.right(versioned)));
+    Mockito.when(mockService.epochOf(Mockito.any())).thenReturn(5L);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final String etag = subject.getTodo(1, null).blockingGet().getHeaders().get("ETag");
+    Assertions.assertEquals(ETags.of(5, 3), etag);
+    // Versions start over under a new epoch, e.g. once a replica has a new primary's snapshot
+    Mockito.when(mockService.epochOf(Mockito.any())).thenReturn(6L);
+    final HttpResponse<?> restarted = subject.getTodo(1, etag).blockingGet();
+    Assertions.assertEquals(HttpStatus.OK, restarted.getStatus());
+    Assertions.assertEquals(ETags.of(6, 3), restarted.getHeaders().get("ETag"));
+    // Moving on while the Todo is read, it could be from either
+    Mockito.when(mockService.epochOf(Mockito.any())).thenReturn(6L, 7L);
+    final HttpResponse<?> moving = subject.getTodo(1, ETags.of(6, 3)).blockingGet();
+    Assertions.assertEquals(HttpStatus.OK, moving.getStatus());
+    Assertions.assertNull(moving.getHeaders().get("ETag"));
+  }
+
   @Test
   void testDeleteTodoNonExistent() {
     final TodosService mockService = mockService();
     Mockito.when(mockService.delete(Mockito.any()))
         .thenReturn(Single.just(Either.left(TodosService.DeleteError.NoSuchTodo)));
-    final TodosController subject = new TodosController(mockService, mapper);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
     final ErrorResponse err =
-        subject.deleteTodo(1).blockingGet().getBody(ErrorResponse.class).get();
+        subject.deleteTodo(1, null).blockingGet().getBody(ErrorResponse.class).get();
     Assertions.assertTrue(err.getMessage().contains("No todo"));
     Mockito.verify(mockService, Mockito.times(1)).delete(Mockito.any());
   }
@@ -124,8 +538,10 @@ public class TodosControllerSpec {
   void testDeleteTodoExistent() {
     final TodosService mockService = mockService();
     Mockito.when(mockService.delete(Mockito.any())).thenReturn(Single.just(Either.right(dummy)));
-    final TodosController subject = new TodosController(mockService, mapper);
-    final TodoResponse resp = subject.deleteTodo(1).blockingGet().getBody(TodoResponse.class).get();
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
+    final TodoResponse resp =
+        subject.deleteTodo(1, null).blockingGet().getBody(TodoResponse.class).get();
     Assertions.assertEquals(resp.getTask(), dummy.getTask().getValue());
     Mockito.verify(mockService, Mockito.times(1)).delete(Mockito.any());
   }
@@ -135,10 +551,11 @@ public class TodosControllerSpec {
     final TodosService mockService = mockService();
     Mockito.when(mockService.update(Mockito.any()))
         .thenReturn(Single.just(Either.left(TodosService.UpdateError.EmptyTask)));
-    final TodosController subject = new TodosController(mockService, mapper);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
     final ErrorResponse err =
         subject
-            .updateTodo(1, TodoData.builder().task("eh").build())
+            .updateTodo(1, TodoData.builder().task("eh").build(), null)
             .blockingGet()
             .getBody(ErrorResponse.class)
             .get();
@@ -151,10 +568,11 @@ public class TodosControllerSpec {
     final TodosService mockService = mockService();
     Mockito.when(mockService.update(Mockito.any()))
         .thenReturn(Single.just(Either.left(TodosService.UpdateError.NoSuchTodo)));
-    final TodosController subject = new TodosController(mockService, mapper);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
     final ErrorResponse err =
         subject
-            .updateTodo(1, TodoData.builder().task("eh").build())
+            .updateTodo(1, TodoData.builder().task("eh").build(), null)
             .blockingGet()
             .getBody(ErrorResponse.class)
             .get();
@@ -166,10 +584,11 @@ public class TodosControllerSpec {
   void testUpdateTodoExistent() {
     final TodosService mockService = mockService();
     Mockito.when(mockService.update(Mockito.any())).thenReturn(Single.just(Either.right(dummy)));
-    final TodosController subject = new TodosController(mockService, mapper);
+    final TodosController subject =
+        new TodosController(mockService, mapper, errorCounters, tracing, listCache(), encodedTodos);
     final TodoResponse resp =
         subject
-            .updateTodo(1, TodoData.builder().task("eh").build())
+            .updateTodo(1, TodoData.builder().task("eh").build(), null)
             .blockingGet()
             .getBody(TodoResponse.class)
             .get();
@@ -0,0 +1,62 @@
+package todddo.java.api.diagnostics;
+
+import io.micronaut.context.annotation.Property;
+import io.micronaut.core.type.Argument;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.client.HttpClient;
+import io.micronaut.http.client.annotation.Client;
+import io.micronaut.test.annotation.MicronautTest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import todddo.java.api.models.SlowRequestResponse;
+import todddo.java.api.models.SpanResponse;
+import todddo.java.api.models.TodoData;
+import todddo.java.api.models.TodoResponse;
+
+@MicronautTest
+@Property(name = "todddo.tracing.enabled", value = "true")
+@Property(name = "todddo.tracing.slow-threshold", value = "0ms")
+public class DiagnosticsSpec {
+
+  @Inject
+  @Client("/")
+  HttpClient client;
+
+  @Test
+  void testSlowRequestsAreTracedThroughEachStage() {
+    final TodoResponse created =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.POST("/todos", TodoData.builder().task("trace me").build()),
+                TodoResponse.class);
+    client.toBlocking().retrieve(HttpRequest.GET("/todos/" + created.getId()), TodoResponse.class);
+
+    final List<SlowRequestResponse> slow =
+        client
+            .toBlocking()
+            .retrieve(
+                HttpRequest.GET("/diagnostics/slow-requests"),
+                Argument.listOf(SlowRequestResponse.class));
+
+    Assertions.assertEquals("GET /todos/" + created.getId(), slow.get(0).getRequest());
+    Assertions.assertEquals("POST /todos", slow.get(1).getRequest());
+    Assertions.assertEquals(201, slow.get(1).getStatus());
+    for (final SlowRequestResponse request : slow.subList(0, 2)) {
+      Assertions.assertEquals(
+          Arrays.asList(
+              "deserialize",
+              "service",
+              "scheduler.subscribe-on",
+              "repo",
+              "scheduler.observe-on",
+              "serialize"),
+          request.getSpans().stream().map(SpanResponse::getStage).collect(Collectors.toList()));
+      Assertions.assertTrue(request.getTotalMicros() > 0);
+    }
+  }
+}